@@ -1,17 +1,51 @@
 package com.leapfuture.trino.n8n;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.opentelemetry.context.Context;
+import io.trino.spi.TrinoException;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_API_ERROR;
 
 /**
  * N8N API客户端
@@ -19,168 +53,824 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class N8nApiClient {
     
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String WEBHOOK_NODE_TYPE = "n8n-nodes-base.webhook";
     
     // 缓存工作流信息，避免频繁API调用
-    private static final Map<String, CachedWorkflows> WORKFLOW_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, CacheEntry> WORKFLOW_CACHE = new ConcurrentHashMap<>();
+    
+    // 没有API Key或无法获取工作流时使用的默认webhook表
+    private static final N8nWorkflowSnapshot DEFAULT_SNAPSHOT = N8nWorkflowSnapshot.of(getDefaultWebhooks());
+    
+    // 缓存时间过去该比例后开始在后台刷新
+    private static final double REFRESH_AHEAD_RATIO = 0.75;
+    
+    // 执行后台刷新的线程：刷新会等待提交到API线程池的详情请求，不能占用API线程池，否则刷新和详情请求互相等待
+    private static final ExecutorService REFRESH_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("n8n-metadata-refresh-%s")
+                    .setDaemon(true)
+                    .build());
     
     private final N8nConfig config;
     private final CloseableHttpClient httpClient;
+    private final Optional<Path> snapshotPath;
     
     @Inject
     public N8nApiClient(N8nConfig config) {
         this.config = config;
-        this.httpClient = N8nHttpClient.getClient(config);
+        this.httpClient = N8nHttpClient.getClient(config, N8nHttpClient.Pool.API);
+        
+        String path = config.getMetadataSnapshotPath();
+        this.snapshotPath = path != null && !path.trim().isEmpty() ? Optional.of(Paths.get(path.trim())) : Optional.empty();
     }
     
     /**
-     * 获取所有包含webhook的工作流信息
+     * 获取工作流元数据快照
      * 
-     * @return webhook信息列表
+     * 缓存存在时立即返回最近一次成功加载的快照：超过缓存时间的一定比例后在后台提前刷新，
+     * 过期后在刷新完成前继续返回旧快照。超过n8n.cache-max-staleness后等待刷新完成；
+     * 刷新失败时继续使用最近一次成功获取的快照（并在日志中报告它的陈旧时间），不会换成默认的webhook表，
+     * N8N恢复之前后续的调用不再等待刷新。
+     * 同一时间每个缓存只有一个刷新在执行，并发的调用共享同一个刷新。
+     * 
+     * @return 快照
+     * @throws TrinoException 从未成功获取过快照（内存和磁盘上都没有）且本次获取失败
      */
-    public List<WebhookInfo> getWebhookWorkflows() {
+    public N8nWorkflowSnapshot getWorkflowSnapshot() {
         if (!config.hasApiKey()) {
             // 如果没有API Key，返回默认的webhook表
-            return getDefaultWebhooks();
+            return DEFAULT_SNAPSHOT;
         }
         
+        String cacheKey = config.getApiBaseUrl() + ":" + config.getApiKey();
+        CacheEntry entry = WORKFLOW_CACHE.computeIfAbsent(cacheKey, key -> new CacheEntry());
+        CachedWorkflows cached = entry.snapshot;
+        if (cached == null) {
+            // 首次访问时使用磁盘上保存的快照，立即可用，并在后台与N8N API核对
+            cached = loadPersistedSnapshot(entry);
+            if (cached == null) {
+                // 没有保存的快照，首次加载只能等待
+                return awaitRefresh(refresh(entry), null);
+            }
+            refresh(entry);
+        }
+        
+        long ageMillis = cached.getAgeMillis();
+        long cacheMillis = config.getCacheDuration().toMillis();
+        if (ageMillis >= (long) (cacheMillis * REFRESH_AHEAD_RATIO)) {
+            CompletableFuture<CachedWorkflows> refresh = refresh(entry);
+            if (ageMillis > Math.max(cacheMillis, config.getCacheMaxStaleness().toMillis()) && !entry.refreshFailed) {
+                // 超过最大陈旧时间，等待刷新；上次刷新已经失败时不再等待，直接使用旧快照
+                return awaitRefresh(refresh, cached);
+            }
+        }
+        return cached.getSnapshot();
+    }
+    
+    /**
+     * 启动后台刷新，已有刷新在执行时返回该刷新
+     */
+    private CompletableFuture<CachedWorkflows> refresh(CacheEntry entry) {
+        synchronized (entry) {
+            if (entry.refreshing != null) {
+                return entry.refreshing;
+            }
+            CompletableFuture<CachedWorkflows> refresh = CompletableFuture.supplyAsync(() -> {
+                try {
+                    List<ParsedWorkflow> workflows = fetchWorkflowsFromApi();
+                    CachedWorkflows previous = entry.snapshot;
+                    // 详情获取失败的工作流沿用上一个快照中的节点，不能沿用时本次刷新失败，不保存不完整的快照
+                    N8nWorkflowSnapshot reused = previous != null ? previous.getSnapshot() : null;
+                    checkFailedDetails(workflows, reused);
+                    List<WebhookInfo> webhooks = toWebhooks(workflows, reused);
+                    N8nWorkflowCatalog catalog = toCatalog(workflows, reused);
+                    // 与上一个快照比较，没有变化时继续使用原快照
+                    N8nWorkflowSnapshot snapshot = previous != null
+                            ? previous.getSnapshot().update(webhooks, catalog)
+                            : N8nWorkflowSnapshot.of(webhooks, catalog);
+                    // 快照没有变化时也重新保存，文件中的获取时间始终是最近一次成功获取的时间
+                    Instant fetchedAt = Instant.now();
+                    persistSnapshot(snapshot, fetchedAt);
+                    return new CachedWorkflows(snapshot, fetchedAt);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, REFRESH_EXECUTOR);
+            entry.refreshing = refresh;
+            refresh.whenComplete((result, failure) -> {
+                CachedWorkflows current;
+                synchronized (entry) {
+                    entry.refreshing = null;
+                    entry.refreshFailed = failure != null;
+                    if (result != null) {
+                        entry.snapshot = result;
+                    }
+                    current = entry.snapshot;
+                }
+                if (failure != null) {
+                    String message = "警告: 无法获取N8N工作流信息: " + unwrap(failure).getMessage();
+                    if (current != null) {
+                        message += "，继续使用" + current.getAgeMillis() / 1000 + "秒前获取的元数据快照";
+                    }
+                    System.err.println(message);
+                }
+            });
+            return refresh;
+        }
+    }
+    
+    /**
+     * 加载磁盘上保存的快照，陈旧时间从文件中保存的获取时间开始计算
+     */
+    private CachedWorkflows loadPersistedSnapshot(CacheEntry entry) {
+        if (snapshotPath.isEmpty()) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.snapshot == null) {
+                N8nSnapshotFile.read(snapshotPath.get(), config.getApiBaseUrl())
+                        .ifPresent(persisted -> entry.snapshot = new CachedWorkflows(persisted.getSnapshot(), persisted.getFetchedAt()));
+            }
+            return entry.snapshot;
+        }
+    }
+    
+    private void persistSnapshot(N8nWorkflowSnapshot snapshot, Instant fetchedAt) {
+        if (snapshotPath.isEmpty()) {
+            return;
+        }
         try {
-            // 检查缓存
-            String cacheKey = config.getApiBaseUrl() + ":" + config.getApiKey();
-            CachedWorkflows cached = WORKFLOW_CACHE.get(cacheKey);
-            
-            if (cached != null && !cached.isExpired(java.time.Duration.ofMillis(config.getCacheDuration().toMillis()))) {
-                return cached.getWebhooks();
+            N8nSnapshotFile.write(snapshotPath.get(), config.getApiBaseUrl(), snapshot, fetchedAt);
+        } catch (IOException e) {
+            System.err.println("保存N8N元数据快照失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 等待刷新完成，失败时使用最近一次成功获取的快照
+     * 
+     * @param fallback 最近一次成功获取的快照，没有时为null
+     */
+    private N8nWorkflowSnapshot awaitRefresh(CompletableFuture<CachedWorkflows> refresh, CachedWorkflows fallback) {
+        try {
+            return refresh.join().getSnapshot();
+        } catch (CompletionException | CancellationException e) {
+            if (fallback != null) {
+                return fallback.getSnapshot();
             }
-            
-            // 调用API获取工作流
-            List<WebhookInfo> webhooks = fetchWorkflowsFromApi();
-            
-            // 更新缓存
-            WORKFLOW_CACHE.put(cacheKey, new CachedWorkflows(webhooks, Instant.now()));
-            
-            return webhooks;
-            
-        } catch (Exception e) {
-            System.err.println("警告: 无法获取N8N工作流信息: " + e.getMessage());
-            // 出错时返回默认webhook
-            return getDefaultWebhooks();
+            // 没有可用的快照时报错，而不是用默认的webhook表代替全部表
+            Throwable cause = unwrap(e);
+            throw new TrinoException(N8N_API_ERROR, "Failed to load n8n workflows and no metadata snapshot is available: " + cause.getMessage(), cause);
         }
     }
     
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+    
     /**
      * 从N8N API获取工作流信息
+     * 
+     * 按nextCursor逐页读取工作流列表，列表中没有节点信息的工作流并发获取详情
+     */
+    private List<ParsedWorkflow> fetchWorkflowsFromApi() throws Exception {
+        List<ParsedWorkflow> workflows = new ArrayList<>();
+        Set<String> seenCursors = new HashSet<>();
+        String cursor = null;
+        do {
+            WorkflowPage page = fetchWorkflowPage(cursor);
+            workflows.addAll(page.workflows);
+            cursor = page.nextCursor;
+            // 防止API返回重复的游标导致死循环
+        } while (cursor != null && seenCursors.add(cursor));
+        
+        fetchMissingNodes(workflows);
+        return workflows;
+    }
+    
+    /**
+     * 检查详情获取失败的工作流都能从上一个快照中沿用，否则抛出异常使本次刷新失败
+     */
+    private static void checkFailedDetails(List<ParsedWorkflow> workflows, N8nWorkflowSnapshot previous) throws Exception {
+        List<String> unavailable = new ArrayList<>();
+        for (ParsedWorkflow workflow : workflows) {
+            if (workflow.detailFailed && (previous == null || findWorkflow(previous.getCatalog(), workflow.id) < 0)) {
+                unavailable.add(workflow.id);
+            }
+        }
+        if (!unavailable.isEmpty()) {
+            throw new Exception("获取工作流详情失败，且没有可沿用的快照: " + unavailable);
+        }
+    }
+    
+    /**
+     * 从工作流中提取webhook节点，详情获取失败的工作流沿用上一个快照中的webhook
+     */
+    private List<WebhookInfo> toWebhooks(List<ParsedWorkflow> workflows, N8nWorkflowSnapshot previous) {
+        List<WebhookInfo> webhooks = new ArrayList<>();
+        for (ParsedWorkflow workflow : workflows) {
+            if (workflow.detailFailed) {
+                for (WebhookInfo webhook : previous.getWebhooks()) {
+                    if (workflow.id.equals(webhook.getWorkflowId())) {
+                        webhooks.add(webhook);
+                    }
+                }
+                continue;
+            }
+            if (workflow.nodes == null) {
+                continue;
+            }
+            for (ParsedNode node : workflow.nodes) {
+                if (!node.isWebhook()) {
+                    continue;
+                }
+                webhooks.add(new WebhookInfo(
+                    generateTableName(workflow.name, node.webhookPath),
+                    node.webhookPath,
+                    node.method,
+                    workflow.id,
+                    workflow.name,
+                    workflow.active
+                ));
+            }
+        }
+        return webhooks;
+    }
+    
+    /**
+     * 把全部工作流和节点转换为列式目录，详情获取失败的工作流沿用上一个快照中的节点
+     */
+    private static N8nWorkflowCatalog toCatalog(List<ParsedWorkflow> workflows, N8nWorkflowSnapshot previous) {
+        N8nWorkflowCatalog.Builder catalog = N8nWorkflowCatalog.builder();
+        for (ParsedWorkflow workflow : workflows) {
+            catalog.addWorkflow(workflow.id, workflow.name, workflow.active, workflow.createdAt, workflow.updatedAt);
+            if (workflow.detailFailed) {
+                copyNodes(previous.getCatalog(), findWorkflow(previous.getCatalog(), workflow.id), catalog);
+                continue;
+            }
+            if (workflow.nodes == null) {
+                continue;
+            }
+            for (ParsedNode node : workflow.nodes) {
+                catalog.addNode(node.id, node.name, node.type, node.typeVersion, node.disabled, node.parameters, node.credentials);
+            }
+        }
+        return catalog.build();
+    }
+    
+    /**
+     * 查找工作流在目录中的位置，不存在时返回-1
+     */
+    private static int findWorkflow(N8nWorkflowCatalog catalog, String workflowId) {
+        for (int i = 0; i < catalog.getWorkflowCount(); i++) {
+            Slice id = catalog.getWorkflowId(i);
+            if (id != null && id.toStringUtf8().equals(workflowId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static void copyNodes(N8nWorkflowCatalog source, int workflow, N8nWorkflowCatalog.Builder target) {
+        int start = 0;
+        for (int i = 0; i < workflow; i++) {
+            start += source.getWorkflowNodeCount(i);
+        }
+        for (int node = start; node < start + source.getWorkflowNodeCount(workflow); node++) {
+            target.addNode(
+                    toStringUtf8(source.getNodeId(node)),
+                    toStringUtf8(source.getNodeName(node)),
+                    toStringUtf8(source.getNodeType(node)),
+                    source.getNodeTypeVersion(node),
+                    source.isNodeDisabled(node),
+                    source.getNodeParameters(node),
+                    source.getNodeCredentials(node));
+        }
+    }
+    
+    private static String toStringUtf8(Slice value) {
+        return value != null ? value.toStringUtf8() : null;
+    }
+    
+    /**
+     * 获取一页工作流
+     * 
+     * @param cursor 上一页返回的nextCursor，第一页为null
+     */
+    private WorkflowPage fetchWorkflowPage(String cursor) throws Exception {
+        StringBuilder apiPath = new StringBuilder("/workflows?limit=").append(config.getApiPageSize());
+        if (cursor != null) {
+            apiPath.append("&cursor=").append(URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+        }
+        return executeApiRequest(apiPath.toString(), N8nApiClient::parseWorkflowPage);
+    }
+    
+    /**
+     * 并发获取列表响应中没有节点信息的工作流详情，并发数由n8n.api.max-concurrent-requests限制
      */
-    private List<WebhookInfo> fetchWorkflowsFromApi() throws Exception {
-        String apiUrl = config.buildApiUrl("/workflows");
+    private void fetchMissingNodes(List<ParsedWorkflow> workflows) throws Exception {
+        List<ParsedWorkflow> missing = new ArrayList<>();
+        for (ParsedWorkflow workflow : workflows) {
+            if (workflow.nodes == null) {
+                missing.add(workflow);
+            }
+        }
         
-        HttpGet httpGet = new HttpGet(apiUrl);
+        List<Future<ParsedWorkflow>> details = List.of();
+        try {
+            details = submitConcurrently(missing, workflow -> fetchWorkflowDetail(workflow.id));
+            for (int i = 0; i < missing.size(); i++) {
+                try {
+                    ParsedWorkflow detail = details.get(i).get();
+                    missing.get(i).nodes = detail != null ? detail.nodes : null;
+                } catch (ExecutionException e) {
+                    // 单个工作流失败不影响其他工作流，由调用方沿用上一个快照中的节点
+                    missing.get(i).detailFailed = true;
+                    System.err.println("获取工作流详情失败: " + missing.get(i).id + " - " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("获取工作流详情被中断", e);
+        } finally {
+            details.forEach(future -> future.cancel(true));
+        }
+    }
+    
+    /**
+     * 在API线程池中并发调用API，同时执行的请求数由n8n.api.max-concurrent-requests限制
+     * 
+     * 只提交不再等待其他任务的单个请求；API线程池排满时在调用线程中直接执行，不会因为拒绝而失败。
+     * 
+     * @return 与输入一一对应的结果
+     */
+    private <T, R> List<Future<R>> submitConcurrently(List<T> items, ApiCall<T, R> call) throws InterruptedException {
+        Semaphore permits = new Semaphore(config.getApiMaxConcurrentRequests());
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        try {
+            for (T item : items) {
+                permits.acquire();
+                // 在后台线程中保留调用方的追踪上下文，API请求的span挂在同一个父span下
+                Callable<R> task = Context.current().wrap(() -> {
+                    try {
+                        return call.apply(item);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                try {
+                    futures.add(N8nHttpClient.getExecutor(config, N8nHttpClient.Pool.API).submit(task));
+                } catch (RejectedExecutionException e) {
+                    FutureTask<R> inline = new FutureTask<>(task);
+                    inline.run();
+                    futures.add(inline);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        return futures;
+    }
+    
+    private ParsedWorkflow fetchWorkflowDetail(String workflowId) throws Exception {
+        String apiPath = "/workflows/" + URLEncoder.encode(workflowId, StandardCharsets.UTF_8);
+        return executeApiRequest(apiPath, input -> {
+            try (JsonParser parser = N8nJson.createParser(input)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("工作流详情响应不是JSON对象");
+                }
+                return parseWorkflow(parser);
+            }
+        });
+    }
+    
+    /**
+     * 调用N8N管理API，以流的方式解析成功的响应
+     */
+    private <T> T executeApiRequest(String apiPath, ResponseParser<T> parser) throws Exception {
+        HttpGet httpGet = new HttpGet(config.buildApiUrl(apiPath));
         httpGet.setHeader("X-N8N-API-KEY", config.getApiKey());
         httpGet.setHeader("Accept", "application/json");
         
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.api", Context.current(), httpGet, apiPath, 0);
+        N8nRuntimeStats.PathStats runtimeStats = N8nRuntimeStats.forPath(N8nHttpClient.Pool.API, statsPath(apiPath));
+        long startNanos = runtimeStats.requestStarted();
+        long[] responseBytes = new long[1];
+        Exception failure = null;
         try {
-            return httpClient.execute(httpGet, response -> {
+            return httpClient.execute(httpGet, span.getContext(), response -> {
                 int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
-                
-                if (statusCode >= 200 && statusCode < 300) {
+                span.setStatusCode(statusCode);
+                if (statusCode < 200 || statusCode >= 300) {
+                    String responseBody = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                    throw new RuntimeException("N8N API调用失败: HTTP " + statusCode + " - " + responseBody);
+                }
+                if (response.getEntity() == null) {
+                    throw new RuntimeException("N8N API响应为空");
+                }
+                try (CountingInputStream input = new CountingInputStream(response.getEntity().getContent())) {
                     try {
-                        return parseWorkflowsResponse(responseBody);
-                    } catch (Exception e) {
-                        throw new RuntimeException("解析响应失败: " + e.getMessage(), e);
+                        return parser.parse(input);
+                    } finally {
+                        responseBytes[0] = input.getCount();
                     }
-                } else {
-                    throw new RuntimeException("N8N API调用失败: HTTP " + statusCode + " - " + responseBody);
+                } catch (IOException e) {
+                    throw new RuntimeException("解析响应失败: " + e.getMessage(), e);
                 }
             });
         } catch (Exception e) {
+            failure = e;
             throw new Exception("调用N8N API失败: " + e.getMessage(), e);
+        } finally {
+            runtimeStats.requestFinished(startNanos, failure != null);
+            span.end(responseBytes[0], failure);
         }
     }
     
     /**
-     * 解析工作流API响应，提取webhook信息
+     * 运行时统计按第一级路径汇总，例如/workflows/123?limit=1汇总为/workflows
      */
-    private List<WebhookInfo> parseWorkflowsResponse(String responseBody) throws Exception {
-        List<WebhookInfo> webhooks = new ArrayList<>();
-        
-        JsonNode response = OBJECT_MAPPER.readTree(responseBody);
-        JsonNode workflowsNode = response.get("data");
+    private static String statsPath(String apiPath) {
+        int end = apiPath.length();
+        int query = apiPath.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int segment = apiPath.indexOf('/', 1);
+        if (segment >= 0 && segment < end) {
+            end = segment;
+        }
+        return apiPath.substring(0, end);
+    }
+    
+    /**
+     * 解析一页工作流列表响应：{"data": [...], "nextCursor": "..."}
+     */
+    private static WorkflowPage parseWorkflowPage(InputStream input) throws IOException {
+        List<ParsedWorkflow> workflows = new ArrayList<>();
+        String nextCursor = null;
         
-        if (workflowsNode != null && workflowsNode.isArray()) {
-            for (JsonNode workflow : workflowsNode) {
-                List<WebhookInfo> workflowWebhooks = extractWebhooksFromWorkflow(workflow);
-                webhooks.addAll(workflowWebhooks);
+        try (JsonParser parser = N8nJson.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("工作流列表响应不是JSON对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("data".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                    // 逐个工作流解析，不为整页响应构建树
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == null) {
+                            throw new EOFException("工作流列表未正常结束");
+                        }
+                        if (token != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        ParsedWorkflow workflow = parseWorkflow(parser);
+                        if (workflow != null) {
+                            workflows.add(workflow);
+                        }
+                    }
+                } else if ("nextCursor".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                    String value = parser.getText();
+                    nextCursor = value.isEmpty() ? null : value;
+                } else {
+                    parser.skipChildren();
+                }
             }
         }
         
-        return webhooks;
+        return new WorkflowPage(workflows, nextCursor);
     }
     
     /**
-     * 从单个工作流中提取webhook信息
+     * 从当前位置（START_OBJECT）解析单个工作流
+     * 
+     * @return 工作流，缺少id或名称时返回null
      */
-    private List<WebhookInfo> extractWebhooksFromWorkflow(JsonNode workflow) {
-        List<WebhookInfo> webhooks = new ArrayList<>();
+    private static ParsedWorkflow parseWorkflow(JsonParser parser) throws IOException {
+        String workflowId = null;
+        String workflowName = null;
+        boolean isActive = false;
+        Long createdAt = null;
+        Long updatedAt = null;
+        List<ParsedNode> nodes = null;
         
-        try {
-            String workflowId = workflow.get("id").asText();
-            String workflowName = workflow.get("name").asText();
-            boolean isActive = workflow.get("active").asBoolean();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("id".equals(fieldName) && token.isScalarValue()) {
+                workflowId = parser.getValueAsString();
+            } else if ("name".equals(fieldName) && token.isScalarValue()) {
+                workflowName = parser.getValueAsString();
+            } else if ("active".equals(fieldName)) {
+                isActive = parser.getValueAsBoolean();
+            } else if ("createdAt".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                createdAt = parseTimestamp(parser.getText());
+            } else if ("updatedAt".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                updatedAt = parseTimestamp(parser.getText());
+            } else if ("nodes".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                nodes = parseNodes(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        
+        if (workflowId == null || workflowName == null) {
+            System.err.println("解析工作流webhook信息时出错: 缺少id或name");
+            return null;
+        }
+        return new ParsedWorkflow(workflowId, workflowName, isActive, createdAt, updatedAt, nodes);
+    }
+    
+    /**
+     * 从当前位置（START_ARRAY）解析工作流节点，参数和凭证原样复制为JSON，同时取出webhook的路径和方法
+     */
+    private static List<ParsedNode> parseNodes(JsonParser parser) throws IOException {
+        List<ParsedNode> nodes = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new EOFException("工作流节点列表未正常结束");
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
             
-            // 解析工作流节点
-            JsonNode nodesNode = workflow.get("nodes");
-            if (nodesNode != null && nodesNode.isArray()) {
-                for (JsonNode node : nodesNode) {
-                    JsonNode typeNode = node.get("type");
-                    if (typeNode != null && "n8n-nodes-base.webhook".equals(typeNode.asText())) {
-                        // 找到webhook节点
-                        WebhookInfo webhookInfo = extractWebhookInfo(node, workflowId, workflowName, isActive);
-                        if (webhookInfo != null) {
-                            webhooks.add(webhookInfo);
+            ParsedNode node = new ParsedNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                token = parser.nextToken();
+                if ("id".equals(fieldName) && token.isScalarValue()) {
+                    node.id = parser.getValueAsString();
+                } else if ("name".equals(fieldName) && token.isScalarValue()) {
+                    node.name = parser.getValueAsString();
+                } else if ("type".equals(fieldName) && token.isScalarValue()) {
+                    node.type = parser.getValueAsString();
+                } else if ("typeVersion".equals(fieldName) && token.isNumeric()) {
+                    node.typeVersion = parser.getDoubleValue();
+                } else if ("disabled".equals(fieldName)) {
+                    node.disabled = parser.getValueAsBoolean();
+                } else if ("parameters".equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    node.parameters = copyParameters(parser, node);
+                } else if ("credentials".equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    DynamicSliceOutput output = new DynamicSliceOutput(64);
+                    try (JsonGenerator generator = N8nJson.createGenerator(output)) {
+                        N8nJson.copyValue(parser, generator);
+                    }
+                    node.credentials = output.slice().copy();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+    
+    /**
+     * 从当前位置（START_OBJECT）复制节点参数，复制的同时取出webhook的path和httpMethod
+     */
+    private static Slice copyParameters(JsonParser parser, ParsedNode node) throws IOException {
+        DynamicSliceOutput output = new DynamicSliceOutput(256);
+        try (JsonGenerator generator = N8nJson.createGenerator(output)) {
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String parameterName = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("path".equals(parameterName) && token.isScalarValue()) {
+                    node.webhookPath = parser.getValueAsString("");
+                } else if ("httpMethod".equals(parameterName) && token.isScalarValue()) {
+                    node.method = parser.getValueAsString("GET");
+                }
+                generator.writeFieldName(parameterName);
+                N8nJson.copyValue(parser, generator);
+            }
+            generator.writeEndObject();
+        }
+        // 复制为精确大小，目录中不保留输出缓冲区的多余容量
+        return output.slice().copy();
+    }
+    
+    /**
+     * 获取一页执行记录，不包含执行数据
+     * 
+     * @param workflowId 只返回该工作流的执行记录，为null时不过滤
+     * @param status 只返回该状态的执行记录，为null时不过滤
+     * @param cursor 上一页返回的nextCursor，第一页为null
+     * @return 一页执行记录，N8N按执行ID从新到旧返回
+     */
+    public ExecutionPage listExecutions(String workflowId, String status, String cursor) throws Exception {
+        return listExecutions(workflowId, status, cursor, config.getApiPageSize());
+    }
+    
+    /**
+     * 获取一页执行记录，不包含执行数据
+     * 
+     * @param limit 每页数量，指定了cursor时使用cursor中的数量
+     */
+    public ExecutionPage listExecutions(String workflowId, String status, String cursor, int limit) throws Exception {
+        StringBuilder apiPath = new StringBuilder("/executions?includeData=false&limit=").append(limit);
+        if (workflowId != null) {
+            apiPath.append("&workflowId=").append(URLEncoder.encode(workflowId, StandardCharsets.UTF_8));
+        }
+        if (status != null) {
+            apiPath.append("&status=").append(URLEncoder.encode(status, StandardCharsets.UTF_8));
+        }
+        if (cursor != null) {
+            apiPath.append("&cursor=").append(URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+        }
+        return executeApiRequest(apiPath.toString(), N8nApiClient::parseExecutionPage);
+    }
+    
+    /**
+     * 生成从指定执行ID之前（不含）开始翻页的游标，每页数量为n8n.api.page-size
+     * 
+     * @param lastId 只返回ID小于该值的执行记录
+     * @return 游标
+     */
+    public String executionCursor(long lastId) {
+        return executionCursor(lastId, config.getApiPageSize());
+    }
+    
+    /**
+     * 生成从指定执行ID之前（不含）开始翻页的游标
+     * 
+     * N8N公开API的游标是Base64编码的{"lastId", "limit"}，返回ID小于lastId的执行记录
+     * 
+     * @param lastId 只返回ID小于该值的执行记录
+     * @param limit 每页数量
+     * @return 游标
+     */
+    public String executionCursor(long lastId, int limit) {
+        String cursor = String.format("{\"lastId\":\"%d\",\"limit\":%d}", lastId, limit);
+        return Base64.getEncoder().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 并发获取多个执行记录的执行数据
+     * 
+     * @param executionIds 执行ID
+     * @return 与输入一一对应的执行数据JSON，没有数据时为null
+     */
+    public List<Slice> getExecutionData(List<String> executionIds) throws Exception {
+        List<Future<Slice>> futures = List.of();
+        try {
+            futures = submitConcurrently(executionIds, executionId -> executeApiRequest(
+                    "/executions/" + URLEncoder.encode(executionId, StandardCharsets.UTF_8) + "?includeData=true",
+                    N8nApiClient::parseExecutionData));
+            List<Slice> data = new ArrayList<>(executionIds.size());
+            for (Future<Slice> future : futures) {
+                data.add(future.get());
+            }
+            return data;
+        } catch (ExecutionException e) {
+            throw new Exception("获取执行数据失败: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Exception("获取执行数据被中断", e);
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+    
+    /**
+     * 解析一页执行记录响应：{"data": [...], "nextCursor": "..."}
+     */
+    private static ExecutionPage parseExecutionPage(InputStream input) throws IOException {
+        List<ExecutionInfo> executions = new ArrayList<>();
+        String nextCursor = null;
+        
+        try (JsonParser parser = N8nJson.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("执行记录响应不是JSON对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("data".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                        if (token == null) {
+                            throw new EOFException("执行记录列表未正常结束");
+                        }
+                        if (token != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        ExecutionInfo execution = parseExecution(parser);
+                        if (execution != null) {
+                            executions.add(execution);
                         }
                     }
+                } else if ("nextCursor".equals(fieldName) && token == JsonToken.VALUE_STRING) {
+                    String value = parser.getText();
+                    nextCursor = value.isEmpty() ? null : value;
+                } else {
+                    parser.skipChildren();
                 }
             }
-        } catch (Exception e) {
-            System.err.println("解析工作流webhook信息时出错: " + e.getMessage());
         }
         
-        return webhooks;
+        return new ExecutionPage(executions, nextCursor);
     }
     
     /**
-     * 从webhook节点提取详细信息
+     * 从当前位置（START_OBJECT）解析单个执行记录
+     * 
+     * @return 执行记录，缺少id时返回null
      */
-    private WebhookInfo extractWebhookInfo(JsonNode webhookNode, String workflowId, String workflowName, boolean isActive) {
-        try {
-            JsonNode parametersNode = webhookNode.get("parameters");
-            if (parametersNode == null) {
-                return null;
+    private static ExecutionInfo parseExecution(JsonParser parser) throws IOException {
+        String id = null;
+        String workflowId = null;
+        String status = null;
+        String mode = null;
+        Boolean finished = null;
+        Long startedAt = null;
+        Long stoppedAt = null;
+        String retryOf = null;
+        
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (!token.isScalarValue() || token == JsonToken.VALUE_NULL) {
+                parser.skipChildren();
+                continue;
             }
-            
-            // 获取webhook路径
-            JsonNode pathNode = parametersNode.get("path");
-            String webhookPath = pathNode != null ? pathNode.asText() : "";
-            
-            // 获取HTTP方法
-            JsonNode methodNode = parametersNode.get("httpMethod");
-            String method = methodNode != null ? methodNode.asText() : "GET";
-            
-            // 生成表名（清理特殊字符）
-            String tableName = generateTableName(workflowName, webhookPath);
-            
-            return new WebhookInfo(
-                tableName,
-                webhookPath,
-                method,
-                workflowId,
-                workflowName,
-                isActive
-            );
-            
-        } catch (Exception e) {
-            System.err.println("提取webhook信息时出错: " + e.getMessage());
+            switch (fieldName) {
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "workflowId":
+                    workflowId = parser.getValueAsString();
+                    break;
+                case "status":
+                    status = parser.getValueAsString();
+                    break;
+                case "mode":
+                    mode = parser.getValueAsString();
+                    break;
+                case "finished":
+                    finished = parser.getValueAsBoolean();
+                    break;
+                case "startedAt":
+                    startedAt = parseTimestamp(parser.getValueAsString());
+                    break;
+                case "stoppedAt":
+                    stoppedAt = parseTimestamp(parser.getValueAsString());
+                    break;
+                case "retryOf":
+                    retryOf = parser.getValueAsString();
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        if (id == null) {
+            return null;
+        }
+        if (status == null) {
+            // 旧版本N8N没有status字段，按finished和结束时间推断，读取API和读取缓存得到相同的状态
+            if (stoppedAt == null) {
+                status = "running";
+            } else {
+                status = Boolean.TRUE.equals(finished) ? "success" : "error";
+            }
+        }
+        return new ExecutionInfo(id, workflowId, status, mode, finished, startedAt, stoppedAt, retryOf);
+    }
+    
+    /**
+     * 解析执行详情响应，返回其中data字段的JSON
+     */
+    private static Slice parseExecutionData(InputStream input) throws IOException {
+        try (JsonParser parser = N8nJson.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("执行详情响应不是JSON对象");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("data".equals(fieldName) && token != JsonToken.VALUE_NULL) {
+                    DynamicSliceOutput output = new DynamicSliceOutput(1024);
+                    try (JsonGenerator generator = N8nJson.createGenerator(output)) {
+                        N8nJson.copyValue(parser, generator);
+                    }
+                    return output.slice();
+                }
+                parser.skipChildren();
+            }
+        }
+        return null;
+    }
+    
+    private static Long parseTimestamp(String value) {
+        try {
+            return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
             return null;
         }
     }
@@ -218,7 +908,7 @@ public class N8nApiClient {
     /**
      * 获取默认webhook列表（当没有API Key时）
      */
-    private List<WebhookInfo> getDefaultWebhooks() {
+    private static List<WebhookInfo> getDefaultWebhooks() {
         List<WebhookInfo> defaultWebhooks = new ArrayList<>();
         
         // 添加一些默认的webhook表
@@ -269,6 +959,28 @@ public class N8nApiClient {
         public String getWorkflowName() { return workflowName; }
         public boolean isActive() { return isActive; }
         
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            WebhookInfo other = (WebhookInfo) obj;
+            return isActive == other.isActive &&
+                    Objects.equals(tableName, other.tableName) &&
+                    Objects.equals(webhookPath, other.webhookPath) &&
+                    Objects.equals(method, other.method) &&
+                    Objects.equals(workflowId, other.workflowId) &&
+                    Objects.equals(workflowName, other.workflowName);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableName, webhookPath, method, workflowId, workflowName, isActive);
+        }
+        
         @Override
         public String toString() {
             return "WebhookInfo{" +
@@ -281,24 +993,160 @@ public class N8nApiClient {
         }
     }
     
+    /**
+     * 并发执行的API调用
+     */
+    private interface ApiCall<T, R> {
+        R apply(T item) throws Exception;
+    }
+    
+    /**
+     * 响应体解析器
+     */
+    private interface ResponseParser<T> {
+        T parse(InputStream input) throws IOException;
+    }
+    
+    /**
+     * 一页工作流列表
+     */
+    private static class WorkflowPage {
+        private final List<ParsedWorkflow> workflows;
+        private final String nextCursor;
+        
+        public WorkflowPage(List<ParsedWorkflow> workflows, String nextCursor) {
+            this.workflows = workflows;
+            this.nextCursor = nextCursor;
+        }
+    }
+    
+    /**
+     * 解析出的工作流，nodes为null表示响应中没有节点信息
+     */
+    private static class ParsedWorkflow {
+        private final String id;
+        private final String name;
+        private final boolean active;
+        private final Long createdAt;
+        private final Long updatedAt;
+        private List<ParsedNode> nodes;
+        private boolean detailFailed;
+        
+        public ParsedWorkflow(String id, String name, boolean active, Long createdAt, Long updatedAt, List<ParsedNode> nodes) {
+            this.id = id;
+            this.name = name;
+            this.active = active;
+            this.createdAt = createdAt;
+            this.updatedAt = updatedAt;
+            this.nodes = nodes;
+        }
+    }
+    
+    /**
+     * 工作流中的节点，参数和凭证为原始JSON
+     */
+    private static class ParsedNode {
+        private String id;
+        private String name;
+        private String type;
+        private double typeVersion = Double.NaN;
+        private boolean disabled;
+        private Slice parameters;
+        private Slice credentials;
+        private String webhookPath = "";
+        private String method = "GET";
+        
+        private boolean isWebhook() {
+            return WEBHOOK_NODE_TYPE.equals(type) && parameters != null;
+        }
+    }
+    
+    /**
+     * 一个缓存key对应的快照和正在执行的刷新，通过this加锁保护
+     */
+    private static class CacheEntry {
+        private volatile CachedWorkflows snapshot;
+        private CompletableFuture<CachedWorkflows> refreshing;
+        // 最近一次刷新是否失败，N8N不可用期间超过最大陈旧时间的调用不再逐个等待刷新
+        private volatile boolean refreshFailed;
+    }
+    
+    /**
+     * 执行记录
+     */
+    public static class ExecutionInfo {
+        private final String id;
+        private final String workflowId;
+        private final String status;
+        private final String mode;
+        private final Boolean finished;
+        private final Long startedAt;
+        private final Long stoppedAt;
+        private final String retryOf;
+        
+        public ExecutionInfo(String id, String workflowId, String status, String mode,
+                            Boolean finished, Long startedAt, Long stoppedAt, String retryOf) {
+            this.id = id;
+            this.workflowId = workflowId;
+            this.status = status;
+            this.mode = mode;
+            this.finished = finished;
+            this.startedAt = startedAt;
+            this.stoppedAt = stoppedAt;
+            this.retryOf = retryOf;
+        }
+        
+        public String getId() { return id; }
+        public String getWorkflowId() { return workflowId; }
+        public String getStatus() { return status; }
+        public String getMode() { return mode; }
+        public Boolean getFinished() { return finished; }
+        // 开始和结束时间为UTC毫秒，未知时为null
+        public Long getStartedAt() { return startedAt; }
+        public Long getStoppedAt() { return stoppedAt; }
+        public String getRetryOf() { return retryOf; }
+    }
+    
+    /**
+     * 一页执行记录
+     */
+    public static class ExecutionPage {
+        private final List<ExecutionInfo> executions;
+        private final String nextCursor;
+        
+        public ExecutionPage(List<ExecutionInfo> executions, String nextCursor) {
+            this.executions = executions;
+            this.nextCursor = nextCursor;
+        }
+        
+        public List<ExecutionInfo> getExecutions() {
+            return executions;
+        }
+        
+        // 没有下一页时为null
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+    
     /**
      * 缓存的工作流信息
      */
     private static class CachedWorkflows {
-        private final List<WebhookInfo> webhooks;
+        private final N8nWorkflowSnapshot snapshot;
         private final Instant cacheTime;
         
-        public CachedWorkflows(List<WebhookInfo> webhooks, Instant cacheTime) {
-            this.webhooks = webhooks;
+        public CachedWorkflows(N8nWorkflowSnapshot snapshot, Instant cacheTime) {
+            this.snapshot = snapshot;
             this.cacheTime = cacheTime;
         }
         
-        public List<WebhookInfo> getWebhooks() {
-            return webhooks;
+        public N8nWorkflowSnapshot getSnapshot() {
+            return snapshot;
         }
         
-        public boolean isExpired(java.time.Duration cacheDuration) {
-            return Instant.now().isAfter(cacheTime.plus(cacheDuration));
+        public long getAgeMillis() {
+            return java.time.Duration.between(cacheTime, Instant.now()).toMillis();
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,13 +1,20 @@
 package com.leapfuture.trino.n8n;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import io.airlift.configuration.Config;
 import io.airlift.configuration.ConfigDescription;
 import io.airlift.configuration.ConfigSecuritySensitive;
+import io.airlift.units.DataSize;
 import io.airlift.units.Duration;
 import io.airlift.units.MaxDuration;
+import io.airlift.units.MinDataSize;
 import io.airlift.units.MinDuration;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -17,10 +24,61 @@ import java.util.concurrent.TimeUnit;
 public class N8nConfig {
     
     private String baseUrl = "http://localhost:5678";
+    private String baseUrls = "";
+    private N8nWebhookRouter.Policy loadBalancingPolicy = N8nWebhookRouter.Policy.LEAST_OUTSTANDING;
+    private String healthCheckPath = "/healthz";
+    private Duration healthCheckInterval = Duration.succinctDuration(10, TimeUnit.SECONDS);
+    private int healthCheckFailureThreshold = 3;
     private String apiBaseUrl = "http://localhost:5678/api/v1";
     private String apiKey = "";
     private Duration timeout = Duration.succinctDuration(30, TimeUnit.SECONDS);
     private Duration cacheDuration = Duration.succinctDuration(5, TimeUnit.MINUTES);
+    private Duration cacheMaxStaleness = Duration.succinctDuration(1, TimeUnit.HOURS);
+    private String metadataSnapshotPath = "";
+    private DataSize maxResponseSize = DataSize.of(64, DataSize.Unit.MEGABYTE);
+    private boolean scanCacheEnabled = false;
+    private Duration scanCacheTtl = Duration.succinctDuration(1, TimeUnit.MINUTES);
+    private String scanCacheTableTtls = "";
+    private Map<String, Duration> scanCacheTableTtlMap = ImmutableMap.of();
+    private DataSize scanCacheMemorySize = DataSize.of(64, DataSize.Unit.MEGABYTE);
+    private String scanCacheDiskPath = "";
+    private DataSize scanCacheDiskSize = DataSize.of(1, DataSize.Unit.GIGABYTE);
+    private String lookupKeyField = "";
+    private String lookupKeyParameter = "keys";
+    private int lookupBatchSize = 500;
+    private Duration lookupDynamicFilterWait = Duration.succinctDuration(1, TimeUnit.SECONDS);
+    private boolean statisticsEnabled;
+    private Duration statisticsHalfLife = Duration.succinctDuration(30, TimeUnit.MINUTES);
+    private Duration statisticsMaxAge = Duration.succinctDuration(24, TimeUnit.HOURS);
+    private int insertBatchSize = 1000;
+    private int insertMaxConcurrentRequests = 4;
+    private int insertMaxRetries = 3;
+    private Duration insertRetryDelay = Duration.succinctDuration(1, TimeUnit.SECONDS);
+    private String spoolPath = "";
+    private DataSize spoolSegmentSize = DataSize.of(64, DataSize.Unit.MEGABYTE);
+    private String deadLetterPath = "";
+    private int apiPageSize = 100;
+    private int apiMaxConcurrentRequests = 8;
+    private int apiMaxConnections = 16;
+    private int apiMaxQueuedRequests = 1000;
+    private Duration apiTimeout;
+    private int scanMaxConnections = 64;
+    private int scanMaxQueuedRequests = 1000;
+    private Duration scanTimeout;
+    private int insertMaxConnections = 16;
+    private int insertMaxQueuedRequests = 1000;
+    private int udfMaxConnections = 32;
+    private int udfMaxQueuedRequests = 256;
+    private Duration udfTimeout;
+    private String udfUserWeights = "";
+    private Map<String, Integer> udfUserWeightMap = ImmutableMap.of();
+    private long queryMaxWebhookRequests;
+    private DataSize queryMaxWebhookBytes = DataSize.of(0, DataSize.Unit.BYTE);
+    private int executionsMaxSplits = 16;
+    private boolean executionsCacheEnabled;
+    private long executionsCacheMaxRows = 1_000_000;
+    private Duration executionsCacheMaxAge = Duration.succinctDuration(14, TimeUnit.DAYS);
+    private DataSize deadLetterMaxSize = DataSize.of(1, DataSize.Unit.GIGABYTE);
     
     /**
      * 获取N8N服务器基础URL（用于webhook调用）
@@ -39,6 +97,119 @@ public class N8nConfig {
         return this;
     }
     
+    /**
+     * 获取webhook实例列表
+     * 
+     * @return URL|权重列表，逗号分隔；为空时只使用n8n.base-url
+     */
+    public String getBaseUrls() {
+        return baseUrls;
+    }
+    
+    @Config("n8n.base-urls")
+    @ConfigDescription("Webhook instances to balance across, with optional weights, e.g. http://n8n-1:5678|2,http://n8n-2:5678")
+    public N8nConfig setBaseUrls(String baseUrls) {
+        if (baseUrls != null) {
+            // 提前校验格式
+            parseBaseUrls(baseUrls);
+        }
+        this.baseUrls = baseUrls;
+        return this;
+    }
+    
+    /**
+     * 获取webhook实例及其权重
+     * 
+     * @return 实例基础URL -> 权重，按配置顺序；没有配置n8n.base-urls时只有n8n.base-url
+     */
+    public Map<String, Integer> getBaseUrlWeights() {
+        Map<String, Integer> weights = baseUrls == null ? ImmutableMap.of() : parseBaseUrls(baseUrls);
+        return weights.isEmpty() ? ImmutableMap.of(baseUrl, 1) : weights;
+    }
+    
+    private static Map<String, Integer> parseBaseUrls(String baseUrls) {
+        ImmutableMap.Builder<String, Integer> weights = ImmutableMap.builder();
+        for (String entry : Splitter.on(',').omitEmptyStrings().trimResults().split(baseUrls)) {
+            int separator = entry.lastIndexOf('|');
+            String url = separator < 0 ? entry : entry.substring(0, separator).trim();
+            int weight = separator < 0 ? 1 : Integer.parseInt(entry.substring(separator + 1).trim());
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight of " + url + " must be at least 1");
+            }
+            weights.put(url, weight);
+        }
+        return weights.buildOrThrow();
+    }
+    
+    /**
+     * 获取多个webhook实例之间的负载均衡策略
+     * 
+     * @return 负载均衡策略
+     */
+    @NotNull
+    public N8nWebhookRouter.Policy getLoadBalancingPolicy() {
+        return loadBalancingPolicy;
+    }
+    
+    @Config("n8n.load-balancing.policy")
+    @ConfigDescription("How requests are balanced across webhook instances: WEIGHTED or LEAST_OUTSTANDING")
+    public N8nConfig setLoadBalancingPolicy(N8nWebhookRouter.Policy loadBalancingPolicy) {
+        this.loadBalancingPolicy = loadBalancingPolicy;
+        return this;
+    }
+    
+    /**
+     * 获取webhook实例的健康检查路径
+     * 
+     * @return 健康检查路径
+     */
+    @NotNull
+    public String getHealthCheckPath() {
+        return healthCheckPath;
+    }
+    
+    @Config("n8n.health-check.path")
+    @ConfigDescription("Path probed on each webhook instance to decide whether it is healthy")
+    public N8nConfig setHealthCheckPath(String healthCheckPath) {
+        this.healthCheckPath = healthCheckPath;
+        return this;
+    }
+    
+    /**
+     * 获取健康检查间隔
+     * 
+     * @return 健康检查间隔
+     */
+    @NotNull
+    @MinDuration("1s")
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+    
+    @Config("n8n.health-check.interval")
+    @ConfigDescription("Interval between health probes of webhook instances")
+    public N8nConfig setHealthCheckInterval(Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+        return this;
+    }
+    
+    /**
+     * 获取摘除实例前允许的连续失败次数
+     * 
+     * @return 连续失败次数
+     */
+    @Min(1)
+    public int getHealthCheckFailureThreshold() {
+        return healthCheckFailureThreshold;
+    }
+    
+    @Config("n8n.health-check.failure-threshold")
+    @ConfigDescription("Consecutive failed requests or probes after which a webhook instance is ejected")
+    public N8nConfig setHealthCheckFailureThreshold(int healthCheckFailureThreshold) {
+        this.healthCheckFailureThreshold = healthCheckFailureThreshold;
+        return this;
+    }
+    
     /**
      * 获取N8N API基础URL（用于管理API调用）
      * 
@@ -111,6 +282,871 @@ public class N8nConfig {
         return this;
     }
     
+    /**
+     * 获取工作流缓存刷新失败时继续使用旧数据的最长时间
+     * 
+     * @return 最大陈旧时间
+     */
+    @NotNull
+    @MinDuration("30s")
+    public Duration getCacheMaxStaleness() {
+        return cacheMaxStaleness;
+    }
+    
+    @Config("n8n.cache-max-staleness")
+    @ConfigDescription("Age of cached workflow metadata after which lookups wait for a refresh; if the refresh fails, the last good metadata is still served")
+    public N8nConfig setCacheMaxStaleness(Duration cacheMaxStaleness) {
+        this.cacheMaxStaleness = cacheMaxStaleness;
+        return this;
+    }
+    
+    /**
+     * 获取工作流元数据快照文件路径，为空时不保存
+     * 
+     * @return 文件路径
+     */
+    public String getMetadataSnapshotPath() {
+        return metadataSnapshotPath;
+    }
+    
+    @Config("n8n.metadata-snapshot.path")
+    @ConfigDescription("Local file where the last good workflow metadata is saved and loaded from on startup")
+    public N8nConfig setMetadataSnapshotPath(String metadataSnapshotPath) {
+        this.metadataSnapshotPath = metadataSnapshotPath;
+        return this;
+    }
+    
+    /**
+     * 获取单次webhook响应允许的最大大小
+     * 
+     * @return 最大响应大小
+     */
+    @NotNull
+    @MinDataSize("1kB")
+    public DataSize getMaxResponseSize() {
+        return maxResponseSize;
+    }
+    
+    @Config("n8n.max-response-size")
+    @ConfigDescription("Maximum size of a single webhook response read by table scans")
+    public N8nConfig setMaxResponseSize(DataSize maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+        return this;
+    }
+    
+    /**
+     * 是否启用表扫描结果缓存
+     * 
+     * @return 是否启用
+     */
+    public boolean isScanCacheEnabled() {
+        return scanCacheEnabled;
+    }
+    
+    @Config("n8n.scan-cache.enabled")
+    @ConfigDescription("Cache webhook table scan results in memory and on local disk")
+    public N8nConfig setScanCacheEnabled(boolean scanCacheEnabled) {
+        this.scanCacheEnabled = scanCacheEnabled;
+        return this;
+    }
+    
+    /**
+     * 获取表扫描结果缓存的默认有效期
+     * 
+     * @return 缓存有效期
+     */
+    @NotNull
+    @MinDuration("1s")
+    public Duration getScanCacheTtl() {
+        return scanCacheTtl;
+    }
+    
+    @Config("n8n.scan-cache.ttl")
+    @ConfigDescription("Default time to live of cached scan results")
+    public N8nConfig setScanCacheTtl(Duration scanCacheTtl) {
+        this.scanCacheTtl = scanCacheTtl;
+        return this;
+    }
+    
+    /**
+     * 获取按表配置的扫描结果缓存有效期
+     * 
+     * @return 表名:有效期列表，逗号分隔
+     */
+    public String getScanCacheTableTtls() {
+        return scanCacheTableTtls;
+    }
+    
+    @Config("n8n.scan-cache.table-ttl")
+    @ConfigDescription("Per-table time to live of cached scan results, e.g. orders_webhook:30s,users_webhook:10m")
+    public N8nConfig setScanCacheTableTtls(String scanCacheTableTtls) {
+        ImmutableMap.Builder<String, Duration> ttls = ImmutableMap.builder();
+        if (scanCacheTableTtls != null) {
+            Map<String, String> entries = Splitter.on(',').omitEmptyStrings().trimResults()
+                    .withKeyValueSeparator(Splitter.on(':').trimResults())
+                    .split(scanCacheTableTtls);
+            entries.forEach((table, ttl) -> ttls.put(table, Duration.valueOf(ttl)));
+        }
+        this.scanCacheTableTtls = scanCacheTableTtls;
+        this.scanCacheTableTtlMap = ttls.buildOrThrow();
+        return this;
+    }
+    
+    /**
+     * 获取指定表的扫描结果缓存有效期
+     * 
+     * @param tableName 表名
+     * @return 缓存有效期
+     */
+    public Duration getScanCacheTtl(String tableName) {
+        return scanCacheTableTtlMap.getOrDefault(tableName, scanCacheTtl);
+    }
+    
+    /**
+     * 获取扫描结果内存缓存的最大大小
+     * 
+     * @return 内存缓存大小
+     */
+    @NotNull
+    public DataSize getScanCacheMemorySize() {
+        return scanCacheMemorySize;
+    }
+    
+    @Config("n8n.scan-cache.memory-size")
+    @ConfigDescription("Maximum size of the in-memory scan result cache")
+    public N8nConfig setScanCacheMemorySize(DataSize scanCacheMemorySize) {
+        this.scanCacheMemorySize = scanCacheMemorySize;
+        return this;
+    }
+    
+    /**
+     * 获取扫描结果磁盘缓存目录，为空时不启用磁盘缓存
+     * 
+     * @return 磁盘缓存目录
+     */
+    public String getScanCacheDiskPath() {
+        return scanCacheDiskPath;
+    }
+    
+    @Config("n8n.scan-cache.disk-path")
+    @ConfigDescription("Local directory for the on-disk scan result cache tier")
+    public N8nConfig setScanCacheDiskPath(String scanCacheDiskPath) {
+        this.scanCacheDiskPath = scanCacheDiskPath;
+        return this;
+    }
+    
+    /**
+     * 获取扫描结果磁盘缓存的最大大小
+     * 
+     * @return 磁盘缓存大小
+     */
+    @NotNull
+    public DataSize getScanCacheDiskSize() {
+        return scanCacheDiskSize;
+    }
+    
+    @Config("n8n.scan-cache.disk-size")
+    @ConfigDescription("Maximum size of the on-disk scan result cache tier")
+    public N8nConfig setScanCacheDiskSize(DataSize scanCacheDiskSize) {
+        this.scanCacheDiskSize = scanCacheDiskSize;
+        return this;
+    }
+    
+    /**
+     * 获取lookup_key列对应的记录字段名，为空时不启用基于动态过滤的查找
+     * 
+     * @return 记录字段名
+     */
+    public String getLookupKeyField() {
+        return lookupKeyField;
+    }
+    
+    @Config("n8n.lookup.key-field")
+    @ConfigDescription("Field of webhook response records exposed as the lookup_key column and used for dynamic filter lookups")
+    public N8nConfig setLookupKeyField(String lookupKeyField) {
+        this.lookupKeyField = lookupKeyField;
+        return this;
+    }
+    
+    /**
+     * 获取发送查找key时使用的请求参数名
+     * 
+     * @return 请求参数名
+     */
+    @NotNull
+    public String getLookupKeyParameter() {
+        return lookupKeyParameter;
+    }
+    
+    @Config("n8n.lookup.key-parameter")
+    @ConfigDescription("Request parameter carrying the join keys collected from dynamic filters")
+    public N8nConfig setLookupKeyParameter(String lookupKeyParameter) {
+        this.lookupKeyParameter = lookupKeyParameter;
+        return this;
+    }
+    
+    /**
+     * 获取每个查找请求携带的最大key数量
+     * 
+     * @return 批大小
+     */
+    @Min(1)
+    public int getLookupBatchSize() {
+        return lookupBatchSize;
+    }
+    
+    @Config("n8n.lookup.batch-size")
+    @ConfigDescription("Maximum number of join keys sent in one lookup request")
+    public N8nConfig setLookupBatchSize(int lookupBatchSize) {
+        this.lookupBatchSize = lookupBatchSize;
+        return this;
+    }
+    
+    /**
+     * 获取等待动态过滤的最长时间
+     * 
+     * @return 等待时间
+     */
+    @NotNull
+    @MaxDuration("1m")
+    public Duration getLookupDynamicFilterWait() {
+        return lookupDynamicFilterWait;
+    }
+    
+    @Config("n8n.lookup.dynamic-filter-wait")
+    @ConfigDescription("How long a table scan waits for the dynamic filter before calling the webhook")
+    public N8nConfig setLookupDynamicFilterWait(Duration lookupDynamicFilterWait) {
+        this.lookupDynamicFilterWait = lookupDynamicFilterWait;
+        return this;
+    }
+    
+    /**
+     * 是否启用基于动态过滤的查找
+     * 
+     * @return 是否启用
+     */
+    public boolean isLookupEnabled() {
+        return lookupKeyField != null && !lookupKeyField.trim().isEmpty();
+    }
+    
+    /**
+     * 是否根据表扫描记录表统计信息
+     * 
+     * @return 是否启用
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+    
+    @Config("n8n.statistics.enabled")
+    @ConfigDescription("Record row counts and column statistics from webhook table scans for the cost-based optimizer")
+    public N8nConfig setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+        return this;
+    }
+    
+    /**
+     * 获取统计观测的权重半衰期
+     * 
+     * @return 半衰期
+     */
+    @NotNull
+    @MinDuration("1s")
+    public Duration getStatisticsHalfLife() {
+        return statisticsHalfLife;
+    }
+    
+    @Config("n8n.statistics.half-life")
+    @ConfigDescription("Age at which an observed table scan counts half as much in table statistics")
+    public N8nConfig setStatisticsHalfLife(Duration statisticsHalfLife) {
+        this.statisticsHalfLife = statisticsHalfLife;
+        return this;
+    }
+    
+    /**
+     * 获取统计观测的最大保留时间
+     * 
+     * @return 最大保留时间
+     */
+    @NotNull
+    @MinDuration("1s")
+    public Duration getStatisticsMaxAge() {
+        return statisticsMaxAge;
+    }
+    
+    @Config("n8n.statistics.max-age")
+    @ConfigDescription("Observed table scans older than this are not used for table statistics")
+    public N8nConfig setStatisticsMaxAge(Duration statisticsMaxAge) {
+        this.statisticsMaxAge = statisticsMaxAge;
+        return this;
+    }
+    
+    /**
+     * 获取INSERT时每个webhook请求携带的最大行数
+     * 
+     * @return 批大小
+     */
+    @Min(1)
+    public int getInsertBatchSize() {
+        return insertBatchSize;
+    }
+    
+    @Config("n8n.insert.batch-size")
+    @ConfigDescription("Maximum number of rows sent to a webhook in one INSERT request")
+    public N8nConfig setInsertBatchSize(int insertBatchSize) {
+        this.insertBatchSize = insertBatchSize;
+        return this;
+    }
+    
+    /**
+     * 获取每个写入任务同时发送的最大请求数
+     * 
+     * @return 最大并发请求数
+     */
+    @Min(1)
+    public int getInsertMaxConcurrentRequests() {
+        return insertMaxConcurrentRequests;
+    }
+    
+    @Config("n8n.insert.max-concurrent-requests")
+    @ConfigDescription("Maximum number of concurrent webhook requests per INSERT writer")
+    public N8nConfig setInsertMaxConcurrentRequests(int insertMaxConcurrentRequests) {
+        this.insertMaxConcurrentRequests = insertMaxConcurrentRequests;
+        return this;
+    }
+    
+    /**
+     * 获取INSERT批次发送失败后的最大重试次数
+     * 
+     * @return 最大重试次数
+     */
+    @Min(0)
+    public int getInsertMaxRetries() {
+        return insertMaxRetries;
+    }
+    
+    @Config("n8n.insert.max-retries")
+    @ConfigDescription("Maximum number of retries for an INSERT batch after a network error, HTTP 429 or 5xx")
+    public N8nConfig setInsertMaxRetries(int insertMaxRetries) {
+        this.insertMaxRetries = insertMaxRetries;
+        return this;
+    }
+    
+    /**
+     * 获取第一次重试前的等待时间，之后每次翻倍
+     * 
+     * @return 重试等待时间
+     */
+    @NotNull
+    @MaxDuration("1m")
+    public Duration getInsertRetryDelay() {
+        return insertRetryDelay;
+    }
+    
+    @Config("n8n.insert.retry-delay")
+    @ConfigDescription("Delay before the first retry of an INSERT batch, doubled for each further retry")
+    public N8nConfig setInsertRetryDelay(Duration insertRetryDelay) {
+        this.insertRetryDelay = insertRetryDelay;
+        return this;
+    }
+    
+    /**
+     * 获取写入预写日志目录，为空时不启用
+     * 
+     * @return 目录路径
+     */
+    public String getSpoolPath() {
+        return spoolPath;
+    }
+    
+    @Config("n8n.spool.path")
+    @ConfigDescription("Local directory of the write-ahead spool used to replay unacknowledged INSERT batches in the background and after a restart")
+    public N8nConfig setSpoolPath(String spoolPath) {
+        this.spoolPath = spoolPath;
+        return this;
+    }
+    
+    /**
+     * 获取写入预写日志单个段文件的大小
+     * 
+     * @return 段文件大小
+     */
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getSpoolSegmentSize() {
+        return spoolSegmentSize;
+    }
+    
+    @Config("n8n.spool.segment-size")
+    @ConfigDescription("Size at which the write-ahead spool rolls over to a new segment file")
+    public N8nConfig setSpoolSegmentSize(DataSize spoolSegmentSize) {
+        this.spoolSegmentSize = spoolSegmentSize;
+        return this;
+    }
+    
+    /**
+     * 获取死信存储目录，为空时不启用
+     * 
+     * @return 目录路径
+     */
+    public String getDeadLetterPath() {
+        return deadLetterPath;
+    }
+    
+    @Config("n8n.dead-letter.path")
+    @ConfigDescription("Local directory for INSERT rows that still fail after retries, queryable as system.dead_letters")
+    public N8nConfig setDeadLetterPath(String deadLetterPath) {
+        this.deadLetterPath = deadLetterPath;
+        return this;
+    }
+    
+    /**
+     * 获取死信存储的最大大小
+     * 
+     * @return 最大大小
+     */
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getDeadLetterMaxSize() {
+        return deadLetterMaxSize;
+    }
+    
+    @Config("n8n.dead-letter.max-size")
+    @ConfigDescription("Maximum size of the dead-letter store, the oldest segments are removed beyond it")
+    public N8nConfig setDeadLetterMaxSize(DataSize deadLetterMaxSize) {
+        this.deadLetterMaxSize = deadLetterMaxSize;
+        return this;
+    }
+    
+    /**
+     * 获取工作流发现时每页请求的工作流数量
+     * 
+     * @return 每页数量
+     */
+    @Min(1)
+    @Max(250)
+    public int getApiPageSize() {
+        return apiPageSize;
+    }
+    
+    @Config("n8n.api.page-size")
+    @ConfigDescription("Number of workflows requested per page when listing workflows from the n8n API")
+    public N8nConfig setApiPageSize(int apiPageSize) {
+        this.apiPageSize = apiPageSize;
+        return this;
+    }
+    
+    /**
+     * 获取同时发送的N8N管理API请求的最大数量
+     * 
+     * @return 最大并发请求数
+     */
+    @Min(1)
+    public int getApiMaxConcurrentRequests() {
+        return apiMaxConcurrentRequests;
+    }
+    
+    @Config("n8n.api.max-concurrent-requests")
+    @ConfigDescription("Maximum number of concurrent n8n API requests when fetching workflow details")
+    public N8nConfig setApiMaxConcurrentRequests(int apiMaxConcurrentRequests) {
+        this.apiMaxConcurrentRequests = apiMaxConcurrentRequests;
+        return this;
+    }
+    
+    /**
+     * 获取管理API连接池的最大连接数，也是管理API后台线程数
+     * 
+     * 工作流刷新任务会在同一个线程池中等待详情请求，至少需要2个线程
+     * 
+     * @return 最大连接数
+     */
+    @Min(2)
+    public int getApiMaxConnections() {
+        return apiMaxConnections;
+    }
+    
+    @Config("n8n.api.max-connections")
+    @ConfigDescription("Maximum number of connections and background threads used for n8n management API traffic")
+    public N8nConfig setApiMaxConnections(int apiMaxConnections) {
+        this.apiMaxConnections = apiMaxConnections;
+        return this;
+    }
+    
+    /**
+     * 获取管理API线程池中排队请求的最大数量
+     * 
+     * @return 最大排队数
+     */
+    @Min(0)
+    public int getApiMaxQueuedRequests() {
+        return apiMaxQueuedRequests;
+    }
+    
+    @Config("n8n.api.max-queued-requests")
+    @ConfigDescription("Maximum number of n8n management API requests waiting for a background thread, further requests fail immediately")
+    public N8nConfig setApiMaxQueuedRequests(int apiMaxQueuedRequests) {
+        this.apiMaxQueuedRequests = apiMaxQueuedRequests;
+        return this;
+    }
+    
+    /**
+     * 获取管理API请求超时时间
+     * 
+     * @return 超时时间，为null时使用n8n.timeout
+     */
+    @MaxDuration("10m")
+    @MinDuration("1s")
+    public Duration getApiTimeout() {
+        return apiTimeout;
+    }
+    
+    @Config("n8n.api.timeout")
+    @ConfigDescription("Timeout of n8n management API requests, defaults to n8n.timeout")
+    public N8nConfig setApiTimeout(Duration apiTimeout) {
+        this.apiTimeout = apiTimeout;
+        return this;
+    }
+    
+    /**
+     * 获取表扫描连接池的最大连接数
+     * 
+     * @return 最大连接数
+     */
+    @Min(1)
+    public int getScanMaxConnections() {
+        return scanMaxConnections;
+    }
+    
+    @Config("n8n.scan.max-connections")
+    @ConfigDescription("Maximum number of connections used for table scan webhook requests")
+    public N8nConfig setScanMaxConnections(int scanMaxConnections) {
+        this.scanMaxConnections = scanMaxConnections;
+        return this;
+    }
+    
+    /**
+     * 获取等待连接的扫描请求的最大数量，扫描后台线程数为最大连接数与该值之和
+     * 
+     * @return 最大排队数
+     */
+    @Min(0)
+    public int getScanMaxQueuedRequests() {
+        return scanMaxQueuedRequests;
+    }
+    
+    @Config("n8n.scan.max-queued-requests")
+    @ConfigDescription("Maximum number of table scan webhook requests waiting for a connection, further requests fail immediately")
+    public N8nConfig setScanMaxQueuedRequests(int scanMaxQueuedRequests) {
+        this.scanMaxQueuedRequests = scanMaxQueuedRequests;
+        return this;
+    }
+    
+    /**
+     * 获取表扫描和写入请求超时时间
+     * 
+     * @return 超时时间，为null时使用n8n.timeout
+     */
+    @MaxDuration("10m")
+    @MinDuration("1s")
+    public Duration getScanTimeout() {
+        return scanTimeout;
+    }
+    
+    @Config("n8n.scan.timeout")
+    @ConfigDescription("Timeout of table scan and INSERT webhook requests, defaults to n8n.timeout")
+    public N8nConfig setScanTimeout(Duration scanTimeout) {
+        this.scanTimeout = scanTimeout;
+        return this;
+    }
+    
+    /**
+     * 获取INSERT连接池的最大连接数，也是发送批次的后台线程数
+     * 
+     * @return 最大连接数
+     */
+    @Min(1)
+    public int getInsertMaxConnections() {
+        return insertMaxConnections;
+    }
+    
+    @Config("n8n.insert.max-connections")
+    @ConfigDescription("Maximum number of connections and background threads used to deliver INSERT batches, including retries and spool replay")
+    public N8nConfig setInsertMaxConnections(int insertMaxConnections) {
+        this.insertMaxConnections = insertMaxConnections;
+        return this;
+    }
+    
+    /**
+     * 获取INSERT线程池中排队批次的最大数量
+     * 
+     * @return 最大排队数
+     */
+    @Min(0)
+    public int getInsertMaxQueuedRequests() {
+        return insertMaxQueuedRequests;
+    }
+    
+    @Config("n8n.insert.max-queued-requests")
+    @ConfigDescription("Maximum number of INSERT batches waiting for a background thread, further batches fail immediately")
+    public N8nConfig setInsertMaxQueuedRequests(int insertMaxQueuedRequests) {
+        this.insertMaxQueuedRequests = insertMaxQueuedRequests;
+        return this;
+    }
+    
+    /**
+     * 获取webhook UDF连接池的最大连接数
+     * 
+     * @return 最大连接数
+     */
+    @Min(1)
+    public int getUdfMaxConnections() {
+        return udfMaxConnections;
+    }
+    
+    @Config("n8n.udf.max-connections")
+    @ConfigDescription("Maximum number of connections used by webhook functions")
+    public N8nConfig setUdfMaxConnections(int udfMaxConnections) {
+        this.udfMaxConnections = udfMaxConnections;
+        return this;
+    }
+    
+    /**
+     * 获取等待连接的webhook UDF调用的最大数量
+     * 
+     * @return 最大排队数
+     */
+    @Min(0)
+    public int getUdfMaxQueuedRequests() {
+        return udfMaxQueuedRequests;
+    }
+    
+    @Config("n8n.udf.max-queued-requests")
+    @ConfigDescription("Maximum number of webhook function calls waiting for a connection, further calls return an error immediately")
+    public N8nConfig setUdfMaxQueuedRequests(int udfMaxQueuedRequests) {
+        this.udfMaxQueuedRequests = udfMaxQueuedRequests;
+        return this;
+    }
+    
+    /**
+     * 获取webhook UDF请求超时时间
+     * 
+     * @return 超时时间，为null时使用n8n.timeout
+     */
+    @MaxDuration("10m")
+    @MinDuration("1s")
+    public Duration getUdfTimeout() {
+        return udfTimeout;
+    }
+    
+    @Config("n8n.udf.timeout")
+    @ConfigDescription("Timeout of webhook function requests, defaults to n8n.timeout")
+    public N8nConfig setUdfTimeout(Duration udfTimeout) {
+        this.udfTimeout = udfTimeout;
+        return this;
+    }
+    
+    /**
+     * 获取webhook UDF公平调度使用的用户权重
+     * 
+     * @return 用户:权重列表，逗号分隔
+     */
+    public String getUdfUserWeights() {
+        return udfUserWeights;
+    }
+    
+    @Config("n8n.udf.user-weights")
+    @ConfigDescription("Fair-share weights of users for webhook function connections, e.g. dashboard:4,etl:1; unlisted users have weight 1")
+    public N8nConfig setUdfUserWeights(String udfUserWeights) {
+        ImmutableMap.Builder<String, Integer> weights = ImmutableMap.builder();
+        if (udfUserWeights != null) {
+            Map<String, String> entries = Splitter.on(',').omitEmptyStrings().trimResults()
+                    .withKeyValueSeparator(Splitter.on(':').trimResults())
+                    .split(udfUserWeights);
+            entries.forEach((user, weight) -> {
+                int value = Integer.parseInt(weight);
+                if (value < 1) {
+                    throw new IllegalArgumentException("Weight of user " + user + " must be at least 1");
+                }
+                weights.put(user, value);
+            });
+        }
+        this.udfUserWeights = udfUserWeights;
+        this.udfUserWeightMap = weights.buildOrThrow();
+        return this;
+    }
+    
+    /**
+     * 获取webhook UDF公平调度使用的用户权重
+     * 
+     * @return 用户 -> 权重，未列出的用户权重为1
+     */
+    public Map<String, Integer> getUdfUserWeightMap() {
+        return udfUserWeightMap;
+    }
+    
+    /**
+     * 获取单个查询在每个worker上允许发送的webhook请求数默认值
+     * 
+     * @return 最大请求数，0表示不限制
+     */
+    @Min(0)
+    public long getQueryMaxWebhookRequests() {
+        return queryMaxWebhookRequests;
+    }
+    
+    @Config("n8n.query.max-webhook-requests")
+    @ConfigDescription("Default maximum number of webhook requests a query may send from each worker, 0 means unlimited")
+    public N8nConfig setQueryMaxWebhookRequests(long queryMaxWebhookRequests) {
+        this.queryMaxWebhookRequests = queryMaxWebhookRequests;
+        return this;
+    }
+    
+    /**
+     * 获取单个查询在每个worker上允许传输的webhook字节数默认值
+     * 
+     * @return 最大字节数，0B表示不限制
+     */
+    @NotNull
+    public DataSize getQueryMaxWebhookBytes() {
+        return queryMaxWebhookBytes;
+    }
+    
+    @Config("n8n.query.max-webhook-bytes")
+    @ConfigDescription("Default maximum webhook request and response bytes a query may transfer on each worker, 0B means unlimited")
+    public N8nConfig setQueryMaxWebhookBytes(DataSize queryMaxWebhookBytes) {
+        this.queryMaxWebhookBytes = queryMaxWebhookBytes;
+        return this;
+    }
+    
+    /**
+     * 获取一种流量类型的最大连接数
+     * 
+     * @param pool 流量类型
+     * @return 最大连接数
+     */
+    public int getMaxConnections(N8nHttpClient.Pool pool) {
+        switch (pool) {
+            case API:
+                return apiMaxConnections;
+            case SCAN:
+                return scanMaxConnections;
+            case INSERT:
+                return insertMaxConnections;
+            default:
+                return udfMaxConnections;
+        }
+    }
+    
+    /**
+     * 获取一种流量类型的最大排队数
+     * 
+     * @param pool 流量类型
+     * @return 最大排队数
+     */
+    public int getMaxQueuedRequests(N8nHttpClient.Pool pool) {
+        switch (pool) {
+            case API:
+                return apiMaxQueuedRequests;
+            case SCAN:
+                return scanMaxQueuedRequests;
+            case INSERT:
+                return insertMaxQueuedRequests;
+            default:
+                return udfMaxQueuedRequests;
+        }
+    }
+    
+    /**
+     * 获取一种流量类型的请求超时时间
+     * 
+     * @param pool 流量类型
+     * @return 超时时间，没有单独配置时为n8n.timeout
+     */
+    public Duration getTimeout(N8nHttpClient.Pool pool) {
+        Duration poolTimeout;
+        switch (pool) {
+            case API:
+                poolTimeout = apiTimeout;
+                break;
+            case SCAN:
+            case INSERT:
+                // INSERT与表扫描共用webhook_timeout会话属性，默认值相同
+                poolTimeout = scanTimeout;
+                break;
+            default:
+                poolTimeout = udfTimeout;
+        }
+        return poolTimeout != null ? poolTimeout : timeout;
+    }
+    
+    /**
+     * 获取一次执行记录扫描按执行ID范围划分的最大split数
+     * 
+     * @return 最大split数
+     */
+    @Min(1)
+    public int getExecutionsMaxSplits() {
+        return executionsMaxSplits;
+    }
+    
+    @Config("n8n.executions.max-splits")
+    @ConfigDescription("Maximum number of splits a scan of n8n.system.executions is divided into by execution ID range within the started_at window")
+    public N8nConfig setExecutionsMaxSplits(int executionsMaxSplits) {
+        this.executionsMaxSplits = executionsMaxSplits;
+        return this;
+    }
+    
+    /**
+     * 是否启用执行记录增量缓存
+     * 
+     * @return 是否启用
+     */
+    public boolean isExecutionsCacheEnabled() {
+        return executionsCacheEnabled;
+    }
+    
+    @Config("n8n.executions.cache.enabled")
+    @ConfigDescription("Cache finished executions locally and fetch only executions newer than the high watermark")
+    public N8nConfig setExecutionsCacheEnabled(boolean executionsCacheEnabled) {
+        this.executionsCacheEnabled = executionsCacheEnabled;
+        return this;
+    }
+    
+    /**
+     * 获取每个节点缓存的执行记录最大行数
+     * 
+     * @return 最大行数
+     */
+    @Min(1)
+    public long getExecutionsCacheMaxRows() {
+        return executionsCacheMaxRows;
+    }
+    
+    @Config("n8n.executions.cache.max-rows")
+    @ConfigDescription("Maximum number of executions cached per node, the oldest executions of the least recently read workflows are dropped beyond it")
+    public N8nConfig setExecutionsCacheMaxRows(long executionsCacheMaxRows) {
+        this.executionsCacheMaxRows = executionsCacheMaxRows;
+        return this;
+    }
+    
+    /**
+     * 获取缓存的执行记录的最长保留时间，应与N8N的EXECUTIONS_DATA_MAX_AGE一致
+     * 
+     * @return 保留时间
+     */
+    @NotNull
+    @MinDuration("1m")
+    public Duration getExecutionsCacheMaxAge() {
+        return executionsCacheMaxAge;
+    }
+    
+    @Config("n8n.executions.cache.max-age")
+    @ConfigDescription("Executions that started longer ago are dropped from the cache, should match EXECUTIONS_DATA_MAX_AGE of n8n")
+    public N8nConfig setExecutionsCacheMaxAge(Duration executionsCacheMaxAge) {
+        this.executionsCacheMaxAge = executionsCacheMaxAge;
+        return this;
+    }
+    
     /**
      * 检查是否配置了API Key
      * 
@@ -152,6 +1188,8 @@ public class N8nConfig {
                 ", hasApiKey=" + hasApiKey() +
                 ", timeout=" + timeout +
                 ", cacheDuration=" + cacheDuration +
+                ", maxResponseSize=" + maxResponseSize +
+                ", scanCacheEnabled=" + scanCacheEnabled +
                 '}';
     }
 } 
\ No newline at end of file
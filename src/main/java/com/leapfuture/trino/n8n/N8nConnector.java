@@ -1,14 +1,26 @@
 package com.leapfuture.trino.n8n;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import io.trino.spi.connector.Connector;
 import io.trino.spi.connector.ConnectorMetadata;
+import io.trino.spi.connector.ConnectorPageSinkProvider;
 import io.trino.spi.connector.ConnectorPageSourceProvider;
 import io.trino.spi.connector.ConnectorSession;
 import io.trino.spi.connector.ConnectorSplitManager;
 import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.procedure.Procedure;
+import io.trino.spi.session.PropertyMetadata;
 import io.trino.spi.transaction.IsolationLevel;
 
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -16,30 +28,73 @@ import static java.util.Objects.requireNonNull;
  */
 public class N8nConnector implements Connector {
     
-    private final N8nMetadata metadata;
+    private final N8nMetadataFactory metadataFactory;
+    private final ConcurrentMap<ConnectorTransactionHandle, N8nMetadata> transactions = new ConcurrentHashMap<>();
     private final N8nSplitManager splitManager;
     private final N8nPageSourceProvider pageSourceProvider;
+    private final N8nPageSinkProvider pageSinkProvider;
+    private final Set<SystemTable> systemTables;
+    private final Set<Procedure> procedures;
+    private final List<PropertyMetadata<?>> sessionProperties;
+    private final N8nConfig config;
+    private final N8nHttpClient httpClient;
+    private final N8nDeliverySpool deliverySpool;
+    private final N8nDeadLetterStore deadLetterStore;
     
     @Inject
     public N8nConnector(
-            N8nMetadata metadata,
+            N8nMetadataFactory metadataFactory,
             N8nSplitManager splitManager,
-            N8nPageSourceProvider pageSourceProvider) {
-        this.metadata = requireNonNull(metadata, "metadata is null");
+            N8nPageSourceProvider pageSourceProvider,
+            N8nPageSinkProvider pageSinkProvider,
+            N8nSessionProperties sessionProperties,
+            N8nDeadLettersTable deadLettersTable,
+            N8nDeadLetterReplayTable deadLetterReplayTable,
+            N8nWorkflowsTable workflowsTable,
+            N8nNodesTable nodesTable,
+            N8nRuntimeStatsTable runtimeStatsTable,
+            N8nReplayDeadLettersProcedure replayDeadLettersProcedure,
+            N8nConfig config,
+            N8nHttpClient httpClient,
+            N8nDeliverySpool deliverySpool,
+            N8nDeadLetterStore deadLetterStore) {
+        this.metadataFactory = requireNonNull(metadataFactory, "metadataFactory is null");
         this.splitManager = requireNonNull(splitManager, "splitManager is null");
         this.pageSourceProvider = requireNonNull(pageSourceProvider, "pageSourceProvider is null");
+        this.pageSinkProvider = requireNonNull(pageSinkProvider, "pageSinkProvider is null");
+        this.systemTables = ImmutableSet.of(deadLettersTable, deadLetterReplayTable, workflowsTable, nodesTable, runtimeStatsTable);
+        this.procedures = ImmutableSet.of(replayDeadLettersProcedure.get());
+        this.sessionProperties = sessionProperties.getSessionProperties();
+        this.config = requireNonNull(config, "config is null");
+        this.httpClient = requireNonNull(httpClient, "httpClient is null");
+        this.deliverySpool = requireNonNull(deliverySpool, "deliverySpool is null");
+        this.deadLetterStore = requireNonNull(deadLetterStore, "deadLetterStore is null");
     }
     
     @Override
     public ConnectorTransactionHandle beginTransaction(IsolationLevel isolationLevel, boolean readOnly, boolean autoCommit) {
-        return N8nTransactionHandle.INSTANCE;
+        N8nTransactionHandle transaction = new N8nTransactionHandle();
+        transactions.put(transaction, metadataFactory.create());
+        return transaction;
     }
     
     @Override
     public ConnectorMetadata getMetadata(ConnectorSession session, ConnectorTransactionHandle transactionHandle) {
+        N8nMetadata metadata = transactions.get(transactionHandle);
+        checkArgument(metadata != null, "no such transaction: %s", transactionHandle);
         return metadata;
     }
     
+    @Override
+    public void commit(ConnectorTransactionHandle transactionHandle) {
+        transactions.remove(transactionHandle);
+    }
+    
+    @Override
+    public void rollback(ConnectorTransactionHandle transactionHandle) {
+        transactions.remove(transactionHandle);
+    }
+    
     @Override
     public ConnectorSplitManager getSplitManager() {
         return splitManager;
@@ -50,8 +105,32 @@ public class N8nConnector implements Connector {
         return pageSourceProvider;
     }
     
+    @Override
+    public ConnectorPageSinkProvider getPageSinkProvider() {
+        return pageSinkProvider;
+    }
+    
+    @Override
+    public Set<SystemTable> getSystemTables() {
+        return systemTables;
+    }
+    
+    @Override
+    public Set<Procedure> getProcedures() {
+        return procedures;
+    }
+    
+    @Override
+    public List<PropertyMetadata<?>> getSessionProperties() {
+        return sessionProperties;
+    }
+    
     @Override
     public void shutdown() {
-        // 清理资源
+        // 先停止预写日志重放、死信写入和健康检查，再释放它们使用的连接池和线程池
+        deliverySpool.close();
+        deadLetterStore.close();
+        N8nWebhookRouter.release(config);
+        httpClient.close();
     }
 } 
\ No newline at end of file
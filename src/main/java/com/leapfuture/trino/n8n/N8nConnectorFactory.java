@@ -2,6 +2,8 @@ package com.leapfuture.trino.n8n;
 
 import com.google.inject.Injector;
 import io.airlift.bootstrap.Bootstrap;
+import io.opentelemetry.api.trace.Tracer;
+import io.trino.spi.NodeManager;
 import io.trino.spi.connector.Connector;
 import io.trino.spi.connector.ConnectorContext;
 import io.trino.spi.connector.ConnectorFactory;
@@ -26,7 +28,12 @@ public class N8nConnectorFactory implements ConnectorFactory {
         requireNonNull(config, "config is null");
         
         // 使用Bootstrap和Injector来初始化配置和依赖注入
-        Bootstrap app = new Bootstrap(new N8nModule());
+        Bootstrap app = new Bootstrap(
+                new N8nModule(),
+                binder -> {
+                    binder.bind(NodeManager.class).toInstance(context.getNodeManager());
+                    binder.bind(Tracer.class).toInstance(context.getTracer());
+                });
         Injector injector = app
                 .doNotInitializeLogging()
                 .setRequiredConfigurationProperties(config)
@@ -0,0 +1,94 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.slice.Slices;
+import io.trino.spi.NodeManager;
+import io.trino.spi.TrinoException;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.InMemoryRecordSet;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.predicate.Domain;
+import io.trino.spi.predicate.TupleDomain;
+
+import java.io.IOException;
+import java.util.Set;
+
+import static io.trino.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.trino.spi.StandardErrorCode.NOT_SUPPORTED;
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * 重放死信的系统表 - n8n.system.dead_letter_replay
+ * 
+ * 死信由worker上的INSERT写入各自的本地目录，coordinator上执行的过程无法访问。
+ * 查询这个表时每个节点重放自己的死信（WHERE webhook_path = '...'只重放该路径），
+ * 每个节点按webhook路径返回成功和仍然失败的行数，以及第一个失败批次的原因。
+ * 发送成功的行从死信存储中删除，失败的行保留，可以再次查询重放。
+ */
+public class N8nDeadLetterReplayTable implements SystemTable {
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(
+            new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "dead_letter_replay"),
+            ImmutableList.of(
+                    new ColumnMetadata("node_id", VARCHAR),
+                    new ColumnMetadata("webhook_path", VARCHAR),
+                    new ColumnMetadata("replayed_rows", BIGINT),
+                    new ColumnMetadata("failed_rows", BIGINT),
+                    new ColumnMetadata("error", VARCHAR)));
+    
+    private static final int WEBHOOK_PATH_COLUMN = 1;
+    
+    private final N8nDeadLetterStore store;
+    private final String nodeId;
+    
+    @Inject
+    public N8nDeadLetterReplayTable(N8nDeadLetterStore store, NodeManager nodeManager) {
+        this.store = store;
+        this.nodeId = nodeManager.getCurrentNode().getNodeIdentifier();
+    }
+    
+    @Override
+    public Distribution getDistribution() {
+        return Distribution.ALL_NODES;
+    }
+    
+    @Override
+    public ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    @Override
+    public RecordCursor cursor(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            TupleDomain<Integer> constraint,
+            Set<Integer> requiredColumns,
+            ConnectorSplit split) {
+        if (!store.isEnabled()) {
+            throw new TrinoException(NOT_SUPPORTED, "Dead-letter store is not enabled (n8n.dead-letter.path)");
+        }
+        InMemoryRecordSet.Builder rows = InMemoryRecordSet.builder(METADATA);
+        if (constraint.isNone()) {
+            return rows.build().cursor();
+        }
+        
+        // 只重放满足webhook_path条件的死信
+        Domain pathDomain = constraint.getDomains().get().get(WEBHOOK_PATH_COLUMN);
+        try {
+            for (N8nDeadLetterStore.ReplayResult result : store.replay(path -> pathDomain == null || pathDomain.includesNullableValue(Slices.utf8Slice(path)))) {
+                rows.addRow(nodeId, result.getWebhookPath(), result.getReplayedRows(), result.getFailedRows(), result.getError());
+            }
+        } catch (IOException e) {
+            throw new TrinoException(GENERIC_INTERNAL_ERROR, "重放N8N死信失败: " + e.getMessage(), e);
+        }
+        return rows.build().cursor();
+    }
+}
@@ -0,0 +1,540 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * N8N webhook死信存储
+ * 
+ * INSERT时重试后仍然失败的行写入本地死信目录，不阻塞批量写入，也不会丢失。
+ * 每次写入生成一个列式段文件，每列单独使用Deflate压缩，读取时只解压查询用到的列。
+ * 目录总大小超过上限时删除最旧的段。死信通过n8n.system.dead_letters查询，
+ * 通过n8n.system.dead_letter_replay表在每个节点上重新发送（system.replay_dead_letters过程只重放coordinator本地的死信）。
+ * 段文件格式（小端）：[magic][version][行数]{[原始长度][压缩长度][压缩数据]}×5列[CRC32]，
+ * 先写临时文件再原子替换；启动时忽略版本不同或校验失败的段，不删除也不覆盖它们。
+ */
+public class N8nDeadLetterStore {
+    
+    public static final int ID_COLUMN = 0;
+    public static final int FAILED_AT_COLUMN = 1;
+    public static final int WEBHOOK_PATH_COLUMN = 2;
+    public static final int ERROR_COLUMN = 3;
+    public static final int PAYLOAD_COLUMN = 4;
+    public static final int COLUMN_COUNT = 5;
+    
+    private static final String FILE_SUFFIX = ".dlq";
+    private static final int MAGIC = 0x4e38444c;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Integer.BYTES;
+    
+    private final N8nConfig config;
+    private final Optional<Path> storePath;
+    private final long maxBytes;
+    // 区分不同节点和进程的死信行id，用于生成重放批次的幂等key
+    private final String instanceId = UUID.randomUUID().toString();
+    
+    // 以下状态通过this加锁保护，key为段中第一行的id
+    private final TreeMap<Long, SegmentFile> segments = new TreeMap<>();
+    private long totalBytes;
+    private long nextId;
+    // 目录关闭后不再写入，避免与使用同一目录的新目录实例冲突
+    private boolean closed;
+    
+    @Inject
+    public N8nDeadLetterStore(N8nConfig config) {
+        this.config = config;
+        this.maxBytes = config.getDeadLetterMaxSize().toBytes();
+        
+        String path = config.getDeadLetterPath();
+        if (path != null && !path.trim().isEmpty()) {
+            this.storePath = Optional.of(Paths.get(path.trim()));
+            load(storePath.get());
+        } else {
+            this.storePath = Optional.empty();
+        }
+    }
+    
+    /**
+     * 是否启用死信存储
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return storePath.isPresent();
+    }
+    
+    /**
+     * 写入一组失败的记录
+     * 
+     * @param webhookPath webhook路径
+     * @param error 失败原因
+     * @param payloads 每行的记录数据
+     */
+    public synchronized void add(String webhookPath, String error, List<Slice> payloads) throws IOException {
+        if (storePath.isEmpty() || payloads.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("N8N dead letter store is closed");
+        }
+        
+        Slice failedAt = Slices.utf8Slice(Instant.now().toString());
+        Slice path = Slices.utf8Slice(webhookPath);
+        Slice message = Slices.utf8Slice(String.valueOf(error));
+        
+        int rows = payloads.size();
+        long[] ids = new long[rows];
+        List<Slice> failedAts = new ArrayList<>(rows);
+        List<Slice> paths = new ArrayList<>(rows);
+        List<Slice> errors = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            ids[i] = nextId + i;
+            failedAts.add(failedAt);
+            paths.add(path);
+            errors.add(message);
+        }
+        
+        writeSegment(Segment.create(ids, ImmutableList.of(failedAts, paths, errors, payloads)));
+        nextId += rows;
+    }
+    
+    /**
+     * 目录关闭时调用，之后的写入失败
+     */
+    public synchronized void close() {
+        closed = true;
+    }
+    
+    /**
+     * 获取当前所有段文件
+     * 
+     * @return 段文件列表，按写入顺序
+     */
+    public synchronized List<SegmentFile> getSegments() {
+        return ImmutableList.copyOf(segments.values());
+    }
+    
+    /**
+     * 重新发送死信，发送成功的行从存储中删除，发送失败的行保留
+     * 
+     * @param webhookPaths 需要重放的webhook路径
+     * @return 每个webhook路径的重放结果，按路径排序
+     */
+    public List<ReplayResult> replay(Predicate<String> webhookPaths) throws IOException {
+        N8nWebhookSender sender = new N8nWebhookSender(config);
+        Map<String, ReplayResult> results = new TreeMap<>();
+        for (SegmentFile file : getSegments()) {
+            Segment segment;
+            try {
+                segment = readSegment(file, new boolean[] {true, true, true, true, true});
+            } catch (IOException e) {
+                // 段已被淘汰或删除
+                continue;
+            }
+            
+            // 按webhook路径分组，每组作为一个JSON数组批次发送
+            TreeMap<String, List<Integer>> groups = new TreeMap<>();
+            for (int i = 0; i < segment.getRowCount(); i++) {
+                String path = segment.getValue(WEBHOOK_PATH_COLUMN, i).toStringUtf8();
+                if (webhookPaths.test(path)) {
+                    groups.computeIfAbsent(path, ignored -> new ArrayList<>()).add(i);
+                }
+            }
+            
+            boolean[] delivered = new boolean[segment.getRowCount()];
+            for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                ReplayResult result = results.computeIfAbsent(group.getKey(), ReplayResult::new);
+                String url = config.buildWebhookUrl(group.getKey());
+                Slice body = toJsonArray(segment, group.getValue());
+                try {
+                    // 行id在本进程内唯一，分组中的第一行标识这个批次
+                    String idempotencyKey = "dead-letter-" + instanceId + "-" + segment.getId(group.getValue().get(0));
+                    sender.post(url, body, idempotencyKey);
+                } catch (RuntimeException e) {
+                    // 保留在死信存储中，失败原因随结果返回
+                    result.failed(group.getValue().size(), e.getMessage());
+                    continue;
+                }
+                for (int position : group.getValue()) {
+                    delivered[position] = true;
+                }
+                result.replayedRows += group.getValue().size();
+            }
+            removeDelivered(file, segment, delivered);
+        }
+        return ImmutableList.copyOf(results.values());
+    }
+    
+    private synchronized void removeDelivered(SegmentFile file, Segment segment, boolean[] delivered) throws IOException {
+        if (closed || !segments.containsKey(file.firstId)) {
+            return;
+        }
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < delivered.length; i++) {
+            if (!delivered[i]) {
+                remaining.add(i);
+            }
+        }
+        if (remaining.size() == delivered.length) {
+            return;
+        }
+        
+        removeSegment(file);
+        if (!remaining.isEmpty()) {
+            writeSegment(segment.select(remaining));
+        }
+    }
+    
+    private void writeSegment(Segment segment) throws IOException {
+        long firstId = segment.ids[0];
+        Path path = storePath.get().resolve(String.format("%020d%s", firstId, FILE_SUFFIX));
+        Slice data = segment.serialize();
+        
+        // 先写临时文件再原子替换，读取方不会看到写了一半的段
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, data.getBytes());
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        segments.put(firstId, new SegmentFile(firstId, path, data.length(), segment.getRowCount()));
+        totalBytes += data.length();
+        
+        // 超过总大小上限时删除最旧的段
+        while (totalBytes > maxBytes && segments.size() > 1) {
+            removeSegment(segments.firstEntry().getValue());
+        }
+    }
+    
+    private void removeSegment(SegmentFile file) {
+        if (segments.remove(file.firstId) == null) {
+            return;
+        }
+        totalBytes -= file.size;
+        try {
+            Files.deleteIfExists(file.path);
+        } catch (IOException e) {
+            System.err.println("删除N8N死信段失败: " + e.getMessage());
+        }
+    }
+    
+    private synchronized void load(Path path) {
+        try {
+            Files.createDirectories(path);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    long firstId = Long.parseLong(file.getFileName().toString().replace(FILE_SUFFIX, ""));
+                    Slice data;
+                    try {
+                        data = readFile(file);
+                    } catch (IOException e) {
+                        // 保留无法读取的段，新段的id跳过它，不会覆盖
+                        System.err.println("忽略无效的N8N死信段: " + e.getMessage());
+                        nextId = Math.max(nextId, firstId + 1);
+                        continue;
+                    }
+                    int rowCount = data.getInt(Integer.BYTES + 1);
+                    segments.put(firstId, new SegmentFile(firstId, file, data.length(), rowCount));
+                    totalBytes += data.length();
+                    nextId = Math.max(nextId, firstId + rowCount);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalArgumentException("无法初始化N8N死信目录: " + path, e);
+        }
+    }
+    
+    /**
+     * 读取整个段文件并校验magic、版本和CRC32
+     */
+    private static Slice readFile(Path file) throws IOException {
+        Slice data = Slices.wrappedBuffer(Files.readAllBytes(file));
+        int bodyLength = data.length() - Long.BYTES;
+        if (bodyLength < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("不是N8N死信段文件: " + file);
+        }
+        if (data.getByte(Integer.BYTES) != VERSION) {
+            throw new IOException("不支持的N8N死信段文件版本: " + file);
+        }
+        if (checksum(data.slice(0, bodyLength)) != data.getLong(bodyLength)) {
+            throw new IOException("N8N死信段文件已损坏: " + file);
+        }
+        return data;
+    }
+    
+    /**
+     * 读取段文件中指定的列，未选择的列不解压
+     * 
+     * @param file 段文件
+     * @param columns 需要读取的列
+     * @return 段数据，未读取的列不可访问
+     */
+    public static Segment readSegment(SegmentFile file, boolean[] columns) throws IOException {
+        Slice data = readFile(file.path);
+        int rows = data.getInt(Integer.BYTES + 1);
+        int offset = HEADER_SIZE;
+        
+        Slice[] decoded = new Slice[COLUMN_COUNT];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            int uncompressedLength = data.getInt(offset);
+            int compressedLength = data.getInt(offset + Integer.BYTES);
+            offset += Integer.BYTES * 2;
+            if (columns[column]) {
+                decoded[column] = decompress(data.slice(offset, compressedLength), uncompressedLength);
+            }
+            offset += compressedLength;
+        }
+        
+        long[] ids = null;
+        if (decoded[ID_COLUMN] != null) {
+            ids = new long[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = decoded[ID_COLUMN].getLong(i * Long.BYTES);
+            }
+        }
+        return new Segment(rows, ids, decoded);
+    }
+    
+    private static Slice toJsonArray(Segment segment, List<Integer> positions) {
+        DynamicSliceOutput output = new DynamicSliceOutput(1024);
+        output.writeByte('[');
+        for (int i = 0; i < positions.size(); i++) {
+            if (i > 0) {
+                output.writeByte(',');
+            }
+            output.writeBytes(segment.getValue(PAYLOAD_COLUMN, positions.get(i)));
+        }
+        output.writeByte(']');
+        return output.slice();
+    }
+    
+    private static long checksum(Slice slice) {
+        CRC32 crc = new CRC32();
+        crc.update(slice.byteArray(), slice.byteArrayOffset(), slice.length());
+        return crc.getValue();
+    }
+    
+    private static Slice compress(Slice data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data.byteArray(), data.byteArrayOffset(), data.length());
+            deflater.finish();
+            DynamicSliceOutput output = new DynamicSliceOutput(Math.max(64, data.length() / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.writeBytes(buffer, 0, length);
+            }
+            return output.slice();
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    private static Slice decompress(Slice data, int uncompressedLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.byteArray(), data.byteArrayOffset(), data.length());
+            byte[] result = new byte[uncompressedLength];
+            int offset = 0;
+            while (offset < uncompressedLength && !inflater.finished()) {
+                int length = inflater.inflate(result, offset, uncompressedLength - offset);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += length;
+            }
+            if (offset != uncompressedLength) {
+                throw new IOException("N8N死信段文件已损坏");
+            }
+            return Slices.wrappedBuffer(result);
+        } catch (DataFormatException e) {
+            throw new IOException("N8N死信段文件已损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+    
+    /**
+     * 一个webhook路径的死信重放结果
+     */
+    public static class ReplayResult {
+        private final String webhookPath;
+        private long replayedRows;
+        private long failedRows;
+        private String error;
+        
+        public ReplayResult(String webhookPath) {
+            this.webhookPath = webhookPath;
+        }
+        
+        private void failed(int rows, String message) {
+            failedRows += rows;
+            if (error == null) {
+                error = String.valueOf(message);
+            }
+        }
+        
+        public String getWebhookPath() {
+            return webhookPath;
+        }
+        
+        public long getReplayedRows() {
+            return replayedRows;
+        }
+        
+        public long getFailedRows() {
+            return failedRows;
+        }
+        
+        /**
+         * @return 第一个失败批次的原因，全部成功时为null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+    
+    /**
+     * 死信段文件
+     */
+    public static class SegmentFile {
+        private final long firstId;
+        private final Path path;
+        private final long size;
+        private final int rowCount;
+        
+        public SegmentFile(long firstId, Path path, long size, int rowCount) {
+            this.firstId = firstId;
+            this.path = path;
+            this.size = size;
+            this.rowCount = rowCount;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+    }
+    
+    /**
+     * 一个段的列数据
+     * 
+     * VARCHAR列的编码：rows + 1个int偏移量，之后是连续的值
+     */
+    public static class Segment {
+        private final int rowCount;
+        private final long[] ids;
+        private final Slice[] columns;
+        
+        private Segment(int rowCount, long[] ids, Slice[] columns) {
+            this.rowCount = rowCount;
+            this.ids = ids;
+            this.columns = columns;
+        }
+        
+        private static Segment create(long[] ids, List<List<Slice>> varcharColumns) {
+            Slice[] columns = new Slice[COLUMN_COUNT];
+            for (int column = FAILED_AT_COLUMN; column < COLUMN_COUNT; column++) {
+                columns[column] = encodeVarchar(varcharColumns.get(column - FAILED_AT_COLUMN));
+            }
+            return new Segment(ids.length, ids, columns);
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        /**
+         * 获取VARCHAR列中的一个值
+         * 
+         * @param column 列序号
+         * @param position 行号
+         * @return 列值
+         */
+        public Slice getValue(int column, int position) {
+            Slice data = columns[column];
+            int dataStart = (rowCount + 1) * Integer.BYTES;
+            int start = data.getInt(position * Integer.BYTES);
+            int end = data.getInt((position + 1) * Integer.BYTES);
+            return data.slice(dataStart + start, end - start);
+        }
+        
+        public long getId(int position) {
+            return ids[position];
+        }
+        
+        private Segment select(List<Integer> positions) {
+            long[] selectedIds = new long[positions.size()];
+            for (int i = 0; i < positions.size(); i++) {
+                selectedIds[i] = ids[positions.get(i)];
+            }
+            ImmutableList.Builder<List<Slice>> varcharColumns = ImmutableList.builder();
+            for (int column = FAILED_AT_COLUMN; column < COLUMN_COUNT; column++) {
+                int index = column;
+                varcharColumns.add(positions.stream()
+                        .map(position -> getValue(index, position))
+                        .collect(ImmutableList.toImmutableList()));
+            }
+            return create(selectedIds, varcharColumns.build());
+        }
+        
+        private Slice serialize() {
+            DynamicSliceOutput idColumn = new DynamicSliceOutput(Math.max(64, rowCount * Long.BYTES));
+            for (long id : ids) {
+                idColumn.writeLong(id);
+            }
+            
+            DynamicSliceOutput output = new DynamicSliceOutput(1024);
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(rowCount);
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                Slice data = column == ID_COLUMN ? idColumn.slice() : columns[column];
+                Slice compressed = compress(data);
+                output.writeInt(data.length());
+                output.writeInt(compressed.length());
+                output.writeBytes(compressed);
+            }
+            output.writeLong(checksum(output.slice()));
+            return output.slice();
+        }
+        
+        private static Slice encodeVarchar(List<Slice> values) {
+            DynamicSliceOutput output = new DynamicSliceOutput(1024);
+            int offset = 0;
+            output.writeInt(offset);
+            for (Slice value : values) {
+                offset += value.length();
+                output.writeInt(offset);
+            }
+            for (Slice value : values) {
+                output.writeBytes(value);
+            }
+            return output.slice();
+        }
+    }
+}
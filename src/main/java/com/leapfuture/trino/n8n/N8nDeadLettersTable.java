@@ -0,0 +1,170 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.NodeManager;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.predicate.TupleDomain;
+import io.trino.spi.type.Type;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N死信系统表 - n8n.system.dead_letters
+ * 
+ * 死信保存在各个节点本地，每个节点返回自己的死信，只解压查询用到的列。
+ */
+public class N8nDeadLettersTable implements SystemTable {
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(
+            new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "dead_letters"),
+            ImmutableList.of(
+                    new ColumnMetadata("node_id", VARCHAR),
+                    new ColumnMetadata("id", BIGINT),
+                    new ColumnMetadata("failed_at", VARCHAR),
+                    new ColumnMetadata("webhook_path", VARCHAR),
+                    new ColumnMetadata("error", VARCHAR),
+                    new ColumnMetadata("payload", VARCHAR)));
+    
+    // 表的第一列是节点ID，之后的列与死信段中的列一一对应
+    private static final int STORE_COLUMN_OFFSET = 1;
+    
+    private final N8nDeadLetterStore store;
+    private final Slice nodeId;
+    
+    @Inject
+    public N8nDeadLettersTable(N8nDeadLetterStore store, NodeManager nodeManager) {
+        this.store = store;
+        this.nodeId = Slices.utf8Slice(nodeManager.getCurrentNode().getNodeIdentifier());
+    }
+    
+    @Override
+    public Distribution getDistribution() {
+        return Distribution.ALL_NODES;
+    }
+    
+    @Override
+    public ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    @Override
+    public RecordCursor cursor(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            TupleDomain<Integer> constraint,
+            Set<Integer> requiredColumns,
+            ConnectorSplit split) {
+        boolean[] columns = new boolean[N8nDeadLetterStore.COLUMN_COUNT];
+        for (int column : requiredColumns) {
+            if (column >= STORE_COLUMN_OFFSET) {
+                columns[column - STORE_COLUMN_OFFSET] = true;
+            }
+        }
+        return new DeadLetterCursor(store.getSegments(), columns);
+    }
+    
+    private class DeadLetterCursor implements RecordCursor {
+        private final Iterator<N8nDeadLetterStore.SegmentFile> files;
+        private final boolean[] columns;
+        private N8nDeadLetterStore.Segment segment;
+        private int position;
+        private long completedBytes;
+        private long readTimeNanos;
+        
+        public DeadLetterCursor(List<N8nDeadLetterStore.SegmentFile> files, boolean[] columns) {
+            this.files = files.iterator();
+            this.columns = columns;
+        }
+        
+        @Override
+        public long getCompletedBytes() {
+            return completedBytes;
+        }
+        
+        @Override
+        public long getReadTimeNanos() {
+            return readTimeNanos;
+        }
+        
+        @Override
+        public Type getType(int field) {
+            return METADATA.getColumns().get(field).getType();
+        }
+        
+        @Override
+        public boolean advanceNextPosition() {
+            position++;
+            while (segment == null || position >= segment.getRowCount()) {
+                if (!files.hasNext()) {
+                    return false;
+                }
+                N8nDeadLetterStore.SegmentFile file = files.next();
+                long start = System.nanoTime();
+                try {
+                    segment = N8nDeadLetterStore.readSegment(file, columns);
+                    completedBytes += file.getSize();
+                } catch (IOException e) {
+                    // 段已被淘汰或重放后删除
+                    segment = null;
+                }
+                readTimeNanos += System.nanoTime() - start;
+                position = 0;
+            }
+            return true;
+        }
+        
+        @Override
+        public boolean getBoolean(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public long getLong(int field) {
+            return segment.getId(position);
+        }
+        
+        @Override
+        public double getDouble(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public Slice getSlice(int field) {
+            if (field == 0) {
+                return nodeId;
+            }
+            return segment.getValue(field - STORE_COLUMN_OFFSET, position);
+        }
+        
+        @Override
+        public Object getObject(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public boolean isNull(int field) {
+            return false;
+        }
+        
+        @Override
+        public void close() {
+            segment = null;
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * N8N webhook写入预写日志
+ * 
+ * 每个节点一个本地追加写入的spool目录：批次在发送前写入并刷盘，收到2xx响应后追加确认记录。
+ * 写入在日志锁内进行，刷盘在锁外按段合并：一次fsync覆盖调用前已写入的所有批次，
+ * 并发的INSERT批次不会逐个排队等待刷盘。
+ * 日志按大小滚动为多个段文件，最旧的段中所有批次都确认后删除。
+ * 启动时逐条流式扫描遗留的段文件，只记录未确认批次在段中的位置，重放时再读取请求体；运行期间发送失败且没有写入死信存储的批次
+ * 也按退避时间在后台重放，直到确认或被webhook明确拒绝，实现至少一次投递。
+ * 重放使用记录中保存的Idempotency-Key（与首次发送相同），webhook可以据此去重。
+ * 段文件格式（小端）：[magic][version]{[长度][CRC32][记录]}，末尾写了一半或校验失败的记录及其之后的内容被忽略；
+ * 版本不同的段不读取也不删除。
+ */
+public class N8nDeliverySpool {
+    
+    private static final String FILE_SUFFIX = ".spool";
+    private static final int MAGIC = 0x4e385350;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    
+    private static final byte BATCH_RECORD = 1;
+    private static final byte ACK_RECORD = 2;
+    
+    // 后台重放的退避时间，每次失败翻倍
+    private static final long MIN_REPLAY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_REPLAY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    
+    private final N8nConfig config;
+    private final Optional<Path> spoolPath;
+    private final long segmentMaxBytes;
+    // 执行后台重放的线程，只在启用预写日志时创建
+    private final ScheduledExecutorService replayExecutor;
+    
+    // 以下状态通过this加锁保护
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<Long, Long> pendingBatchSegments = new HashMap<>();
+    private Segment currentSegment;
+    private long nextSegmentId;
+    private long nextSequence;
+    private boolean closed;
+    
+    @Inject
+    public N8nDeliverySpool(N8nConfig config) {
+        this.config = config;
+        this.segmentMaxBytes = config.getSpoolSegmentSize().toBytes();
+        
+        String path = config.getSpoolPath();
+        if (path != null && !path.trim().isEmpty()) {
+            this.spoolPath = Optional.of(Paths.get(path.trim()));
+            this.replayExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("n8n-spool-replay-%s")
+                            .setDaemon(true)
+                            .build());
+            recover(spoolPath.get()).forEach(batch -> scheduleReplay(batch, 0, 0));
+        } else {
+            this.spoolPath = Optional.empty();
+            this.replayExecutor = null;
+        }
+    }
+    
+    /**
+     * 是否启用预写日志
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return spoolPath.isPresent();
+    }
+    
+    /**
+     * 在发送前把批次写入日志并刷盘
+     * 
+     * @param url webhook完整URL
+     * @param idempotencyKey 标识批次的幂等key，参见{@link N8nWebhookSender#idempotencyKey}
+     * @param body JSON请求体
+     * @return 已写入的批次
+     */
+    public SpooledBatch append(String url, String idempotencyKey, Slice body) throws IOException {
+        SpooledBatch batch;
+        Segment segment;
+        long writtenSize;
+        synchronized (this) {
+            batch = new SpooledBatch(nextSequence++, url, idempotencyKey, body);
+            if (spoolPath.isEmpty()) {
+                return batch;
+            }
+            if (closed) {
+                throw new IOException("N8N delivery spool is closed");
+            }
+            
+            segment = currentSegment();
+            DynamicSliceOutput record = new DynamicSliceOutput(body.length() + url.length() + 128);
+            record.writeByte(BATCH_RECORD);
+            record.writeLong(batch.sequence);
+            writeSlice(record, Slices.utf8Slice(url));
+            writeSlice(record, Slices.utf8Slice(batch.idempotencyKey));
+            writeSlice(record, body);
+            segment.write(record.slice());
+            writtenSize = segment.size;
+            
+            segment.pendingBatches++;
+            pendingBatchSegments.put(batch.sequence, segment.id);
+        }
+        
+        // 在日志锁外刷盘，批次在刷盘完成后才发送，确认记录不会早于批次落盘
+        try {
+            segment.sync(writtenSize);
+        } catch (IOException e) {
+            // 调用方不会发送该批次，确认后不再重放，所在的段可以删除
+            acknowledge(batch);
+            throw e;
+        }
+        return batch;
+    }
+    
+    /**
+     * 批次收到2xx响应后确认，不再重放
+     * 
+     * @param batch 已发送的批次
+     */
+    public synchronized void acknowledge(SpooledBatch batch) {
+        Long segmentId = pendingBatchSegments.remove(batch.sequence);
+        if (spoolPath.isEmpty() || segmentId == null || closed) {
+            return;
+        }
+        
+        // 确认记录丢失只会导致重复投递，不需要刷盘
+        DynamicSliceOutput record = new DynamicSliceOutput(16);
+        record.writeByte(ACK_RECORD);
+        record.writeLong(batch.sequence);
+        try {
+            currentSegment().write(record.slice());
+        } catch (IOException e) {
+            System.err.println("写入N8N写入日志确认记录失败: " + e.getMessage());
+        }
+        
+        segments.get(segmentId).pendingBatches--;
+        deleteCompletedSegments();
+    }
+    
+    /**
+     * 批次发送失败且没有写入死信存储时调用
+     * 
+     * 可重试的失败（网络错误、HTTP 429和5xx）在后台继续重放，直到确认；
+     * webhook明确拒绝的批次重放也不会成功，直接确认，避免所在的段一直无法删除。
+     * 
+     * @param batch 发送失败的批次
+     * @param failure 失败原因
+     */
+    public void deliveryFailed(SpooledBatch batch, N8nWebhookSender.DeliveryException failure) {
+        if (spoolPath.isEmpty()) {
+            return;
+        }
+        if (failure.isRetryable()) {
+            scheduleReplay(batch, 0, MIN_REPLAY_DELAY_MILLIS);
+        } else {
+            System.err.println("N8N webhook拒绝写入批次，不再重放: " + batch.idempotencyKey + ", " + failure.getMessage());
+            acknowledge(batch);
+        }
+    }
+    
+    /**
+     * 目录关闭时停止后台重放并关闭段文件，未确认的批次保留在日志中，下次启动时重放
+     */
+    public void close() {
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+        }
+        synchronized (this) {
+            closed = true;
+            segments.values().forEach(Segment::close);
+            currentSegment = null;
+        }
+    }
+    
+    private Segment currentSegment() throws IOException {
+        if (currentSegment == null || currentSegment.size >= segmentMaxBytes) {
+            long id = nextSegmentId++;
+            Path file = spoolPath.get().resolve(String.format("%020d%s", id, FILE_SUFFIX));
+            if (currentSegment != null) {
+                // 刷盘后关闭，锁外等待刷盘的批次随之完成
+                currentSegment.sync(currentSegment.size);
+                currentSegment.close();
+            }
+            currentSegment = new Segment(id, file, FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+            segments.put(id, currentSegment);
+            currentSegment.writeHeader();
+            deleteCompletedSegments();
+        }
+        return currentSegment;
+    }
+    
+    /**
+     * 按顺序删除最旧的已全部确认的段，保证确认记录不会早于其批次被删除
+     */
+    private void deleteCompletedSegments() {
+        while (!segments.isEmpty()) {
+            Segment oldest = segments.firstEntry().getValue();
+            if (oldest == currentSegment || oldest.pendingBatches > 0) {
+                return;
+            }
+            segments.remove(oldest.id);
+            oldest.close();
+            try {
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                System.err.println("删除N8N写入日志段失败: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 逐条扫描遗留的段文件，返回未确认的批次，批次的请求体在重放时从段文件中读取
+     */
+    private synchronized List<SpooledBatch> recover(Path path) {
+        Map<Long, SpooledBatch> pending = new LinkedHashMap<>();
+        Map<Long, Long> batchSegments = new HashMap<>();
+        try {
+            Files.createDirectories(path);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + FILE_SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            files.sort(null);
+            
+            for (Path file : files) {
+                long id = Long.parseLong(file.getFileName().toString().replace(FILE_SUFFIX, ""));
+                nextSegmentId = Math.max(nextSegmentId, id + 1);
+                try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+                    Slice header = Slices.wrappedBuffer(input.readNBytes(HEADER_SIZE));
+                    if (header.length() == HEADER_SIZE && (header.getInt(0) != MAGIC || header.getByte(Integer.BYTES) != VERSION)) {
+                        // 其他版本写入的段，保留给能读取它的版本
+                        System.err.println("忽略不支持的N8N写入日志段: " + file);
+                        continue;
+                    }
+                    // 头部没有写完整的段不包含批次，按已完成的段删除
+                    segments.put(id, new Segment(id, file, null));
+                    readSegment(input, file, Files.size(file), id, pending, batchSegments);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalArgumentException("无法初始化N8N写入日志目录: " + path, e);
+        }
+        
+        for (Map.Entry<Long, Long> entry : batchSegments.entrySet()) {
+            if (pending.containsKey(entry.getKey())) {
+                segments.get(entry.getValue()).pendingBatches++;
+                pendingBatchSegments.put(entry.getKey(), entry.getValue());
+            }
+        }
+        deleteCompletedSegments();
+        return ImmutableList.copyOf(pending.values());
+    }
+    
+    /**
+     * 从段头之后逐条读取记录，同一时间只有一条记录在内存中
+     */
+    private void readSegment(InputStream input, Path file, long fileSize, long segmentId, Map<Long, SpooledBatch> pending, Map<Long, Long> batchSegments) throws IOException {
+        long offset = HEADER_SIZE;
+        // 每条记录：长度 + CRC32 + 内容，末尾未写完整的记录被忽略
+        while (true) {
+            Slice recordHeader = Slices.wrappedBuffer(input.readNBytes(Integer.BYTES + Long.BYTES));
+            if (recordHeader.length() < Integer.BYTES + Long.BYTES) {
+                break;
+            }
+            int length = recordHeader.getInt(0);
+            long checksum = recordHeader.getLong(Integer.BYTES);
+            long start = offset + Integer.BYTES + Long.BYTES;
+            if (length <= 0 || start + length > fileSize) {
+                break;
+            }
+            Slice record = Slices.wrappedBuffer(input.readNBytes(length));
+            if (record.length() < length || checksum(record) != checksum) {
+                break;
+            }
+            offset = start + length;
+            
+            byte type = record.getByte(0);
+            if (type != BATCH_RECORD && type != ACK_RECORD) {
+                System.err.println("N8N写入日志段包含未知的记录类型，忽略之后的内容: " + type);
+                break;
+            }
+            long sequence = record.getLong(1);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (type == ACK_RECORD) {
+                pending.remove(sequence);
+                continue;
+            }
+            
+            int position = 1 + Long.BYTES;
+            Slice url = readSlice(record, position);
+            position += Integer.BYTES + url.length();
+            Slice idempotencyKey = readSlice(record, position);
+            position += Integer.BYTES + idempotencyKey.length();
+            // 只记录请求体在段文件中的位置
+            long bodyOffset = start + position + Integer.BYTES;
+            int bodyLength = record.getInt(position);
+            pending.put(sequence, new SpooledBatch(sequence, url.toStringUtf8(), idempotencyKey.toStringUtf8(), file, bodyOffset, bodyLength));
+            batchSegments.put(sequence, segmentId);
+        }
+    }
+    
+    private void scheduleReplay(SpooledBatch batch, int attempt, long delayMillis) {
+        try {
+            replayExecutor.schedule(() -> replay(batch, attempt), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 连接器已关闭，批次保留在日志中，下次启动时重放
+        }
+    }
+    
+    /**
+     * 重放一个未确认的批次（在后台线程中执行），可重试的失败按退避时间再次重放
+     */
+    private void replay(SpooledBatch batch, int attempt) {
+        try {
+            new N8nWebhookSender(config).post(batch.url, batch.readBody(), batch.idempotencyKey);
+            acknowledge(batch);
+        } catch (N8nWebhookSender.DeliveryException e) {
+            if (!e.isRetryable()) {
+                deliveryFailed(batch, e);
+                return;
+            }
+            long delayMillis = Math.min(MIN_REPLAY_DELAY_MILLIS << Math.min(attempt + 1, 16), MAX_REPLAY_DELAY_MILLIS);
+            System.err.println("重放N8N写入批次失败，" + delayMillis / 1000 + "秒后重试: " + e.getMessage());
+            scheduleReplay(batch, attempt + 1, delayMillis);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("重放N8N写入批次失败，保留到下次启动: " + e.getMessage());
+        }
+    }
+    
+    private static void writeSlice(DynamicSliceOutput output, Slice slice) {
+        output.writeInt(slice.length());
+        output.writeBytes(slice);
+    }
+    
+    private static Slice readSlice(Slice record, int position) {
+        return record.slice(position + Integer.BYTES, record.getInt(position));
+    }
+    
+    private static long checksum(Slice slice) {
+        CRC32 crc = new CRC32();
+        crc.update(slice.byteArray(), slice.byteArrayOffset(), slice.length());
+        return crc.getValue();
+    }
+    
+    /**
+     * 写入日志的批次
+     * 
+     * 启动时恢复的批次不在内存中保存请求体，读取时从段文件中获取
+     */
+    public static class SpooledBatch {
+        private final long sequence;
+        private final String url;
+        private final String idempotencyKey;
+        private final Slice body;
+        private final Path file;
+        private final long bodyOffset;
+        private final int bodyLength;
+        
+        public SpooledBatch(long sequence, String url, String idempotencyKey, Slice body) {
+            this.sequence = sequence;
+            this.url = url;
+            this.idempotencyKey = idempotencyKey;
+            this.body = body;
+            this.file = null;
+            this.bodyOffset = 0;
+            this.bodyLength = body.length();
+        }
+        
+        private SpooledBatch(long sequence, String url, String idempotencyKey, Path file, long bodyOffset, int bodyLength) {
+            this.sequence = sequence;
+            this.url = url;
+            this.idempotencyKey = idempotencyKey;
+            this.body = null;
+            this.file = file;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+        }
+        
+        public String getUrl() {
+            return url;
+        }
+        
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+        
+        /**
+         * @return 本次运行中写入的批次的请求体；启动时恢复的批次为null，使用{@link #readBody()}
+         */
+        public Slice getBody() {
+            return body;
+        }
+        
+        private Slice readBody() throws IOException {
+            if (body != null) {
+                return body;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(bodyLength);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, bodyOffset + buffer.position()) < 0) {
+                        throw new EOFException("N8N写入日志段不完整: " + file);
+                    }
+                }
+            }
+            return Slices.wrappedBuffer(buffer.array());
+        }
+    }
+    
+    private static class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        // 已写入的大小，由日志锁保护写入；已刷盘的大小通过段自身加锁保护
+        private volatile long size;
+        private long syncedSize;
+        private int pendingBatches;
+        
+        public Segment(long id, Path file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+        
+        public void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.put(VERSION);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            size += HEADER_SIZE;
+        }
+        
+        public void write(Slice record) throws IOException {
+            // 与Slice.getInt/getLong一致，长度和校验和按小端编码
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(record.length());
+            header.putLong(checksum(record));
+            header.flip();
+            ByteBuffer[] buffers = {header, record.toByteBuffer()};
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            size += Integer.BYTES + Long.BYTES + record.length();
+        }
+        
+        /**
+         * 保证前writtenSize字节已经刷盘，等待期间其他线程的刷盘已经覆盖时直接返回
+         */
+        public synchronized void sync(long writtenSize) throws IOException {
+            if (syncedSize >= writtenSize) {
+                return;
+            }
+            // 刷盘覆盖调用前已写入的全部记录
+            long target = size;
+            channel.force(false);
+            syncedSize = target;
+        }
+        
+        public synchronized void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略关闭异常
+            }
+        }
+    }
+}
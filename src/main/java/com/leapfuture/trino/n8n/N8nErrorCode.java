@@ -0,0 +1,31 @@
+package com.leapfuture.trino.n8n;
+
+import io.trino.spi.ErrorCode;
+import io.trino.spi.ErrorCodeSupplier;
+import io.trino.spi.ErrorType;
+
+import static io.trino.spi.ErrorType.EXTERNAL;
+
+/**
+ * N8N连接器的错误码
+ */
+public enum N8nErrorCode implements ErrorCodeSupplier {
+    // webhook拒绝或无法送达数据
+    N8N_WEBHOOK_ERROR(0, EXTERNAL),
+    // 读写本地的预写日志、死信或缓存文件失败
+    N8N_FILESYSTEM_ERROR(1, EXTERNAL),
+    // 无法从N8N API获取元数据
+    N8N_API_ERROR(2, EXTERNAL),
+    ;
+    
+    private final ErrorCode errorCode;
+    
+    N8nErrorCode(int code, ErrorType type) {
+        errorCode = new ErrorCode(code + 0x0520_0000, name(), type);
+    }
+    
+    @Override
+    public ErrorCode toErrorCode() {
+        return errorCode;
+    }
+}
@@ -0,0 +1,449 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.inject.Inject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * N8N执行记录增量缓存
+ * 
+ * 按工作流分区（不按状态分区），每个分区缓存一段连续的执行ID范围[低水位, 高水位]：
+ * 范围内的执行记录都已结束，不会再变化，以列式块的形式保存在本地内存中。
+ * 每次读取时只从API获取高水位之后的执行记录（N8N按执行ID从新到旧返回，遇到已缓存的范围即停止翻页），
+ * 其中已结束的记录追加到缓存并推进高水位，仍在运行的记录每次重新获取。
+ * 第一次读取只获取到下推的started_at下界为止；之后的查询需要更早的记录时，继续翻页到低水位之前补齐。
+ * 分区不能按下推的status过滤：运行中的执行不会出现在status='error'的列表中，
+ * 无法阻止高水位越过它，结束后就会被永久跳过。因此总是读取全部状态，由调用方在本地按状态过滤。
+ * 缓存的总行数超过上限时，从最久未读取的分区开始逐块清除最旧的记录；
+ * 开始时间超过保留时间（N8N会清理这些执行记录）的记录同样被清除，不再返回。
+ */
+public class N8nExecutionCache {
+    
+    // 执行已结束、不会再变化的状态
+    private static final Set<String> TERMINAL_STATUSES = ImmutableSet.of("success", "error", "canceled", "crashed");
+    // 每个列式块的最大行数，也是超过缓存上限时清除的粒度
+    private static final int CHUNK_ROWS = 4096;
+    
+    private final boolean enabled;
+    private final long maxRows;
+    private final long maxAgeMillis;
+    private final Map<PartitionKey, Partition> partitions = new ConcurrentHashMap<>();
+    
+    @Inject
+    public N8nExecutionCache(N8nConfig config) {
+        this.enabled = config.isExecutionsCacheEnabled();
+        this.maxRows = config.getExecutionsCacheMaxRows();
+        this.maxAgeMillis = config.getExecutionsCacheMaxAge().toMillis();
+    }
+    
+    /**
+     * 是否启用增量缓存
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 增量读取一个分区的执行记录（所有状态）
+     * 
+     * @param apiClient API客户端
+     * @param workflowId 工作流ID，为null时不过滤
+     * @param startedAfter 需要的最早开始时间（毫秒），为null时读取全部；返回的记录可能早于该时间，由调用方过滤
+     * @return 执行记录，从新到旧
+     */
+    public Iterator<N8nApiClient.ExecutionInfo> read(N8nApiClient apiClient, String workflowId, Long startedAfter) throws Exception {
+        // 早于保留时间的执行记录已被N8N清理，不需要获取
+        long expiredBefore = System.currentTimeMillis() - maxAgeMillis;
+        long since = startedAfter == null ? expiredBefore : Math.max(startedAfter, expiredBefore);
+        Partition partition = partitions.computeIfAbsent(new PartitionKey(workflowId), key -> new Partition());
+        List<N8nApiClient.ExecutionInfo> pending;
+        List<Chunk> chunks;
+        // 同一分区的增量读取串行执行，避免重复获取同一段增量
+        synchronized (partition) {
+            partition.expire(expiredBefore);
+            pending = partition.poll(apiClient, workflowId, since);
+            chunks = ImmutableList.copyOf(partition.chunks);
+            partition.lastAccess = System.nanoTime();
+        }
+        evictIfNeeded();
+        
+        List<Iterator<N8nApiClient.ExecutionInfo>> iterators = new ArrayList<>();
+        iterators.add(pending.iterator());
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            iterators.add(chunks.get(i).iterator());
+        }
+        // 部分过期的块中早于保留时间的记录
+        return Iterators.filter(Iterators.concat(iterators.iterator()),
+                execution -> execution.getStartedAt() == null || execution.getStartedAt() >= expiredBefore);
+    }
+    
+    /**
+     * 缓存的总行数超过上限时，从最久未读取的分区开始逐块清除最旧的记录，下次需要时重新获取
+     */
+    private void evictIfNeeded() {
+        long totalRows = partitions.values().stream().mapToLong(partition -> partition.rows).sum();
+        if (totalRows <= maxRows) {
+            return;
+        }
+        List<Map.Entry<PartitionKey, Partition>> entries = new ArrayList<>(partitions.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (Map.Entry<PartitionKey, Partition> entry : entries) {
+            Partition partition = entry.getValue();
+            synchronized (partition) {
+                while (totalRows > maxRows && !partition.chunks.isEmpty()) {
+                    totalRows -= partition.evictOldestChunk();
+                }
+                if (partition.chunks.isEmpty()) {
+                    partitions.remove(entry.getKey(), partition);
+                }
+            }
+            if (totalRows <= maxRows) {
+                return;
+            }
+        }
+    }
+    
+    private static boolean isTerminal(N8nApiClient.ExecutionInfo execution) {
+        if (execution.getStatus() != null) {
+            return TERMINAL_STATUSES.contains(execution.getStatus());
+        }
+        // 旧版本N8N没有status字段，有结束时间即已结束
+        return execution.getStoppedAt() != null;
+    }
+    
+    private static Long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 一个分区的缓存状态，通过分区对象加锁保护
+     * 
+     * ID在[lowWatermark, highWatermark]之间的执行记录都已缓存（或已过期）；
+     * 开始时间不早于coveredSince的执行记录都不早于低水位（N8N的执行ID随开始时间递增）。
+     */
+    private static class Partition {
+        // 为null时还没有读取过
+        private Long highWatermark;
+        private long lowWatermark;
+        private long coveredSince = Long.MAX_VALUE;
+        // 按ID从旧到新排列，每块内部从新到旧
+        private final List<Chunk> chunks = new ArrayList<>();
+        private volatile long rows;
+        private volatile long lastAccess = System.nanoTime();
+        
+        /**
+         * 获取高水位之后的执行记录，以及缓存还没有覆盖到since的更早的记录，把已结束的部分加入缓存
+         * 
+         * @param since 需要覆盖的最早开始时间（毫秒）
+         * @return 没有缓存的执行记录（仍未结束或ID无法比较），需要每次重新获取
+         */
+        private List<N8nApiClient.ExecutionInfo> poll(N8nApiClient apiClient, String workflowId, long since) throws Exception {
+            boolean needOlder = highWatermark == null || coveredSince > since;
+            List<N8nApiClient.ExecutionInfo> fetched = new ArrayList<>();
+            List<Long> fetchedIds = new ArrayList<>();
+            List<N8nApiClient.ExecutionInfo> older = new ArrayList<>();
+            boolean numericIds = true;
+            String cursor = null;
+            boolean reachedWatermark = false;
+            boolean reachedSince = false;
+            do {
+                N8nApiClient.ExecutionPage page = apiClient.listExecutions(workflowId, null, cursor);
+                boolean newerThanSince = false;
+                for (N8nApiClient.ExecutionInfo execution : page.getExecutions()) {
+                    Long startedAt = execution.getStartedAt();
+                    if (startedAt == null || startedAt >= since) {
+                        newerThanSince = true;
+                    }
+                    Long id = parseId(execution.getId());
+                    if (id == null) {
+                        numericIds = false;
+                        fetched.add(execution);
+                        fetchedIds.add(null);
+                    } else if (highWatermark == null || id > highWatermark) {
+                        fetched.add(execution);
+                        fetchedIds.add(id);
+                    } else if (id >= lowWatermark || !needOlder) {
+                        // 已缓存的范围，或者不需要补齐的更早记录
+                        reachedWatermark = true;
+                    } else {
+                        older.add(execution);
+                    }
+                }
+                // 整页都早于since，之后的页只会更早
+                reachedSince = !newerThanSince;
+                cursor = page.getExecutions().isEmpty() ? null : page.getNextCursor();
+            } while (cursor != null && !reachedSince && !(reachedWatermark && !needOlder));
+            boolean exhausted = cursor == null;
+            
+            if (!numericIds) {
+                // 无法按ID比较新旧，不缓存
+                fetched.addAll(older);
+                return fetched;
+            }
+            
+            // 最早的未结束执行之前（ID更小）的记录都已结束，可以缓存
+            long lowestPending = Long.MAX_VALUE;
+            for (int i = 0; i < fetched.size(); i++) {
+                if (!isTerminal(fetched.get(i))) {
+                    lowestPending = Math.min(lowestPending, fetchedIds.get(i));
+                }
+            }
+            List<N8nApiClient.ExecutionInfo> pending = new ArrayList<>();
+            List<N8nApiClient.ExecutionInfo> completed = new ArrayList<>();
+            for (int i = 0; i < fetched.size(); i++) {
+                if (fetchedIds.get(i) < lowestPending) {
+                    completed.add(fetched.get(i));
+                } else {
+                    pending.add(fetched.get(i));
+                }
+            }
+            
+            boolean seeding = highWatermark == null;
+            if (seeding) {
+                if (completed.isEmpty() && !pending.isEmpty()) {
+                    // 全部未结束，下次重新读取
+                    return pending;
+                }
+                // 第一次读取的记录都在fetched中
+                highWatermark = Long.MIN_VALUE;
+                lowWatermark = Long.MIN_VALUE;
+                if (!completed.isEmpty()) {
+                    addChunks(completed, false);
+                    lowWatermark = chunks.get(0).getMinId();
+                }
+            } else {
+                if (!completed.isEmpty()) {
+                    addChunks(completed, false);
+                }
+                if (older.stream().anyMatch(execution -> !isTerminal(execution))) {
+                    // 更早的记录中有未结束的，不能补齐缓存范围
+                    pending.addAll(older);
+                    return pending;
+                }
+                if (!older.isEmpty()) {
+                    addChunks(older, true);
+                    lowWatermark = chunks.get(0).getMinId();
+                }
+            }
+            if (needOlder && (exhausted || reachedSince)) {
+                coveredSince = exhausted ? Long.MIN_VALUE : Math.min(coveredSince, since);
+            }
+            return pending;
+        }
+        
+        /**
+         * 把从新到旧排列的执行记录按块加入缓存
+         * 
+         * @param older 记录是否早于已缓存的范围
+         */
+        private void addChunks(List<N8nApiClient.ExecutionInfo> executions, boolean older) {
+            List<List<N8nApiClient.ExecutionInfo>> parts = Lists.partition(executions, CHUNK_ROWS);
+            List<Chunk> added = new ArrayList<>(parts.size());
+            for (int i = parts.size() - 1; i >= 0; i--) {
+                added.add(Chunk.of(parts.get(i)));
+            }
+            chunks.addAll(older ? 0 : chunks.size(), added);
+            rows += executions.size();
+            if (!older) {
+                highWatermark = Math.max(highWatermark, chunks.get(chunks.size() - 1).getMaxId());
+            }
+        }
+        
+        /**
+         * 清除开始时间都早于expiredBefore的最旧的块，这些执行记录已被N8N清理
+         */
+        private void expire(long expiredBefore) {
+            while (!chunks.isEmpty() && chunks.get(0).getMaxStartedAt() != null && chunks.get(0).getMaxStartedAt() < expiredBefore) {
+                removeOldestChunk();
+            }
+        }
+        
+        /**
+         * 清除最旧的块，缓存范围缩小到该块之后
+         * 
+         * @return 清除的行数
+         */
+        private long evictOldestChunk() {
+            Chunk evicted = removeOldestChunk();
+            Long maxStartedAt = evicted.getMaxStartedAt();
+            coveredSince = Math.max(coveredSince, maxStartedAt == null ? Long.MAX_VALUE : maxStartedAt + 1);
+            return evicted.size();
+        }
+        
+        private Chunk removeOldestChunk() {
+            Chunk removed = chunks.remove(0);
+            rows -= removed.size();
+            lowWatermark = chunks.isEmpty() ? highWatermark + 1 : chunks.get(0).getMinId();
+            return removed;
+        }
+    }
+    
+    /**
+     * 按列保存的一批已结束的执行记录，字符串列使用字典编码
+     */
+    private static final class Chunk {
+        private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+        private static final byte NULL_BOOLEAN = 2;
+        
+        private final String[] dictionary;
+        private final long[] ids;
+        private final int[] workflowIds;
+        private final int[] statuses;
+        private final int[] modes;
+        private final byte[] finished;
+        private final long[] startedAt;
+        private final long[] stoppedAt;
+        private final String[] retryOf;
+        private final long minId;
+        private final long maxId;
+        private final Long maxStartedAt;
+        
+        private Chunk(String[] dictionary, long[] ids, int[] workflowIds, int[] statuses, int[] modes,
+                      byte[] finished, long[] startedAt, long[] stoppedAt, String[] retryOf) {
+            this.dictionary = dictionary;
+            this.ids = ids;
+            this.workflowIds = workflowIds;
+            this.statuses = statuses;
+            this.modes = modes;
+            this.finished = finished;
+            this.startedAt = startedAt;
+            this.stoppedAt = stoppedAt;
+            this.retryOf = retryOf;
+            this.minId = Arrays.stream(ids).min().orElseThrow();
+            this.maxId = Arrays.stream(ids).max().orElseThrow();
+            long latest = Arrays.stream(startedAt).max().orElseThrow();
+            this.maxStartedAt = latest == NULL_TIMESTAMP ? null : latest;
+        }
+        
+        private int size() {
+            return ids.length;
+        }
+        
+        private long getMinId() {
+            return minId;
+        }
+        
+        private long getMaxId() {
+            return maxId;
+        }
+        
+        /**
+         * @return 最晚的开始时间，所有记录都没有开始时间时为null
+         */
+        private Long getMaxStartedAt() {
+            return maxStartedAt;
+        }
+        
+        private static Chunk of(List<N8nApiClient.ExecutionInfo> executions) {
+            int count = executions.size();
+            Map<String, Integer> dictionaryIds = new HashMap<>();
+            List<String> dictionary = new ArrayList<>();
+            long[] ids = new long[count];
+            int[] workflowIds = new int[count];
+            int[] statuses = new int[count];
+            int[] modes = new int[count];
+            byte[] finished = new byte[count];
+            long[] startedAt = new long[count];
+            long[] stoppedAt = new long[count];
+            String[] retryOf = new String[count];
+            for (int i = 0; i < count; i++) {
+                N8nApiClient.ExecutionInfo execution = executions.get(i);
+                ids[i] = Long.parseLong(execution.getId());
+                workflowIds[i] = encode(execution.getWorkflowId(), dictionaryIds, dictionary);
+                statuses[i] = encode(execution.getStatus(), dictionaryIds, dictionary);
+                modes[i] = encode(execution.getMode(), dictionaryIds, dictionary);
+                finished[i] = execution.getFinished() == null ? NULL_BOOLEAN : (byte) (execution.getFinished() ? 1 : 0);
+                startedAt[i] = Objects.requireNonNullElse(execution.getStartedAt(), NULL_TIMESTAMP);
+                stoppedAt[i] = Objects.requireNonNullElse(execution.getStoppedAt(), NULL_TIMESTAMP);
+                retryOf[i] = execution.getRetryOf();
+            }
+            return new Chunk(dictionary.toArray(new String[0]), ids, workflowIds, statuses, modes, finished, startedAt, stoppedAt, retryOf);
+        }
+        
+        private static int encode(String value, Map<String, Integer> dictionaryIds, List<String> dictionary) {
+            if (value == null) {
+                return -1;
+            }
+            return dictionaryIds.computeIfAbsent(value, key -> {
+                dictionary.add(key);
+                return dictionary.size() - 1;
+            });
+        }
+        
+        private String decode(int id) {
+            return id < 0 ? null : dictionary[id];
+        }
+        
+        private N8nApiClient.ExecutionInfo get(int position) {
+            return new N8nApiClient.ExecutionInfo(
+                    Long.toString(ids[position]),
+                    decode(workflowIds[position]),
+                    decode(statuses[position]),
+                    decode(modes[position]),
+                    finished[position] == NULL_BOOLEAN ? null : finished[position] == 1,
+                    startedAt[position] == NULL_TIMESTAMP ? null : startedAt[position],
+                    stoppedAt[position] == NULL_TIMESTAMP ? null : stoppedAt[position],
+                    retryOf[position]);
+        }
+        
+        private Iterator<N8nApiClient.ExecutionInfo> iterator() {
+            return new Iterator<>() {
+                private int position;
+                
+                @Override
+                public boolean hasNext() {
+                    return position < ids.length;
+                }
+                
+                @Override
+                public N8nApiClient.ExecutionInfo next() {
+                    return get(position++);
+                }
+            };
+        }
+    }
+    
+    private static final class PartitionKey {
+        private final String workflowId;
+        
+        private PartitionKey(String workflowId) {
+            this.workflowId = workflowId;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            PartitionKey other = (PartitionKey) obj;
+            return Objects.equals(workflowId, other.workflowId);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(workflowId);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import io.trino.spi.TrinoException;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.type.Type;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static io.trino.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.trino.spi.type.DateTimeEncoding.packDateTimeWithZone;
+import static io.trino.spi.type.TimeZoneKey.UTC_KEY;
+
+/**
+ * N8N执行记录游标
+ * 
+ * 按nextCursor逐页读取一个split的执行记录。N8N按执行ID从新到旧返回，
+ * 从split的执行ID上界开始翻页，遇到ID下界或一整页都早于started_at下界时停止；
+ * 查询了data列时，只为通过时间条件的行获取执行数据。
+ * 启用{@link N8nExecutionCache}时只从API获取高水位之后的执行记录，其余来自本地缓存。
+ */
+public class N8nExecutionsRecordCursor implements RecordCursor {
+    
+    // 从增量缓存读取时，每批获取执行数据的行数
+    private static final int CACHED_BATCH_SIZE = 1000;
+    
+    private final N8nApiClient apiClient;
+    private final N8nExecutionCache executionCache;
+    private final N8nExecutionsSplit split;
+    private final List<N8nColumnHandle> columns;
+    private final boolean includeData;
+    
+    private Iterator<N8nApiClient.ExecutionInfo> executions = ImmutableList.<N8nApiClient.ExecutionInfo>of().iterator();
+    private Iterator<Slice> executionData = ImmutableList.<Slice>of().iterator();
+    private String nextCursor;
+    private Iterator<N8nApiClient.ExecutionInfo> cachedExecutions;
+    private boolean lastPage;
+    private long readTimeNanos;
+    
+    private N8nApiClient.ExecutionInfo execution;
+    private Slice data;
+    
+    public N8nExecutionsRecordCursor(N8nApiClient apiClient, N8nExecutionCache executionCache, N8nExecutionsSplit split, List<N8nColumnHandle> columns) {
+        this.apiClient = apiClient;
+        this.executionCache = executionCache;
+        this.split = split;
+        this.columns = ImmutableList.copyOf(columns);
+        this.includeData = columns.contains(N8nExecutionsTable.DATA_COLUMN);
+    }
+    
+    @Override
+    public long getCompletedBytes() {
+        return 0;
+    }
+    
+    @Override
+    public long getReadTimeNanos() {
+        return readTimeNanos;
+    }
+    
+    @Override
+    public Type getType(int field) {
+        return columns.get(field).getType();
+    }
+    
+    @Override
+    public boolean advanceNextPosition() {
+        while (!executions.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            loadNextPage();
+        }
+        execution = executions.next();
+        data = includeData ? executionData.next() : null;
+        return true;
+    }
+    
+    private void loadNextPage() {
+        long start = System.nanoTime();
+        try {
+            List<N8nApiClient.ExecutionInfo> selected = executionCache.isEnabled() ? nextCachedBatch() : nextApiPage();
+            
+            if (includeData && !selected.isEmpty()) {
+                List<String> ids = selected.stream()
+                        .map(N8nApiClient.ExecutionInfo::getId)
+                        .collect(ImmutableList.toImmutableList());
+                executionData = apiClient.getExecutionData(ids).iterator();
+            }
+            executions = selected.iterator();
+        } catch (Exception e) {
+            throw new TrinoException(GENERIC_INTERNAL_ERROR, "Failed to read n8n executions: " + e.getMessage(), e);
+        } finally {
+            readTimeNanos += System.nanoTime() - start;
+        }
+    }
+    
+    private List<N8nApiClient.ExecutionInfo> nextApiPage() throws Exception {
+        if (nextCursor == null && split.getIdBefore() != null) {
+            nextCursor = apiClient.executionCursor(split.getIdBefore());
+        }
+        N8nApiClient.ExecutionPage page = apiClient.listExecutions(split.getWorkflowId(), split.getStatus(), nextCursor);
+        nextCursor = page.getNextCursor();
+        lastPage = nextCursor == null || page.getExecutions().isEmpty();
+        
+        List<N8nApiClient.ExecutionInfo> selected = new ArrayList<>();
+        boolean newerThanLowerBound = false;
+        for (N8nApiClient.ExecutionInfo candidate : page.getExecutions()) {
+            if (!isInIdRange(candidate)) {
+                // 已到达split的ID下界，之后的页只会更小
+                lastPage = true;
+                break;
+            }
+            Long startedAt = candidate.getStartedAt();
+            if (startedAt == null || split.getStartedAfter() == null || startedAt >= split.getStartedAfter()) {
+                newerThanLowerBound = true;
+            }
+            // 与缓存路径相同，下推的status在本地再过滤一次
+            if (matchesStatus(candidate) && isInTimeRange(startedAt)) {
+                selected.add(candidate);
+            }
+        }
+        // 整页都早于下界，之后的页只会更早
+        if (!newerThanLowerBound) {
+            lastPage = true;
+        }
+        return selected;
+    }
+    
+    private List<N8nApiClient.ExecutionInfo> nextCachedBatch() throws Exception {
+        if (cachedExecutions == null) {
+            // 缓存分区包含所有状态，下推的status在本地过滤；第一次读取只获取到started_at下界为止
+            cachedExecutions = executionCache.read(apiClient, split.getWorkflowId(), split.getStartedAfter());
+        }
+        List<N8nApiClient.ExecutionInfo> selected = new ArrayList<>();
+        while (selected.size() < CACHED_BATCH_SIZE && cachedExecutions.hasNext()) {
+            N8nApiClient.ExecutionInfo candidate = cachedExecutions.next();
+            if (isInIdRange(candidate) && matchesStatus(candidate) && isInTimeRange(candidate.getStartedAt())) {
+                selected.add(candidate);
+            }
+        }
+        lastPage = !cachedExecutions.hasNext();
+        return selected;
+    }
+    
+    /**
+     * 旧版本N8N没有status字段时，解析执行记录时已按finished和结束时间推断
+     */
+    private boolean matchesStatus(N8nApiClient.ExecutionInfo execution) {
+        return split.getStatus() == null || split.getStatus().equals(execution.getStatus());
+    }
+    
+    /**
+     * 执行ID不是数字时只可能有一个不限制ID范围的split
+     */
+    private boolean isInIdRange(N8nApiClient.ExecutionInfo execution) {
+        if (split.getIdFrom() == null && split.getIdBefore() == null) {
+            return true;
+        }
+        long id = Long.parseLong(execution.getId());
+        return (split.getIdFrom() == null || id >= split.getIdFrom()) &&
+                (split.getIdBefore() == null || id < split.getIdBefore());
+    }
+    
+    private boolean isInTimeRange(Long startedAt) {
+        if (split.getStartedAfter() == null && split.getStartedBefore() == null) {
+            return true;
+        }
+        if (startedAt == null) {
+            return false;
+        }
+        return (split.getStartedAfter() == null || startedAt >= split.getStartedAfter()) &&
+                (split.getStartedBefore() == null || startedAt <= split.getStartedBefore());
+    }
+    
+    @Override
+    public boolean getBoolean(int field) {
+        return execution.getFinished();
+    }
+    
+    @Override
+    public long getLong(int field) {
+        N8nColumnHandle column = columns.get(field);
+        Long millis = column.equals(N8nExecutionsTable.STARTED_AT_COLUMN) ? execution.getStartedAt() : execution.getStoppedAt();
+        return packDateTimeWithZone(millis, UTC_KEY);
+    }
+    
+    @Override
+    public double getDouble(int field) {
+        throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public Slice getSlice(int field) {
+        N8nColumnHandle column = columns.get(field);
+        if (column.equals(N8nExecutionsTable.DATA_COLUMN)) {
+            return data;
+        }
+        return Slices.utf8Slice(getText(column));
+    }
+    
+    @Override
+    public Object getObject(int field) {
+        throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public boolean isNull(int field) {
+        N8nColumnHandle column = columns.get(field);
+        if (column.equals(N8nExecutionsTable.DATA_COLUMN)) {
+            return data == null;
+        }
+        if (column.equals(N8nExecutionsTable.FINISHED_COLUMN)) {
+            return execution.getFinished() == null;
+        }
+        if (column.equals(N8nExecutionsTable.STARTED_AT_COLUMN)) {
+            return execution.getStartedAt() == null;
+        }
+        if (column.equals(N8nExecutionsTable.STOPPED_AT_COLUMN)) {
+            return execution.getStoppedAt() == null;
+        }
+        return getText(column) == null;
+    }
+    
+    private String getText(N8nColumnHandle column) {
+        switch (column.getName()) {
+            case "id":
+                return execution.getId();
+            case "workflow_id":
+                return execution.getWorkflowId();
+            case "status":
+                return execution.getStatus();
+            case "mode":
+                return execution.getMode();
+            case "retry_of":
+                return execution.getRetryOf();
+            default:
+                throw new IllegalArgumentException("未知的列: " + column.getName());
+        }
+    }
+    
+    @Override
+    public void close() {
+        executions = ImmutableList.<N8nApiClient.ExecutionInfo>of().iterator();
+        lastPage = true;
+    }
+}
@@ -0,0 +1,101 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.trino.spi.HostAddress;
+import io.trino.spi.connector.ConnectorSplit;
+
+import java.util.List;
+
+/**
+ * N8N Executions Split - 执行记录的一个分片，对应一个工作流和状态的组合中的一段执行ID范围
+ */
+public class N8nExecutionsSplit implements ConnectorSplit {
+    
+    private final String workflowId;
+    private final String status;
+    private final Long startedAfter;
+    private final Long startedBefore;
+    private final Long idFrom;
+    private final Long idBefore;
+    
+    @JsonCreator
+    public N8nExecutionsSplit(
+            @JsonProperty("workflowId") String workflowId,
+            @JsonProperty("status") String status,
+            @JsonProperty("startedAfter") Long startedAfter,
+            @JsonProperty("startedBefore") Long startedBefore,
+            @JsonProperty("idFrom") Long idFrom,
+            @JsonProperty("idBefore") Long idBefore) {
+        this.workflowId = workflowId;
+        this.status = status;
+        this.startedAfter = startedAfter;
+        this.startedBefore = startedBefore;
+        this.idFrom = idFrom;
+        this.idBefore = idBefore;
+    }
+    
+    /**
+     * 工作流ID，为null时不过滤
+     */
+    @JsonProperty
+    public String getWorkflowId() {
+        return workflowId;
+    }
+    
+    /**
+     * 执行状态，为null时不过滤
+     */
+    @JsonProperty
+    public String getStatus() {
+        return status;
+    }
+    
+    @JsonProperty
+    public Long getStartedAfter() {
+        return startedAfter;
+    }
+    
+    @JsonProperty
+    public Long getStartedBefore() {
+        return startedBefore;
+    }
+    
+    /**
+     * 执行ID下界（含），为null时不限制
+     */
+    @JsonProperty
+    public Long getIdFrom() {
+        return idFrom;
+    }
+    
+    /**
+     * 执行ID上界（不含），为null时不限制
+     */
+    @JsonProperty
+    public Long getIdBefore() {
+        return idBefore;
+    }
+    
+    @Override
+    public List<HostAddress> getAddresses() {
+        return List.of();
+    }
+    
+    @Override
+    public boolean isRemotelyAccessible() {
+        return true;
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nExecutionsSplit{" +
+                "workflowId='" + workflowId + '\'' +
+                ", status='" + status + '\'' +
+                ", startedAfter=" + startedAfter +
+                ", startedBefore=" + startedBefore +
+                ", idFrom=" + idFrom +
+                ", idBefore=" + idBefore +
+                '}';
+    }
+}
@@ -0,0 +1,229 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.slice.Slice;
+import io.trino.spi.connector.ColumnHandle;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.predicate.Domain;
+import io.trino.spi.predicate.Range;
+import io.trino.spi.predicate.TupleDomain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.trino.spi.type.BooleanType.BOOLEAN;
+import static io.trino.spi.type.DateTimeEncoding.unpackMillisUtc;
+import static io.trino.spi.type.TimestampWithTimeZoneType.TIMESTAMP_TZ_MILLIS;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N执行记录表 - n8n.system.executions
+ * 
+ * 数据来自N8N的/executions API：workflow_id和status的等值/IN条件作为API参数下推，
+ * 每个工作流和状态的组合再按started_at窗口内的执行ID范围划分为多个split，可以在多个worker上并行读取；
+ * started_at范围用于提前结束翻页，只有查询了data列时才获取执行数据。
+ */
+public final class N8nExecutionsTable {
+    
+    public static final SchemaTableName TABLE_NAME = new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "executions");
+    
+    public static final N8nColumnHandle ID_COLUMN = new N8nColumnHandle("id", VARCHAR, 0);
+    public static final N8nColumnHandle WORKFLOW_ID_COLUMN = new N8nColumnHandle("workflow_id", VARCHAR, 1);
+    public static final N8nColumnHandle STATUS_COLUMN = new N8nColumnHandle("status", VARCHAR, 2);
+    public static final N8nColumnHandle MODE_COLUMN = new N8nColumnHandle("mode", VARCHAR, 3);
+    public static final N8nColumnHandle FINISHED_COLUMN = new N8nColumnHandle("finished", BOOLEAN, 4);
+    public static final N8nColumnHandle STARTED_AT_COLUMN = new N8nColumnHandle("started_at", TIMESTAMP_TZ_MILLIS, 5);
+    public static final N8nColumnHandle STOPPED_AT_COLUMN = new N8nColumnHandle("stopped_at", TIMESTAMP_TZ_MILLIS, 6);
+    public static final N8nColumnHandle RETRY_OF_COLUMN = new N8nColumnHandle("retry_of", VARCHAR, 7);
+    public static final N8nColumnHandle DATA_COLUMN = new N8nColumnHandle("data", VARCHAR, 8);
+    
+    public static final List<N8nColumnHandle> COLUMNS = ImmutableList.of(
+            ID_COLUMN,
+            WORKFLOW_ID_COLUMN,
+            STATUS_COLUMN,
+            MODE_COLUMN,
+            FINISHED_COLUMN,
+            STARTED_AT_COLUMN,
+            STOPPED_AT_COLUMN,
+            RETRY_OF_COLUMN,
+            DATA_COLUMN);
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(TABLE_NAME, COLUMNS.stream()
+            .map(column -> new ColumnMetadata(column.getName(), column.getType()))
+            .collect(ImmutableList.toImmutableList()));
+    
+    // N8N执行记录API的status参数接受的值，其他值不下推
+    private static final Set<String> API_STATUSES = ImmutableSet.of("canceled", "error", "running", "success", "waiting");
+    
+    // IN列表超过该数量时不下推，避免生成过多split
+    private static final int MAX_PUSHDOWN_VALUES = 64;
+    
+    // 按执行ID范围划分时每个split至少包含的ID数量，也是二分查找ID下界的精度
+    private static final long MIN_IDS_PER_SPLIT = 1000;
+    
+    private N8nExecutionsTable() {}
+    
+    public static ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    public static Map<String, ColumnHandle> getColumnHandles() {
+        ImmutableMap.Builder<String, ColumnHandle> columnHandles = ImmutableMap.builder();
+        for (N8nColumnHandle column : COLUMNS) {
+            columnHandles.put(column.getName(), column);
+        }
+        return columnHandles.buildOrThrow();
+    }
+    
+    /**
+     * 把查询条件中可以下推的部分合并到表句柄
+     * 
+     * @param handle 当前表句柄
+     * @param constraint 查询条件
+     * @return 新的表句柄，没有新的可下推条件时为空
+     */
+    public static Optional<N8nExecutionsTableHandle> applyFilter(N8nExecutionsTableHandle handle, TupleDomain<ColumnHandle> constraint) {
+        Map<ColumnHandle, Domain> domains = constraint.getDomains().orElse(ImmutableMap.of());
+        
+        List<String> workflowIds = handle.getWorkflowIds();
+        if (workflowIds.isEmpty()) {
+            workflowIds = getDiscreteValues(domains.get(WORKFLOW_ID_COLUMN)).orElse(ImmutableList.of());
+        }
+        
+        List<String> statuses = handle.getStatuses();
+        if (statuses.isEmpty()) {
+            statuses = getDiscreteValues(domains.get(STATUS_COLUMN))
+                    .filter(API_STATUSES::containsAll)
+                    .orElse(ImmutableList.of());
+        }
+        
+        Long startedAfter = handle.getStartedAfter();
+        Long startedBefore = handle.getStartedBefore();
+        Domain startedAt = domains.get(STARTED_AT_COLUMN);
+        if (startedAt != null && !startedAt.isNullAllowed() && !startedAt.getValues().isNone() && !startedAt.getValues().isAll()) {
+            // 只使用范围的外包络，精确的过滤仍由Trino完成
+            Range span = startedAt.getValues().getRanges().getSpan();
+            if (!span.isLowUnbounded()) {
+                long low = unpackMillisUtc((Long) span.getLowBoundedValue());
+                startedAfter = startedAfter == null ? low : Math.max(startedAfter, low);
+            }
+            if (!span.isHighUnbounded()) {
+                long high = unpackMillisUtc((Long) span.getHighBoundedValue());
+                startedBefore = startedBefore == null ? high : Math.min(startedBefore, high);
+            }
+        }
+        
+        N8nExecutionsTableHandle newHandle = new N8nExecutionsTableHandle(workflowIds, statuses, startedAfter, startedBefore);
+        if (newHandle.equals(handle)) {
+            return Optional.empty();
+        }
+        return Optional.of(newHandle);
+    }
+    
+    /**
+     * 为每个工作流和状态的组合生成split
+     * 
+     * 组合数少于maxSplits时，把每个组合在started_at窗口内的执行ID范围均分为多个split：
+     * 先获取最新的执行ID，再用只取一条记录的请求二分查找窗口下界对应的执行ID。
+     * 第一个split不限制ID下界、最后一个split不限制ID上界，规划之后新增的执行记录不会遗漏。
+     * 
+     * @param handle 表句柄
+     * @param apiClient API客户端
+     * @param maxSplits 最大split数
+     * @return split列表
+     */
+    public static List<N8nExecutionsSplit> createSplits(N8nExecutionsTableHandle handle, N8nApiClient apiClient, int maxSplits) throws Exception {
+        List<String> workflowIds = handle.getWorkflowIds().isEmpty() ? Arrays.asList((String) null) : handle.getWorkflowIds();
+        List<String> statuses = handle.getStatuses().isEmpty() ? Arrays.asList((String) null) : handle.getStatuses();
+        int rangesPerCombination = maxSplits / (workflowIds.size() * statuses.size());
+        
+        List<N8nExecutionsSplit> splits = new ArrayList<>(workflowIds.size() * statuses.size());
+        for (String workflowId : workflowIds) {
+            for (String status : statuses) {
+                List<Long> boundaries = rangesPerCombination > 1
+                        ? getIdBoundaries(apiClient, workflowId, status, handle.getStartedAfter(), rangesPerCombination)
+                        : ImmutableList.of();
+                Long idFrom = null;
+                for (Long boundary : boundaries) {
+                    splits.add(new N8nExecutionsSplit(workflowId, status, handle.getStartedAfter(), handle.getStartedBefore(), idFrom, boundary));
+                    idFrom = boundary;
+                }
+                splits.add(new N8nExecutionsSplit(workflowId, status, handle.getStartedAfter(), handle.getStartedBefore(), idFrom, null));
+            }
+        }
+        return splits;
+    }
+    
+    /**
+     * 把started_at窗口内的执行ID范围均分
+     * 
+     * @return 升序的分界ID；执行ID不是数字、窗口内没有执行记录或范围太小时为空
+     */
+    private static List<Long> getIdBoundaries(N8nApiClient apiClient, String workflowId, String status, Long startedAfter, int ranges) throws Exception {
+        List<N8nApiClient.ExecutionInfo> newest = apiClient.listExecutions(workflowId, status, null, 1).getExecutions();
+        if (newest.isEmpty() || !isInWindow(newest.get(0), startedAfter)) {
+            return ImmutableList.of();
+        }
+        Long maxId = parseId(newest.get(0).getId());
+        if (maxId == null) {
+            return ImmutableList.of();
+        }
+        
+        // ID小于low的执行记录都不在窗口内（或已被清理），ID小于high的执行记录中有在窗口内的
+        long low = 0;
+        long high = maxId + 1;
+        while (high - low > MIN_IDS_PER_SPLIT) {
+            long middle = low + (high - low) / 2;
+            List<N8nApiClient.ExecutionInfo> below = apiClient.listExecutions(workflowId, status, apiClient.executionCursor(middle, 1), 1).getExecutions();
+            if (below.isEmpty() || !isInWindow(below.get(0), startedAfter)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        
+        long width = maxId + 1 - low;
+        int count = (int) Math.min(ranges, width / MIN_IDS_PER_SPLIT);
+        ImmutableList.Builder<Long> boundaries = ImmutableList.builder();
+        for (int i = 1; i < count; i++) {
+            boundaries.add(low + width * i / count);
+        }
+        return boundaries.build();
+    }
+    
+    /**
+     * N8N按执行ID从新到旧返回，开始时间早于窗口的执行之前的记录都早于窗口
+     */
+    private static boolean isInWindow(N8nApiClient.ExecutionInfo execution, Long startedAfter) {
+        return startedAfter == null || execution.getStartedAt() == null || execution.getStartedAt() >= startedAfter;
+    }
+    
+    private static Long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private static Optional<List<String>> getDiscreteValues(Domain domain) {
+        if (domain == null || domain.isNullAllowed() || !domain.getValues().isDiscreteSet()) {
+            return Optional.empty();
+        }
+        List<Object> values = domain.getValues().getDiscreteSet();
+        if (values.isEmpty() || values.size() > MAX_PUSHDOWN_VALUES) {
+            return Optional.empty();
+        }
+        return Optional.of(values.stream()
+                .map(value -> ((Slice) value).toStringUtf8())
+                .collect(ImmutableList.toImmutableList()));
+    }
+}
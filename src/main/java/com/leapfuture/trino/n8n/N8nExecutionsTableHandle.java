@@ -0,0 +1,103 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import io.trino.spi.connector.ConnectorTableHandle;
+
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * N8N Executions Table Handle - 表示n8n.system.executions表，以及下推到执行记录API的过滤条件
+ */
+public class N8nExecutionsTableHandle implements ConnectorTableHandle {
+    
+    private final List<String> workflowIds;
+    private final List<String> statuses;
+    private final Long startedAfter;
+    private final Long startedBefore;
+    
+    @JsonCreator
+    public N8nExecutionsTableHandle(
+            @JsonProperty("workflowIds") List<String> workflowIds,
+            @JsonProperty("statuses") List<String> statuses,
+            @JsonProperty("startedAfter") Long startedAfter,
+            @JsonProperty("startedBefore") Long startedBefore) {
+        this.workflowIds = ImmutableList.copyOf(requireNonNull(workflowIds, "workflowIds is null"));
+        this.statuses = ImmutableList.copyOf(requireNonNull(statuses, "statuses is null"));
+        this.startedAfter = startedAfter;
+        this.startedBefore = startedBefore;
+    }
+    
+    /**
+     * 没有过滤条件的表句柄
+     */
+    public N8nExecutionsTableHandle() {
+        this(ImmutableList.of(), ImmutableList.of(), null, null);
+    }
+    
+    /**
+     * 只查询这些工作流的执行记录，为空时不过滤
+     */
+    @JsonProperty
+    public List<String> getWorkflowIds() {
+        return workflowIds;
+    }
+    
+    /**
+     * 只查询这些状态的执行记录，为空时不过滤
+     */
+    @JsonProperty
+    public List<String> getStatuses() {
+        return statuses;
+    }
+    
+    /**
+     * 开始时间下界（UTC毫秒，包含），为null时不限制
+     */
+    @JsonProperty
+    public Long getStartedAfter() {
+        return startedAfter;
+    }
+    
+    /**
+     * 开始时间上界（UTC毫秒，包含），为null时不限制
+     */
+    @JsonProperty
+    public Long getStartedBefore() {
+        return startedBefore;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        N8nExecutionsTableHandle other = (N8nExecutionsTableHandle) obj;
+        return workflowIds.equals(other.workflowIds) &&
+                statuses.equals(other.statuses) &&
+                Objects.equals(startedAfter, other.startedAfter) &&
+                Objects.equals(startedBefore, other.startedBefore);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(workflowIds, statuses, startedAfter, startedBefore);
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nExecutionsTableHandle{" +
+                "workflowIds=" + workflowIds +
+                ", statuses=" + statuses +
+                ", startedAfter=" + startedAfter +
+                ", startedBefore=" + startedBefore +
+                '}';
+    }
+}
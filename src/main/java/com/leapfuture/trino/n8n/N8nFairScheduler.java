@@ -0,0 +1,167 @@
+package com.leapfuture.trino.n8n;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N8N webhook并发的加权公平调度器
+ * 
+ * 每个worker上一种流量类型的连接数由所有查询共享。空闲时请求立即执行；
+ * 连接用满后请求按查询排队，每释放一个连接，交给“进行中请求数 / 有效权重”最小的查询。
+ * 用户权重由n8n.udf.user-weights配置（默认1），同一用户的多个查询平分该用户的权重，
+ * 因此一个查询或一个用户无法占满全部连接，其他查询的请求仍能按权重得到执行机会。
+ * 表扫描使用单独的调度器，所有用户权重都为1。
+ */
+public class N8nFairScheduler {
+    
+    private final int capacity;
+    private final int maxQueued;
+    private final Map<String, Integer> userWeights;
+    
+    // 以下状态通过this加锁保护
+    private int running;
+    private int queued;
+    private final Map<String, QueryState> queries = new HashMap<>();
+    private final Map<String, Integer> activeQueriesByUser = new HashMap<>();
+    
+    public N8nFairScheduler(int capacity, int maxQueued, Map<String, Integer> userWeights) {
+        this.capacity = capacity;
+        this.maxQueued = maxQueued;
+        this.userWeights = userWeights;
+    }
+    
+    /**
+     * 为一次请求获取执行许可
+     * 
+     * @param queryId 查询ID
+     * @param user 用户
+     * @param maxWaitMillis 最长等待时间
+     * @return 许可，使用完毕后必须关闭；排队已满或等待超时时返回null
+     */
+    public synchronized Permit acquire(String queryId, String user, long maxWaitMillis) throws InterruptedException {
+        QueryState query = queries.get(queryId);
+        if (query == null) {
+            query = new QueryState(queryId, user);
+            queries.put(queryId, query);
+            activeQueriesByUser.merge(user, 1, Integer::sum);
+        }
+        if (running < capacity && queued == 0) {
+            return grant(query);
+        }
+        if (queued >= maxQueued) {
+            removeIfIdle(query);
+            return null;
+        }
+        
+        Waiter waiter = new Waiter();
+        query.waiters.add(waiter);
+        queued++;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        try {
+            while (!waiter.granted) {
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+        } catch (InterruptedException e) {
+            if (waiter.granted) {
+                // 中断前刚好获得许可，交还给其他查询
+                release(query);
+            }
+            throw e;
+        } finally {
+            if (!waiter.granted) {
+                query.waiters.remove(waiter);
+                queued--;
+                removeIfIdle(query);
+            }
+        }
+        return waiter.granted ? new Permit(query) : null;
+    }
+    
+    private Permit grant(QueryState query) {
+        running++;
+        query.running++;
+        return new Permit(query);
+    }
+    
+    private synchronized void release(QueryState query) {
+        running--;
+        query.running--;
+        removeIfIdle(query);
+        
+        // 把空出的连接交给进行中请求数相对权重最少的排队查询
+        QueryState next = null;
+        double nextShare = Double.MAX_VALUE;
+        for (QueryState candidate : queries.values()) {
+            if (candidate.waiters.isEmpty()) {
+                continue;
+            }
+            double share = (candidate.running + 1) / getEffectiveWeight(candidate);
+            if (share < nextShare) {
+                next = candidate;
+                nextShare = share;
+            }
+        }
+        if (next != null && running < capacity) {
+            Waiter waiter = next.waiters.poll();
+            waiter.granted = true;
+            queued--;
+            running++;
+            next.running++;
+            notifyAll();
+        }
+    }
+    
+    private double getEffectiveWeight(QueryState query) {
+        int weight = userWeights.getOrDefault(query.user, 1);
+        return (double) weight / activeQueriesByUser.getOrDefault(query.user, 1);
+    }
+    
+    private void removeIfIdle(QueryState query) {
+        if (query.running == 0 && query.waiters.isEmpty() && queries.remove(query.queryId, query)) {
+            activeQueriesByUser.computeIfPresent(query.user, (user, count) -> count == 1 ? null : count - 1);
+        }
+    }
+    
+    /**
+     * 一次请求的执行许可
+     */
+    public final class Permit implements AutoCloseable {
+        private final QueryState query;
+        private boolean closed;
+        
+        private Permit(QueryState query) {
+            this.query = query;
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(query);
+            }
+        }
+    }
+    
+    private static final class QueryState {
+        private final String queryId;
+        private final String user;
+        private final Queue<Waiter> waiters = new ArrayDeque<>();
+        private int running;
+        
+        private QueryState(String queryId, String user) {
+            this.queryId = queryId;
+            this.user = user;
+        }
+    }
+    
+    private static final class Waiter {
+        private boolean granted;
+    }
+}
@@ -1,21 +1,62 @@
 package com.leapfuture.trino.n8n;
 
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.impl.ChainElement;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolStats;
 import org.apache.hc.core5.util.Timeout;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
+import io.airlift.units.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * N8N HTTP客户端管理器
- * 简化版本，提供基本的HTTP客户端功能
+ * 
+ * 按流量类型隔离（舱壁）：管理API、表扫描、INSERT和UDF各自使用独立的连接池、线程池、超时和排队上限，
+ * 大量UDF或扫描请求不会占满元数据发现使用的连接，查询规划的延迟保持稳定；
+ * INSERT批次重试时在自己的线程中等待，不会占用扫描线程。
+ * 排队超过上限时立即拒绝，而不是无限等待；UDF的连接由{@link N8nFairScheduler}在查询和用户之间公平分配。
+ * 配置相同的目录共用同一组连接池，最后一个使用它的目录关闭时才释放。
  */
 public class N8nHttpClient {
     
-    private static final ConcurrentMap<String, CloseableHttpClient> CLIENT_CACHE = new ConcurrentHashMap<>();
+    /**
+     * 流量类型
+     */
+    public enum Pool {
+        // 管理API：工作流发现、执行记录，以及webhook实例的健康检查
+        API,
+        // 表扫描的webhook请求
+        SCAN,
+        // INSERT批次的发送、重试和预写日志重放
+        INSERT,
+        // webhook UDF，在Trino driver线程中同步执行，只使用连接池和排队上限
+        UDF,
+    }
+    
+    private static final ConcurrentMap<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<>();
+    
+    // 执行上下文中记录尝试次数和获取连接时间的属性，供追踪使用
+    private static final String ATTEMPTS_ATTRIBUTE = "n8n.attempts";
+    private static final String CONNECT_START_ATTRIBUTE = "n8n.connect-start";
+    private static final String POOL_WAIT_ATTRIBUTE = "n8n.pool-wait-nanos";
     
     private final N8nConfig config;
     
@@ -27,66 +68,289 @@ public class N8nHttpClient {
     /**
      * 获取HTTP客户端实例
      * 
+     * @param pool 流量类型
      * @return HTTP客户端
      */
-    public CloseableHttpClient getClient() {
-        return getClient(this.config);
+    public CloseableHttpClient getClient(Pool pool) {
+        return getClient(this.config, pool);
     }
     
     /**
      * 获取HTTP客户端实例
      * 
      * @param config N8N配置
+     * @param pool 流量类型
      * @return HTTP客户端
      */
-    public static CloseableHttpClient getClient(N8nConfig config) {
-        String configKey = generateConfigKey(config);
-        
-        return CLIENT_CACHE.computeIfAbsent(configKey, key -> createHttpClient(config));
+    public static CloseableHttpClient getClient(N8nConfig config, Pool pool) {
+        return getBulkhead(config, pool).client;
     }
     
     /**
-     * 创建HTTP客户端
+     * 获取执行HTTP请求的后台线程池，避免阻塞Trino driver线程
+     * 
+     * 线程数等于该流量类型的最大连接数，排队的任务超过上限时抛出RejectedExecutionException。
+     * 扫描的后台线程在等待Trino读取page时不会释放，因此扫描线程池为每个准入的扫描分配线程
+     * （最大连接数 + 最大排队数），由连接池限制同时执行的请求，
+     * 等待消费的扫描不会让排在后面的扫描（例如join的build端）一直拿不到线程。
      * 
      * @param config N8N配置
-     * @return HTTP客户端
+     * @param pool 流量类型
+     * @return 线程池
+     */
+    public static ExecutorService getExecutor(N8nConfig config, Pool pool) {
+        return getBulkhead(config, pool).getExecutor();
+    }
+    
+    /**
+     * 获取按查询和用户分配连接的公平调度器，UDF调用和表扫描的webhook请求发送前都要获取许可
+     * 
+     * 调度器的容量为该流量类型的最大连接数，排队上限为最大排队数；用户权重只对UDF生效，表扫描的用户权重都为1
+     * 
+     * @param config N8N配置
+     * @param pool 流量类型
+     * @return 调度器
      */
-    private static CloseableHttpClient createHttpClient(N8nConfig config) {
-        // 请求配置
-        RequestConfig requestConfig = RequestConfig.custom()
-                .setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getTimeout().toMillis()))
-                .setResponseTimeout(Timeout.ofMilliseconds(config.getTimeout().toMillis()))
+    public static N8nFairScheduler getScheduler(N8nConfig config, Pool pool) {
+        return getBulkhead(config, pool).scheduler;
+    }
+    
+    /**
+     * 获取本节点一种流量类型的连接池使用情况，多个目录的连接池合并计算
+     * 
+     * @param pool 流量类型
+     * @return 已借出、等待、空闲和最大连接数
+     */
+    public static PoolStats getPoolStats(Pool pool) {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        for (Bulkhead bulkhead : BULKHEADS.values()) {
+            if (bulkhead.pool == pool) {
+                PoolStats stats = bulkhead.connectionManager.getTotalStats();
+                leased += stats.getLeased();
+                pending += stats.getPending();
+                available += stats.getAvailable();
+                max += stats.getMax();
+            }
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+    
+    private static Bulkhead getBulkhead(N8nConfig config, Pool pool) {
+        int maxConnections = config.getMaxConnections(pool);
+        int maxQueuedRequests = config.getMaxQueuedRequests(pool);
+        Duration timeout = config.getTimeout(pool);
+        String key = generateConfigKey(config, pool, maxConnections, maxQueuedRequests, timeout);
+        Bulkhead bulkhead = BULKHEADS.get(key);
+        if (bulkhead != null && bulkhead.owners.contains(config)) {
+            return bulkhead;
+        }
+        // 记录使用该连接池的目录配置，关闭目录时据此释放
+        return BULKHEADS.compute(key, (ignored, existing) -> {
+            Bulkhead current = existing != null
+                    ? existing
+                    : new Bulkhead(pool, maxConnections, maxQueuedRequests, timeout, pool == Pool.UDF ? config.getUdfUserWeightMap() : Map.of());
+            current.owners.add(config);
+            return current;
+        });
+    }
+    
+    /**
+     * 创建连接池，所有连接都可以用于同一个N8N实例
+     * 
+     * @param maxConnections 最大连接数
+     * @return 连接池
+     */
+    private static PoolingHttpClientConnectionManager createConnectionManager(int maxConnections) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
                 .build();
-        
-        // 构建HTTP客户端
+    }
+    
+    /**
+     * 创建HTTP客户端
+     * 
+     * @param connectionManager 连接池
+     * @param timeout 请求超时时间，同时也是等待空闲连接的最长时间
+     * @return HTTP客户端
+     */
+    private static CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager, Duration timeout) {
         return HttpClients.custom()
-                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(createRequestConfig(timeout))
+                .addExecInterceptorAfter(ChainElement.RETRY.name(), "n8n-attempts", countAttempts())
+                .addExecInterceptorBefore(ChainElement.CONNECT.name(), "n8n-connect-start", (request, scope, chain) -> {
+                    scope.clientContext.setAttribute(CONNECT_START_ATTRIBUTE, System.nanoTime());
+                    return chain.proceed(request, scope);
+                })
+                .addExecInterceptorAfter(ChainElement.CONNECT.name(), "n8n-connect-end", (request, scope, chain) -> {
+                    Object start = scope.clientContext.getAttribute(CONNECT_START_ATTRIBUTE);
+                    if (start != null) {
+                        long waited = System.nanoTime() - (Long) start;
+                        scope.clientContext.setAttribute(POOL_WAIT_ATTRIBUTE, getPoolWaitNanos(scope.clientContext) + waited);
+                    }
+                    return chain.proceed(request, scope);
+                })
+                .build();
+    }
+    
+    /**
+     * 位于重试之后，每次实际发送请求（包括重试）时计数一次
+     */
+    private static ExecChainHandler countAttempts() {
+        return (request, scope, chain) -> {
+            Object attempts = scope.clientContext.getAttribute(ATTEMPTS_ATTRIBUTE);
+            scope.clientContext.setAttribute(ATTEMPTS_ATTRIBUTE, attempts == null ? 1 : (Integer) attempts + 1);
+            return chain.proceed(request, scope);
+        };
+    }
+    
+    /**
+     * @param context 执行请求时传入的上下文
+     * @return HTTP客户端自动重试的次数
+     */
+    public static int getRetryCount(HttpContext context) {
+        Object attempts = context.getAttribute(ATTEMPTS_ATTRIBUTE);
+        return attempts == null ? 0 : Math.max((Integer) attempts - 1, 0);
+    }
+    
+    /**
+     * @param context 执行请求时传入的上下文
+     * @return 从连接池获取连接（包括建立新连接）所用的纳秒数
+     */
+    public static long getPoolWaitNanos(HttpContext context) {
+        Object waited = context.getAttribute(POOL_WAIT_ATTRIBUTE);
+        return waited == null ? 0 : (Long) waited;
+    }
+    
+    /**
+     * 创建请求配置，用于按会话覆盖单个请求的超时时间
+     * 
+     * @param timeout 请求超时时间，同时也是等待空闲连接的最长时间
+     * @return 请求配置
+     */
+    public static RequestConfig createRequestConfig(Duration timeout) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeout.toMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeout.toMillis()))
                 .build();
     }
     
     /**
      * 生成配置key
      * 
-     * @param config N8N配置
      * @return 配置key
      */
-    private static String generateConfigKey(N8nConfig config) {
-        return String.format("baseUrl:%s-timeout:%d",
+    private static String generateConfigKey(N8nConfig config, Pool pool, int maxConnections, int maxQueuedRequests, Duration timeout) {
+        String key = String.format("baseUrl:%s-pool:%s-connections:%d-queued:%d-timeout:%d",
                 config.getBaseUrl(),
-                config.getTimeout().toMillis() / 1000);
+                pool,
+                maxConnections,
+                maxQueuedRequests,
+                timeout.toMillis());
+        // 只有UDF的调度器使用用户权重，修改权重不重建其他连接池
+        return pool == Pool.UDF ? key + "-weights:" + config.getUdfUserWeights() : key;
+    }
+    
+    /**
+     * 目录关闭时释放本配置使用的HTTP客户端和线程池，不再被其他目录使用的随之关闭
+     */
+    public void close() {
+        closeClients(config);
+    }
+    
+    /**
+     * 释放配置使用的HTTP客户端和线程池，不再被其他配置使用的随之关闭
+     * 
+     * @param config N8N配置
+     */
+    public static void closeClients(N8nConfig config) {
+        List<Bulkhead> unused = new ArrayList<>();
+        for (String key : BULKHEADS.keySet()) {
+            BULKHEADS.computeIfPresent(key, (ignored, bulkhead) -> {
+                if (bulkhead.owners.remove(config) && bulkhead.owners.isEmpty()) {
+                    unused.add(bulkhead);
+                    return null;
+                }
+                return bulkhead;
+            });
+        }
+        unused.forEach(Bulkhead::close);
     }
     
     /**
-     * 关闭所有HTTP客户端
+     * 关闭所有HTTP客户端和线程池
      */
     public static void closeAllClients() {
-        CLIENT_CACHE.values().forEach(client -> {
+        BULKHEADS.values().forEach(Bulkhead::close);
+        BULKHEADS.clear();
+    }
+    
+    /**
+     * 一种流量类型的连接池、线程池和准入许可
+     */
+    private static final class Bulkhead {
+        private final Pool pool;
+        private final int maxConnections;
+        private final int maxQueuedRequests;
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient client;
+        private final N8nFairScheduler scheduler;
+        // 使用该连接池的目录配置（按实例区分）
+        private final Set<N8nConfig> owners = ConcurrentHashMap.newKeySet();
+        private volatile ThreadPoolExecutor executor;
+        
+        private Bulkhead(Pool pool, int maxConnections, int maxQueuedRequests, Duration timeout, Map<String, Integer> userWeights) {
+            this.pool = pool;
+            this.maxConnections = maxConnections;
+            this.maxQueuedRequests = maxQueuedRequests;
+            this.connectionManager = createConnectionManager(maxConnections);
+            this.client = createHttpClient(connectionManager, timeout);
+            this.scheduler = new N8nFairScheduler(maxConnections, maxQueuedRequests, userWeights);
+        }
+        
+        private ExecutorService getExecutor() {
+            ThreadPoolExecutor current = executor;
+            if (current == null) {
+                synchronized (this) {
+                    current = executor;
+                    if (current == null) {
+                        // 扫描任务直接交给线程执行，不在线程池中排队
+                        int threads = pool == Pool.SCAN ? maxConnections + maxQueuedRequests : maxConnections;
+                        // 空闲线程超时后回收
+                        current = new ThreadPoolExecutor(
+                                threads,
+                                threads,
+                                60,
+                                TimeUnit.SECONDS,
+                                maxQueuedRequests > 0 && pool != Pool.SCAN ? new LinkedBlockingQueue<>(maxQueuedRequests) : new SynchronousQueue<>(),
+                                new ThreadFactoryBuilder()
+                                        .setNameFormat("n8n-" + pool.name().toLowerCase() + "-%s")
+                                        .setDaemon(true)
+                                        .build(),
+                                new ThreadPoolExecutor.AbortPolicy());
+                        current.allowCoreThreadTimeOut(true);
+                        executor = current;
+                    }
+                }
+            }
+            return current;
+        }
+        
+        private void close() {
             try {
                 client.close();
             } catch (Exception e) {
                 // 忽略关闭异常
             }
-        });
-        CLIENT_CACHE.clear();
+            synchronized (this) {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,45 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import io.trino.spi.connector.ConnectorInsertTableHandle;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * N8N Insert Table Handle - 表示向webhook表写入数据的INSERT操作
+ */
+public class N8nInsertTableHandle implements ConnectorInsertTableHandle {
+    
+    private final N8nTableHandle tableHandle;
+    private final List<N8nColumnHandle> columnHandles;
+    
+    @JsonCreator
+    public N8nInsertTableHandle(
+            @JsonProperty("tableHandle") N8nTableHandle tableHandle,
+            @JsonProperty("columnHandles") List<N8nColumnHandle> columnHandles) {
+        this.tableHandle = requireNonNull(tableHandle, "tableHandle is null");
+        this.columnHandles = ImmutableList.copyOf(requireNonNull(columnHandles, "columnHandles is null"));
+    }
+    
+    @JsonProperty
+    public N8nTableHandle getTableHandle() {
+        return tableHandle;
+    }
+    
+    @JsonProperty
+    public List<N8nColumnHandle> getColumnHandles() {
+        return columnHandles;
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nInsertTableHandle{" +
+                "tableHandle=" + tableHandle +
+                ", columnHandles=" + columnHandles +
+                '}';
+    }
+}
@@ -0,0 +1,127 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.airlift.slice.Slice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+/**
+ * 连接器共用的JSON编解码
+ * 
+ * 所有组件共用一个线程安全的JsonFactory（内部复用符号表和缓冲区），
+ * 并且只使用流式API：响应解析、工作流列表解析和UDF都不构建树模型，也不做对象绑定。
+ * 生成器写入调用方的输出后不关闭输出，便于继续复用同一个缓冲区。
+ */
+public final class N8nJson {
+    
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    
+    private N8nJson() {}
+    
+    /**
+     * 写入JSON的回调
+     */
+    public interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+    
+    public static JsonParser createParser(InputStream input) throws IOException {
+        return JSON_FACTORY.createParser(input);
+    }
+    
+    public static JsonParser createParser(Slice json) throws IOException {
+        return JSON_FACTORY.createParser(json.byteArray(), json.byteArrayOffset(), json.length());
+    }
+    
+    public static JsonParser createParser(String json) throws IOException {
+        return JSON_FACTORY.createParser(json);
+    }
+    
+    public static JsonGenerator createGenerator(OutputStream output) throws IOException {
+        return JSON_FACTORY.createGenerator(output);
+    }
+    
+    /**
+     * 生成JSON字符串
+     * 
+     * @param writer 写入一个JSON值
+     * @return JSON字符串
+     */
+    public static String write(JsonWriter writer) throws IOException {
+        StringWriter output = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            writer.write(generator);
+        }
+        return output.toString();
+    }
+    
+    /**
+     * 复制解析器当前位置的JSON值（标量、对象或数组），数字保持原始文本
+     * 
+     * JsonGenerator.copyCurrentStructure经过double复制小数，会改变用户数据，
+     * 例如12345678901234567.89变为1.2345678901234568E16、1.50变为1.5。
+     * 
+     * @param parser 位于值的第一个token
+     * @param generator 输出
+     */
+    public static void copyValue(JsonParser parser, JsonGenerator generator) throws IOException {
+        int depth = 0;
+        do {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                generator.writeNumber(parser.getText());
+            } else {
+                generator.copyCurrentEvent(parser);
+            }
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+        } while (depth > 0 && parser.nextToken() != null);
+    }
+    
+    /**
+     * 校验完整的JSON文档，只扫描token，不构建树
+     * 
+     * @param json JSON文本
+     * @return 文档的第一个token
+     * @throws IOException 不是合法的JSON，或者包含多个顶层值
+     */
+    public static JsonToken validate(Slice json) throws IOException {
+        try (JsonParser parser = createParser(json)) {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                throw new IOException("Empty JSON document");
+            }
+            parser.skipChildren();
+            if (parser.nextToken() != null) {
+                throw new IOException("Trailing content after JSON value");
+            }
+            return first;
+        }
+    }
+    
+    /**
+     * 把文本中的第一个JSON值重新写成紧凑格式
+     * 
+     * @param json JSON文本
+     * @return 紧凑格式的JSON
+     * @throws IOException 不是合法的JSON
+     */
+    public static String compact(String json) throws IOException {
+        try (JsonParser parser = createParser(json)) {
+            if (parser.nextToken() == null) {
+                throw new IOException("Empty JSON document");
+            }
+            return write(generator -> copyValue(parser, generator));
+        }
+    }
+}
@@ -2,59 +2,138 @@ package com.leapfuture.trino.n8n;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.inject.Inject;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.slice.Slice;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
 import io.trino.spi.connector.ColumnHandle;
 import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorAnalyzeMetadata;
+import io.trino.spi.connector.ConnectorInsertTableHandle;
 import io.trino.spi.connector.ConnectorMetadata;
+import io.trino.spi.connector.ConnectorOutputMetadata;
 import io.trino.spi.connector.ConnectorSession;
 import io.trino.spi.connector.ConnectorTableHandle;
 import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTableVersion;
+import io.trino.spi.connector.Constraint;
+import io.trino.spi.connector.ConstraintApplicationResult;
+import io.trino.spi.connector.RelationColumnsMetadata;
+import io.trino.spi.connector.RetryMode;
 import io.trino.spi.connector.SchemaTableName;
 import io.trino.spi.connector.SchemaTablePrefix;
+import io.trino.spi.connector.TableColumnsMetadata;
+import io.trino.spi.statistics.ColumnStatisticMetadata;
+import io.trino.spi.statistics.ComputedStatistics;
+import io.trino.spi.statistics.TableStatistics;
+import io.trino.spi.statistics.TableStatisticsMetadata;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
+import static io.trino.spi.StandardErrorCode.NOT_SUPPORTED;
+import static io.trino.spi.statistics.ColumnStatisticType.NUMBER_OF_DISTINCT_VALUES;
+import static io.trino.spi.statistics.ColumnStatisticType.NUMBER_OF_NON_NULL_VALUES;
+import static io.trino.spi.statistics.ColumnStatisticType.TOTAL_SIZE_IN_BYTES;
+import static io.trino.spi.statistics.TableStatisticType.ROW_COUNT;
+import static io.trino.spi.type.BigintType.BIGINT;
 import static io.trino.spi.type.VarcharType.VARCHAR;
 
 /**
  * N8N Metadata - 动态发现N8N webhook作为表
+ * 
+ * 每个事务一个实例，第一次访问时绑定工作流元数据快照，整个事务内看到一致的表列表
  */
 public class N8nMetadata implements ConnectorMetadata {
     
     public static final String SCHEMA_NAME = "default";
+    public static final String SYSTEM_SCHEMA_NAME = "system";
+    public static final String LOOKUP_KEY_COLUMN = "lookup_key";
     
     private final N8nApiClient apiClient;
+    private final N8nConfig config;
+    private final N8nTableStatistics tableStatistics;
+    // 所有webhook表的列结构相同，预先生成
+    private final List<ColumnMetadata> webhookColumns;
+    private final Map<String, ColumnHandle> webhookColumnHandles;
     
-    @Inject
-    public N8nMetadata(N8nApiClient apiClient) {
+    // 事务使用的快照，第一次访问时获取
+    private N8nWorkflowSnapshot snapshot;
+    
+    public N8nMetadata(N8nApiClient apiClient, N8nConfig config, N8nTableStatistics tableStatistics) {
         this.apiClient = apiClient;
+        this.config = config;
+        this.tableStatistics = tableStatistics;
+        
+        // 为所有webhook表返回统一的列结构
+        // 实际数据结构会在运行时动态确定
+        ImmutableList.Builder<ColumnMetadata> columns = ImmutableList.<ColumnMetadata>builder()
+            .add(new ColumnMetadata("webhook_path", VARCHAR))
+            .add(new ColumnMetadata("method", VARCHAR))
+            .add(new ColumnMetadata("workflow_name", VARCHAR))
+            .add(new ColumnMetadata("workflow_id", VARCHAR))
+            .add(new ColumnMetadata("is_active", VARCHAR))
+            .add(new ColumnMetadata("response_data", VARCHAR))
+            .add(new ColumnMetadata("status_code", VARCHAR))
+            .add(new ColumnMetadata("timestamp", VARCHAR));
+        
+        // 配置了查找字段时，额外提供lookup_key列用于join
+        if (config.isLookupEnabled()) {
+            columns.add(new ColumnMetadata(LOOKUP_KEY_COLUMN, VARCHAR));
+        }
+        this.webhookColumns = columns.build();
+        
+        ImmutableMap.Builder<String, ColumnHandle> columnHandles = ImmutableMap.builder();
+        for (int i = 0; i < webhookColumns.size(); i++) {
+            ColumnMetadata column = webhookColumns.get(i);
+            columnHandles.put(column.getName(), new N8nColumnHandle(column.getName(), column.getType(), i));
+        }
+        this.webhookColumnHandles = columnHandles.buildOrThrow();
     }
     
     @Override
     public List<String> listSchemaNames(ConnectorSession session) {
-        return ImmutableList.of(SCHEMA_NAME);
+        return ImmutableList.of(SCHEMA_NAME, SYSTEM_SCHEMA_NAME);
+    }
+    
+    @Override
+    public List<SchemaTableName> listTables(ConnectorSession session, Optional<String> schemaName) {
+        return listTables(session, schemaName.map(SchemaTablePrefix::new).orElseGet(SchemaTablePrefix::new));
     }
     
+    /**
+     * 列出匹配前缀的表，指定了表名时直接在快照的表名索引中查找
+     */
     public List<SchemaTableName> listTables(ConnectorSession session, SchemaTablePrefix prefix) {
+        if (prefix.getTable().isPresent()) {
+            SchemaTableName tableName = prefix.toSchemaTableName();
+            return isListed(tableName) ? ImmutableList.of(tableName) : ImmutableList.of();
+        }
+        if (prefix.getSchema().isPresent() && prefix.getSchema().get().equals(SYSTEM_SCHEMA_NAME)) {
+            // 执行记录通过管理API读取，需要API Key
+            return config.hasApiKey() ? ImmutableList.of(N8nExecutionsTable.TABLE_NAME) : ImmutableList.of();
+        }
         if (prefix.getSchema().isPresent() && !prefix.getSchema().get().equals(SCHEMA_NAME)) {
             return ImmutableList.of();
         }
         
         try {
-            // 通过API获取所有webhook信息
-            List<N8nApiClient.WebhookInfo> webhooks = apiClient.getWebhookWorkflows();
-            
-            ImmutableList.Builder<SchemaTableName> tables = ImmutableList.builder();
-            for (N8nApiClient.WebhookInfo webhook : webhooks) {
-                // 只返回激活的webhook
-                if (webhook.isActive()) {
-                    tables.add(new SchemaTableName(SCHEMA_NAME, webhook.getTableName()));
-                }
+            // 快照中预先生成了激活webhook的表列表
+            List<SchemaTableName> tables = getSnapshot().getTableNames();
+            if (prefix.getSchema().isEmpty() && config.hasApiKey()) {
+                return ImmutableList.<SchemaTableName>builder()
+                        .addAll(tables)
+                        .add(N8nExecutionsTable.TABLE_NAME)
+                        .build();
             }
-            
-            return tables.build();
+            return tables;
             
         } catch (Exception e) {
             System.err.println("获取N8N表列表时出错: " + e.getMessage());
@@ -63,19 +142,73 @@ public class N8nMetadata implements ConnectorMetadata {
         }
     }
     
+    private boolean isListed(SchemaTableName tableName) {
+        if (tableName.equals(N8nExecutionsTable.TABLE_NAME)) {
+            return config.hasApiKey();
+        }
+        if (!tableName.getSchemaName().equals(SCHEMA_NAME)) {
+            return false;
+        }
+        try {
+            return getSnapshot().getActiveTable(tableName.getTableName()).isPresent();
+        } catch (Exception e) {
+            System.err.println("获取N8N表列表时出错: " + e.getMessage());
+            return "webhooks".equals(tableName.getTableName());
+        }
+    }
+    
+    @Override
+    public Iterator<RelationColumnsMetadata> streamRelationColumns(
+            ConnectorSession session,
+            Optional<String> schemaName,
+            UnaryOperator<Set<SchemaTableName>> relationFilter) {
+        // 一次列出全部表，由引擎过滤后直接使用预先生成的列结构，不再逐表获取句柄和列
+        Set<SchemaTableName> tables = relationFilter.apply(new LinkedHashSet<>(listTables(session, schemaName)));
+        return tables.stream()
+                .map(table -> RelationColumnsMetadata.forTable(table, getColumns(table)))
+                .iterator();
+    }
+    
+    @SuppressWarnings("deprecation")
+    @Override
+    public Iterator<TableColumnsMetadata> streamTableColumns(ConnectorSession session, SchemaTablePrefix prefix) {
+        return listTables(session, prefix).stream()
+                .map(table -> TableColumnsMetadata.forTable(table, getColumns(table)))
+                .iterator();
+    }
+    
+    private List<ColumnMetadata> getColumns(SchemaTableName tableName) {
+        if (tableName.equals(N8nExecutionsTable.TABLE_NAME)) {
+            return N8nExecutionsTable.getTableMetadata().getColumns();
+        }
+        return webhookColumns;
+    }
+    
+    @Override
+    public ConnectorTableHandle getTableHandle(
+            ConnectorSession session,
+            SchemaTableName tableName,
+            Optional<ConnectorTableVersion> startVersion,
+            Optional<ConnectorTableVersion> endVersion) {
+        if (startVersion.isPresent() || endVersion.isPresent()) {
+            throw new TrinoException(NOT_SUPPORTED, "This connector does not support versioned tables");
+        }
+        return getTableHandle(session, tableName);
+    }
+    
     public ConnectorTableHandle getTableHandle(ConnectorSession session, SchemaTableName tableName) {
+        if (tableName.equals(N8nExecutionsTable.TABLE_NAME) && config.hasApiKey()) {
+            return new N8nExecutionsTableHandle();
+        }
         if (!tableName.getSchemaName().equals(SCHEMA_NAME)) {
             return null;
         }
         
         try {
-            // 查找对应的webhook信息
-            List<N8nApiClient.WebhookInfo> webhooks = apiClient.getWebhookWorkflows();
-            
-            for (N8nApiClient.WebhookInfo webhook : webhooks) {
-                if (webhook.getTableName().equals(tableName.getTableName()) && webhook.isActive()) {
-                    return N8nTableHandle.fromWebhookInfo(webhook, SCHEMA_NAME);
-                }
+            // 按表名索引查找对应的webhook信息
+            Optional<N8nApiClient.WebhookInfo> webhook = getSnapshot().getActiveTable(tableName.getTableName());
+            if (webhook.isPresent()) {
+                return N8nTableHandle.fromWebhookInfo(webhook.get(), SCHEMA_NAME);
             }
             
             // 如果没找到，可能是默认表
@@ -94,42 +227,130 @@ public class N8nMetadata implements ConnectorMetadata {
         return null;
     }
     
+    /**
+     * 获取事务的工作流元数据快照
+     * 
+     * @return 快照
+     */
+    public synchronized N8nWorkflowSnapshot getSnapshot() {
+        if (snapshot == null) {
+            snapshot = apiClient.getWorkflowSnapshot();
+        }
+        return snapshot;
+    }
+    
     @Override
     public ConnectorTableMetadata getTableMetadata(ConnectorSession session, ConnectorTableHandle table) {
+        if (table instanceof N8nExecutionsTableHandle) {
+            return N8nExecutionsTable.getTableMetadata();
+        }
         N8nTableHandle n8nTable = (N8nTableHandle) table;
-        
-        // 为所有webhook表返回统一的列结构
-        // 实际数据结构会在运行时动态确定
-        return new ConnectorTableMetadata(
-            n8nTable.getSchemaTableName(),
-            ImmutableList.of(
-                new ColumnMetadata("webhook_path", VARCHAR),
-                new ColumnMetadata("method", VARCHAR),
-                new ColumnMetadata("workflow_name", VARCHAR),
-                new ColumnMetadata("workflow_id", VARCHAR),
-                new ColumnMetadata("is_active", VARCHAR),
-                new ColumnMetadata("response_data", VARCHAR),
-                new ColumnMetadata("status_code", VARCHAR),
-                new ColumnMetadata("timestamp", VARCHAR)
-            )
-        );
+        return new ConnectorTableMetadata(n8nTable.getSchemaTableName(), webhookColumns);
     }
     
     @Override
     public Map<String, ColumnHandle> getColumnHandles(ConnectorSession session, ConnectorTableHandle tableHandle) {
+        if (tableHandle instanceof N8nExecutionsTableHandle) {
+            return N8nExecutionsTable.getColumnHandles();
+        }
+        // 返回统一的列句柄
+        return webhookColumnHandles;
+    }
+    
+    @Override
+    public TableStatistics getTableStatistics(ConnectorSession session, ConnectorTableHandle tableHandle) {
+        if (tableHandle instanceof N8nExecutionsTableHandle) {
+            return TableStatistics.empty();
+        }
+        // 根据最近的ANALYZE和表扫描观测估算，没有观测时优化器按未知处理
+        N8nTableHandle n8nTable = (N8nTableHandle) tableHandle;
+        return tableStatistics.getTableStatistics(n8nTable.getSchemaTableName(), getColumnHandles(session, tableHandle));
+    }
+    
+    @Override
+    public ConnectorAnalyzeMetadata getStatisticsCollectionMetadata(ConnectorSession session, ConnectorTableHandle tableHandle, Map<String, Object> analyzeProperties) {
+        if (!(tableHandle instanceof N8nTableHandle)) {
+            throw new TrinoException(NOT_SUPPORTED, "This table does not support ANALYZE");
+        }
+        // 由Trino在worker上扫描并聚合，结果交给协调节点上的finishStatisticsCollection
+        ImmutableSet.Builder<ColumnStatisticMetadata> columnStatistics = ImmutableSet.builder();
+        for (ColumnMetadata column : webhookColumns) {
+            columnStatistics.add(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_NON_NULL_VALUES));
+            columnStatistics.add(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_DISTINCT_VALUES));
+            columnStatistics.add(new ColumnStatisticMetadata(column.getName(), TOTAL_SIZE_IN_BYTES));
+        }
+        return new ConnectorAnalyzeMetadata(tableHandle, new TableStatisticsMetadata(columnStatistics.build(), ImmutableSet.of(ROW_COUNT), ImmutableList.of()));
+    }
+    
+    @Override
+    public ConnectorTableHandle beginStatisticsCollection(ConnectorSession session, ConnectorTableHandle tableHandle) {
+        return tableHandle;
+    }
+    
+    @Override
+    public void finishStatisticsCollection(ConnectorSession session, ConnectorTableHandle tableHandle, Collection<ComputedStatistics> computedStatistics) {
+        N8nTableHandle n8nTable = (N8nTableHandle) tableHandle;
+        for (ComputedStatistics statistics : computedStatistics) {
+            long rowCount = getLongStatistic(statistics.getTableStatistics().get(ROW_COUNT));
+            Map<String, N8nTableStatistics.ColumnObservation> columns = new HashMap<>();
+            for (ColumnMetadata column : webhookColumns) {
+                long nonNullCount = getLongStatistic(statistics.getColumnStatistics().get(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_NON_NULL_VALUES)));
+                long distinctCount = getLongStatistic(statistics.getColumnStatistics().get(new ColumnStatisticMetadata(column.getName(), NUMBER_OF_DISTINCT_VALUES)));
+                long dataSize = getLongStatistic(statistics.getColumnStatistics().get(new ColumnStatisticMetadata(column.getName(), TOTAL_SIZE_IN_BYTES)));
+                columns.put(column.getName(), new N8nTableStatistics.ColumnObservation(rowCount - nonNullCount, distinctCount, dataSize));
+            }
+            tableStatistics.record(n8nTable.getSchemaTableName(), rowCount, columns);
+        }
+    }
+    
+    private static long getLongStatistic(Block block) {
+        // 全部为NULL的列没有数据大小
+        if (block == null || block.isNull(0)) {
+            return 0;
+        }
+        return BIGINT.getLong(block, 0);
+    }
+    
+    @Override
+    public ConnectorInsertTableHandle beginInsert(ConnectorSession session, ConnectorTableHandle tableHandle, List<ColumnHandle> columns, RetryMode retryMode) {
+        if (!(tableHandle instanceof N8nTableHandle)) {
+            throw new TrinoException(NOT_SUPPORTED, "This table does not support INSERT");
+        }
         N8nTableHandle n8nTable = (N8nTableHandle) tableHandle;
         
-        // 返回统一的列句柄
-        return ImmutableMap.<String, ColumnHandle>builder()
-            .put("webhook_path", new N8nColumnHandle("webhook_path", VARCHAR, 0))
-            .put("method", new N8nColumnHandle("method", VARCHAR, 1))
-            .put("workflow_name", new N8nColumnHandle("workflow_name", VARCHAR, 2))
-            .put("workflow_id", new N8nColumnHandle("workflow_id", VARCHAR, 3))
-            .put("is_active", new N8nColumnHandle("is_active", VARCHAR, 4))
-            .put("response_data", new N8nColumnHandle("response_data", VARCHAR, 5))
-            .put("status_code", new N8nColumnHandle("status_code", VARCHAR, 6))
-            .put("timestamp", new N8nColumnHandle("timestamp", VARCHAR, 7))
-            .build();
+        // 数据通过请求体发送，只有POST webhook可以接收
+        if (!"POST".equalsIgnoreCase(n8nTable.getMethod())) {
+            throw new TrinoException(NOT_SUPPORTED, "INSERT requires a POST webhook: " + n8nTable.getSchemaTableName() + " uses " + n8nTable.getMethod());
+        }
+        if (retryMode != RetryMode.NO_RETRIES) {
+            throw new TrinoException(NOT_SUPPORTED, "N8N connector does not support query retries for INSERT");
+        }
+        
+        return new N8nInsertTableHandle(n8nTable, columns.stream()
+                .map(N8nColumnHandle.class::cast)
+                .collect(ImmutableList.toImmutableList()));
+    }
+    
+    @Override
+    public Optional<ConnectorOutputMetadata> finishInsert(
+            ConnectorSession session,
+            ConnectorInsertTableHandle insertHandle,
+            List<ConnectorTableHandle> sourceTableHandles,
+            Collection<Slice> fragments,
+            Collection<ComputedStatistics> computedStatistics) {
+        // 数据已由各个page sink发送到webhook
+        return Optional.empty();
+    }
+    
+    @Override
+    public Optional<ConstraintApplicationResult<ConnectorTableHandle>> applyFilter(ConnectorSession session, ConnectorTableHandle tableHandle, Constraint constraint) {
+        if (!(tableHandle instanceof N8nExecutionsTableHandle executionsTable)) {
+            return Optional.empty();
+        }
+        
+        // 下推的条件只用于减少API调用，仍由Trino完整过滤
+        return N8nExecutionsTable.applyFilter(executionsTable, constraint.getSummary())
+                .map(handle -> new ConstraintApplicationResult<>(handle, constraint.getSummary(), constraint.getExpression(), false));
     }
     
     @Override
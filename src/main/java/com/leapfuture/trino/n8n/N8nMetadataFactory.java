@@ -0,0 +1,29 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.inject.Inject;
+
+/**
+ * N8N Metadata工厂 - 为每个事务创建独立的N8nMetadata
+ */
+public class N8nMetadataFactory {
+    
+    private final N8nApiClient apiClient;
+    private final N8nConfig config;
+    private final N8nTableStatistics tableStatistics;
+    
+    @Inject
+    public N8nMetadataFactory(N8nApiClient apiClient, N8nConfig config, N8nTableStatistics tableStatistics) {
+        this.apiClient = apiClient;
+        this.config = config;
+        this.tableStatistics = tableStatistics;
+    }
+    
+    /**
+     * 创建事务的元数据
+     * 
+     * @return 元数据
+     */
+    public N8nMetadata create() {
+        return new N8nMetadata(apiClient, config, tableStatistics);
+    }
+}
@@ -19,11 +19,25 @@ public class N8nModule implements Module {
         
         // 绑定其他服务类为单例
         binder.bind(N8nConnector.class).in(Scopes.SINGLETON);
-        binder.bind(N8nMetadata.class).in(Scopes.SINGLETON);
+        binder.bind(N8nMetadataFactory.class).in(Scopes.SINGLETON);
         binder.bind(N8nSplitManager.class).in(Scopes.SINGLETON);
+        binder.bind(N8nSessionProperties.class).in(Scopes.SINGLETON);
         binder.bind(N8nPageSourceProvider.class).in(Scopes.SINGLETON);
+        binder.bind(N8nPageSinkProvider.class).in(Scopes.SINGLETON);
         binder.bind(N8nApiClient.class).in(Scopes.SINGLETON);
         binder.bind(N8nHttpClient.class).in(Scopes.SINGLETON);
         binder.bind(N8nConfigHolder.class).in(Scopes.SINGLETON);
+        binder.bind(N8nTracing.class).in(Scopes.SINGLETON);
+        binder.bind(N8nScanCache.class).in(Scopes.SINGLETON);
+        binder.bind(N8nTableStatistics.class).in(Scopes.SINGLETON);
+        binder.bind(N8nDeliverySpool.class).in(Scopes.SINGLETON);
+        binder.bind(N8nExecutionCache.class).in(Scopes.SINGLETON);
+        binder.bind(N8nDeadLetterStore.class).in(Scopes.SINGLETON);
+        binder.bind(N8nDeadLettersTable.class).in(Scopes.SINGLETON);
+        binder.bind(N8nDeadLetterReplayTable.class).in(Scopes.SINGLETON);
+        binder.bind(N8nWorkflowsTable.class).in(Scopes.SINGLETON);
+        binder.bind(N8nNodesTable.class).in(Scopes.SINGLETON);
+        binder.bind(N8nRuntimeStatsTable.class).in(Scopes.SINGLETON);
+        binder.bind(N8nReplayDeadLettersProcedure.class).in(Scopes.SINGLETON);
     }
 }
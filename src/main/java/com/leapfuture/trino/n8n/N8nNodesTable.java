@@ -0,0 +1,162 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.slice.Slice;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.predicate.TupleDomain;
+import io.trino.spi.type.Type;
+
+import java.util.Set;
+
+import static io.trino.spi.type.BooleanType.BOOLEAN;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N节点系统表 - n8n.system.nodes
+ * 
+ * 每个工作流节点一行，参数和凭证为JSON，直接读取coordinator上缓存的工作流元数据快照，
+ * 不调用N8N API或webhook。
+ */
+public class N8nNodesTable implements SystemTable {
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(
+            new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "nodes"),
+            ImmutableList.of(
+                    new ColumnMetadata("workflow_id", VARCHAR),
+                    new ColumnMetadata("workflow_name", VARCHAR),
+                    new ColumnMetadata("id", VARCHAR),
+                    new ColumnMetadata("name", VARCHAR),
+                    new ColumnMetadata("type", VARCHAR),
+                    new ColumnMetadata("type_version", DOUBLE),
+                    new ColumnMetadata("disabled", BOOLEAN),
+                    new ColumnMetadata("parameters", VARCHAR),
+                    new ColumnMetadata("credentials", VARCHAR)));
+    
+    private final N8nApiClient apiClient;
+    
+    @Inject
+    public N8nNodesTable(N8nApiClient apiClient) {
+        this.apiClient = apiClient;
+    }
+    
+    @Override
+    public Distribution getDistribution() {
+        return Distribution.SINGLE_COORDINATOR;
+    }
+    
+    @Override
+    public ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    @Override
+    public RecordCursor cursor(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            TupleDomain<Integer> constraint,
+            Set<Integer> requiredColumns,
+            ConnectorSplit split) {
+        return new NodeCursor(apiClient.getWorkflowSnapshot().getCatalog());
+    }
+    
+    private static class NodeCursor implements RecordCursor {
+        private final N8nWorkflowCatalog catalog;
+        private int position = -1;
+        
+        public NodeCursor(N8nWorkflowCatalog catalog) {
+            this.catalog = catalog;
+        }
+        
+        @Override
+        public long getCompletedBytes() {
+            return 0;
+        }
+        
+        @Override
+        public long getReadTimeNanos() {
+            return 0;
+        }
+        
+        @Override
+        public Type getType(int field) {
+            return METADATA.getColumns().get(field).getType();
+        }
+        
+        @Override
+        public boolean advanceNextPosition() {
+            if (position + 1 >= catalog.getNodeCount()) {
+                return false;
+            }
+            position++;
+            return true;
+        }
+        
+        @Override
+        public boolean getBoolean(int field) {
+            return catalog.isNodeDisabled(position);
+        }
+        
+        @Override
+        public long getLong(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public double getDouble(int field) {
+            return catalog.getNodeTypeVersion(position);
+        }
+        
+        @Override
+        public Slice getSlice(int field) {
+            switch (field) {
+                case 0:
+                    return catalog.getWorkflowId(catalog.getNodeWorkflow(position));
+                case 1:
+                    return catalog.getWorkflowName(catalog.getNodeWorkflow(position));
+                case 2:
+                    return catalog.getNodeId(position);
+                case 3:
+                    return catalog.getNodeName(position);
+                case 4:
+                    return catalog.getNodeType(position);
+                case 7:
+                    return catalog.getNodeParameters(position);
+                case 8:
+                    return catalog.getNodeCredentials(position);
+                default:
+                    throw new IllegalArgumentException("不是字符串列: " + field);
+            }
+        }
+        
+        @Override
+        public Object getObject(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public boolean isNull(int field) {
+            switch (field) {
+                case 5:
+                    return Double.isNaN(catalog.getNodeTypeVersion(position));
+                case 6:
+                    return false;
+                default:
+                    return getSlice(field) == null;
+            }
+        }
+        
+        @Override
+        public void close() {
+            position = catalog.getNodeCount();
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.trino.spi.Page;
+import io.trino.spi.TrinoException;
+import io.trino.spi.block.Block;
+import io.trino.spi.connector.ConnectorPageSink;
+import io.trino.spi.connector.ConnectorPageSinkId;
+import io.trino.spi.connector.ConnectorSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_FILESYSTEM_ERROR;
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_WEBHOOK_ERROR;
+import static io.trino.spi.StandardErrorCode.GENERIC_INSUFFICIENT_RESOURCES;
+import static io.trino.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N Page Sink - 把INSERT的数据行批量POST到webhook
+ * 
+ * 每行的response_data作为一条记录：合法的JSON值原样写入，否则作为JSON字符串写入，NULL写为null。
+ * 记录直接从page序列化为JSON数组，每批最多n8n.insert.batch-size行，
+ * 最多n8n.insert.max-concurrent-requests个请求在INSERT线程池中并发发送，重试等待不会占用表扫描的线程。
+ * 待发送的批次积压时appendPage返回未完成的future，向Trino施加背压。
+ * 每个批次发送前写入{@link N8nDeliverySpool}，失败时按配置重试，并携带由查询ID、page sink ID和批次序号组成的Idempotency-Key。
+ * 启用{@link N8nDeadLetterStore}时，重试后仍然失败的批次中的行写入死信存储，写入继续进行。
+ */
+public class N8nPageSink implements ConnectorPageSink {
+    
+    private final N8nDeliverySpool spool;
+    private final N8nDeadLetterStore deadLetterStore;
+    private final N8nWebhookSender sender;
+    private final String webhookPath;
+    private final String webhookUrl;
+    private final String queryId;
+    private final long pageSinkId;
+    private final int dataChannel;
+    private final int batchSize;
+    private final int maxConcurrentRequests;
+    private final ExecutorService executor;
+    
+    // 正在组装的批次，只在driver线程中使用
+    private final DynamicSliceOutput batchOutput = new DynamicSliceOutput(64 * 1024);
+    private JsonGenerator batchGenerator;
+    private int batchRows;
+    private long batchSequence;
+    
+    // 以下状态由driver线程和发送线程共享，通过this加锁保护
+    private final Queue<Batch> pendingBatches = new ArrayDeque<>();
+    private long pendingBytes;
+    private int inFlight;
+    private long completedBytes;
+    private Throwable failure;
+    private CompletableFuture<?> pendingDrained = CompletableFuture.completedFuture(null);
+    private CompletableFuture<?> allDelivered = CompletableFuture.completedFuture(null);
+    private boolean aborted;
+    
+    public N8nPageSink(ConnectorSession session, N8nConfig config, N8nDeliverySpool spool, N8nDeadLetterStore deadLetterStore, N8nInsertTableHandle insertHandle, ConnectorPageSinkId pageSinkId) {
+        this.spool = spool;
+        this.deadLetterStore = deadLetterStore;
+        this.sender = new N8nWebhookSender(config, N8nSessionProperties.getWebhookTimeout(session));
+        this.webhookPath = insertHandle.getTableHandle().getWebhookPath();
+        this.webhookUrl = config.buildWebhookUrl(webhookPath);
+        this.queryId = session.getQueryId();
+        this.pageSinkId = pageSinkId.getId();
+        this.batchSize = N8nSessionProperties.getInsertBatchSize(session);
+        this.maxConcurrentRequests = N8nSessionProperties.getMaxInflightRequests(session);
+        this.executor = N8nHttpClient.getExecutor(config, N8nHttpClient.Pool.INSERT);
+        
+        List<N8nColumnHandle> columns = insertHandle.getColumnHandles();
+        int channel = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if ("response_data".equals(columns.get(i).getName())) {
+                channel = i;
+            }
+        }
+        this.dataChannel = channel;
+    }
+    
+    @Override
+    public synchronized long getCompletedBytes() {
+        return completedBytes;
+    }
+    
+    @Override
+    public synchronized long getMemoryUsage() {
+        // 已组装待发送的批次 + 正在组装的批次
+        return pendingBytes + batchOutput.getRetainedSize();
+    }
+    
+    @Override
+    public CompletableFuture<?> appendPage(Page page) {
+        checkFailure();
+        
+        Block block = page.getBlock(dataChannel);
+        try {
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                JsonGenerator generator = batchGenerator();
+                if (block.isNull(position)) {
+                    generator.writeNull();
+                } else {
+                    writeRecord(generator, VARCHAR.getSlice(block, position));
+                }
+                batchRows++;
+                if (batchRows >= batchSize) {
+                    flushBatch();
+                }
+            }
+        } catch (IOException e) {
+            throw new TrinoException(GENERIC_INTERNAL_ERROR, "Failed to serialize webhook batch: " + e.getMessage(), e);
+        }
+        
+        synchronized (this) {
+            return pendingBatches.isEmpty() ? NOT_BLOCKED : pendingDrained;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<Collection<Slice>> finish() {
+        checkFailure();
+        try {
+            flushBatch();
+        } catch (IOException e) {
+            throw new TrinoException(GENERIC_INTERNAL_ERROR, "Failed to serialize webhook batch: " + e.getMessage(), e);
+        }
+        
+        CompletableFuture<?> delivered;
+        synchronized (this) {
+            delivered = allDelivered;
+        }
+        return delivered.thenApply(ignored -> {
+            checkFailure();
+            return ImmutableList.of();
+        });
+    }
+    
+    @Override
+    public void abort() {
+        synchronized (this) {
+            aborted = true;
+            pendingBatches.clear();
+            pendingBytes = 0;
+        }
+        sender.cancel();
+    }
+    
+    private JsonGenerator batchGenerator() throws IOException {
+        if (batchGenerator == null) {
+            batchOutput.reset();
+            batchGenerator = N8nJson.createGenerator(batchOutput);
+            batchGenerator.writeStartArray();
+        }
+        return batchGenerator;
+    }
+    
+    /**
+     * 写入一条记录，合法的JSON值原样复制（数字保持原始文本），否则作为字符串
+     */
+    private static void writeRecord(JsonGenerator generator, Slice value) throws IOException {
+        if (isJsonValue(value)) {
+            try (JsonParser parser = N8nJson.createParser(value)) {
+                parser.nextToken();
+                N8nJson.copyValue(parser, generator);
+                return;
+            }
+        }
+        generator.writeString(value.toStringUtf8());
+    }
+    
+    private static boolean isJsonValue(Slice value) {
+        try (JsonParser parser = N8nJson.createParser(value)) {
+            if (parser.nextToken() == null) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * 结束当前批次并加入发送队列
+     */
+    private void flushBatch() throws IOException {
+        if (batchGenerator == null) {
+            return;
+        }
+        batchGenerator.writeEndArray();
+        batchGenerator.close();
+        batchGenerator = null;
+        batchRows = 0;
+        
+        Batch batch = new Batch(N8nWebhookSender.idempotencyKey(queryId, pageSinkId, batchSequence++), batchOutput.slice().copy());
+        CompletableFuture<?> drained;
+        synchronized (this) {
+            // 已中止或已有批次失败时丢弃，失败会在下一次appendPage或finish时抛出
+            if (aborted || failure != null) {
+                return;
+            }
+            if (pendingBatches.isEmpty()) {
+                pendingDrained = new CompletableFuture<>();
+            }
+            if (pendingBatches.isEmpty() && inFlight == 0) {
+                allDelivered = new CompletableFuture<>();
+            }
+            pendingBatches.add(batch);
+            pendingBytes += batch.body.length();
+            dispatch();
+            drained = pendingBatches.isEmpty() ? pendingDrained : null;
+        }
+        if (drained != null) {
+            drained.complete(null);
+        }
+    }
+    
+    /**
+     * 在并发上限内发送排队的批次，调用方持有this锁
+     */
+    private void dispatch() {
+        while (inFlight < maxConcurrentRequests && !pendingBatches.isEmpty() && failure == null && !aborted) {
+            Batch batch = pendingBatches.poll();
+            pendingBytes -= batch.body.length();
+            inFlight++;
+            CompletableFuture<Void> send;
+            try {
+                send = CompletableFuture.runAsync(() -> sendBatch(batch), executor);
+            } catch (RejectedExecutionException e) {
+                // 发送线程池已排满，按发送失败处理；回调在锁外执行
+                CompletableFuture.<Void>failedFuture(e)
+                        .whenCompleteAsync((ignored, throwable) -> batchCompleted(batch, throwable));
+                break;
+            }
+            send.whenComplete((ignored, throwable) -> batchCompleted(batch, throwable));
+        }
+    }
+    
+    private void batchCompleted(Batch batch, Throwable throwable) {
+        CompletableFuture<?> drained;
+        CompletableFuture<?> delivered;
+        synchronized (this) {
+            inFlight--;
+            if (throwable != null) {
+                if (failure == null) {
+                    failure = throwable;
+                }
+                // 失败后不再发送剩余批次
+                pendingBatches.clear();
+                pendingBytes = 0;
+            } else {
+                completedBytes += batch.body.length();
+            }
+            dispatch();
+            drained = pendingBatches.isEmpty() ? pendingDrained : null;
+            delivered = pendingBatches.isEmpty() && inFlight == 0 ? allDelivered : null;
+        }
+        if (drained != null) {
+            drained.complete(null);
+        }
+        if (delivered != null) {
+            delivered.complete(null);
+        }
+    }
+    
+    /**
+     * 发送一个批次（在后台线程中执行），发送前写入预写日志，成功后确认
+     */
+    private void sendBatch(Batch batch) {
+        N8nDeliverySpool.SpooledBatch spooled;
+        try {
+            spooled = spool.append(webhookUrl, batch.idempotencyKey, batch.body);
+        } catch (IOException e) {
+            throw new TrinoException(N8N_FILESYSTEM_ERROR, "Failed to write INSERT batch to the n8n spool: " + e.getMessage(), e);
+        }
+        try {
+            sender.post(spooled.getUrl(), spooled.getBody(), spooled.getIdempotencyKey());
+        } catch (N8nWebhookSender.DeliveryException e) {
+            // 没有死信存储时批次保留在日志中，由预写日志在后台重放
+            if (!deadLetterStore.isEnabled()) {
+                spool.deliveryFailed(spooled, e);
+                throw e;
+            }
+            // 重试后仍然失败的行写入死信存储，不阻塞后续批次
+            try {
+                deadLetterStore.add(webhookPath, e.getMessage(), splitRecords(batch.body));
+            } catch (IOException deadLetterError) {
+                e.addSuppressed(deadLetterError);
+                throw e;
+            }
+        }
+        spool.acknowledge(spooled);
+    }
+    
+    private static List<Slice> splitRecords(Slice batch) throws IOException {
+        ImmutableList.Builder<Slice> records = ImmutableList.builder();
+        N8nResponseReader.readRecords(batch.getInput(), record -> records.add(record.copy()));
+        return records.build();
+    }
+    
+    private synchronized void checkFailure() {
+        if (failure == null) {
+            return;
+        }
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof TrinoException) {
+            throw (TrinoException) cause;
+        }
+        if (cause instanceof N8nWebhookSender.DeliveryException) {
+            throw new TrinoException(N8N_WEBHOOK_ERROR, "Failed to deliver INSERT batch to n8n webhook " + webhookPath + ": " + cause.getMessage(), cause);
+        }
+        if (cause instanceof RejectedExecutionException) {
+            throw new TrinoException(GENERIC_INSUFFICIENT_RESOURCES, "Too many n8n INSERT batches queued, see n8n.insert.max-queued-requests", cause);
+        }
+        throw new TrinoException(GENERIC_INTERNAL_ERROR, "Failed to write to n8n webhook " + webhookPath + ": " + cause.getMessage(), cause);
+    }
+    
+    /**
+     * 待发送的批次
+     */
+    private static class Batch {
+        private final String idempotencyKey;
+        private final Slice body;
+        
+        public Batch(String idempotencyKey, Slice body) {
+            this.idempotencyKey = idempotencyKey;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.inject.Inject;
+import io.trino.spi.connector.ConnectorInsertTableHandle;
+import io.trino.spi.connector.ConnectorOutputTableHandle;
+import io.trino.spi.connector.ConnectorPageSink;
+import io.trino.spi.connector.ConnectorPageSinkId;
+import io.trino.spi.connector.ConnectorPageSinkProvider;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+
+/**
+ * N8N Page Sink Provider
+ */
+public class N8nPageSinkProvider implements ConnectorPageSinkProvider {
+    
+    private final N8nConfig config;
+    private final N8nDeliverySpool spool;
+    private final N8nDeadLetterStore deadLetterStore;
+    
+    @Inject
+    public N8nPageSinkProvider(N8nConfig config, N8nDeliverySpool spool, N8nDeadLetterStore deadLetterStore) {
+        this.config = config;
+        this.spool = spool;
+        this.deadLetterStore = deadLetterStore;
+    }
+    
+    @Override
+    public ConnectorPageSink createPageSink(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            ConnectorOutputTableHandle outputTableHandle,
+            ConnectorPageSinkId pageSinkId) {
+        // 不支持CREATE TABLE AS
+        throw new UnsupportedOperationException("N8N connector does not support creating tables");
+    }
+    
+    @Override
+    public ConnectorPageSink createPageSink(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            ConnectorInsertTableHandle insertTableHandle,
+            ConnectorPageSinkId pageSinkId) {
+        
+        return new N8nPageSink(session, config, spool, deadLetterStore, (N8nInsertTableHandle) insertTableHandle, pageSinkId);
+    }
+}
@@ -1,190 +1,745 @@
 package com.leapfuture.trino.n8n;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import io.opentelemetry.context.Context;
+import io.trino.plugin.base.metrics.DurationTiming;
+import io.trino.plugin.base.metrics.LongCount;
 import io.trino.spi.Page;
+import io.trino.spi.TrinoException;
 import io.trino.spi.PageBuilder;
 import io.trino.spi.block.BlockBuilder;
 import io.trino.spi.connector.ColumnHandle;
 import io.trino.spi.connector.ConnectorPageSource;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.DynamicFilter;
+import io.trino.spi.metrics.Metric;
+import io.trino.spi.metrics.Metrics;
+import io.trino.spi.predicate.Domain;
+import io.trino.spi.predicate.TupleDomain;
 import io.trino.spi.type.Type;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_WEBHOOK_ERROR;
+import static io.trino.spi.StandardErrorCode.EXCEEDED_SCAN_LIMIT;
+import static io.trino.spi.StandardErrorCode.GENERIC_INSUFFICIENT_RESOURCES;
+import static io.trino.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
 import static io.trino.spi.type.VarcharType.VARCHAR;
-import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * N8N Page Source - 从N8N webhook读取数据
+ * 
+ * webhook请求在创建时提交到后台线程池异步执行，
+ * 在响应返回之前isBlocked()返回未完成的future，不占用Trino driver线程。
+ * 响应体以流的方式逐条解析为行（JSON数组的每个元素、NDJSON的每一行，
+ * 或非JSON响应的原始字节），写满一页即交给Trino，不会整体缓冲为String。
+ * 已构建但尚未被Trino取走的page超过上限时后台线程等待driver读取，响应体不会整体堆积在内存中。
+ * 响应超过max_response_size时查询失败，不会返回截断的数据；已经返回部分行之后的读取失败同样使查询失败，
+ * 只有还没有返回任何行时才把失败作为错误行返回。
+ * 读取的字节数、读取耗时以及缓冲的page和PageBuilder占用的内存都会上报给Trino。
+ * 启用扫描结果缓存时，优先从{@link N8nScanCache}读取，未命中时把解析出的记录写回缓存。
+ * 配置了查找字段时，会短暂等待lookup_key列上的动态过滤（等待期间不占用扫描线程），
+ * 把收集到的join key分批发送给webhook，只获取匹配的记录。
+ * 成功完成的完整表扫描会把行数、数据大小、NDV和空值数记录到{@link N8nTableStatistics}。
  */
 public class N8nPageSource implements ConnectorPageSource {
     
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    
+    // 错误信息中保留的响应体最大长度
+    private static final int MAX_ERROR_BODY_LENGTH = 1024;
+    
+    // 等待Trino读取的page的最大大小，超过后后台线程等待
+    private static final long MAX_QUEUED_BYTES = DataSize.of(16, DataSize.Unit.MEGABYTE).toBytes();
     
     private final N8nConfig config;
+    // 扫描连接按查询和用户公平分配
+    private final String queryId;
+    private final String user;
+    private final N8nScanCache scanCache;
+    private final N8nTableStatistics tableStatistics;
+    private final N8nQueryBudget budget;
+    // 按会话属性确定的请求设置
+    private final RequestConfig requestConfig;
+    private final DataSize maxResponseSize;
+    private final int lookupBatchSize;
+    private final boolean scanCacheEnabled;
+    private final Duration scanCacheTtl;
     private final N8nSplit split;
     private final N8nTableHandle tableHandle;
     private final List<N8nColumnHandle> columnHandles;
+    private final DynamicFilter dynamicFilter;
     private final PageBuilder pageBuilder;
+    private final CompletableFuture<?> responseFuture;
+    
+    // 本次扫描的统计收集器，只在后台线程中使用；不收集统计时为null
+    private final N8nTableStatistics.Collector statisticsCollector;
+    
+    // 当前正在执行的请求，关闭时用于取消
+    private volatile HttpUriRequestBase currentRequest;
+    
+    // 以下状态由后台线程写入、driver线程读取，通过this加锁保护；队列排满时后台线程在this上等待
+    private final Queue<Page> pages = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean producerFinished;
+    private CompletableFuture<?> blocked = new CompletableFuture<>();
+    
+    // 以下统计由后台线程更新，driver线程读取
+    private final AtomicLong completedBytes = new AtomicLong();
+    private final AtomicLong readTimeNanos = new AtomicLong();
+    private final AtomicLong readCpuNanos = new AtomicLong();
+    // PageBuilder只在后台线程中使用，driver线程通过这个值读取它的大小
+    private volatile long pageBuilderRetainedBytes;
     
-    private boolean finished = false;
+    // 以下连接器指标由后台线程更新，通过getMetrics显示在EXPLAIN ANALYZE和查询统计中
+    private final AtomicLong httpCalls = new AtomicLong();
+    private final AtomicLong httpRetries = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong httpBlockedNanos = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong pagesProduced = new AtomicLong();
+    
+    // 待写入扫描缓存的记录，超过单条目上限时放弃缓存
+    private volatile DynamicSliceOutput cacheOutput;
+    
+    private volatile boolean closed;
+    
+    // 创建page source的driver线程的追踪上下文，webhook请求的span挂在其下
+    private final Context traceContext;
+    // 提交到扫描线程池的时间
+    private volatile long submittedNanos;
+    // 后台线程开始执行前在扫描线程池中排队的时间，只记录在第一个请求的span上（仅由后台线程访问）
+    private long pendingQueueWaitNanos;
+    // 已生成的行数（仅由后台线程访问）
+    private long rowsProduced;
+    
+    // n8n.system.runtime_stats中该webhook路径的统计
+    private final N8nRuntimeStats.PathStats runtimeStats;
+    private volatile Runnable exitQueue = () -> {};
+    
+    // 超出查询预算等需要使查询失败（而不是返回错误行）的异常
+    private volatile TrinoException failure;
     
     public N8nPageSource(
+            ConnectorSession session,
             N8nConfig config,
+            N8nScanCache scanCache,
+            N8nTableStatistics tableStatistics,
+            N8nQueryBudget budget,
             N8nSplit split,
             N8nTableHandle tableHandle,
-            List<ColumnHandle> columnHandles) {
+            List<ColumnHandle> columnHandles,
+            DynamicFilter dynamicFilter) {
         this.config = config;
+        this.queryId = session.getQueryId();
+        this.user = session.getUser();
+        this.scanCache = scanCache;
+        this.tableStatistics = tableStatistics;
+        this.budget = budget;
+        this.requestConfig = N8nHttpClient.createRequestConfig(N8nSessionProperties.getWebhookTimeout(session));
+        this.maxResponseSize = N8nSessionProperties.getMaxResponseSize(session);
+        this.lookupBatchSize = N8nSessionProperties.getLookupBatchSize(session);
+        this.scanCacheEnabled = N8nSessionProperties.isScanCacheEnabled(session);
+        Duration sessionCacheTtl = N8nSessionProperties.getScanCacheTtl(session);
+        this.scanCacheTtl = sessionCacheTtl != null ? sessionCacheTtl : config.getScanCacheTtl(tableHandle.getTableName());
         this.split = split;
         this.tableHandle = tableHandle;
         this.columnHandles = columnHandles.stream()
                 .map(N8nColumnHandle.class::cast)
                 .collect(ImmutableList.toImmutableList());
+        this.dynamicFilter = dynamicFilter;
         
         // 创建PageBuilder
         List<Type> types = this.columnHandles.stream()
                 .map(N8nColumnHandle::getType)
                 .collect(ImmutableList.toImmutableList());
         this.pageBuilder = new PageBuilder(types);
+        
+        this.statisticsCollector = tableStatistics.isCollectingScans()
+                ? N8nTableStatistics.newCollector(this.columnHandles.stream()
+                        .map(N8nColumnHandle::getName)
+                        .collect(ImmutableList.toImmutableList()))
+                : null;
+        
+        // 创建时即异步发起webhook请求，扫描线程池排满时立即失败
+        this.traceContext = Context.current();
+        this.runtimeStats = N8nRuntimeStats.forPath(N8nHttpClient.Pool.SCAN, split.getWebhookPath());
+        ExecutorService executor = N8nHttpClient.getExecutor(config, N8nHttpClient.Pool.SCAN);
+        CompletableFuture<?> filterReady = awaitLookupFilter();
+        if (filterReady.isDone()) {
+            this.responseFuture = submitRead(executor);
+        } else {
+            // 动态过滤就绪或等待超时后再提交，等待期间不占用扫描线程
+            this.responseFuture = filterReady.thenCompose(ignored -> submitRead(executor));
+            responseFuture.whenComplete((ignored, e) -> {
+                if (e != null && !closed) {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    failure = cause instanceof TrinoException
+                            ? (TrinoException) cause
+                            : new TrinoException(GENERIC_INTERNAL_ERROR, "Failed to start n8n webhook scan", cause);
+                    finishProducer();
+                }
+            });
+        }
+    }
+    
+    /**
+     * 把webhook请求提交到扫描线程池
+     */
+    private CompletableFuture<Void> submitRead(ExecutorService executor) {
+        if (closed) {
+            return CompletableFuture.completedFuture(null);
+        }
+        submittedNanos = System.nanoTime();
+        Runnable exit = runtimeStats.enterQueue();
+        exitQueue = exit;
+        try {
+            return CompletableFuture.runAsync(this::readWebhook, executor);
+        } catch (RejectedExecutionException e) {
+            exit.run();
+            throw new TrinoException(GENERIC_INSUFFICIENT_RESOURCES, "Too many n8n webhook scans queued, see n8n.scan.max-queued-requests", e);
+        }
     }
     
     @Override
     public long getCompletedBytes() {
-        return 0;
+        return completedBytes.get();
     }
     
     @Override
     public long getReadTimeNanos() {
-        return 0;
+        return readTimeNanos.get();
+    }
+    
+    /**
+     * 本page source的连接器指标，Trino按查询汇总
+     * 
+     * httpBlockedTime是等待响应头和从网络读取响应体的时间，
+     * jsonParseTime是流式解析响应并写入page的时间（不含网络读取）
+     */
+    @Override
+    public Metrics getMetrics() {
+        return new Metrics(ImmutableMap.<String, Metric<?>>builder()
+                .put("httpCalls", new LongCount(httpCalls.get()))
+                .put("httpRetries", new LongCount(httpRetries.get()))
+                .put("cacheHits", new LongCount(cacheHits.get()))
+                .put("cacheMisses", new LongCount(cacheMisses.get()))
+                .put("bytesIn", new LongCount(bytesIn.get()))
+                .put("bytesOut", new LongCount(bytesOut.get()))
+                .put("httpBlockedTime", new DurationTiming(new Duration(httpBlockedNanos.get(), NANOSECONDS)))
+                .put("jsonParseTime", new DurationTiming(new Duration(parseNanos.get(), NANOSECONDS)))
+                .put("readCpuTime", new DurationTiming(new Duration(readCpuNanos.get(), NANOSECONDS)))
+                .put("pagesProduced", new LongCount(pagesProduced.get()))
+                .buildOrThrow());
     }
     
     @Override
-    public long getMemoryUsage() {
-        return 0;
+    public synchronized long getMemoryUsage() {
+        // 已构建但尚未被Trino取走的page + 正在填充的PageBuilder + 待写入缓存的记录
+        DynamicSliceOutput pendingCache = cacheOutput;
+        return queuedBytes + pageBuilderRetainedBytes + (pendingCache == null ? 0 : pendingCache.getRetainedSize());
     }
     
     @Override
-    public boolean isFinished() {
-        return finished;
+    public synchronized boolean isFinished() {
+        checkFailure();
+        return closed || (producerFinished && pages.isEmpty());
     }
     
     @Override
     @SuppressWarnings("deprecation")
-    public Page getNextPage() {
-        if (finished) {
-            return null;
-        }
-        
-        finished = true;
-        
-        try {
-            // 调用实际的webhook获取数据
-            String responseData = callWebhook();
-            
-            // 构建数据行
-            buildRowFromWebhookResponse(responseData, "200");
-            
-            Page page = pageBuilder.build();
-            pageBuilder.reset();
-            
-            return page;
-            
-        } catch (Exception e) {
-            // 构建错误行
-            buildRowFromWebhookResponse("{\"error\": \"" + e.getMessage() + "\"}", "500");
-            Page page = pageBuilder.build();
-            pageBuilder.reset();
-            return page;
+    public synchronized Page getNextPage() {
+        checkFailure();
+        Page page = pages.poll();
+        if (page != null) {
+            queuedBytes -= page.getRetainedSizeInBytes();
+            notifyAll();
         }
+        return page;
     }
     
     @Override
-    public CompletableFuture<?> isBlocked() {
-        return completedFuture(null);
+    public synchronized CompletableFuture<?> isBlocked() {
+        if (closed || producerFinished || !pages.isEmpty()) {
+            return NOT_BLOCKED;
+        }
+        if (blocked.isDone()) {
+            blocked = new CompletableFuture<>();
+        }
+        return blocked;
     }
     
     @Override
     public void close() {
-        // 清理资源
+        closed = true;
+        // 排队中被取消的任务不会再执行
+        exitQueue.run();
+        // 取消尚未完成的webhook请求
+        if (!responseFuture.isDone()) {
+            HttpUriRequestBase request = currentRequest;
+            if (request != null) {
+                request.cancel();
+            }
+            responseFuture.cancel(false);
+        }
+        synchronized (this) {
+            pages.clear();
+            queuedBytes = 0;
+            blocked.complete(null);
+            notifyAll();
+        }
+    }
+    
+    private void checkFailure() {
+        if (failure != null) {
+            throw failure;
+        }
     }
     
     /**
-     * 调用webhook获取数据
+     * 创建webhook请求
      */
-    private String callWebhook() throws Exception {
-        CloseableHttpClient httpClient = N8nHttpClient.getClient(config);
-        String fullUrl = config.buildWebhookUrl(split.getWebhookPath());
-        
+    private HttpUriRequestBase createRequest(String fullUrl, String requestBody) {
         if ("POST".equalsIgnoreCase(split.getMethod())) {
             HttpPost httpPost = new HttpPost(fullUrl);
+            httpPost.setConfig(requestConfig);
             httpPost.setHeader("Content-Type", "application/json");
             httpPost.setHeader("Accept", "application/json");
             
             // POST请求可以发送空的JSON body来触发webhook
-            StringEntity entity = new StringEntity("{}", ContentType.APPLICATION_JSON);
+            StringEntity entity = new StringEntity(requestBody, ContentType.APPLICATION_JSON);
             httpPost.setEntity(entity);
+            return httpPost;
+        }
+        
+        HttpGet httpGet = new HttpGet(fullUrl);
+        httpGet.setConfig(requestConfig);
+        httpGet.setHeader("Accept", "application/json");
+        return httpGet;
+    }
+    
+    /**
+     * 调用webhook并逐条读取响应（在后台线程中执行）
+     */
+    private void readWebhook() {
+        long startNanos = System.nanoTime();
+        long startCpuNanos = currentThreadCpuTime();
+        pendingQueueWaitNanos = startNanos - submittedNanos;
+        exitQueue.run();
+        try {
+            Optional<List<String>> lookupKeys = getLookupKeys();
+            if (lookupKeys.isEmpty()) {
+                readRequest(Optional.empty());
+                // 只有成功完成的完整扫描才代表表的真实大小
+                if (statisticsCollector != null && !closed) {
+                    tableStatistics.record(tableHandle.getSchemaTableName(), statisticsCollector);
+                }
+                return;
+            }
             
-            return httpClient.execute(httpPost, response -> {
+            // 按批发送join key，没有key时不调用webhook
+            for (List<String> batch : Lists.partition(lookupKeys.get(), lookupBatchSize)) {
+                if (closed) {
+                    return;
+                }
+                readRequest(Optional.of(batch));
+            }
+        } catch (TrinoException e) {
+            failure = e;
+        } catch (Exception e) {
+            if (closed) {
+                return;
+            }
+            if (rowsProduced > 0) {
+                // 响应是流式读取的，已经返回的行之后再追加错误行，查询会以截断的数据成功
+                failure = new TrinoException(N8N_WEBHOOK_ERROR, "Failed to read n8n webhook " + split.getWebhookPath() + " after " + rowsProduced + " rows: " + e.getMessage(), e);
+            } else {
+                // 构建错误行
+                appendRow(Slices.utf8Slice(errorJson(e.getMessage())), "500", Instant.now().toString());
+            }
+        } finally {
+            cacheOutput = null;
+            readTimeNanos.addAndGet(System.nanoTime() - startNanos);
+            readCpuNanos.addAndGet(currentThreadCpuTime() - startCpuNanos);
+            finishProducer();
+        }
+    }
+    
+    /**
+     * 执行一次webhook请求，优先使用扫描缓存
+     * 
+     * @param keys 本次请求携带的join key，为空时不携带
+     */
+    private void readRequest(Optional<List<String>> keys) throws Exception {
+        boolean post = "POST".equalsIgnoreCase(split.getMethod());
+        String fullUrl = config.buildWebhookUrl(split.getWebhookPath());
+        String requestBody = "";
+        if (post) {
+            // POST请求可以发送空的JSON body来触发webhook
+            requestBody = keys.isPresent()
+                    ? N8nJson.write(generator -> {
+                        generator.writeStartObject();
+                        generator.writeArrayFieldStart(config.getLookupKeyParameter());
+                        for (String key : keys.get()) {
+                            generator.writeString(key);
+                        }
+                        generator.writeEndArray();
+                        generator.writeEndObject();
+                    })
+                    : "{}";
+        } else if (keys.isPresent()) {
+            // 每个key重复一次参数，key中的逗号等字符不会被拆分
+            String parameter = URLEncoder.encode(config.getLookupKeyParameter(), StandardCharsets.UTF_8);
+            StringBuilder url = new StringBuilder(fullUrl);
+            char separator = fullUrl.contains("?") ? '&' : '?';
+            for (String key : keys.get()) {
+                url.append(separator).append(parameter).append('=').append(URLEncoder.encode(key, StandardCharsets.UTF_8));
+                separator = '&';
+            }
+            fullUrl = url.toString();
+        }
+        
+        String cacheKey = N8nScanCache.cacheKey(split.getMethod(), fullUrl, requestBody);
+        if (scanCacheEnabled) {
+            Optional<N8nScanCache.CachedRecords> cached = scanCache.get(cacheKey);
+            runtimeStats.recordCacheLookup(cached.isPresent());
+            (cached.isPresent() ? cacheHits : cacheMisses).incrementAndGet();
+            if (cached.isPresent()) {
+                completedBytes.addAndGet(cached.get().getSizeInBytes());
+                cached.get().read(this::appendRow);
+                return;
+            }
+            cacheOutput = N8nScanCache.newRecordsOutput();
+        }
+        
+        // 按查询和用户公平分配扫描连接，一个查询的大量扫描不会占满全部连接；缓存命中不需要许可
+        N8nFairScheduler.Permit permit = acquirePermit();
+        if (permit == null) {
+            if (closed) {
+                return;
+            }
+            throw new TrinoException(GENERIC_INSUFFICIENT_RESOURCES, "Too many concurrent n8n webhook scans, see n8n.scan.max-connections and n8n.scan.max-queued-requests");
+        }
+        boolean completed;
+        try {
+            // 缓存命中不计入查询预算
+            long requestBytes = requestBody.getBytes(StandardCharsets.UTF_8).length;
+            budget.beginRequest(requestBytes);
+            // 缓存key使用逻辑URL，与实际发送到哪个webhook实例无关；响应字节在读取时计入预算
+            try (N8nWebhookRouter.Route route = N8nWebhookRouter.getRouter(config).route(fullUrl)) {
+                completed = callWebhook(route, createRequest(route.getUrl(), requestBody), requestBytes);
+            }
+        } finally {
+            permit.close();
+        }
+        
+        DynamicSliceOutput records = cacheOutput;
+        cacheOutput = null;
+        // 只缓存完整读取的2xx响应，被取消或因LIMIT提前关闭的扫描只读到了部分记录
+        if (records != null && completed && !closed) {
+            scanCache.put(cacheKey, records.slice().copy(), scanCacheTtl);
+        }
+    }
+    
+    /**
+     * 按查询和用户公平获取扫描连接，连接用满时最多等待webhook超时时间，等待时间计入请求span的排队时间
+     * 
+     * @return 许可；排队已满、等待超时或page source已关闭时为null
+     */
+    private N8nFairScheduler.Permit acquirePermit() {
+        long startNanos = System.nanoTime();
+        Runnable exit = runtimeStats.enterQueue();
+        try {
+            return N8nHttpClient.getScheduler(config, N8nHttpClient.Pool.SCAN)
+                    .acquire(queryId, user, config.getTimeout(N8nHttpClient.Pool.SCAN).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            exit.run();
+            pendingQueueWaitNanos += System.nanoTime() - startNanos;
+        }
+    }
+    
+    /**
+     * @return lookup_key列上有动态过滤时返回该列
+     */
+    private Optional<ColumnHandle> getLookupKeyColumn() {
+        if (!config.isLookupEnabled()) {
+            return Optional.empty();
+        }
+        return dynamicFilter.getColumnsCovered().stream()
+                .filter(column -> N8nMetadata.LOOKUP_KEY_COLUMN.equals(((N8nColumnHandle) column).getName()))
+                .findFirst();
+    }
+    
+    /**
+     * 短暂等待lookup_key列上的动态过滤收集完成，超时后使用当前已有的过滤条件
+     * 
+     * @return 动态过滤就绪或等待超时时完成的future，不需要等待时已完成
+     */
+    private CompletableFuture<?> awaitLookupFilter() {
+        if (getLookupKeyColumn().isEmpty() || !dynamicFilter.isAwaitable()) {
+            return NOT_BLOCKED;
+        }
+        // 不能在Trino的future上设置超时，另建一个future
+        CompletableFuture<Object> ready = new CompletableFuture<>();
+        dynamicFilter.isBlocked().whenComplete((ignored, e) -> ready.complete(null));
+        return ready.completeOnTimeout(null, config.getLookupDynamicFilterWait().toMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 根据lookup_key列上的动态过滤获取需要查找的join key
+     * 
+     * @return join key列表；不需要按key查找时返回empty
+     */
+    private Optional<List<String>> getLookupKeys() {
+        Optional<ColumnHandle> keyColumn = getLookupKeyColumn();
+        if (keyColumn.isEmpty()) {
+            return Optional.empty();
+        }
+        
+        TupleDomain<ColumnHandle> predicate = dynamicFilter.getCurrentPredicate();
+        if (predicate.isNone()) {
+            return Optional.of(ImmutableList.of());
+        }
+        Domain domain = predicate.getDomains().get().get(keyColumn.get());
+        if (domain == null) {
+            return Optional.empty();
+        }
+        if (domain.isNone()) {
+            return Optional.of(ImmutableList.of());
+        }
+        if (!domain.getValues().isDiscreteSet()) {
+            return Optional.empty();
+        }
+        
+        return Optional.of(domain.getValues().getDiscreteSet().stream()
+                .map(value -> ((Slice) value).toStringUtf8())
+                .collect(ImmutableList.toImmutableList()));
+    }
+    
+    /**
+     * 调用webhook获取数据
+     * 
+     * @return 是否完整读取了2xx响应；page source已关闭、请求没有发送时返回false
+     */
+    private boolean callWebhook(N8nWebhookRouter.Route route, HttpUriRequestBase request, long requestBytes) throws Exception {
+        CloseableHttpClient httpClient = N8nHttpClient.getClient(config, N8nHttpClient.Pool.SCAN);
+        
+        currentRequest = request;
+        if (closed) {
+            route.discard();
+            return false;
+        }
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.webhook.scan", traceContext, request, split.getWebhookPath(), requestBytes);
+        span.setQueueWaitNanos(pendingQueueWaitNanos);
+        pendingQueueWaitNanos = 0;
+        long bytesBefore = completedBytes.get();
+        long startNanos = runtimeStats.requestStarted();
+        httpCalls.incrementAndGet();
+        bytesOut.addAndGet(requestBytes);
+        Exception failure = null;
+        try {
+            httpClient.execute(request, span.getContext(), response -> {
+                httpBlockedNanos.addAndGet(System.nanoTime() - startNanos);
                 int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
+                span.setStatusCode(statusCode);
+                route.onResponse(statusCode);
+                HttpEntity entity = response.getEntity();
+                String timestamp = Instant.now().toString();
                 
-                if (statusCode >= 200 && statusCode < 300) {
-                    return responseBody;
-                } else {
-                    throw new RuntimeException("HTTP " + statusCode + ": " + responseBody);
+                if (statusCode < 200 || statusCode >= 300) {
+                    throw new RuntimeException("HTTP " + statusCode + ": " + readErrorBody(entity));
+                }
+                if (entity == null) {
+                    appendResponseRecord(Slices.EMPTY_SLICE, String.valueOf(statusCode), timestamp);
+                    return null;
                 }
-            });
-        } else {
-            HttpGet httpGet = new HttpGet(fullUrl);
-            httpGet.setHeader("Accept", "application/json");
-            
-            return httpClient.execute(httpGet, response -> {
-                int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
                 
-                if (statusCode >= 200 && statusCode < 300) {
-                    return responseBody;
-                } else {
-                    throw new RuntimeException("HTTP " + statusCode + ": " + responseBody);
+                long blockedBefore = httpBlockedNanos.get();
+                long parseStart = System.nanoTime();
+                try (InputStream input = new LimitedCountingInputStream(entity.getContent(), completedBytes, httpBlockedNanos, maxResponseSize, budget)) {
+                    N8nResponseReader.readRecords(input, record -> appendResponseRecord(record, String.valueOf(statusCode), timestamp));
+                } finally {
+                    // 流式解析与网络读取交替进行，扣除读取时阻塞的时间
+                    parseNanos.addAndGet(System.nanoTime() - parseStart - (httpBlockedNanos.get() - blockedBefore));
                 }
+                return null;
             });
+            return true;
+        } catch (Exception e) {
+            failure = e;
+            if (closed) {
+                // 查询取消导致的失败不计入实例健康状态
+                route.discard();
+            }
+            throw e;
+        } finally {
+            // 非2xx响应在处理时抛出异常，同样计为错误
+            runtimeStats.requestFinished(startNanos, failure != null);
+            httpRetries.addAndGet(N8nHttpClient.getRetryCount(span.getContext()));
+            bytesIn.addAndGet(completedBytes.get() - bytesBefore);
+            span.end(completedBytes.get() - bytesBefore, failure);
+        }
+    }
+    
+    /**
+     * 读取错误响应体（截断到固定长度）
+     */
+    private String readErrorBody(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return "";
+        }
+        try (InputStream input = new LimitedCountingInputStream(entity.getContent(), completedBytes, httpBlockedNanos, maxResponseSize, budget)) {
+            byte[] body = input.readNBytes(MAX_ERROR_BODY_LENGTH);
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * 写入一条webhook响应记录，同时追加到扫描缓存缓冲区
+     */
+    private void appendResponseRecord(Slice record, String statusCode, String timestamp) {
+        appendRow(record, statusCode, timestamp);
+        
+        DynamicSliceOutput records = cacheOutput;
+        if (records != null) {
+            N8nScanCache.writeRecord(records, statusCode, timestamp, record);
+            if (records.size() > scanCache.getMaxEntryBytes()) {
+                cacheOutput = null;
+            }
         }
     }
     
     /**
-     * 从webhook响应构建数据行
+     * 从webhook响应构建数据行，PageBuilder写满时交给Trino
      */
-    private void buildRowFromWebhookResponse(String responseData, String statusCode) {
+    private void appendRow(Slice responseData, String statusCode, String timestamp) {
+        if (closed) {
+            throw new IllegalStateException("Page source is closed");
+        }
+        
         pageBuilder.declarePosition();
+        rowsProduced++;
+        if (statisticsCollector != null) {
+            statisticsCollector.addRow();
+        }
         
         for (int i = 0; i < columnHandles.size(); i++) {
-            N8nColumnHandle columnHandle = columnHandles.get(i);
             BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(i);
             
-            String columnName = columnHandle.getName();
-            String value = getColumnValue(columnName, responseData, statusCode);
-            
+            Slice value = getColumnValue(columnHandles.get(i).getName(), responseData, statusCode, timestamp);
             if (value == null) {
                 blockBuilder.appendNull();
             } else {
-                VARCHAR.writeSlice(blockBuilder, Slices.utf8Slice(value));
+                VARCHAR.writeSlice(blockBuilder, value);
+            }
+            if (statisticsCollector != null) {
+                statisticsCollector.addValue(i, value);
+            }
+        }
+        
+        if (pageBuilder.isFull()) {
+            flushPage();
+        } else {
+            pageBuilderRetainedBytes = pageBuilder.getRetainedSizeInBytes();
+        }
+    }
+    
+    private void flushPage() {
+        if (pageBuilder.isEmpty()) {
+            return;
+        }
+        Page page = pageBuilder.build();
+        pageBuilder.reset();
+        pageBuilderRetainedBytes = pageBuilder.getRetainedSizeInBytes();
+        
+        CompletableFuture<?> toComplete;
+        synchronized (this) {
+            // 背压：等待driver取走已排队的page
+            while (queuedBytes >= MAX_QUEUED_BYTES && !closed && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TrinoException(GENERIC_INTERNAL_ERROR, "Interrupted while waiting for n8n webhook pages to be consumed", e);
+                }
+            }
+            if (closed) {
+                return;
             }
+            pages.add(page);
+            queuedBytes += page.getRetainedSizeInBytes();
+            pagesProduced.incrementAndGet();
+            toComplete = blocked;
+        }
+        toComplete.complete(null);
+    }
+    
+    private void finishProducer() {
+        flushPage();
+        CompletableFuture<?> toComplete;
+        synchronized (this) {
+            producerFinished = true;
+            toComplete = blocked;
         }
+        toComplete.complete(null);
     }
     
     /**
      * 获取列值
      */
-    private String getColumnValue(String columnName, String responseData, String statusCode) {
+    private Slice getColumnValue(String columnName, Slice responseData, String statusCode, String timestamp) {
+        if ("response_data".equals(columnName)) {
+            return responseData;
+        }
+        if (N8nMetadata.LOOKUP_KEY_COLUMN.equals(columnName)) {
+            String lookupKey = N8nResponseReader.extractField(responseData, config.getLookupKeyField());
+            return lookupKey == null ? null : Slices.utf8Slice(lookupKey);
+        }
+        
+        String value = getColumnText(columnName, statusCode, timestamp);
+        return value == null ? null : Slices.utf8Slice(value);
+    }
+    
+    private String getColumnText(String columnName, String statusCode, String timestamp) {
         switch (columnName) {
             case "webhook_path":
                 return split.getWebhookPath();
@@ -196,14 +751,90 @@ public class N8nPageSource implements ConnectorPageSource {
                 return split.getWorkflowId();
             case "is_active":
                 return String.valueOf(split.isActive());
-            case "response_data":
-                return responseData;
             case "status_code":
                 return statusCode;
             case "timestamp":
-                return Instant.now().toString();
+                return timestamp;
             default:
                 return null;
         }
     }
-} 
\ No newline at end of file
+    
+    private static String errorJson(String message) {
+        String escaped = String.valueOf(message)
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r");
+        return "{\"error\": \"" + escaped + "\"}";
+    }
+    
+    private static long currentThreadCpuTime() {
+        if (!THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+            return 0;
+        }
+        return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    }
+    
+    /**
+     * 统计读取字节数和阻塞时间并限制响应大小的输入流
+     * 
+     * 读到的字节立即计入查询预算，超过max_webhook_bytes时在读取过程中失败，而不是等整个响应读完。
+     */
+    private static class LimitedCountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+        private final AtomicLong blockedNanos;
+        private final DataSize limit;
+        private final N8nQueryBudget budget;
+        private long count;
+        
+        public LimitedCountingInputStream(InputStream in, AtomicLong counter, AtomicLong blockedNanos, DataSize limit, N8nQueryBudget budget) {
+            super(in);
+            this.counter = counter;
+            this.blockedNanos = blockedNanos;
+            this.limit = limit;
+            this.budget = budget;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int result = in.read();
+            blockedNanos.addAndGet(System.nanoTime() - start);
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int result = in.read(buffer, offset, length);
+            blockedNanos.addAndGet(System.nanoTime() - start);
+            if (result != -1) {
+                count(result);
+            }
+            return result;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            long result = in.skip(n);
+            blockedNanos.addAndGet(System.nanoTime() - start);
+            count(result);
+            return result;
+        }
+        
+        private void count(long bytes) {
+            count += bytes;
+            counter.addAndGet(bytes);
+            budget.addBytes(bytes);
+            if (count > limit.toBytes()) {
+                // 使查询失败，而不是在已返回的行之后追加错误行
+                throw new TrinoException(EXCEEDED_SCAN_LIMIT, "n8n webhook response exceeds the maximum size of " + limit + " (n8n.max-response-size / max_response_size)");
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.leapfuture.trino.n8n;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import io.trino.spi.connector.ColumnHandle;
 import io.trino.spi.connector.ConnectorPageSource;
@@ -9,6 +10,7 @@ import io.trino.spi.connector.ConnectorSplit;
 import io.trino.spi.connector.ConnectorTableHandle;
 import io.trino.spi.connector.ConnectorTransactionHandle;
 import io.trino.spi.connector.DynamicFilter;
+import io.trino.spi.connector.RecordPageSource;
 
 import java.util.List;
 
@@ -18,10 +20,23 @@ import java.util.List;
 public class N8nPageSourceProvider implements ConnectorPageSourceProvider {
     
     private final N8nConfig config;
+    private final N8nScanCache scanCache;
+    private final N8nTableStatistics tableStatistics;
+    private final N8nApiClient apiClient;
+    private final N8nExecutionCache executionCache;
     
     @Inject
-    public N8nPageSourceProvider(N8nConfig config) {
+    public N8nPageSourceProvider(
+            N8nConfig config,
+            N8nScanCache scanCache,
+            N8nTableStatistics tableStatistics,
+            N8nApiClient apiClient,
+            N8nExecutionCache executionCache) {
         this.config = config;
+        this.scanCache = scanCache;
+        this.tableStatistics = tableStatistics;
+        this.apiClient = apiClient;
+        this.executionCache = executionCache;
     }
     
     @Override
@@ -33,6 +48,18 @@ public class N8nPageSourceProvider implements ConnectorPageSourceProvider {
             List<ColumnHandle> columns,
             DynamicFilter dynamicFilter) {
         
-        return new N8nPageSource(config, (N8nSplit) split, (N8nTableHandle) table, columns);
+        if (split instanceof N8nExecutionsSplit executionsSplit) {
+            List<N8nColumnHandle> executionColumns = columns.stream()
+                    .map(N8nColumnHandle.class::cast)
+                    .collect(ImmutableList.toImmutableList());
+            return new RecordPageSource(
+                    executionColumns.stream().map(N8nColumnHandle::getType).collect(ImmutableList.toImmutableList()),
+                    new N8nExecutionsRecordCursor(apiClient, executionCache, executionsSplit, executionColumns));
+        }
+        N8nQueryBudget budget = N8nQueryBudget.forQuery(
+                session.getQueryId(),
+                N8nSessionProperties.getMaxWebhookRequests(session),
+                N8nSessionProperties.getMaxWebhookBytes(session));
+        return new N8nPageSource(session, config, scanCache, tableStatistics, budget, (N8nSplit) split, (N8nTableHandle) table, columns, dynamicFilter);
     }
 } 
\ No newline at end of file
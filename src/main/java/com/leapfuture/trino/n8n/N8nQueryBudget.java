@@ -0,0 +1,87 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.airlift.units.DataSize;
+import io.trino.spi.TrinoException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.trino.spi.StandardErrorCode.EXCEEDED_SCAN_LIMIT;
+
+/**
+ * 单个查询的webhook请求预算
+ * 
+ * 按查询ID在每个worker上累计该查询的webhook请求数和字节数（请求体 + 响应体），
+ * 同一查询的表扫描和UDF共用一份计数。超过限制时抛出TrinoException使查询立即失败，
+ * 而不是继续向N8N发送请求。限制为0表示不限制。
+ */
+public final class N8nQueryBudget {
+    
+    // 查询结束后计数不再被访问，一段时间后自动清除
+    private static final Cache<String, Usage> USAGES = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+    
+    private final String queryId;
+    private final Usage usage;
+    private final long maxRequests;
+    private final long maxBytes;
+    
+    private N8nQueryBudget(String queryId, Usage usage, long maxRequests, long maxBytes) {
+        this.queryId = queryId;
+        this.usage = usage;
+        this.maxRequests = maxRequests;
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * 获取查询的预算
+     * 
+     * @param queryId 查询ID
+     * @param maxRequests 最大请求数，0表示不限制
+     * @param maxBytes 最大字节数，0表示不限制
+     * @return 预算
+     */
+    public static N8nQueryBudget forQuery(String queryId, long maxRequests, DataSize maxBytes) {
+        try {
+            return new N8nQueryBudget(queryId, USAGES.get(queryId, Usage::new), maxRequests, maxBytes.toBytes());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * 发送请求前记录一次请求，超过限制时失败
+     * 
+     * @param requestBytes 请求体字节数
+     */
+    public void beginRequest(long requestBytes) {
+        long requests = usage.requests.incrementAndGet();
+        if (maxRequests > 0 && requests > maxRequests) {
+            throw new TrinoException(EXCEEDED_SCAN_LIMIT, String.format(
+                    "Query %s exceeded the limit of %d n8n webhook requests per worker (max_webhook_requests)", queryId, maxRequests));
+        }
+        addBytes(requestBytes);
+    }
+    
+    /**
+     * 记录请求或响应的字节数，超过限制时失败
+     * 
+     * @param bytes 字节数
+     */
+    public void addBytes(long bytes) {
+        long total = usage.bytes.addAndGet(bytes);
+        if (maxBytes > 0 && total > maxBytes) {
+            throw new TrinoException(EXCEEDED_SCAN_LIMIT, String.format(
+                    "Query %s exceeded the limit of %s n8n webhook traffic per worker (max_webhook_bytes)", queryId, DataSize.succinctBytes(maxBytes)));
+        }
+    }
+    
+    private static final class Usage {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+    }
+}
@@ -0,0 +1,81 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import io.trino.spi.TrinoException;
+import io.trino.spi.procedure.Procedure;
+import io.trino.spi.procedure.Procedure.Argument;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_WEBHOOK_ERROR;
+import static io.trino.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.trino.spi.StandardErrorCode.NOT_SUPPORTED;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * 重放死信的过程 - CALL n8n.system.replay_dead_letters(webhook_path => '...')
+ * 
+ * 过程在coordinator上执行，只重放coordinator本地的死信；发送成功的行从死信存储中删除，
+ * 仍然失败的行保留，并以错误返回失败的行数和原因。worker上的死信通过{@link N8nDeadLetterReplayTable}重放。
+ */
+public class N8nReplayDeadLettersProcedure implements Provider<Procedure> {
+    
+    private static final MethodHandle REPLAY_DEAD_LETTERS;
+    
+    static {
+        try {
+            REPLAY_DEAD_LETTERS = MethodHandles.lookup().findVirtual(
+                    N8nReplayDeadLettersProcedure.class,
+                    "replayDeadLetters",
+                    methodType(void.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    private final N8nDeadLetterStore store;
+    
+    @Inject
+    public N8nReplayDeadLettersProcedure(N8nDeadLetterStore store) {
+        this.store = store;
+    }
+    
+    @Override
+    public Procedure get() {
+        return new Procedure(
+                N8nMetadata.SYSTEM_SCHEMA_NAME,
+                "replay_dead_letters",
+                ImmutableList.of(new Argument("WEBHOOK_PATH", VARCHAR, false, null)),
+                REPLAY_DEAD_LETTERS.bindTo(this));
+    }
+    
+    public void replayDeadLetters(String webhookPath) {
+        if (!store.isEnabled()) {
+            throw new TrinoException(NOT_SUPPORTED, "Dead-letter store is not enabled (n8n.dead-letter.path)");
+        }
+        List<N8nDeadLetterStore.ReplayResult> results;
+        try {
+            results = store.replay(path -> webhookPath == null || webhookPath.equals(path));
+        } catch (IOException e) {
+            throw new TrinoException(GENERIC_INTERNAL_ERROR, "重放N8N死信失败: " + e.getMessage(), e);
+        }
+        
+        List<String> failures = results.stream()
+                .filter(result -> result.getFailedRows() > 0)
+                .map(result -> result.getWebhookPath() + ": " + result.getFailedRows() + " rows (" + result.getError() + ")")
+                .collect(ImmutableList.toImmutableList());
+        if (!failures.isEmpty()) {
+            long replayed = results.stream().mapToLong(N8nDeadLetterStore.ReplayResult::getReplayedRows).sum();
+            throw new TrinoException(N8N_WEBHOOK_ERROR, String.format(
+                    "Replayed %s dead-letter rows, rows still failing and kept in the dead-letter store: %s",
+                    replayed,
+                    String.join(", ", failures)));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.leapfuture.trino.n8n;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * N8N webhook响应流式读取器
+ * 
+ * 按记录逐条读取响应流，不把整个响应体缓冲为String：
+ * - JSON数组：每个元素一条记录
+ * - JSON对象 / NDJSON：每个顶层值一条记录
+ * - 其他内容：整个响应体作为一条原始记录
+ */
+public final class N8nResponseReader {
+    
+    private static final int SNIFF_LIMIT = 8192;
+    
+    private N8nResponseReader() {}
+    
+    /**
+     * 记录消费者
+     * 传入的Slice只在回调期间有效，需要保留时必须复制
+     */
+    public interface RecordConsumer {
+        void accept(Slice record) throws IOException;
+    }
+    
+    /**
+     * 从输入流中逐条读取记录
+     * 
+     * @param input 响应输入流
+     * @param consumer 记录消费者
+     * @return 读取到的记录数
+     */
+    public static long readRecords(InputStream input, RecordConsumer consumer) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input, SNIFF_LIMIT);
+        int firstByte = peekFirstNonWhitespace(buffered);
+        
+        DynamicSliceOutput output = new DynamicSliceOutput(1024);
+        if (firstByte == '[' || firstByte == '{') {
+            return readJsonRecords(buffered, output, consumer);
+        }
+        
+        // 非JSON内容，按原始字节作为单条记录
+        byte[] chunk = new byte[SNIFF_LIMIT];
+        int read;
+        while ((read = buffered.read(chunk)) != -1) {
+            output.writeBytes(chunk, 0, read);
+        }
+        consumer.accept(output.slice());
+        return 1;
+    }
+    
+    /**
+     * 读取JSON对象记录中某个顶层字段的文本值
+     * 
+     * @param record 记录数据
+     * @param fieldName 字段名
+     * @return 字段值，记录不是JSON对象、字段不存在或不是标量时返回null
+     */
+    public static String extractField(Slice record, String fieldName) {
+        if (record.length() == 0 || record.getByte(0) != '{') {
+            return null;
+        }
+        try (JsonParser parser = N8nJson.createParser(record)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (fieldName.equals(name)) {
+                    return value.isScalarValue() && value != JsonToken.VALUE_NULL ? parser.getValueAsString() : null;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // 无法解析的记录没有查找key
+        }
+        return null;
+    }
+    
+    private static long readJsonRecords(InputStream input, DynamicSliceOutput output, RecordConsumer consumer) throws IOException {
+        long records = 0;
+        try (JsonParser parser = N8nJson.createParser(input)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == null) {
+                        throw new EOFException("JSON数组未正常结束");
+                    }
+                    writeRecord(parser, output, consumer);
+                    records++;
+                }
+                return records;
+            }
+            
+            // 单个JSON对象或NDJSON（多个顶层值）
+            while (token != null) {
+                writeRecord(parser, output, consumer);
+                records++;
+                token = parser.nextToken();
+            }
+        }
+        return records;
+    }
+    
+    private static void writeRecord(JsonParser parser, DynamicSliceOutput output, RecordConsumer consumer) throws IOException {
+        output.reset();
+        try (JsonGenerator generator = N8nJson.createGenerator(output)) {
+            N8nJson.copyValue(parser, generator);
+        }
+        consumer.accept(output.slice());
+    }
+    
+    private static int peekFirstNonWhitespace(BufferedInputStream input) throws IOException {
+        input.mark(SNIFF_LIMIT);
+        try {
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                int value = input.read();
+                if (value == -1 || !Character.isWhitespace(value)) {
+                    return value;
+                }
+            }
+            return -1;
+        } finally {
+            input.reset();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,307 @@
+package com.leapfuture.trino.n8n;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 本节点按流量类型和webhook路径统计的运行时指标，由n8n.system.runtime_stats读取
+ * 
+ * 进行中和排队的请求数是实时值；延迟分位数、错误率和缓存命中率来自按分钟轮换的两个窗口，
+ * 反映最近1~2分钟的情况，便于在故障期间定位慢的或调用频繁的工作流。
+ * 延迟记录在对数分桶的直方图中（每个2的幂区间8个桶，相对误差约12.5%），
+ * 记录一次请求只需要几次原子加法，不加锁、不分配内存。
+ */
+public final class N8nRuntimeStats {
+    
+    // 每种流量类型统计的路径数上限，超过后的新路径合并到同一行，避免任意UDF路径使内存无限增长
+    private static final int MAX_PATHS = 1000;
+    private static final String OTHER_PATHS = "<other>";
+    
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    // 小于8ms的延迟每毫秒一个桶，之后每个2的幂区间8个桶，最大约2^40ms
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    
+    private static final Map<N8nHttpClient.Pool, ConcurrentMap<String, PathStats>> STATS = new EnumMap<>(N8nHttpClient.Pool.class);
+    
+    static {
+        for (N8nHttpClient.Pool pool : N8nHttpClient.Pool.values()) {
+            STATS.put(pool, new ConcurrentHashMap<>());
+        }
+    }
+    
+    private N8nRuntimeStats() {
+    }
+    
+    /**
+     * 获取路径的统计
+     * 
+     * @param pool 流量类型
+     * @param path webhook路径或API路径
+     * @return 统计
+     */
+    public static PathStats forPath(N8nHttpClient.Pool pool, String path) {
+        ConcurrentMap<String, PathStats> paths = STATS.get(pool);
+        PathStats stats = paths.get(path);
+        if (stats != null) {
+            return stats;
+        }
+        String key = paths.size() >= MAX_PATHS ? OTHER_PATHS : path;
+        return paths.computeIfAbsent(key, ignored -> new PathStats(pool, key));
+    }
+    
+    /**
+     * @return 当前所有路径统计的快照
+     */
+    public static List<PathStats> getAll() {
+        List<PathStats> all = new ArrayList<>();
+        STATS.values().forEach(paths -> all.addAll(paths.values()));
+        return all;
+    }
+    
+    private static int bucketIndex(long millis) {
+        if (millis < SUB_BUCKETS) {
+            return (int) Math.max(millis, 0);
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(millis), MAX_EXPONENT);
+        int subBucket = (int) (Math.min(millis, (1L << (MAX_EXPONENT + 1)) - 1) >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    /**
+     * @return 桶内的最大延迟（毫秒）
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + index % SUB_BUCKETS) * width + width - 1;
+    }
+    
+    /**
+     * 一个流量类型和路径的统计
+     */
+    public static final class PathStats {
+        private final N8nHttpClient.Pool pool;
+        private final String path;
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong totalRequests = new AtomicLong();
+        private final AtomicLong totalErrors = new AtomicLong();
+        private final Window[] windows = {new Window(), new Window()};
+        
+        private PathStats(N8nHttpClient.Pool pool, String path) {
+            this.pool = pool;
+            this.path = path;
+        }
+        
+        public N8nHttpClient.Pool getPool() {
+            return pool;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        /**
+         * 开始排队等待线程或连接
+         * 
+         * @return 排队结束时调用的回调，重复调用只生效一次
+         */
+        public Runnable enterQueue() {
+            queued.incrementAndGet();
+            AtomicBoolean exited = new AtomicBoolean();
+            return () -> {
+                if (exited.compareAndSet(false, true)) {
+                    queued.decrementAndGet();
+                }
+            };
+        }
+        
+        /**
+         * 请求开始发送
+         * 
+         * @return 开始时间，传给{@link #requestFinished}
+         */
+        public long requestStarted() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+        
+        /**
+         * 请求结束，记录延迟
+         * 
+         * @param startNanos {@link #requestStarted}的返回值
+         * @param failed 请求失败或返回HTTP错误状态
+         */
+        public void requestFinished(long startNanos, boolean failed) {
+            inFlight.decrementAndGet();
+            totalRequests.incrementAndGet();
+            Window window = currentWindow();
+            window.requests.incrementAndGet();
+            window.latencies.incrementAndGet(bucketIndex(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+            if (failed) {
+                totalErrors.incrementAndGet();
+                window.errors.incrementAndGet();
+            }
+        }
+        
+        /**
+         * 记录一次扫描缓存查找
+         */
+        public void recordCacheLookup(boolean hit) {
+            Window window = currentWindow();
+            window.cacheLookups.incrementAndGet();
+            if (hit) {
+                window.cacheHits.incrementAndGet();
+            }
+        }
+        
+        public long getInFlight() {
+            return inFlight.get();
+        }
+        
+        public long getQueued() {
+            return queued.get();
+        }
+        
+        public long getTotalRequests() {
+            return totalRequests.get();
+        }
+        
+        public long getTotalErrors() {
+            return totalErrors.get();
+        }
+        
+        /**
+         * @return 最近窗口内指标的快照
+         */
+        public Snapshot getRecent() {
+            long epoch = System.currentTimeMillis() / WINDOW_MILLIS;
+            long[] latencies = new long[BUCKET_COUNT];
+            long requests = 0;
+            long errors = 0;
+            long cacheLookups = 0;
+            long cacheHits = 0;
+            for (Window window : windows) {
+                if (window.epoch < epoch - 1) {
+                    continue;
+                }
+                requests += window.requests.get();
+                errors += window.errors.get();
+                cacheLookups += window.cacheLookups.get();
+                cacheHits += window.cacheHits.get();
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    latencies[i] += window.latencies.get(i);
+                }
+            }
+            return new Snapshot(requests, errors, cacheLookups, cacheHits, latencies);
+        }
+        
+        private Window currentWindow() {
+            long epoch = System.currentTimeMillis() / WINDOW_MILLIS;
+            Window window = windows[(int) (epoch & 1)];
+            if (window.epoch != epoch) {
+                synchronized (window) {
+                    if (window.epoch != epoch) {
+                        window.reset(epoch);
+                    }
+                }
+            }
+            return window;
+        }
+    }
+    
+    /**
+     * 最近窗口内的请求数、错误数、缓存查找和延迟分布
+     */
+    public static final class Snapshot {
+        private final long requests;
+        private final long errors;
+        private final long cacheLookups;
+        private final long cacheHits;
+        private final long[] latencies;
+        
+        private Snapshot(long requests, long errors, long cacheLookups, long cacheHits, long[] latencies) {
+            this.requests = requests;
+            this.errors = errors;
+            this.cacheLookups = cacheLookups;
+            this.cacheHits = cacheHits;
+            this.latencies = latencies;
+        }
+        
+        public long getRequests() {
+            return requests;
+        }
+        
+        /**
+         * @return 错误率，没有请求时为null
+         */
+        public Double getErrorRate() {
+            return requests == 0 ? null : (double) errors / requests;
+        }
+        
+        /**
+         * @return 缓存命中率，没有缓存查找时为null
+         */
+        public Double getCacheHitRatio() {
+            return cacheLookups == 0 ? null : (double) cacheHits / cacheLookups;
+        }
+        
+        /**
+         * @param quantile 分位数，例如0.99
+         * @return 延迟分位数（毫秒），没有请求时为null
+         */
+        public Double getLatencyMillis(double quantile) {
+            long count = 0;
+            for (long bucket : latencies) {
+                count += bucket;
+            }
+            if (count == 0) {
+                return null;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < latencies.length; i++) {
+                seen += latencies[i];
+                if (seen >= rank) {
+                    return (double) bucketUpperBound(i);
+                }
+            }
+            return (double) bucketUpperBound(latencies.length - 1);
+        }
+    }
+    
+    private static final class Window {
+        private volatile long epoch = -1;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong cacheLookups = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLongArray latencies = new AtomicLongArray(BUCKET_COUNT);
+        
+        private void reset(long epoch) {
+            requests.set(0);
+            errors.set(0);
+            cacheLookups.set(0);
+            cacheHits.set(0);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                latencies.set(i, 0);
+            }
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.trino.spi.NodeManager;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.InMemoryRecordSet;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.predicate.TupleDomain;
+import org.apache.hc.core5.pool.PoolStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.DoubleType.DOUBLE;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N运行时统计系统表 - n8n.system.runtime_stats
+ * 
+ * 每个节点按流量类型和路径各返回一行，读取{@link N8nRuntimeStats}中的内存统计，不调用N8N。
+ * 延迟分位数、错误率和缓存命中率覆盖最近1~2分钟，连接池使用情况按流量类型汇总，同一流量类型的各行相同。
+ */
+public class N8nRuntimeStatsTable implements SystemTable {
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(
+            new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "runtime_stats"),
+            ImmutableList.of(
+                    new ColumnMetadata("node_id", VARCHAR),
+                    new ColumnMetadata("pool", VARCHAR),
+                    new ColumnMetadata("webhook_path", VARCHAR),
+                    new ColumnMetadata("in_flight", BIGINT),
+                    new ColumnMetadata("queued", BIGINT),
+                    new ColumnMetadata("total_requests", BIGINT),
+                    new ColumnMetadata("total_errors", BIGINT),
+                    new ColumnMetadata("recent_requests", BIGINT),
+                    new ColumnMetadata("error_rate", DOUBLE),
+                    new ColumnMetadata("p50_latency_ms", DOUBLE),
+                    new ColumnMetadata("p95_latency_ms", DOUBLE),
+                    new ColumnMetadata("p99_latency_ms", DOUBLE),
+                    new ColumnMetadata("cache_hit_ratio", DOUBLE),
+                    new ColumnMetadata("pool_leased", BIGINT),
+                    new ColumnMetadata("pool_pending", BIGINT),
+                    new ColumnMetadata("pool_max", BIGINT),
+                    new ColumnMetadata("pool_utilization", DOUBLE)));
+    
+    private final String nodeId;
+    
+    @Inject
+    public N8nRuntimeStatsTable(NodeManager nodeManager) {
+        this.nodeId = nodeManager.getCurrentNode().getNodeIdentifier();
+    }
+    
+    @Override
+    public Distribution getDistribution() {
+        return Distribution.ALL_NODES;
+    }
+    
+    @Override
+    public ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    @Override
+    public RecordCursor cursor(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            TupleDomain<Integer> constraint,
+            Set<Integer> requiredColumns,
+            ConnectorSplit split) {
+        Map<N8nHttpClient.Pool, PoolStats> poolStats = new EnumMap<>(N8nHttpClient.Pool.class);
+        for (N8nHttpClient.Pool pool : N8nHttpClient.Pool.values()) {
+            poolStats.put(pool, N8nHttpClient.getPoolStats(pool));
+        }
+        
+        // 统计行数等于路径数，直接在内存中构建快照
+        InMemoryRecordSet.Builder rows = InMemoryRecordSet.builder(METADATA);
+        for (N8nRuntimeStats.PathStats stats : N8nRuntimeStats.getAll()) {
+            N8nRuntimeStats.Snapshot recent = stats.getRecent();
+            PoolStats pool = poolStats.get(stats.getPool());
+            rows.addRow(
+                    nodeId,
+                    stats.getPool().name(),
+                    stats.getPath(),
+                    stats.getInFlight(),
+                    stats.getQueued(),
+                    stats.getTotalRequests(),
+                    stats.getTotalErrors(),
+                    recent.getRequests(),
+                    recent.getErrorRate(),
+                    recent.getLatencyMillis(0.50),
+                    recent.getLatencyMillis(0.95),
+                    recent.getLatencyMillis(0.99),
+                    recent.getCacheHitRatio(),
+                    (long) pool.getLeased(),
+                    (long) pool.getPending(),
+                    (long) pool.getMax(),
+                    pool.getMax() == 0 ? null : (double) pool.getLeased() / pool.getMax());
+        }
+        return rows.build().cursor();
+    }
+}
@@ -0,0 +1,426 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.inject.Inject;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
+import io.airlift.units.Duration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * N8N表扫描结果缓存
+ * 
+ * 两级缓存：内存LRU + 本地磁盘。缓存内容是webhook响应解析出的记录
+ * （状态码、时间戳、记录数据），与查询投影的列无关，两级使用同一种紧凑的二进制格式。
+ * 内存中被淘汰的条目写入磁盘目录，命中时直接从文件的内存映射逐条读取，不占用堆内存；磁盘按总大小淘汰。
+ * 锁只保护索引，写入、映射和删除文件都在锁外进行。
+ * 缓存key由请求方法、URL和请求体（即下推给webhook的参数）组成。
+ */
+public class N8nScanCache {
+    
+    private static final String FILE_SUFFIX = ".records";
+    
+    private final boolean enabled;
+    private final long memoryMaxBytes;
+    private final Optional<Path> diskPath;
+    private final long diskMaxBytes;
+    
+    // access-order的LinkedHashMap，按最近访问顺序淘汰
+    private final LinkedHashMap<String, MemoryEntry> memoryEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, DiskEntry> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    
+    private final AtomicLong fileSequence = new AtomicLong();
+    
+    @Inject
+    public N8nScanCache(N8nConfig config) {
+        this.enabled = config.isScanCacheEnabled();
+        this.memoryMaxBytes = config.getScanCacheMemorySize().toBytes();
+        this.diskMaxBytes = config.getScanCacheDiskSize().toBytes();
+        
+        String path = config.getScanCacheDiskPath();
+        if (enabled && path != null && !path.trim().isEmpty()) {
+            this.diskPath = Optional.of(initializeDiskPath(Paths.get(path.trim())));
+        } else {
+            this.diskPath = Optional.empty();
+        }
+    }
+    
+    /**
+     * 是否默认启用缓存，查询可以通过会话属性scan_cache_enabled覆盖
+     * 
+     * @return 是否启用
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 单个缓存条目允许的最大大小
+     * 
+     * @return 最大字节数
+     */
+    public long getMaxEntryBytes() {
+        return memoryMaxBytes;
+    }
+    
+    /**
+     * 生成缓存key
+     * 
+     * @param method HTTP方法
+     * @param url webhook完整URL
+     * @param requestBody 请求体，没有请求体时为空字符串
+     * @return 缓存key
+     */
+    public static String cacheKey(String method, String url, String requestBody) {
+        return method.toUpperCase() + " " + url + "\n" + requestBody;
+    }
+    
+    /**
+     * 查找缓存的记录
+     * 
+     * 锁内只查找和调整LRU顺序，文件的映射和删除在锁外进行，扫描不会排队等待磁盘I/O。
+     * 
+     * @param key 缓存key
+     * @return 缓存的记录
+     */
+    public Optional<CachedRecords> get(String key) {
+        long now = System.nanoTime();
+        List<Path> filesToDelete = new ArrayList<>();
+        DiskEntry diskEntry;
+        synchronized (this) {
+            MemoryEntry memoryEntry = memoryEntries.get(key);
+            if (memoryEntry != null) {
+                if (memoryEntry.expiresAtNanos - now > 0) {
+                    return Optional.of(new CachedRecords(memoryEntry.records.toByteBuffer()));
+                }
+                removeMemoryEntry(key);
+            }
+            
+            diskEntry = diskEntries.get(key);
+            if (diskEntry != null && diskEntry.expiresAtNanos - now <= 0) {
+                removeDiskEntry(key, filesToDelete);
+                diskEntry = null;
+            }
+            // 还没有写完的条目直接使用堆内的数据
+            Slice pendingRecords = diskEntry == null ? null : diskEntry.pendingRecords;
+            if (pendingRecords != null) {
+                return Optional.of(new CachedRecords(pendingRecords.toByteBuffer()));
+            }
+        }
+        filesToDelete.forEach(N8nScanCache::deleteQuietly);
+        
+        if (diskEntry == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new CachedRecords(diskEntry.map()));
+        } catch (IOException e) {
+            // 文件在锁外被淘汰删除
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * 写入缓存
+     * 
+     * @param key 缓存key
+     * @param records 序列化的记录
+     * @param ttl 有效期
+     */
+    public void put(String key, Slice records, Duration ttl) {
+        if (records.length() > memoryMaxBytes) {
+            return;
+        }
+        List<Path> filesToDelete = new ArrayList<>();
+        List<Spill> spills = new ArrayList<>();
+        synchronized (this) {
+            removeDiskEntry(key, filesToDelete);
+            removeMemoryEntry(key);
+            putMemoryEntry(key, new MemoryEntry(records, System.nanoTime() + ttl.roundTo(TimeUnit.NANOSECONDS)), spills, filesToDelete);
+        }
+        filesToDelete.forEach(N8nScanCache::deleteQuietly);
+        spills.forEach(this::writeSpill);
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        List<Path> filesToDelete = new ArrayList<>();
+        synchronized (this) {
+            memoryEntries.clear();
+            memoryBytes = 0;
+            for (String key : diskEntries.keySet().toArray(new String[0])) {
+                removeDiskEntry(key, filesToDelete);
+            }
+        }
+        filesToDelete.forEach(N8nScanCache::deleteQuietly);
+    }
+    
+    /**
+     * 写入内存条目，淘汰的条目在磁盘上预留位置，由调用方在锁外写入，调用方持有this锁
+     */
+    private void putMemoryEntry(String key, MemoryEntry entry, List<Spill> spills, List<Path> filesToDelete) {
+        memoryEntries.put(key, entry);
+        memoryBytes += entry.records.length();
+        
+        // 淘汰最久未访问的条目，降级到磁盘
+        Iterator<Map.Entry<String, MemoryEntry>> iterator = memoryEntries.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, MemoryEntry> eldest = iterator.next();
+            iterator.remove();
+            memoryBytes -= eldest.getValue().records.length();
+            reserveDiskEntry(eldest.getKey(), eldest.getValue(), spills, filesToDelete);
+        }
+    }
+    
+    private void removeMemoryEntry(String key) {
+        MemoryEntry removed = memoryEntries.remove(key);
+        if (removed != null) {
+            memoryBytes -= removed.records.length();
+        }
+    }
+    
+    /**
+     * 为降级的条目预留磁盘条目，写完之前读取仍使用堆内数据，调用方持有this锁
+     */
+    private void reserveDiskEntry(String key, MemoryEntry entry, List<Spill> spills, List<Path> filesToDelete) {
+        if (diskPath.isEmpty() || entry.records.length() > diskMaxBytes || entry.expiresAtNanos - System.nanoTime() <= 0) {
+            return;
+        }
+        
+        Path file = diskPath.get().resolve(fileSequence.incrementAndGet() + FILE_SUFFIX);
+        DiskEntry diskEntry = new DiskEntry(file, entry.records, entry.expiresAtNanos);
+        diskEntries.put(key, diskEntry);
+        diskBytes += diskEntry.size;
+        spills.add(new Spill(key, diskEntry));
+        
+        // 按总大小淘汰最久未访问的磁盘条目
+        Iterator<Map.Entry<String, DiskEntry>> iterator = diskEntries.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && iterator.hasNext()) {
+            DiskEntry eldest = iterator.next().getValue();
+            iterator.remove();
+            diskBytes -= eldest.size;
+            filesToDelete.add(eldest.file);
+        }
+    }
+    
+    /**
+     * 在锁外把降级的条目写入磁盘
+     */
+    private void writeSpill(Spill spill) {
+        DiskEntry entry = spill.entry;
+        boolean written = false;
+        try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = entry.pendingRecords.toByteBuffer();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            written = true;
+        } catch (IOException e) {
+            System.err.println("写入N8N扫描缓存文件失败: " + e.getMessage());
+        }
+        
+        boolean current;
+        synchronized (this) {
+            current = diskEntries.get(spill.key) == entry;
+            if (current && written) {
+                entry.pendingRecords = null;
+            } else if (current) {
+                diskEntries.remove(spill.key);
+                diskBytes -= entry.size;
+            }
+        }
+        // 写入期间条目已被淘汰、替换或清空时，删除刚写入的文件
+        if (!current || !written) {
+            deleteQuietly(entry.file);
+        }
+    }
+    
+    /**
+     * 移除磁盘条目，文件由调用方在锁外删除，调用方持有this锁
+     */
+    private void removeDiskEntry(String key, List<Path> filesToDelete) {
+        DiskEntry removed = diskEntries.remove(key);
+        if (removed != null) {
+            diskBytes -= removed.size;
+            filesToDelete.add(removed.file);
+        }
+    }
+    
+    private static Path initializeDiskPath(Path path) {
+        try {
+            Files.createDirectories(path);
+            // 清理上次运行遗留的缓存文件
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    deleteQuietly(file);
+                }
+            }
+            return path;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无法初始化N8N扫描缓存目录: " + path, e);
+        }
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // 忽略删除异常
+        }
+    }
+    
+    /**
+     * 追加一条记录到序列化缓冲区
+     * 
+     * @param output 输出缓冲区
+     * @param statusCode HTTP状态码
+     * @param timestamp 调用时间戳
+     * @param record 记录数据
+     */
+    public static void writeRecord(SliceOutput output, String statusCode, String timestamp, Slice record) {
+        writeSlice(output, Slices.utf8Slice(statusCode));
+        writeSlice(output, Slices.utf8Slice(timestamp));
+        writeSlice(output, record);
+    }
+    
+    /**
+     * 创建序列化缓冲区
+     * 
+     * @return 输出缓冲区
+     */
+    public static DynamicSliceOutput newRecordsOutput() {
+        return new DynamicSliceOutput(4096);
+    }
+    
+    private static void writeSlice(SliceOutput output, Slice slice) {
+        output.writeInt(slice.length());
+        output.writeBytes(slice);
+    }
+    
+    /**
+     * 缓存记录消费者
+     */
+    public interface CachedRecordConsumer {
+        void accept(Slice record, String statusCode, String timestamp);
+    }
+    
+    private static class MemoryEntry {
+        private final Slice records;
+        private final long expiresAtNanos;
+        
+        public MemoryEntry(Slice records, long expiresAtNanos) {
+            this.records = records;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+    
+    /**
+     * 缓存命中的记录，来自堆内的条目或磁盘文件的内存映射
+     */
+    public static class CachedRecords {
+        private final ByteBuffer records;
+        
+        private CachedRecords(ByteBuffer records) {
+            this.records = records;
+        }
+        
+        /**
+         * @return 序列化记录的字节数
+         */
+        public long getSizeInBytes() {
+            return records.remaining();
+        }
+        
+        /**
+         * 逐条读取记录；内存映射的条目每次只把一条记录复制到堆内，不会整体加载
+         * 
+         * @param consumer 记录消费者
+         */
+        public void read(CachedRecordConsumer consumer) {
+            // 与SliceOutput.writeInt一致，长度按小端编码
+            ByteBuffer buffer = records.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                String statusCode = readSlice(buffer).toStringUtf8();
+                String timestamp = readSlice(buffer).toStringUtf8();
+                consumer.accept(readSlice(buffer), statusCode, timestamp);
+            }
+        }
+        
+        private static Slice readSlice(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            Slice slice;
+            if (buffer.hasArray()) {
+                slice = Slices.wrappedBuffer(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(buffer.position(), bytes);
+                slice = Slices.wrappedBuffer(bytes);
+            }
+            buffer.position(buffer.position() + length);
+            return slice;
+        }
+    }
+    
+    private static class DiskEntry {
+        private final Path file;
+        private final long size;
+        private final long expiresAtNanos;
+        // 写入磁盘完成之前的堆内数据，通过N8nScanCache锁保护
+        private Slice pendingRecords;
+        // 文件的内存映射，第一次读取时创建，之后的命中共用
+        private volatile ByteBuffer mapped;
+        
+        public DiskEntry(Path file, Slice pendingRecords, long expiresAtNanos) {
+            this.file = file;
+            this.size = pendingRecords.length();
+            this.pendingRecords = pendingRecords;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+        
+        /**
+         * 映射文件（在锁外执行），并发的第一次读取可能各自映射一次，结果相同
+         */
+        public ByteBuffer map() throws IOException {
+            ByteBuffer buffer = mapped;
+            if (buffer == null) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                mapped = buffer;
+            }
+            return buffer;
+        }
+    }
+    
+    private static class Spill {
+        private final String key;
+        private final DiskEntry entry;
+        
+        public Spill(String key, DiskEntry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+}
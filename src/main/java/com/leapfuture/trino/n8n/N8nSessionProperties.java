@@ -0,0 +1,202 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.units.DataSize;
+import io.airlift.units.Duration;
+import io.trino.spi.TrinoException;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.session.PropertyMetadata;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static io.trino.spi.StandardErrorCode.INVALID_SESSION_PROPERTY;
+import static io.trino.spi.session.PropertyMetadata.booleanProperty;
+import static io.trino.spi.session.PropertyMetadata.integerProperty;
+import static io.trino.spi.session.PropertyMetadata.longProperty;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N Connector会话属性
+ * 
+ * 默认值来自目录配置，可以通过SET SESSION n8n.&lt;属性&gt;为单个查询调整，
+ * 例如低并发、长超时的批处理查询和短超时、积极缓存的仪表盘查询使用同一个目录。
+ * 表扫描和INSERT读取会话属性；webhook UDF是全局函数，无法读取目录会话属性，仍使用目录配置。
+ */
+public class N8nSessionProperties {
+    
+    public static final String MAX_WEBHOOK_REQUESTS = "max_webhook_requests";
+    public static final String MAX_WEBHOOK_BYTES = "max_webhook_bytes";
+    public static final String WEBHOOK_TIMEOUT = "webhook_timeout";
+    public static final String MAX_INFLIGHT_REQUESTS = "max_inflight_requests";
+    public static final String INSERT_BATCH_SIZE = "insert_batch_size";
+    public static final String LOOKUP_BATCH_SIZE = "lookup_batch_size";
+    public static final String SCAN_CACHE_ENABLED = "scan_cache_enabled";
+    public static final String SCAN_CACHE_TTL = "scan_cache_ttl";
+    public static final String MAX_RESPONSE_SIZE = "max_response_size";
+    
+    private final List<PropertyMetadata<?>> sessionProperties;
+    
+    @Inject
+    public N8nSessionProperties(N8nConfig config) {
+        this.sessionProperties = ImmutableList.of(
+                longProperty(
+                        MAX_WEBHOOK_REQUESTS,
+                        "Maximum number of webhook requests a table scan query may send from each worker, 0 means unlimited (webhook functions use the catalog config)",
+                        config.getQueryMaxWebhookRequests(),
+                        value -> {
+                            if (value < 0) {
+                                throw new TrinoException(INVALID_SESSION_PROPERTY, MAX_WEBHOOK_REQUESTS + " must not be negative");
+                            }
+                        },
+                        false),
+                dataSizeProperty(
+                        MAX_WEBHOOK_BYTES,
+                        "Maximum webhook request and response bytes a table scan query may transfer on each worker, 0B means unlimited (webhook functions use the catalog config)",
+                        config.getQueryMaxWebhookBytes()),
+                positiveDurationProperty(
+                        WEBHOOK_TIMEOUT,
+                        "Timeout of table scan and INSERT webhook requests",
+                        config.getTimeout(N8nHttpClient.Pool.SCAN)),
+                positiveIntegerProperty(
+                        MAX_INFLIGHT_REQUESTS,
+                        "Maximum number of concurrent webhook requests per INSERT writer",
+                        config.getInsertMaxConcurrentRequests()),
+                positiveIntegerProperty(
+                        INSERT_BATCH_SIZE,
+                        "Maximum number of rows sent in one INSERT webhook request",
+                        config.getInsertBatchSize()),
+                positiveIntegerProperty(
+                        LOOKUP_BATCH_SIZE,
+                        "Maximum number of join keys sent in one lookup webhook request",
+                        config.getLookupBatchSize()),
+                booleanProperty(
+                        SCAN_CACHE_ENABLED,
+                        "Read and write cached webhook scan results",
+                        config.isScanCacheEnabled(),
+                        false),
+                durationProperty(
+                        SCAN_CACHE_TTL,
+                        "Time to live of scan results cached by this query, defaults to the table's n8n.scan-cache TTL",
+                        null),
+                positiveDataSizeProperty(
+                        MAX_RESPONSE_SIZE,
+                        "Maximum size of a single webhook response read by a table scan",
+                        config.getMaxResponseSize()));
+    }
+    
+    public List<PropertyMetadata<?>> getSessionProperties() {
+        return sessionProperties;
+    }
+    
+    public static long getMaxWebhookRequests(ConnectorSession session) {
+        return session.getProperty(MAX_WEBHOOK_REQUESTS, Long.class);
+    }
+    
+    public static DataSize getMaxWebhookBytes(ConnectorSession session) {
+        return session.getProperty(MAX_WEBHOOK_BYTES, DataSize.class);
+    }
+    
+    public static Duration getWebhookTimeout(ConnectorSession session) {
+        return session.getProperty(WEBHOOK_TIMEOUT, Duration.class);
+    }
+    
+    public static int getMaxInflightRequests(ConnectorSession session) {
+        return session.getProperty(MAX_INFLIGHT_REQUESTS, Integer.class);
+    }
+    
+    public static int getInsertBatchSize(ConnectorSession session) {
+        return session.getProperty(INSERT_BATCH_SIZE, Integer.class);
+    }
+    
+    public static int getLookupBatchSize(ConnectorSession session) {
+        return session.getProperty(LOOKUP_BATCH_SIZE, Integer.class);
+    }
+    
+    public static boolean isScanCacheEnabled(ConnectorSession session) {
+        return session.getProperty(SCAN_CACHE_ENABLED, Boolean.class);
+    }
+    
+    /**
+     * @return 会话设置的扫描缓存有效期，未设置时为null
+     */
+    public static Duration getScanCacheTtl(ConnectorSession session) {
+        return session.getProperty(SCAN_CACHE_TTL, Duration.class);
+    }
+    
+    public static DataSize getMaxResponseSize(ConnectorSession session) {
+        return session.getProperty(MAX_RESPONSE_SIZE, DataSize.class);
+    }
+    
+    private static PropertyMetadata<Integer> positiveIntegerProperty(String name, String description, int defaultValue) {
+        return integerProperty(
+                name,
+                description,
+                defaultValue,
+                value -> {
+                    if (value < 1) {
+                        throw new TrinoException(INVALID_SESSION_PROPERTY, name + " must be at least 1");
+                    }
+                },
+                false);
+    }
+    
+    /**
+     * 以VARCHAR形式（例如'64MB'）设置的数据大小属性
+     */
+    private static PropertyMetadata<DataSize> dataSizeProperty(String name, String description, DataSize defaultValue) {
+        return varcharProperty(name, description, DataSize.class, defaultValue, DataSize::valueOf, "data size");
+    }
+    
+    /**
+     * 必须大于0B的数据大小属性
+     */
+    private static PropertyMetadata<DataSize> positiveDataSizeProperty(String name, String description, DataSize defaultValue) {
+        return varcharProperty(name, description, DataSize.class, defaultValue, value -> {
+            DataSize size = DataSize.valueOf(value);
+            if (size.toBytes() < 1) {
+                throw new TrinoException(INVALID_SESSION_PROPERTY, name + " must be greater than 0B");
+            }
+            return size;
+        }, "data size");
+    }
+    
+    /**
+     * 以VARCHAR形式（例如'30s'）设置的时长属性
+     */
+    private static PropertyMetadata<Duration> durationProperty(String name, String description, Duration defaultValue) {
+        return varcharProperty(name, description, Duration.class, defaultValue, Duration::valueOf, "duration");
+    }
+    
+    /**
+     * 至少1ms的时长属性，HTTP超时按毫秒设置，0表示不超时
+     */
+    private static PropertyMetadata<Duration> positiveDurationProperty(String name, String description, Duration defaultValue) {
+        return varcharProperty(name, description, Duration.class, defaultValue, value -> {
+            Duration duration = Duration.valueOf(value);
+            if (duration.toMillis() < 1) {
+                throw new TrinoException(INVALID_SESSION_PROPERTY, name + " must be at least 1ms");
+            }
+            return duration;
+        }, "duration");
+    }
+    
+    private static <T> PropertyMetadata<T> varcharProperty(String name, String description, Class<T> javaType, T defaultValue, Function<String, T> parser, String kind) {
+        return new PropertyMetadata<>(
+                name,
+                description,
+                VARCHAR,
+                javaType,
+                defaultValue,
+                false,
+                value -> {
+                    try {
+                        return parser.apply((String) value);
+                    } catch (IllegalArgumentException e) {
+                        throw new TrinoException(INVALID_SESSION_PROPERTY, name + " is not a valid " + kind + ": " + value, e);
+                    }
+                },
+                Object::toString);
+    }
+}
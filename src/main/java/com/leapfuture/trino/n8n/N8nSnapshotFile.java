@@ -0,0 +1,267 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * N8N工作流元数据快照文件
+ * 
+ * 把最近一次成功加载的快照保存为紧凑的二进制文件，coordinator重启后不需要等待N8N API即可列出表，
+ * N8N不可用时也能继续使用。文件格式（小端）：
+ * [magic][version][获取时间][字符串数量]{[长度][UTF-8]}[API地址编号][webhook数量]{[5个字符串编号][是否激活]}
+ * [工作流数量]{[ID][名称][是否激活][创建时间][更新时间][节点数量]{[ID][名称][类型][类型版本][是否禁用][参数][凭证]}}[CRC32]，
+ * 工作流ID、名称、节点参数等重复的字符串只保存一次，长度为-1表示null，时间为Long.MIN_VALUE表示null。
+ * 获取时间是快照从N8N API获取的时间，加载后按这个时间计算快照的陈旧程度。
+ * 版本不同的文件直接忽略，由后台刷新重新生成。
+ */
+public final class N8nSnapshotFile {
+    
+    private static final int MAGIC = 0x4e38534e;
+    private static final byte VERSION = 2;
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    
+    private N8nSnapshotFile() {}
+    
+    /**
+     * 读取快照文件
+     * 
+     * @param path 文件路径
+     * @param apiBaseUrl 当前配置的API地址，与文件中的不一致时忽略文件
+     * @return 快照及其获取时间，文件不存在、已损坏或属于其他N8N实例时为空
+     */
+    public static Optional<PersistedSnapshot> read(Path path, String apiBaseUrl) {
+        Slice data;
+        try {
+            data = Slices.wrappedBuffer(Files.readAllBytes(path));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            System.err.println("读取N8N元数据快照失败: " + e.getMessage());
+            return Optional.empty();
+        }
+        
+        try {
+            int bodyLength = data.length() - Long.BYTES;
+            if (bodyLength < Integer.BYTES + 1 || data.getInt(0) != MAGIC || data.getByte(Integer.BYTES) != VERSION
+                    || checksum(data.slice(0, bodyLength)) != data.getLong(bodyLength)) {
+                System.err.println("忽略无效的N8N元数据快照: " + path);
+                return Optional.empty();
+            }
+            
+            Instant fetchedAt = Instant.ofEpochMilli(data.getLong(Integer.BYTES + 1));
+            int position = Integer.BYTES + 1 + Long.BYTES;
+            int stringCount = data.getInt(position);
+            position += Integer.BYTES;
+            List<String> strings = new ArrayList<>(stringCount);
+            for (int i = 0; i < stringCount; i++) {
+                int length = data.getInt(position);
+                position += Integer.BYTES;
+                if (length < 0) {
+                    strings.add(null);
+                    continue;
+                }
+                strings.add(data.slice(position, length).toStringUtf8());
+                position += length;
+            }
+            
+            String savedApiBaseUrl = strings.get(data.getInt(position));
+            position += Integer.BYTES;
+            if (!apiBaseUrl.equals(savedApiBaseUrl)) {
+                return Optional.empty();
+            }
+            
+            int webhookCount = data.getInt(position);
+            position += Integer.BYTES;
+            ImmutableList.Builder<N8nApiClient.WebhookInfo> webhooks = ImmutableList.builderWithExpectedSize(webhookCount);
+            for (int i = 0; i < webhookCount; i++) {
+                webhooks.add(new N8nApiClient.WebhookInfo(
+                        strings.get(data.getInt(position)),
+                        strings.get(data.getInt(position + Integer.BYTES)),
+                        strings.get(data.getInt(position + 2 * Integer.BYTES)),
+                        strings.get(data.getInt(position + 3 * Integer.BYTES)),
+                        strings.get(data.getInt(position + 4 * Integer.BYTES)),
+                        data.getByte(position + 5 * Integer.BYTES) != 0));
+                position += 5 * Integer.BYTES + 1;
+            }
+            
+            int workflowCount = data.getInt(position);
+            position += Integer.BYTES;
+            N8nWorkflowCatalog.Builder catalog = N8nWorkflowCatalog.builder();
+            for (int i = 0; i < workflowCount; i++) {
+                long createdAt = data.getLong(position + 2 * Integer.BYTES + 1);
+                long updatedAt = data.getLong(position + 2 * Integer.BYTES + 1 + Long.BYTES);
+                catalog.addWorkflow(
+                        strings.get(data.getInt(position)),
+                        strings.get(data.getInt(position + Integer.BYTES)),
+                        data.getByte(position + 2 * Integer.BYTES) != 0,
+                        createdAt == NULL_TIMESTAMP ? null : createdAt,
+                        updatedAt == NULL_TIMESTAMP ? null : updatedAt);
+                position += 2 * Integer.BYTES + 1 + 2 * Long.BYTES;
+                int nodeCount = data.getInt(position);
+                position += Integer.BYTES;
+                for (int j = 0; j < nodeCount; j++) {
+                    String parameters = strings.get(data.getInt(position + 3 * Integer.BYTES + Double.BYTES + 1));
+                    String credentials = strings.get(data.getInt(position + 4 * Integer.BYTES + Double.BYTES + 1));
+                    catalog.addNode(
+                            strings.get(data.getInt(position)),
+                            strings.get(data.getInt(position + Integer.BYTES)),
+                            strings.get(data.getInt(position + 2 * Integer.BYTES)),
+                            data.getDouble(position + 3 * Integer.BYTES),
+                            data.getByte(position + 3 * Integer.BYTES + Double.BYTES) != 0,
+                            parameters == null ? null : Slices.utf8Slice(parameters),
+                            credentials == null ? null : Slices.utf8Slice(credentials));
+                    position += 5 * Integer.BYTES + Double.BYTES + 1;
+                }
+            }
+            return Optional.of(new PersistedSnapshot(N8nWorkflowSnapshot.of(webhooks.build(), catalog.build()), fetchedAt));
+        } catch (RuntimeException e) {
+            System.err.println("忽略无效的N8N元数据快照: " + path + " - " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * 写入快照文件，先写临时文件再原子替换
+     * 
+     * @param path 文件路径
+     * @param apiBaseUrl 当前配置的API地址
+     * @param snapshot 快照
+     * @param fetchedAt 快照从N8N API获取的时间
+     */
+    public static void write(Path path, String apiBaseUrl, N8nWorkflowSnapshot snapshot, Instant fetchedAt) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int apiBaseUrlId = stringId(apiBaseUrl, stringIds, strings);
+        int[] references = new int[snapshot.getWebhooks().size() * 5];
+        int index = 0;
+        for (N8nApiClient.WebhookInfo webhook : snapshot.getWebhooks()) {
+            references[index++] = stringId(webhook.getTableName(), stringIds, strings);
+            references[index++] = stringId(webhook.getWebhookPath(), stringIds, strings);
+            references[index++] = stringId(webhook.getMethod(), stringIds, strings);
+            references[index++] = stringId(webhook.getWorkflowId(), stringIds, strings);
+            references[index++] = stringId(webhook.getWorkflowName(), stringIds, strings);
+        }
+        N8nWorkflowCatalog catalog = snapshot.getCatalog();
+        int[] workflowReferences = new int[catalog.getWorkflowCount() * 2];
+        for (int i = 0; i < catalog.getWorkflowCount(); i++) {
+            workflowReferences[i * 2] = stringId(catalog.getWorkflowId(i), stringIds, strings);
+            workflowReferences[i * 2 + 1] = stringId(catalog.getWorkflowName(i), stringIds, strings);
+        }
+        int[] nodeReferences = new int[catalog.getNodeCount() * 5];
+        for (int i = 0; i < catalog.getNodeCount(); i++) {
+            nodeReferences[i * 5] = stringId(catalog.getNodeId(i), stringIds, strings);
+            nodeReferences[i * 5 + 1] = stringId(catalog.getNodeName(i), stringIds, strings);
+            nodeReferences[i * 5 + 2] = stringId(catalog.getNodeType(i), stringIds, strings);
+            nodeReferences[i * 5 + 3] = stringId(catalog.getNodeParameters(i), stringIds, strings);
+            nodeReferences[i * 5 + 4] = stringId(catalog.getNodeCredentials(i), stringIds, strings);
+        }
+        
+        DynamicSliceOutput output = new DynamicSliceOutput(1024);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(fetchedAt.toEpochMilli());
+        output.writeInt(strings.size());
+        for (String value : strings) {
+            if (value == null) {
+                output.writeInt(-1);
+                continue;
+            }
+            Slice bytes = Slices.utf8Slice(value);
+            output.writeInt(bytes.length());
+            output.writeBytes(bytes);
+        }
+        output.writeInt(apiBaseUrlId);
+        output.writeInt(snapshot.getWebhooks().size());
+        index = 0;
+        for (N8nApiClient.WebhookInfo webhook : snapshot.getWebhooks()) {
+            for (int i = 0; i < 5; i++) {
+                output.writeInt(references[index++]);
+            }
+            output.writeByte(webhook.isActive() ? 1 : 0);
+        }
+        output.writeInt(catalog.getWorkflowCount());
+        int node = 0;
+        for (int i = 0; i < catalog.getWorkflowCount(); i++) {
+            output.writeInt(workflowReferences[i * 2]);
+            output.writeInt(workflowReferences[i * 2 + 1]);
+            output.writeByte(catalog.isWorkflowActive(i) ? 1 : 0);
+            Long createdAt = catalog.getWorkflowCreatedAt(i);
+            Long updatedAt = catalog.getWorkflowUpdatedAt(i);
+            output.writeLong(createdAt == null ? NULL_TIMESTAMP : createdAt);
+            output.writeLong(updatedAt == null ? NULL_TIMESTAMP : updatedAt);
+            output.writeInt(catalog.getWorkflowNodeCount(i));
+            for (int j = 0; j < catalog.getWorkflowNodeCount(i); j++, node++) {
+                output.writeInt(nodeReferences[node * 5]);
+                output.writeInt(nodeReferences[node * 5 + 1]);
+                output.writeInt(nodeReferences[node * 5 + 2]);
+                output.writeDouble(catalog.getNodeTypeVersion(node));
+                output.writeByte(catalog.isNodeDisabled(node) ? 1 : 0);
+                output.writeInt(nodeReferences[node * 5 + 3]);
+                output.writeInt(nodeReferences[node * 5 + 4]);
+            }
+        }
+        output.writeLong(checksum(output.slice()));
+        
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, output.slice().getBytes());
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    private static int stringId(Slice value, Map<String, Integer> stringIds, List<String> strings) {
+        return stringId(value == null ? null : value.toStringUtf8(), stringIds, strings);
+    }
+    
+    private static int stringId(String value, Map<String, Integer> stringIds, List<String> strings) {
+        // HashMap允许null key，null也只保存一次
+        return stringIds.computeIfAbsent(value, key -> {
+            strings.add(key);
+            return strings.size() - 1;
+        });
+    }
+    
+    private static long checksum(Slice slice) {
+        CRC32 crc = new CRC32();
+        crc.update(slice.byteArray(), slice.byteArrayOffset(), slice.length());
+        return crc.getValue();
+    }
+    
+    /**
+     * 从文件读取的快照
+     */
+    public static final class PersistedSnapshot {
+        private final N8nWorkflowSnapshot snapshot;
+        private final Instant fetchedAt;
+        
+        public PersistedSnapshot(N8nWorkflowSnapshot snapshot, Instant fetchedAt) {
+            this.snapshot = snapshot;
+            this.fetchedAt = fetchedAt;
+        }
+        
+        public N8nWorkflowSnapshot getSnapshot() {
+            return snapshot;
+        }
+        
+        public Instant getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
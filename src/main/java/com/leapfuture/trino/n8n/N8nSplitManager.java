@@ -1,6 +1,7 @@
 package com.leapfuture.trino.n8n;
 
 import com.google.inject.Inject;
+import io.trino.spi.TrinoException;
 import io.trino.spi.connector.ConnectorSession;
 import io.trino.spi.connector.ConnectorSplitManager;
 import io.trino.spi.connector.ConnectorSplitSource;
@@ -8,6 +9,9 @@ import io.trino.spi.connector.ConnectorTableHandle;
 import io.trino.spi.connector.ConnectorTransactionHandle;
 import io.trino.spi.connector.Constraint;
 import io.trino.spi.connector.DynamicFilter;
+import io.trino.spi.connector.FixedSplitSource;
+
+import static com.leapfuture.trino.n8n.N8nErrorCode.N8N_API_ERROR;
 
 /**
  * N8N Split Manager
@@ -15,10 +19,12 @@ import io.trino.spi.connector.DynamicFilter;
 public class N8nSplitManager implements ConnectorSplitManager {
     
     private final N8nConfig config;
+    private final N8nApiClient apiClient;
     
     @Inject
-    public N8nSplitManager(N8nConfig config) {
+    public N8nSplitManager(N8nConfig config, N8nApiClient apiClient) {
         this.config = config;
+        this.apiClient = apiClient;
     }
     
     @Override
@@ -29,6 +35,15 @@ public class N8nSplitManager implements ConnectorSplitManager {
             DynamicFilter dynamicFilter,
             Constraint constraint) {
         
+        if (table instanceof N8nExecutionsTableHandle executionsTable) {
+            try {
+                return new FixedSplitSource(N8nExecutionsTable.createSplits(executionsTable, apiClient, config.getExecutionsMaxSplits()));
+            } catch (TrinoException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new TrinoException(N8N_API_ERROR, "Failed to plan n8n executions splits: " + e.getMessage(), e);
+            }
+        }
         return new N8nSplitSource(config, (N8nTableHandle) table);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,279 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Inject;
+import io.airlift.slice.Slice;
+import io.airlift.slice.XxHash64;
+import io.trino.spi.NodeManager;
+import io.trino.spi.connector.ColumnHandle;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.statistics.ColumnStatistics;
+import io.trino.spi.statistics.Estimate;
+import io.trino.spi.statistics.TableStatistics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * N8N webhook表统计信息
+ * 
+ * webhook表没有可以预先读取的统计信息，这里根据最近的完整表扫描记录
+ * 行数、数据大小以及每列的NDV和空值比例，提供给Trino的CBO使用。
+ * 每个表保留最近若干次观测，按时间指数衰减加权（半衰期可配置），超过最大保留时间的观测被丢弃。
+ * 
+ * 统计信息在协调节点上提供给优化器，观测有两个来源：
+ * <ul>
+ *   <li>ANALYZE：由Trino在worker上聚合，结果在协调节点的finishStatisticsCollection中记录</li>
+ *   <li>n8n.statistics.enabled开启时，在协调节点上执行的完整表扫描（单节点部署或node-scheduler.include-coordinator=true），
+ *       其他节点不收集，避免为每个值计算哈希</li>
+ * </ul>
+ */
+public class N8nTableStatistics {
+    
+    // 每个表保留的最大观测次数
+    private static final int MAX_OBSERVATIONS = 16;
+    
+    // 是否在本节点的表扫描中收集统计
+    private final boolean collectScans;
+    private final long halfLifeMillis;
+    private final long maxAgeMillis;
+    private final Map<SchemaTableName, Deque<Observation>> observations = new ConcurrentHashMap<>();
+    
+    @Inject
+    public N8nTableStatistics(N8nConfig config, NodeManager nodeManager) {
+        this.collectScans = config.isStatisticsEnabled() && nodeManager.getCurrentNode().isCoordinator();
+        this.halfLifeMillis = config.getStatisticsHalfLife().toMillis();
+        this.maxAgeMillis = config.getStatisticsMaxAge().toMillis();
+    }
+    
+    /**
+     * 是否在本节点的表扫描中收集统计，只有启用了n8n.statistics.enabled的协调节点收集
+     * 
+     * @return 是否收集
+     */
+    public boolean isCollectingScans() {
+        return collectScans;
+    }
+    
+    /**
+     * 记录一次完整表扫描的观测结果
+     * 
+     * @param table 表名
+     * @param collector 扫描期间收集的统计
+     */
+    public void record(SchemaTableName table, Collector collector) {
+        if (!collectScans) {
+            return;
+        }
+        addObservation(table, collector.toObservation(System.currentTimeMillis()));
+    }
+    
+    /**
+     * 记录ANALYZE计算的统计
+     * 
+     * @param table 表名
+     * @param rowCount 行数
+     * @param columns 列名到列统计的映射
+     */
+    public void record(SchemaTableName table, long rowCount, Map<String, ColumnObservation> columns) {
+        addObservation(table, new Observation(System.currentTimeMillis(), rowCount, ImmutableMap.copyOf(columns)));
+    }
+    
+    private void addObservation(SchemaTableName table, Observation observation) {
+        Deque<Observation> tableObservations = observations.computeIfAbsent(table, ignored -> new ArrayDeque<>());
+        synchronized (tableObservations) {
+            tableObservations.addLast(observation);
+            while (tableObservations.size() > MAX_OBSERVATIONS) {
+                tableObservations.removeFirst();
+            }
+        }
+    }
+    
+    /**
+     * 根据衰减加权后的观测结果计算表统计信息
+     * 
+     * @param table 表名
+     * @param columnHandles 列名到列句柄的映射
+     * @return 表统计信息，没有观测时返回空统计
+     */
+    public TableStatistics getTableStatistics(SchemaTableName table, Map<String, ColumnHandle> columnHandles) {
+        Deque<Observation> tableObservations = observations.get(table);
+        if (tableObservations == null) {
+            return TableStatistics.empty();
+        }
+        
+        List<Observation> current;
+        long now = System.currentTimeMillis();
+        synchronized (tableObservations) {
+            tableObservations.removeIf(observation -> now - observation.timeMillis > maxAgeMillis);
+            current = ImmutableList.copyOf(tableObservations);
+        }
+        if (current.isEmpty()) {
+            return TableStatistics.empty();
+        }
+        
+        double totalWeight = 0;
+        double rowCount = 0;
+        for (Observation observation : current) {
+            double weight = weight(now, observation);
+            totalWeight += weight;
+            rowCount += weight * observation.rowCount;
+        }
+        rowCount /= totalWeight;
+        
+        TableStatistics.Builder statistics = TableStatistics.builder()
+                .setRowCount(Estimate.of(rowCount));
+        
+        for (Map.Entry<String, ColumnHandle> column : columnHandles.entrySet()) {
+            double columnWeight = 0;
+            double weightedRows = 0;
+            double nulls = 0;
+            double distinct = 0;
+            double dataSize = 0;
+            for (Observation observation : current) {
+                ColumnObservation columnObservation = observation.columns.get(column.getKey());
+                if (columnObservation == null) {
+                    continue;
+                }
+                double weight = weight(now, observation);
+                columnWeight += weight;
+                weightedRows += weight * observation.rowCount;
+                nulls += weight * columnObservation.nullCount;
+                distinct += weight * columnObservation.distinctCount;
+                dataSize += weight * columnObservation.dataSize;
+            }
+            if (columnWeight == 0) {
+                continue;
+            }
+            
+            statistics.setColumnStatistics(column.getValue(), ColumnStatistics.builder()
+                    .setNullsFraction(Estimate.of(weightedRows == 0 ? 0 : nulls / weightedRows))
+                    .setDistinctValuesCount(Estimate.of(distinct / columnWeight))
+                    .setDataSize(Estimate.of(dataSize / columnWeight))
+                    .build());
+        }
+        
+        return statistics.build();
+    }
+    
+    private double weight(long now, Observation observation) {
+        long age = Math.max(0, now - observation.timeMillis);
+        return Math.pow(0.5, (double) age / halfLifeMillis);
+    }
+    
+    /**
+     * 创建单次扫描的统计收集器
+     * 
+     * @param columnNames 扫描的列
+     * @return 统计收集器
+     */
+    public static Collector newCollector(List<String> columnNames) {
+        return new Collector(columnNames);
+    }
+    
+    /**
+     * 单次表扫描的统计收集器，只在产生数据的线程中使用
+     */
+    public static class Collector {
+        private final List<String> columnNames;
+        private final long[] nullCounts;
+        private final long[] dataSizes;
+        private final DistinctCounter[] distinctCounters;
+        private long rowCount;
+        
+        private Collector(List<String> columnNames) {
+            this.columnNames = ImmutableList.copyOf(columnNames);
+            this.nullCounts = new long[columnNames.size()];
+            this.dataSizes = new long[columnNames.size()];
+            this.distinctCounters = new DistinctCounter[columnNames.size()];
+            for (int i = 0; i < distinctCounters.length; i++) {
+                distinctCounters[i] = new DistinctCounter();
+            }
+        }
+        
+        public void addRow() {
+            rowCount++;
+        }
+        
+        public void addValue(int column, Slice value) {
+            if (value == null) {
+                nullCounts[column]++;
+                return;
+            }
+            dataSizes[column] += value.length();
+            distinctCounters[column].add(XxHash64.hash(value));
+        }
+        
+        private Observation toObservation(long timeMillis) {
+            ImmutableMap.Builder<String, ColumnObservation> columns = ImmutableMap.builder();
+            for (int i = 0; i < columnNames.size(); i++) {
+                columns.put(columnNames.get(i), new ColumnObservation(nullCounts[i], distinctCounters[i].estimate(), dataSizes[i]));
+            }
+            return new Observation(timeMillis, rowCount, columns.buildKeepingLast());
+        }
+    }
+    
+    /**
+     * K最小值（KMV）基数估计，只保留最小的K个哈希值
+     */
+    private static class DistinctCounter {
+        private static final int K = 1024;
+        
+        private final TreeSet<Long> minimumHashes = new TreeSet<>();
+        
+        public void add(long hash) {
+            // 映射为无符号数后比较
+            long value = hash >>> 1;
+            if (minimumHashes.size() >= K) {
+                if (value >= minimumHashes.last()) {
+                    return;
+                }
+                if (minimumHashes.add(value)) {
+                    minimumHashes.pollLast();
+                }
+                return;
+            }
+            minimumHashes.add(value);
+        }
+        
+        public double estimate() {
+            if (minimumHashes.size() < K) {
+                return minimumHashes.size();
+            }
+            double kthSmallest = (double) minimumHashes.last() / Long.MAX_VALUE;
+            return (K - 1) / kthSmallest;
+        }
+    }
+    
+    private static class Observation {
+        private final long timeMillis;
+        private final long rowCount;
+        private final Map<String, ColumnObservation> columns;
+        
+        public Observation(long timeMillis, long rowCount, Map<String, ColumnObservation> columns) {
+            this.timeMillis = timeMillis;
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+    }
+    
+    /**
+     * 一列的观测结果
+     */
+    public static class ColumnObservation {
+        private final long nullCount;
+        private final double distinctCount;
+        private final long dataSize;
+        
+        public ColumnObservation(long nullCount, double distinctCount, long dataSize) {
+            this.nullCount = nullCount;
+            this.distinctCount = distinctCount;
+            this.dataSize = dataSize;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.inject.Inject;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.HttpRequest;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N8N HTTP调用的OpenTelemetry追踪
+ * 
+ * 使用Trino通过ConnectorContext提供的Tracer，为每次webhook和管理API调用创建CLIENT span，
+ * 记录路径、状态码、请求和响应字节数、重试次数以及排队和连接池等待时间，
+ * 并以W3C Trace Context请求头（traceparent）把追踪上下文传递给N8N。
+ * UDF无法注入依赖，与{@link N8nConfigHolder}一样通过静态实例访问；没有注入时不产生span。
+ */
+public class N8nTracing {
+    
+    private static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.request.method");
+    private static final AttributeKey<String> URL_FULL = AttributeKey.stringKey("url.full");
+    private static final AttributeKey<String> N8N_PATH = AttributeKey.stringKey("n8n.path");
+    private static final AttributeKey<Long> HTTP_STATUS = AttributeKey.longKey("http.response.status_code");
+    private static final AttributeKey<Long> REQUEST_BYTES = AttributeKey.longKey("http.request.body.size");
+    private static final AttributeKey<Long> RESPONSE_BYTES = AttributeKey.longKey("http.response.body.size");
+    private static final AttributeKey<Long> RETRY_COUNT = AttributeKey.longKey("http.request.resend_count");
+    private static final AttributeKey<Long> QUEUE_WAIT = AttributeKey.longKey("n8n.queue.wait_ms");
+    private static final AttributeKey<Long> POOL_WAIT = AttributeKey.longKey("n8n.pool.wait_ms");
+    
+    private static volatile Tracer tracer = OpenTelemetry.noop().getTracer("trino-n8n");
+    
+    @Inject
+    public N8nTracing(Tracer tracer) {
+        N8nTracing.tracer = tracer;
+    }
+    
+    /**
+     * 开始一次HTTP调用的span，并把追踪上下文写入请求头
+     * 
+     * @param name span名称
+     * @param parent 父上下文，通常是发起调用的driver线程的Context.current()
+     * @param request HTTP请求
+     * @param path webhook路径或API路径
+     * @param requestBytes 请求体字节数
+     * @return 调用追踪，请求结束后必须调用end
+     */
+    public static HttpSpan startHttpSpan(String name, Context parent, HttpRequest request, String path, long requestBytes) {
+        Span span = tracer.spanBuilder(name)
+                .setParent(parent)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute(HTTP_METHOD, request.getMethod())
+                .setAttribute(URL_FULL, fullUrl(request))
+                .setAttribute(N8N_PATH, path)
+                .setAttribute(REQUEST_BYTES, requestBytes)
+                .startSpan();
+        W3CTraceContextPropagator.getInstance().inject(parent.with(span), request, (carrier, key, value) -> carrier.setHeader(key, value));
+        return new HttpSpan(span);
+    }
+    
+    /**
+     * @return 请求的完整URL，getRequestUri只包含路径
+     */
+    private static String fullUrl(HttpRequest request) {
+        try {
+            return request.getUri().toString();
+        } catch (URISyntaxException e) {
+            return request.getRequestUri();
+        }
+    }
+    
+    /**
+     * 一次HTTP调用的span
+     */
+    public static final class HttpSpan {
+        private final Span span;
+        private final HttpClientContext context = HttpClientContext.create();
+        private int statusCode = -1;
+        
+        private HttpSpan(Span span) {
+            this.span = span;
+        }
+        
+        /**
+         * @return 执行请求时使用的上下文，用于记录连接池等待时间和重试次数
+         */
+        public HttpClientContext getContext() {
+            return context;
+        }
+        
+        public void setStatusCode(int statusCode) {
+            this.statusCode = statusCode;
+        }
+        
+        /**
+         * 记录在线程池或公平调度器中排队的时间
+         */
+        public void setQueueWaitNanos(long nanos) {
+            span.setAttribute(QUEUE_WAIT, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        
+        /**
+         * 结束span
+         * 
+         * @param responseBytes 读取的响应字节数
+         * @param failure 调用失败的原因，成功时为null
+         */
+        public void end(long responseBytes, Throwable failure) {
+            span.setAttribute(RESPONSE_BYTES, responseBytes);
+            span.setAttribute(RETRY_COUNT, (long) N8nHttpClient.getRetryCount(context));
+            span.setAttribute(POOL_WAIT, TimeUnit.NANOSECONDS.toMillis(N8nHttpClient.getPoolWaitNanos(context)));
+            if (statusCode > 0) {
+                span.setAttribute(HTTP_STATUS, (long) statusCode);
+            }
+            if (failure != null) {
+                span.recordException(failure);
+                span.setStatus(StatusCode.ERROR, failure.getMessage() == null ? failure.getClass().getSimpleName() : failure.getMessage());
+            } else if (statusCode >= 400) {
+                span.setStatus(StatusCode.ERROR, "HTTP " + statusCode);
+            }
+            span.end();
+        }
+    }
+}
@@ -1,10 +1,55 @@
 package com.leapfuture.trino.n8n;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.trino.spi.connector.ConnectorTransactionHandle;
 
+import java.util.Objects;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
 /**
- * N8N Transaction Handle
+ * N8N Transaction Handle - 每个事务一个，用于绑定事务的元数据快照
  */
-public enum N8nTransactionHandle implements ConnectorTransactionHandle {
-    INSTANCE
-} 
\ No newline at end of file
+public class N8nTransactionHandle implements ConnectorTransactionHandle {
+    
+    private final UUID uuid;
+    
+    public N8nTransactionHandle() {
+        this(UUID.randomUUID());
+    }
+    
+    @JsonCreator
+    public N8nTransactionHandle(@JsonProperty("uuid") UUID uuid) {
+        this.uuid = requireNonNull(uuid, "uuid is null");
+    }
+    
+    @JsonProperty
+    public UUID getUuid() {
+        return uuid;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        return uuid.equals(((N8nTransactionHandle) obj).uuid);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(uuid);
+    }
+    
+    @Override
+    public String toString() {
+        return "N8nTransactionHandle{" +
+                "uuid=" + uuid +
+                '}';
+    }
+}
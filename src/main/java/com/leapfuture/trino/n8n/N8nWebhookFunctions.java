@@ -1,9 +1,13 @@
 package com.leapfuture.trino.n8n;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Utf8;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
+import io.opentelemetry.context.Context;
+import io.trino.spi.TrinoException;
+import io.trino.spi.connector.ConnectorSession;
 import io.trino.spi.function.Description;
 import io.trino.spi.function.ScalarFunction;
 import io.trino.spi.function.SqlNullable;
@@ -13,17 +17,18 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 
+import java.io.IOException;
+
 /**
  * N8N Webhook UDF函数实现类
  * 包含调用N8N webhook的各种函数
  */
 public class N8nWebhookFunctions {
     
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    
     /**
      * 调用N8N webhook (POST方法)
      * 
@@ -35,6 +40,7 @@ public class N8nWebhookFunctions {
     @Description("调用N8N webhook (POST方法)")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookPost(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice jsonPayload) {
         
@@ -43,8 +49,17 @@ public class N8nWebhookFunctions {
         }
         
         N8nConfig config = N8nConfigHolder.getInstance();
-        CloseableHttpClient httpClient = N8nHttpClient.getClient(config);
-        String fullUrl = config.buildWebhookUrl(webhookPath.toStringUtf8());
+        getBudget(session, config).beginRequest(jsonPayload.length());
+        // 按查询和用户公平分配UDF连接，排队已满或等待超时时立即返回错误
+        long waitStartNanos = System.nanoTime();
+        N8nFairScheduler.Permit permit = acquirePermit(session, config, webhookPath);
+        long queueWaitNanos = System.nanoTime() - waitStartNanos;
+        if (permit == null) {
+            return Slices.utf8Slice("{\"error\": \"Too many concurrent n8n webhook calls\"}");
+        }
+        CloseableHttpClient httpClient = N8nHttpClient.getClient(config, N8nHttpClient.Pool.UDF);
+        N8nWebhookRouter.Route route = N8nWebhookRouter.getRouter(config).route(config.buildWebhookUrl(webhookPath.toStringUtf8()));
+        String fullUrl = route.getUrl();
         
         try {
             HttpPost httpPost = new HttpPost(fullUrl);
@@ -59,16 +74,16 @@ public class N8nWebhookFunctions {
             httpPost.setEntity(entity);
             
             // 执行请求并获取响应
-            String result = httpClient.execute(httpPost, response -> {
-                int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
+            String result = executeTraced(httpClient, httpPost, webhookPath, jsonPayload.length(), queueWaitNanos, (statusCode, responseBody, responseBytes) -> {
+                route.onResponse(statusCode);
+                getBudget(session, config).addBytes(responseBytes);
                 
                 // 构建详细的响应信息
                 try {
                     // 尝试解析响应为JSON
-                    JsonNode responseJson = OBJECT_MAPPER.readTree(responseBody);
+                    String responseJson = N8nJson.compact(responseBody);
                     return String.format("{\"status\": %d, \"url\": \"%s\", \"method\": \"POST\", \"payload\": %s, \"response\": %s}", 
-                        statusCode, fullUrl, jsonPayload.toStringUtf8(), responseJson.toString());
+                        statusCode, fullUrl, jsonPayload.toStringUtf8(), responseJson);
                 } catch (Exception e) {
                     // 如果响应不是JSON，直接返回原始响应
                     return String.format("{\"status\": %d, \"url\": \"%s\", \"method\": \"POST\", \"payload\": %s, \"response\": \"%s\"}", 
@@ -78,9 +93,15 @@ public class N8nWebhookFunctions {
             
             return Slices.utf8Slice(result);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"%s\", \"url\": \"%s\", \"payload\": %s}", 
                 e.getMessage().replace("\"", "\\\""), fullUrl, jsonPayload.toStringUtf8()));
+        } finally {
+            route.close();
+            permit.close();
         }
     }
     
@@ -94,6 +115,7 @@ public class N8nWebhookFunctions {
     @Description("调用N8N webhook (GET方法)")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookGet(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath) {
         
         if (webhookPath == null) {
@@ -101,8 +123,17 @@ public class N8nWebhookFunctions {
         }
         
         N8nConfig config = N8nConfigHolder.getInstance();
-        CloseableHttpClient httpClient = N8nHttpClient.getClient(config);
-        String fullUrl = config.buildWebhookUrl(webhookPath.toStringUtf8());
+        getBudget(session, config).beginRequest(0);
+        // 按查询和用户公平分配UDF连接，排队已满或等待超时时立即返回错误
+        long waitStartNanos = System.nanoTime();
+        N8nFairScheduler.Permit permit = acquirePermit(session, config, webhookPath);
+        long queueWaitNanos = System.nanoTime() - waitStartNanos;
+        if (permit == null) {
+            return Slices.utf8Slice("{\"error\": \"Too many concurrent n8n webhook calls\"}");
+        }
+        CloseableHttpClient httpClient = N8nHttpClient.getClient(config, N8nHttpClient.Pool.UDF);
+        N8nWebhookRouter.Route route = N8nWebhookRouter.getRouter(config).route(config.buildWebhookUrl(webhookPath.toStringUtf8()));
+        String fullUrl = route.getUrl();
         
         try {
             HttpGet httpGet = new HttpGet(fullUrl);
@@ -111,9 +142,9 @@ public class N8nWebhookFunctions {
             httpGet.setHeader("Accept", "application/json");
             
             // 执行请求并获取响应
-            String result = httpClient.execute(httpGet, response -> {
-                int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
+            String result = executeTraced(httpClient, httpGet, webhookPath, 0, queueWaitNanos, (statusCode, responseBody, responseBytes) -> {
+                route.onResponse(statusCode);
+                getBudget(session, config).addBytes(responseBytes);
                 
                 // 返回格式化的响应
                 return String.format("{\"status\": %d, \"response\": %s}", 
@@ -122,8 +153,14 @@ public class N8nWebhookFunctions {
             
             return Slices.utf8Slice(result);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"%s\"}", e.getMessage()));
+        } finally {
+            route.close();
+            permit.close();
         }
     }
     
@@ -139,6 +176,7 @@ public class N8nWebhookFunctions {
     @Description("调用N8N webhook并传递数据表字段")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookSendField(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice fieldName,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice fieldValue) {
@@ -148,13 +186,19 @@ public class N8nWebhookFunctions {
         }
         
         try {
-            // 构造JSON负载
-            String jsonPayload = String.format("{\"%s\": \"%s\"}", 
-                fieldName.toStringUtf8(), fieldValue.toStringUtf8());
+            // 构造JSON负载，字段名和值按JSON规则转义
+            String jsonPayload = N8nJson.write(generator -> {
+                generator.writeStartObject();
+                generator.writeStringField(fieldName.toStringUtf8(), fieldValue.toStringUtf8());
+                generator.writeEndObject();
+            });
             
             // 调用POST方法
-            return callN8nWebhookPost(webhookPath, Slices.utf8Slice(jsonPayload));
+            return callN8nWebhookPost(session, webhookPath, Slices.utf8Slice(jsonPayload));
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"%s\"}", e.getMessage()));
         }
@@ -171,6 +215,7 @@ public class N8nWebhookFunctions {
     @Description("调用N8N webhook并传递JSON格式的数据")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookSendJson(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice jsonFields) {
         
@@ -180,11 +225,14 @@ public class N8nWebhookFunctions {
         
         try {
             // 验证JSON格式
-            OBJECT_MAPPER.readTree(jsonFields.toStringUtf8());
+            N8nJson.validate(jsonFields);
             
             // 调用POST方法
-            return callN8nWebhookPost(webhookPath, jsonFields);
+            return callN8nWebhookPost(session, webhookPath, jsonFields);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"Invalid JSON format: %s\"}", e.getMessage()));
         }
@@ -203,6 +251,7 @@ public class N8nWebhookFunctions {
     @SqlType(StandardTypes.VARCHAR)
     @SqlNullable
     public static Slice callN8nWebhookExtractField(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice jsonPayload,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice responseField) {
@@ -213,18 +262,15 @@ public class N8nWebhookFunctions {
         
         try {
             // 调用webhook
-            Slice response = callN8nWebhookPost(webhookPath, jsonPayload);
+            Slice response = callN8nWebhookPost(session, webhookPath, jsonPayload);
             
             // 解析响应
-            JsonNode responseJson = OBJECT_MAPPER.readTree(response.toStringUtf8());
-            JsonNode responseData = responseJson.get("response");
-            
-            if (responseData != null && responseData.has(responseField.toStringUtf8())) {
-                return Slices.utf8Slice(responseData.get(responseField.toStringUtf8()).asText());
-            } else {
-                return null;
-            }
+            String value = extractResponseField(response, responseField.toStringUtf8());
+            return value == null ? null : Slices.utf8Slice(value);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("Error: %s", e.getMessage()));
         }
@@ -241,6 +287,7 @@ public class N8nWebhookFunctions {
     @Description("批量调用N8N webhook")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookBatch(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice jsonArrayPayload) {
         
@@ -250,19 +297,128 @@ public class N8nWebhookFunctions {
         
         try {
             // 验证JSON数组格式
-            JsonNode jsonArray = OBJECT_MAPPER.readTree(jsonArrayPayload.toStringUtf8());
-            if (!jsonArray.isArray()) {
+            if (N8nJson.validate(jsonArrayPayload) != JsonToken.START_ARRAY) {
                 return Slices.utf8Slice("{\"error\": \"Payload must be a JSON array\"}");
             }
             
             // 调用POST方法
-            return callN8nWebhookPost(webhookPath, jsonArrayPayload);
+            return callN8nWebhookPost(session, webhookPath, jsonArrayPayload);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"Invalid JSON array format: %s\"}", e.getMessage()));
         }
     }
     
+    /**
+     * 从n8n_webhook_post的结果中流式读取response对象的字段
+     * 
+     * @param result n8n_webhook_post的结果
+     * @param fieldName 字段名
+     * @return 字段的文本值，对象或数组为空字符串；response不是对象或字段不存在时为null
+     */
+    private static String extractResponseField(Slice result, String fieldName) throws IOException {
+        try (JsonParser parser = N8nJson.createParser(result)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (!"response".equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (fieldName.equals(field)) {
+                        return value.isScalarValue() ? parser.getText() : "";
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 获取当前查询的webhook请求预算，限制来自n8n.query.max-webhook-requests和n8n.query.max-webhook-bytes
+     * 
+     * UDF通过插件注册，拿到的会话不是n8n目录的会话，读不到目录的会话属性，
+     * 因此max_webhook_requests、max_webhook_bytes对UDF不生效，只能在目录配置中调整。
+     */
+    private static N8nQueryBudget getBudget(ConnectorSession session, N8nConfig config) {
+        return N8nQueryBudget.forQuery(session.getQueryId(), config.getQueryMaxWebhookRequests(), config.getQueryMaxWebhookBytes());
+    }
+    
+    /**
+     * 在追踪span中执行webhook请求并记录运行时统计，span的父上下文是调用UDF的driver线程的当前上下文
+     * 
+     * @param queueWaitNanos 在公平调度器中等待连接的时间
+     * @param handler 处理状态码和响应体
+     * @return handler的返回值
+     */
+    private static String executeTraced(
+            CloseableHttpClient httpClient,
+            ClassicHttpRequest request,
+            Slice webhookPath,
+            long requestBytes,
+            long queueWaitNanos,
+            ResponseHandler handler) throws IOException {
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.webhook.function", Context.current(), request, webhookPath.toStringUtf8(), requestBytes);
+        span.setQueueWaitNanos(queueWaitNanos);
+        N8nRuntimeStats.PathStats runtimeStats = N8nRuntimeStats.forPath(N8nHttpClient.Pool.UDF, webhookPath.toStringUtf8());
+        long startNanos = runtimeStats.requestStarted();
+        int[] statusCode = {-1};
+        long[] responseBytes = new long[1];
+        Exception failure = null;
+        try {
+            return httpClient.execute(request, span.getContext(), response -> {
+                statusCode[0] = response.getCode();
+                span.setStatusCode(response.getCode());
+                String responseBody = EntityUtils.toString(response.getEntity());
+                // 按UTF-8字节计数，与表扫描和请求体的计数方式一致
+                responseBytes[0] = Utf8.encodedLength(responseBody);
+                return handler.handle(response.getCode(), responseBody, responseBytes[0]);
+            });
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            runtimeStats.requestFinished(startNanos, failure != null || statusCode[0] >= 400);
+            span.end(responseBytes[0], failure);
+        }
+    }
+    
+    private interface ResponseHandler {
+        String handle(int statusCode, String responseBody, long responseBytes) throws IOException;
+    }
+    
+    /**
+     * 按查询和用户公平获取UDF连接，连接用满时最多等待n8n.udf.timeout
+     * 
+     * @return 许可；排队已满或等待超时时为null
+     */
+    private static N8nFairScheduler.Permit acquirePermit(ConnectorSession session, N8nConfig config, Slice webhookPath) {
+        Runnable exitQueue = N8nRuntimeStats.forPath(N8nHttpClient.Pool.UDF, webhookPath.toStringUtf8()).enterQueue();
+        try {
+            return N8nHttpClient.getScheduler(config, N8nHttpClient.Pool.UDF)
+                    .acquire(session.getQueryId(), session.getUser(), config.getTimeout(N8nHttpClient.Pool.UDF).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            exitQueue.run();
+        }
+    }
+    
     /**
      * 调用N8N webhook (带认证)
      * 
@@ -275,6 +431,7 @@ public class N8nWebhookFunctions {
     @Description("调用N8N webhook (带认证)")
     @SqlType(StandardTypes.VARCHAR)
     public static Slice callN8nWebhookAuth(
+            ConnectorSession session,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice webhookPath,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice jsonPayload,
             @SqlNullable @SqlType(StandardTypes.VARCHAR) Slice authToken) {
@@ -284,8 +441,17 @@ public class N8nWebhookFunctions {
         }
         
         N8nConfig config = N8nConfigHolder.getInstance();
-        CloseableHttpClient httpClient = N8nHttpClient.getClient(config);
-        String fullUrl = config.buildWebhookUrl(webhookPath.toStringUtf8());
+        getBudget(session, config).beginRequest(jsonPayload.length());
+        // 按查询和用户公平分配UDF连接，排队已满或等待超时时立即返回错误
+        long waitStartNanos = System.nanoTime();
+        N8nFairScheduler.Permit permit = acquirePermit(session, config, webhookPath);
+        long queueWaitNanos = System.nanoTime() - waitStartNanos;
+        if (permit == null) {
+            return Slices.utf8Slice("{\"error\": \"Too many concurrent n8n webhook calls\"}");
+        }
+        CloseableHttpClient httpClient = N8nHttpClient.getClient(config, N8nHttpClient.Pool.UDF);
+        N8nWebhookRouter.Route route = N8nWebhookRouter.getRouter(config).route(config.buildWebhookUrl(webhookPath.toStringUtf8()));
+        String fullUrl = route.getUrl();
         
         try {
             HttpPost httpPost = new HttpPost(fullUrl);
@@ -300,9 +466,9 @@ public class N8nWebhookFunctions {
             httpPost.setEntity(entity);
             
             // 执行请求并获取响应
-            String result = httpClient.execute(httpPost, response -> {
-                int statusCode = response.getCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
+            String result = executeTraced(httpClient, httpPost, webhookPath, jsonPayload.length(), queueWaitNanos, (statusCode, responseBody, responseBytes) -> {
+                route.onResponse(statusCode);
+                getBudget(session, config).addBytes(responseBytes);
                 
                 // 返回格式化的响应
                 return String.format("{\"status\": %d, \"response\": %s}", 
@@ -311,8 +477,14 @@ public class N8nWebhookFunctions {
             
             return Slices.utf8Slice(result);
             
+        } catch (TrinoException e) {
+            // 超出查询预算时使查询失败，而不是返回错误JSON
+            throw e;
         } catch (Exception e) {
             return Slices.utf8Slice(String.format("{\"error\": \"%s\"}", e.getMessage()));
+        } finally {
+            route.close();
+            permit.close();
         }
     }
     
@@ -0,0 +1,331 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * N8N webhook路由器
+ * 
+ * 在n8n.base-urls配置的多个webhook实例之间分配请求，连接器的扫描、写入和UDF共用同一个路由器。
+ * 调用方仍按n8n.base-url构建逻辑URL（扫描缓存和幂等key保持不变），由路由器改写到选中的实例：
+ * <ul>
+ *   <li>WEIGHTED：按权重平滑轮询</li>
+ *   <li>LEAST_OUTSTANDING：随机取两个实例，选择（进行中请求数 + 1）× EWMA延迟 / 权重较小的一个</li>
+ * </ul>
+ * 连续失败（连接失败、超时或HTTP 502/503/504）达到阈值的实例被摘除，后台健康检查成功后恢复。
+ * 工作流执行出错时n8n返回HTTP 500，这是单个工作流的问题而不是实例故障，不计为实例失败；
+ * 所有实例都被摘除时仍在全部实例之间分配，避免整体不可用。
+ * 配置相同的目录共用一个路由器，最后一个使用它的目录关闭时停止健康检查。
+ */
+public class N8nWebhookRouter {
+    
+    /**
+     * 负载均衡策略
+     */
+    public enum Policy {
+        WEIGHTED,
+        LEAST_OUTSTANDING,
+    }
+    
+    private static final ConcurrentMap<String, N8nWebhookRouter> ROUTERS = new ConcurrentHashMap<>();
+    
+    // 执行健康检查的后台线程
+    private static final ScheduledExecutorService HEALTH_CHECK_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("n8n-health-check-%s")
+                    .setDaemon(true)
+                    .build());
+    
+    // EWMA平滑系数，越大越偏向最近的请求
+    private static final double EWMA_ALPHA = 0.2;
+    // 还没有延迟样本的实例按该延迟估计
+    private static final long DEFAULT_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final String logicalBaseUrl;
+    private final List<Instance> instances;
+    private final Policy policy;
+    private final int failureThreshold;
+    private final String healthCheckPath;
+    // 使用该路由器的目录配置（按实例区分），健康检查使用其中任意一个的API连接池
+    private final Set<N8nConfig> owners = ConcurrentHashMap.newKeySet();
+    // 健康检查任务，只有一个实例时为null
+    private final ScheduledFuture<?> healthCheck;
+    
+    private N8nWebhookRouter(N8nConfig config) {
+        this.logicalBaseUrl = trimTrailingSlash(config.getBaseUrl());
+        this.policy = config.getLoadBalancingPolicy();
+        this.failureThreshold = config.getHealthCheckFailureThreshold();
+        this.healthCheckPath = normalizePath(config.getHealthCheckPath());
+        
+        ImmutableList.Builder<Instance> instances = ImmutableList.builder();
+        config.getBaseUrlWeights().forEach((baseUrl, weight) -> instances.add(new Instance(trimTrailingSlash(baseUrl), weight)));
+        this.instances = instances.build();
+        if (this.instances.isEmpty()) {
+            throw new IllegalArgumentException("没有可用的N8N webhook实例");
+        }
+        
+        if (this.instances.size() > 1) {
+            long intervalMillis = config.getHealthCheckInterval().toMillis();
+            this.healthCheck = HEALTH_CHECK_EXECUTOR.scheduleWithFixedDelay(this::checkHealth, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.healthCheck = null;
+        }
+    }
+    
+    /**
+     * 获取与配置对应的路由器，相同配置共享实例状态
+     * 
+     * @param config N8N配置
+     * @return 路由器
+     */
+    public static N8nWebhookRouter getRouter(N8nConfig config) {
+        String key = String.join("|",
+                config.getBaseUrl(),
+                config.getBaseUrls(),
+                config.getLoadBalancingPolicy().name(),
+                config.getHealthCheckPath(),
+                config.getHealthCheckInterval().toString(),
+                String.valueOf(config.getHealthCheckFailureThreshold()));
+        N8nWebhookRouter router = ROUTERS.get(key);
+        if (router != null && router.owners.contains(config)) {
+            return router;
+        }
+        return ROUTERS.compute(key, (ignored, existing) -> {
+            N8nWebhookRouter current = existing != null ? existing : new N8nWebhookRouter(config);
+            current.owners.add(config);
+            return current;
+        });
+    }
+    
+    /**
+     * 目录关闭时释放本配置使用的路由器，不再被其他目录使用的路由器停止健康检查
+     * 
+     * @param config N8N配置
+     */
+    public static void release(N8nConfig config) {
+        List<N8nWebhookRouter> unused = new ArrayList<>();
+        for (String key : ROUTERS.keySet()) {
+            ROUTERS.computeIfPresent(key, (ignored, router) -> {
+                if (router.owners.remove(config) && router.owners.isEmpty()) {
+                    unused.add(router);
+                    return null;
+                }
+                return router;
+            });
+        }
+        unused.forEach(router -> {
+            if (router.healthCheck != null) {
+                router.healthCheck.cancel(false);
+            }
+        });
+    }
+    
+    /**
+     * 为一次请求选择实例
+     * 
+     * @param webhookUrl 按n8n.base-url构建的逻辑URL
+     * @return 路由，请求结束后必须关闭
+     */
+    public Route route(String webhookUrl) {
+        if (!webhookUrl.startsWith(logicalBaseUrl)) {
+            // 不是当前配置生成的URL（例如旧配置下写入的重放数据），原样发送
+            return new Route(null, webhookUrl);
+        }
+        Instance instance = select();
+        instance.outstanding.incrementAndGet();
+        return new Route(instance, instance.baseUrl + webhookUrl.substring(logicalBaseUrl.length()));
+    }
+    
+    private Instance select() {
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        List<Instance> candidates = new ArrayList<>(instances.size());
+        for (Instance instance : instances) {
+            if (!instance.ejected) {
+                candidates.add(instance);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = instances;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        
+        if (policy == Policy.WEIGHTED) {
+            return selectWeighted(candidates);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = candidates.get(first);
+        Instance b = candidates.get(second);
+        return a.getLoad() <= b.getLoad() ? a : b;
+    }
+    
+    /**
+     * 平滑加权轮询：每次所有候选实例加上各自的权重，选择当前值最大的实例并减去总权重
+     */
+    private synchronized Instance selectWeighted(List<Instance> candidates) {
+        Instance selected = null;
+        int totalWeight = 0;
+        for (Instance instance : candidates) {
+            instance.currentWeight += instance.weight;
+            totalWeight += instance.weight;
+            if (selected == null || instance.currentWeight > selected.currentWeight) {
+                selected = instance;
+            }
+        }
+        selected.currentWeight -= totalWeight;
+        return selected;
+    }
+    
+    private void checkHealth() {
+        N8nConfig config = Iterables.getFirst(owners, null);
+        if (config == null) {
+            return;
+        }
+        for (Instance instance : instances) {
+            HttpGet probe = new HttpGet(instance.baseUrl + healthCheckPath);
+            boolean healthy;
+            try {
+                healthy = N8nHttpClient.getClient(config, N8nHttpClient.Pool.API).execute(probe, response -> response.getCode() >= 200 && response.getCode() < 300);
+            } catch (Exception e) {
+                healthy = false;
+            }
+            recordOutcome(instance, healthy);
+        }
+    }
+    
+    private void recordOutcome(Instance instance, boolean healthy) {
+        if (healthy) {
+            instance.consecutiveFailures.set(0);
+            if (instance.ejected) {
+                instance.ejected = false;
+                System.err.println("N8N webhook实例已恢复: " + instance.baseUrl);
+            }
+            return;
+        }
+        if (instance.consecutiveFailures.incrementAndGet() >= failureThreshold && !instance.ejected) {
+            instance.ejected = true;
+            System.err.println("N8N webhook实例连续失败" + failureThreshold + "次，暂时摘除: " + instance.baseUrl);
+        }
+    }
+    
+    private static String trimTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+    
+    private static String normalizePath(String path) {
+        return path.startsWith("/") ? path : "/" + path;
+    }
+    
+    /**
+     * 网关错误和服务不可用说明实例本身无法处理请求，其他状态码（包括工作流出错时的500）只与具体的webhook有关
+     */
+    private static boolean isInstanceFailure(int statusCode) {
+        return statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+    
+    /**
+     * 一次请求的路由，关闭时记录延迟和结果
+     */
+    public final class Route implements AutoCloseable {
+        private final Instance instance;
+        private final String url;
+        private final long startNanos = System.nanoTime();
+        private int statusCode = -1;
+        private boolean discarded;
+        private boolean closed;
+        
+        private Route(Instance instance, String url) {
+            this.instance = instance;
+            this.url = url;
+        }
+        
+        /**
+         * @return 选中实例上的完整URL
+         */
+        public String getUrl() {
+            return url;
+        }
+        
+        /**
+         * 记录响应状态码，没有记录时按连接失败处理
+         */
+        public void onResponse(int statusCode) {
+            this.statusCode = statusCode;
+        }
+        
+        /**
+         * 请求被调用方取消，不计入实例的延迟和失败
+         */
+        public void discard() {
+            discarded = true;
+        }
+        
+        @Override
+        public void close() {
+            if (closed || instance == null) {
+                return;
+            }
+            closed = true;
+            instance.outstanding.decrementAndGet();
+            if (discarded) {
+                return;
+            }
+            boolean healthy = statusCode > 0 && !isInstanceFailure(statusCode);
+            if (healthy) {
+                instance.recordLatency(System.nanoTime() - startNanos);
+            }
+            recordOutcome(instance, healthy);
+        }
+    }
+    
+    /**
+     * 一个webhook实例的状态
+     */
+    private static final class Instance {
+        private final String baseUrl;
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean ejected;
+        // 延迟的EWMA，0表示还没有样本
+        private volatile double latencyNanos;
+        // 平滑加权轮询的当前值，通过路由器加锁保护
+        private int currentWeight;
+        
+        private Instance(String baseUrl, int weight) {
+            this.baseUrl = baseUrl;
+            this.weight = weight;
+        }
+        
+        private synchronized void recordLatency(long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + EWMA_ALPHA * (nanos - latencyNanos);
+        }
+        
+        private double getLoad() {
+            double latency = latencyNanos == 0 ? DEFAULT_LATENCY_NANOS : latencyNanos;
+            return (outstanding.get() + 1) * latency / weight;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slice;
+import io.airlift.units.Duration;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * N8N webhook批量数据发送器
+ * 
+ * 向webhook POST一个批次，网络错误、HTTP 429和5xx按指数退避重试，
+ * 每个请求携带标识批次的Idempotency-Key（查询ID + page sink ID + 批次序号），重试和重放时保持不变；
+ * 内容相同的两个批次（重复的行或再次执行同一个INSERT）使用不同的key，不会被webhook当作重复丢弃。
+ * 每次尝试都通过{@link N8nWebhookRouter}重新选择webhook实例，重试可以落到其他实例上。
+ */
+public class N8nWebhookSender {
+    
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    
+    // 错误信息中保留的响应体最大长度
+    private static final int MAX_ERROR_BODY_LENGTH = 1024;
+    
+    private final N8nConfig config;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final RequestConfig requestConfig;
+    
+    // 正在执行的请求，取消时中断
+    private final Set<HttpPost> activeRequests = new HashSet<>();
+    private boolean cancelled;
+    
+    public N8nWebhookSender(N8nConfig config) {
+        this(config, config.getTimeout(N8nHttpClient.Pool.INSERT));
+    }
+    
+    /**
+     * @param timeout 每个请求的超时时间
+     */
+    public N8nWebhookSender(N8nConfig config, Duration timeout) {
+        this.config = config;
+        this.maxRetries = config.getInsertMaxRetries();
+        this.retryDelayMillis = config.getInsertRetryDelay().toMillis();
+        this.requestConfig = N8nHttpClient.createRequestConfig(timeout);
+    }
+    
+    /**
+     * 生成批次的幂等key
+     * 
+     * @param queryId 查询ID
+     * @param pageSinkId page sink ID，在查询内唯一
+     * @param batchSequence page sink内的批次序号
+     * @return 幂等key
+     */
+    public static String idempotencyKey(String queryId, long pageSinkId, long batchSequence) {
+        return queryId + "-" + pageSinkId + "-" + batchSequence;
+    }
+    
+    /**
+     * 发送一个批次，失败时按配置重试
+     * 
+     * @param url webhook完整URL
+     * @param body JSON请求体
+     * @param idempotencyKey 幂等key
+     */
+    public void post(String url, Slice body, String idempotencyKey) {
+        RuntimeException lastFailure = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            if (attempt > 0) {
+                sleepBeforeRetry(attempt);
+            }
+            try {
+                postOnce(url, body, idempotencyKey);
+                return;
+            } catch (RetryableException e) {
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+    
+    /**
+     * 取消正在执行的请求，之后的发送立即失败
+     */
+    public void cancel() {
+        List<HttpPost> requests;
+        synchronized (this) {
+            cancelled = true;
+            requests = ImmutableList.copyOf(activeRequests);
+        }
+        requests.forEach(HttpPost::cancel);
+    }
+    
+    private void postOnce(String url, Slice body, String idempotencyKey) {
+        try (N8nWebhookRouter.Route route = N8nWebhookRouter.getRouter(config).route(url)) {
+            postOnce(route, body, idempotencyKey);
+        }
+    }
+    
+    private void postOnce(N8nWebhookRouter.Route route, Slice body, String idempotencyKey) {
+        HttpPost httpPost = new HttpPost(route.getUrl());
+        httpPost.setHeader("Accept", "application/json");
+        httpPost.setHeader(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        httpPost.setConfig(requestConfig);
+        httpPost.setEntity(new ByteArrayEntity(body.byteArray(), body.byteArrayOffset(), body.length(), ContentType.APPLICATION_JSON));
+        
+        synchronized (this) {
+            if (cancelled) {
+                throw new IllegalStateException("Webhook发送已取消");
+            }
+            activeRequests.add(httpPost);
+        }
+        try {
+            N8nHttpClient.getClient(config, N8nHttpClient.Pool.INSERT).execute(httpPost, response -> {
+                int statusCode = response.getCode();
+                route.onResponse(statusCode);
+                if (statusCode >= 200 && statusCode < 300) {
+                    return null;
+                }
+                String message = "HTTP " + statusCode + ": " + readErrorBody(response.getEntity());
+                if (statusCode == 429 || statusCode >= 500) {
+                    throw new RetryableException(message, null);
+                }
+                throw new DeliveryException(message, null);
+            });
+        } catch (IOException e) {
+            if (isCancelled()) {
+                route.discard();
+                throw new IllegalStateException("Webhook发送已取消", e);
+            }
+            throw new RetryableException("发送数据到webhook失败: " + e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                activeRequests.remove(httpPost);
+            }
+        }
+    }
+    
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(retryDelayMillis << Math.min(attempt - 1, 10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Webhook发送被中断", e);
+        }
+    }
+    
+    private static String readErrorBody(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return "";
+        }
+        try (InputStream input = entity.getContent()) {
+            return new String(input.readNBytes(MAX_ERROR_BODY_LENGTH), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * webhook拒绝或无法送达批次，重试后仍然失败时抛出
+     */
+    public static class DeliveryException extends RuntimeException {
+        public DeliveryException(String message, Throwable cause) {
+            super(message, cause);
+        }
+        
+        /**
+         * @return 稍后重新发送是否可能成功，webhook明确拒绝（HTTP 4xx，429除外）时为false
+         */
+        public boolean isRetryable() {
+            return false;
+        }
+    }
+    
+    /**
+     * 可以重试的发送失败
+     */
+    private static class RetryableException extends DeliveryException {
+        public RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+        
+        @Override
+        public boolean isRetryable() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.leapfuture.trino.n8n;
+
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * N8N工作流和节点目录
+ * 
+ * 工作流元数据快照中全部工作流和节点的列式内存形式，供n8n.system.workflows和n8n.system.nodes使用。
+ * 所有字符串和JSON都以UTF-8 Slice保存在一个字典中，每列只保存字典编号（-1表示null），
+ * 重复的节点类型、凭证和参数只保存一次，读取时不需要任何转换。不可变。
+ */
+public final class N8nWorkflowCatalog {
+    
+    public static final N8nWorkflowCatalog EMPTY = builder().build();
+    
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+    
+    private final Slice[] dictionary;
+    
+    // 工作流列
+    private final int[] workflowIds;
+    private final int[] workflowNames;
+    private final boolean[] workflowActive;
+    private final long[] workflowCreatedAt;
+    private final long[] workflowUpdatedAt;
+    // 第i个工作流的节点为[nodeOffsets[i], nodeOffsets[i + 1])
+    private final int[] nodeOffsets;
+    
+    // 节点列
+    private final int[] nodeWorkflows;
+    private final int[] nodeIds;
+    private final int[] nodeNames;
+    private final int[] nodeTypes;
+    private final double[] nodeTypeVersions;
+    private final boolean[] nodeDisabled;
+    private final int[] nodeParameters;
+    private final int[] nodeCredentials;
+    
+    private N8nWorkflowCatalog(Builder builder) {
+        this.dictionary = builder.dictionary.toArray(new Slice[0]);
+        int workflowCount = builder.workflowCount;
+        this.workflowIds = Arrays.copyOf(builder.workflowIds, workflowCount);
+        this.workflowNames = Arrays.copyOf(builder.workflowNames, workflowCount);
+        this.workflowActive = Arrays.copyOf(builder.workflowActive, workflowCount);
+        this.workflowCreatedAt = Arrays.copyOf(builder.workflowCreatedAt, workflowCount);
+        this.workflowUpdatedAt = Arrays.copyOf(builder.workflowUpdatedAt, workflowCount);
+        this.nodeOffsets = Arrays.copyOf(builder.nodeOffsets, workflowCount + 1);
+        this.nodeOffsets[workflowCount] = builder.nodeCount;
+        int nodeCount = builder.nodeCount;
+        this.nodeWorkflows = Arrays.copyOf(builder.nodeWorkflows, nodeCount);
+        this.nodeIds = Arrays.copyOf(builder.nodeIds, nodeCount);
+        this.nodeNames = Arrays.copyOf(builder.nodeNames, nodeCount);
+        this.nodeTypes = Arrays.copyOf(builder.nodeTypes, nodeCount);
+        this.nodeTypeVersions = Arrays.copyOf(builder.nodeTypeVersions, nodeCount);
+        this.nodeDisabled = Arrays.copyOf(builder.nodeDisabled, nodeCount);
+        this.nodeParameters = Arrays.copyOf(builder.nodeParameters, nodeCount);
+        this.nodeCredentials = Arrays.copyOf(builder.nodeCredentials, nodeCount);
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    public int getWorkflowCount() {
+        return workflowIds.length;
+    }
+    
+    public int getNodeCount() {
+        return nodeIds.length;
+    }
+    
+    public Slice getWorkflowId(int workflow) {
+        return lookup(workflowIds[workflow]);
+    }
+    
+    public Slice getWorkflowName(int workflow) {
+        return lookup(workflowNames[workflow]);
+    }
+    
+    public boolean isWorkflowActive(int workflow) {
+        return workflowActive[workflow];
+    }
+    
+    /**
+     * @return 创建时间（UTC毫秒），未知时为null
+     */
+    public Long getWorkflowCreatedAt(int workflow) {
+        return toTimestamp(workflowCreatedAt[workflow]);
+    }
+    
+    /**
+     * @return 更新时间（UTC毫秒），未知时为null
+     */
+    public Long getWorkflowUpdatedAt(int workflow) {
+        return toTimestamp(workflowUpdatedAt[workflow]);
+    }
+    
+    public int getWorkflowNodeCount(int workflow) {
+        return nodeOffsets[workflow + 1] - nodeOffsets[workflow];
+    }
+    
+    /**
+     * @return 节点所属工作流的位置
+     */
+    public int getNodeWorkflow(int node) {
+        return nodeWorkflows[node];
+    }
+    
+    public Slice getNodeId(int node) {
+        return lookup(nodeIds[node]);
+    }
+    
+    public Slice getNodeName(int node) {
+        return lookup(nodeNames[node]);
+    }
+    
+    public Slice getNodeType(int node) {
+        return lookup(nodeTypes[node]);
+    }
+    
+    /**
+     * @return 节点类型版本，未知时为NaN
+     */
+    public double getNodeTypeVersion(int node) {
+        return nodeTypeVersions[node];
+    }
+    
+    public boolean isNodeDisabled(int node) {
+        return nodeDisabled[node];
+    }
+    
+    /**
+     * @return 节点参数JSON对象
+     */
+    public Slice getNodeParameters(int node) {
+        return lookup(nodeParameters[node]);
+    }
+    
+    /**
+     * @return 节点使用的凭证JSON对象（凭证类型 -> {id, name}）
+     */
+    public Slice getNodeCredentials(int node) {
+        return lookup(nodeCredentials[node]);
+    }
+    
+    private Slice lookup(int id) {
+        return id < 0 ? null : dictionary[id];
+    }
+    
+    private static Long toTimestamp(long value) {
+        return value == NULL_TIMESTAMP ? null : value;
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        // 字典编号按首次出现的顺序分配，内容相同的目录编码也相同
+        N8nWorkflowCatalog other = (N8nWorkflowCatalog) obj;
+        return Arrays.equals(dictionary, other.dictionary) &&
+                Arrays.equals(workflowIds, other.workflowIds) &&
+                Arrays.equals(workflowNames, other.workflowNames) &&
+                Arrays.equals(workflowActive, other.workflowActive) &&
+                Arrays.equals(workflowCreatedAt, other.workflowCreatedAt) &&
+                Arrays.equals(workflowUpdatedAt, other.workflowUpdatedAt) &&
+                Arrays.equals(nodeOffsets, other.nodeOffsets) &&
+                Arrays.equals(nodeIds, other.nodeIds) &&
+                Arrays.equals(nodeNames, other.nodeNames) &&
+                Arrays.equals(nodeTypes, other.nodeTypes) &&
+                Arrays.equals(nodeTypeVersions, other.nodeTypeVersions) &&
+                Arrays.equals(nodeDisabled, other.nodeDisabled) &&
+                Arrays.equals(nodeParameters, other.nodeParameters) &&
+                Arrays.equals(nodeCredentials, other.nodeCredentials);
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(workflowIds) + Arrays.hashCode(nodeIds);
+    }
+    
+    /**
+     * 按工作流顺序追加，每个工作流的节点紧跟在addWorkflow之后添加
+     */
+    public static final class Builder {
+        private final Map<Slice, Integer> dictionaryIds = new HashMap<>();
+        private final List<Slice> dictionary = new ArrayList<>();
+        
+        private int workflowCount;
+        private int[] workflowIds = new int[16];
+        private int[] workflowNames = new int[16];
+        private boolean[] workflowActive = new boolean[16];
+        private long[] workflowCreatedAt = new long[16];
+        private long[] workflowUpdatedAt = new long[16];
+        private int[] nodeOffsets = new int[17];
+        
+        private int nodeCount;
+        private int[] nodeWorkflows = new int[64];
+        private int[] nodeIds = new int[64];
+        private int[] nodeNames = new int[64];
+        private int[] nodeTypes = new int[64];
+        private double[] nodeTypeVersions = new double[64];
+        private boolean[] nodeDisabled = new boolean[64];
+        private int[] nodeParameters = new int[64];
+        private int[] nodeCredentials = new int[64];
+        
+        private Builder() {}
+        
+        /**
+         * @param createdAt 创建时间（UTC毫秒），未知时为null
+         * @param updatedAt 更新时间（UTC毫秒），未知时为null
+         */
+        public Builder addWorkflow(String id, String name, boolean active, Long createdAt, Long updatedAt) {
+            if (workflowCount == workflowIds.length) {
+                int capacity = workflowCount * 2;
+                workflowIds = Arrays.copyOf(workflowIds, capacity);
+                workflowNames = Arrays.copyOf(workflowNames, capacity);
+                workflowActive = Arrays.copyOf(workflowActive, capacity);
+                workflowCreatedAt = Arrays.copyOf(workflowCreatedAt, capacity);
+                workflowUpdatedAt = Arrays.copyOf(workflowUpdatedAt, capacity);
+                nodeOffsets = Arrays.copyOf(nodeOffsets, capacity + 1);
+            }
+            workflowIds[workflowCount] = encode(id);
+            workflowNames[workflowCount] = encode(name);
+            workflowActive[workflowCount] = active;
+            workflowCreatedAt[workflowCount] = createdAt == null ? NULL_TIMESTAMP : createdAt;
+            workflowUpdatedAt[workflowCount] = updatedAt == null ? NULL_TIMESTAMP : updatedAt;
+            nodeOffsets[workflowCount] = nodeCount;
+            workflowCount++;
+            return this;
+        }
+        
+        /**
+         * 为最近添加的工作流添加节点
+         * 
+         * @param typeVersion 类型版本，未知时为NaN
+         * @param parameters 参数JSON，没有时为null
+         * @param credentials 凭证JSON，没有时为null
+         */
+        public Builder addNode(String id, String name, String type, double typeVersion, boolean disabled, Slice parameters, Slice credentials) {
+            if (workflowCount == 0) {
+                throw new IllegalStateException("节点必须属于一个工作流");
+            }
+            if (nodeCount == nodeIds.length) {
+                int capacity = nodeCount * 2;
+                nodeWorkflows = Arrays.copyOf(nodeWorkflows, capacity);
+                nodeIds = Arrays.copyOf(nodeIds, capacity);
+                nodeNames = Arrays.copyOf(nodeNames, capacity);
+                nodeTypes = Arrays.copyOf(nodeTypes, capacity);
+                nodeTypeVersions = Arrays.copyOf(nodeTypeVersions, capacity);
+                nodeDisabled = Arrays.copyOf(nodeDisabled, capacity);
+                nodeParameters = Arrays.copyOf(nodeParameters, capacity);
+                nodeCredentials = Arrays.copyOf(nodeCredentials, capacity);
+            }
+            nodeWorkflows[nodeCount] = workflowCount - 1;
+            nodeIds[nodeCount] = encode(id);
+            nodeNames[nodeCount] = encode(name);
+            nodeTypes[nodeCount] = encode(type);
+            nodeTypeVersions[nodeCount] = typeVersion;
+            nodeDisabled[nodeCount] = disabled;
+            nodeParameters[nodeCount] = encode(parameters);
+            nodeCredentials[nodeCount] = encode(credentials);
+            nodeCount++;
+            return this;
+        }
+        
+        private int encode(String value) {
+            return value == null ? -1 : encode(Slices.utf8Slice(value));
+        }
+        
+        private int encode(Slice value) {
+            if (value == null) {
+                return -1;
+            }
+            return dictionaryIds.computeIfAbsent(value, key -> {
+                dictionary.add(key);
+                return dictionary.size() - 1;
+            });
+        }
+        
+        public N8nWorkflowCatalog build() {
+            return new N8nWorkflowCatalog(this);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.trino.spi.connector.SchemaTableName;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * N8N工作流元数据快照
+ * 
+ * 不可变，创建时为表名建立哈希索引，并预先生成激活表的列表，
+ * 元数据查找不再需要遍历全部webhook。一个事务内始终使用同一个快照。
+ * 同时保存全部工作流和节点的列式目录，供工作流和节点系统表使用。
+ */
+public final class N8nWorkflowSnapshot {
+    
+    private final List<N8nApiClient.WebhookInfo> webhooks;
+    // 表名 -> 激活的webhook，同名时与原先的顺序查找一致，保留第一个
+    private final Map<String, N8nApiClient.WebhookInfo> activeTables;
+    private final List<SchemaTableName> tableNames;
+    private final N8nWorkflowCatalog catalog;
+    
+    private N8nWorkflowSnapshot(List<N8nApiClient.WebhookInfo> webhooks, N8nWorkflowCatalog catalog) {
+        this.webhooks = ImmutableList.copyOf(requireNonNull(webhooks, "webhooks is null"));
+        this.catalog = requireNonNull(catalog, "catalog is null");
+        
+        Map<String, N8nApiClient.WebhookInfo> activeTables = new LinkedHashMap<>();
+        for (N8nApiClient.WebhookInfo webhook : this.webhooks) {
+            if (webhook.isActive()) {
+                activeTables.putIfAbsent(webhook.getTableName(), webhook);
+            }
+        }
+        this.activeTables = ImmutableMap.copyOf(activeTables);
+        this.tableNames = this.activeTables.keySet().stream()
+                .map(tableName -> new SchemaTableName(N8nMetadata.SCHEMA_NAME, tableName))
+                .collect(ImmutableList.toImmutableList());
+    }
+    
+    /**
+     * 根据webhook列表创建快照
+     * 
+     * @param webhooks webhook信息列表
+     * @return 快照
+     */
+    public static N8nWorkflowSnapshot of(List<N8nApiClient.WebhookInfo> webhooks) {
+        return new N8nWorkflowSnapshot(webhooks, N8nWorkflowCatalog.EMPTY);
+    }
+    
+    /**
+     * 根据webhook列表和工作流目录创建快照
+     * 
+     * @param webhooks webhook信息列表
+     * @param catalog 工作流和节点目录
+     * @return 快照
+     */
+    public static N8nWorkflowSnapshot of(List<N8nApiClient.WebhookInfo> webhooks, N8nWorkflowCatalog catalog) {
+        return new N8nWorkflowSnapshot(webhooks, catalog);
+    }
+    
+    /**
+     * 与当前快照比较，生成新的快照
+     * 
+     * 没有变化时直接返回当前快照；有变化时复用未变化的webhook实例，只有变化的部分是新对象
+     * 
+     * @param latest 最新的webhook信息列表
+     * @param latestCatalog 最新的工作流和节点目录
+     * @return 新快照，没有变化时为当前快照
+     */
+    public N8nWorkflowSnapshot update(List<N8nApiClient.WebhookInfo> latest, N8nWorkflowCatalog latestCatalog) {
+        boolean catalogChanged = !catalog.equals(latestCatalog);
+        if (webhooks.equals(latest)) {
+            return catalogChanged ? new N8nWorkflowSnapshot(webhooks, latestCatalog) : this;
+        }
+        
+        Map<N8nApiClient.WebhookInfo, N8nApiClient.WebhookInfo> existing = new HashMap<>();
+        for (N8nApiClient.WebhookInfo webhook : webhooks) {
+            existing.putIfAbsent(webhook, webhook);
+        }
+        ImmutableList.Builder<N8nApiClient.WebhookInfo> merged = ImmutableList.builderWithExpectedSize(latest.size());
+        for (N8nApiClient.WebhookInfo webhook : latest) {
+            merged.add(existing.getOrDefault(webhook, webhook));
+        }
+        return new N8nWorkflowSnapshot(merged.build(), catalogChanged ? latestCatalog : catalog);
+    }
+    
+    /**
+     * 获取全部webhook
+     * 
+     * @return webhook信息列表
+     */
+    public List<N8nApiClient.WebhookInfo> getWebhooks() {
+        return webhooks;
+    }
+    
+    /**
+     * 获取全部激活的表
+     * 
+     * @return 预先生成的表名列表
+     */
+    public List<SchemaTableName> getTableNames() {
+        return tableNames;
+    }
+    
+    /**
+     * 按表名查找激活的webhook
+     * 
+     * @param tableName 表名
+     * @return webhook信息
+     */
+    public Optional<N8nApiClient.WebhookInfo> getActiveTable(String tableName) {
+        return Optional.ofNullable(activeTables.get(tableName));
+    }
+    
+    /**
+     * 获取全部工作流和节点
+     * 
+     * @return 工作流和节点目录，没有API Key时为空
+     */
+    public N8nWorkflowCatalog getCatalog() {
+        return catalog;
+    }
+}
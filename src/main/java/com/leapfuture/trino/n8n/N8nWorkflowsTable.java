@@ -0,0 +1,155 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Inject;
+import io.airlift.slice.Slice;
+import io.trino.spi.connector.ColumnMetadata;
+import io.trino.spi.connector.ConnectorSession;
+import io.trino.spi.connector.ConnectorSplit;
+import io.trino.spi.connector.ConnectorTableMetadata;
+import io.trino.spi.connector.ConnectorTransactionHandle;
+import io.trino.spi.connector.RecordCursor;
+import io.trino.spi.connector.SchemaTableName;
+import io.trino.spi.connector.SystemTable;
+import io.trino.spi.predicate.TupleDomain;
+import io.trino.spi.type.Type;
+
+import java.util.Set;
+
+import static io.trino.spi.type.BigintType.BIGINT;
+import static io.trino.spi.type.BooleanType.BOOLEAN;
+import static io.trino.spi.type.DateTimeEncoding.packDateTimeWithZone;
+import static io.trino.spi.type.TimeZoneKey.UTC_KEY;
+import static io.trino.spi.type.TimestampWithTimeZoneType.TIMESTAMP_TZ_MILLIS;
+import static io.trino.spi.type.VarcharType.VARCHAR;
+
+/**
+ * N8N工作流系统表 - n8n.system.workflows
+ * 
+ * 每个工作流一行，直接读取coordinator上缓存的工作流元数据快照，不调用N8N API或webhook。
+ */
+public class N8nWorkflowsTable implements SystemTable {
+    
+    private static final ConnectorTableMetadata METADATA = new ConnectorTableMetadata(
+            new SchemaTableName(N8nMetadata.SYSTEM_SCHEMA_NAME, "workflows"),
+            ImmutableList.of(
+                    new ColumnMetadata("id", VARCHAR),
+                    new ColumnMetadata("name", VARCHAR),
+                    new ColumnMetadata("active", BOOLEAN),
+                    new ColumnMetadata("created_at", TIMESTAMP_TZ_MILLIS),
+                    new ColumnMetadata("updated_at", TIMESTAMP_TZ_MILLIS),
+                    new ColumnMetadata("node_count", BIGINT)));
+    
+    private final N8nApiClient apiClient;
+    
+    @Inject
+    public N8nWorkflowsTable(N8nApiClient apiClient) {
+        this.apiClient = apiClient;
+    }
+    
+    @Override
+    public Distribution getDistribution() {
+        return Distribution.SINGLE_COORDINATOR;
+    }
+    
+    @Override
+    public ConnectorTableMetadata getTableMetadata() {
+        return METADATA;
+    }
+    
+    @Override
+    public RecordCursor cursor(
+            ConnectorTransactionHandle transactionHandle,
+            ConnectorSession session,
+            TupleDomain<Integer> constraint,
+            Set<Integer> requiredColumns,
+            ConnectorSplit split) {
+        return new WorkflowCursor(apiClient.getWorkflowSnapshot().getCatalog());
+    }
+    
+    private static class WorkflowCursor implements RecordCursor {
+        private final N8nWorkflowCatalog catalog;
+        private int position = -1;
+        
+        public WorkflowCursor(N8nWorkflowCatalog catalog) {
+            this.catalog = catalog;
+        }
+        
+        @Override
+        public long getCompletedBytes() {
+            return 0;
+        }
+        
+        @Override
+        public long getReadTimeNanos() {
+            return 0;
+        }
+        
+        @Override
+        public Type getType(int field) {
+            return METADATA.getColumns().get(field).getType();
+        }
+        
+        @Override
+        public boolean advanceNextPosition() {
+            if (position + 1 >= catalog.getWorkflowCount()) {
+                return false;
+            }
+            position++;
+            return true;
+        }
+        
+        @Override
+        public boolean getBoolean(int field) {
+            return catalog.isWorkflowActive(position);
+        }
+        
+        @Override
+        public long getLong(int field) {
+            switch (field) {
+                case 3:
+                    return packDateTimeWithZone(catalog.getWorkflowCreatedAt(position), UTC_KEY);
+                case 4:
+                    return packDateTimeWithZone(catalog.getWorkflowUpdatedAt(position), UTC_KEY);
+                default:
+                    return catalog.getWorkflowNodeCount(position);
+            }
+        }
+        
+        @Override
+        public double getDouble(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public Slice getSlice(int field) {
+            return field == 0 ? catalog.getWorkflowId(position) : catalog.getWorkflowName(position);
+        }
+        
+        @Override
+        public Object getObject(int field) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public boolean isNull(int field) {
+            switch (field) {
+                case 0:
+                    return catalog.getWorkflowId(position) == null;
+                case 1:
+                    return catalog.getWorkflowName(position) == null;
+                case 3:
+                    return catalog.getWorkflowCreatedAt(position) == null;
+                case 4:
+                    return catalog.getWorkflowUpdatedAt(position) == null;
+                default:
+                    return false;
+            }
+        }
+        
+        @Override
+        public void close() {
+            position = catalog.getWorkflowCount();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import com.sun.net.httpserver.HttpServer;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import static com.leapfuture.trino.n8n.N8nDeadLetterStore.ERROR_COLUMN;
+import static com.leapfuture.trino.n8n.N8nDeadLetterStore.FAILED_AT_COLUMN;
+import static com.leapfuture.trino.n8n.N8nDeadLetterStore.PAYLOAD_COLUMN;
+import static com.leapfuture.trino.n8n.N8nDeadLetterStore.WEBHOOK_PATH_COLUMN;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link N8nDeadLetterStore}段文件的读写和损坏文件处理
+ */
+public class TestN8nDeadLetterStore {
+    
+    private static final boolean[] ALL_COLUMNS = {true, true, true, true, true};
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        N8nDeadLetterStore store = createStore();
+        store.add("orders", "HTTP 400: bad request", payloads("{\"id\":1}", "{\"id\":2,\"name\":\"张三\"}"));
+        store.add("customers", "HTTP 422", payloads("{\"id\":3}"));
+        
+        // 重新打开目录，模拟重启
+        N8nDeadLetterStore reopened = createStore();
+        List<N8nDeadLetterStore.SegmentFile> segments = reopened.getSegments();
+        assertEquals(2, segments.size());
+        assertEquals(2, segments.get(0).getRowCount());
+        assertEquals(1, segments.get(1).getRowCount());
+        
+        N8nDeadLetterStore.Segment first = N8nDeadLetterStore.readSegment(segments.get(0), ALL_COLUMNS);
+        assertEquals(2, first.getRowCount());
+        assertEquals(0, first.getId(0));
+        assertEquals(1, first.getId(1));
+        assertEquals("orders", first.getValue(WEBHOOK_PATH_COLUMN, 1).toStringUtf8());
+        assertEquals("HTTP 400: bad request", first.getValue(ERROR_COLUMN, 0).toStringUtf8());
+        assertEquals("{\"id\":1}", first.getValue(PAYLOAD_COLUMN, 0).toStringUtf8());
+        assertEquals("{\"id\":2,\"name\":\"张三\"}", first.getValue(PAYLOAD_COLUMN, 1).toStringUtf8());
+        assertNotNull(first.getValue(FAILED_AT_COLUMN, 0));
+        
+        N8nDeadLetterStore.Segment second = N8nDeadLetterStore.readSegment(segments.get(1), ALL_COLUMNS);
+        assertEquals(2, second.getId(0));
+        assertEquals("customers", second.getValue(WEBHOOK_PATH_COLUMN, 0).toStringUtf8());
+        
+        // 新写入的行id接着已有的行分配
+        reopened.add("orders", "HTTP 400", payloads("{\"id\":4}"));
+        N8nDeadLetterStore.Segment third = N8nDeadLetterStore.readSegment(reopened.getSegments().get(2), ALL_COLUMNS);
+        assertEquals(3, third.getId(0));
+    }
+    
+    @Test
+    public void testReadSelectedColumns() throws IOException {
+        N8nDeadLetterStore store = createStore();
+        store.add("orders", "HTTP 400", payloads("{\"id\":1}"));
+        
+        N8nDeadLetterStore.Segment segment = N8nDeadLetterStore.readSegment(
+                store.getSegments().get(0),
+                new boolean[] {false, false, true, false, false});
+        assertEquals("orders", segment.getValue(WEBHOOK_PATH_COLUMN, 0).toStringUtf8());
+        assertThrows(NullPointerException.class, () -> segment.getValue(PAYLOAD_COLUMN, 0));
+    }
+    
+    @Test
+    public void testTruncatedSegment() throws IOException {
+        createStore().add("orders", "HTTP 400", payloads("{\"id\":1}", "{\"id\":2}"));
+        Path file = getOnlyFile();
+        byte[] data = Files.readAllBytes(file);
+        
+        for (int length : new int[] {0, 6, data.length / 2, data.length - 1}) {
+            Files.write(file, Arrays.copyOf(data, length));
+            assertTrue(createStore().getSegments().isEmpty(), "length " + length);
+        }
+    }
+    
+    @Test
+    public void testBadChecksum() throws IOException {
+        N8nDeadLetterStore store = createStore();
+        store.add("orders", "HTTP 400", payloads("{\"id\":1}"));
+        N8nDeadLetterStore.SegmentFile segment = store.getSegments().get(0);
+        Path file = getOnlyFile();
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 1;
+        Files.write(file, data);
+        
+        // 已加载的段在读取时校验，打开目录时忽略
+        assertThrows(IOException.class, () -> N8nDeadLetterStore.readSegment(segment, ALL_COLUMNS));
+        assertTrue(createStore().getSegments().isEmpty());
+    }
+    
+    @Test
+    public void testVersionMismatch() throws IOException {
+        createStore().add("orders", "HTTP 400", payloads("{\"id\":1}"));
+        Path file = getOnlyFile();
+        byte[] data = Files.readAllBytes(file);
+        // 版本号紧跟在magic之后，重新计算校验和，确保被拒绝的原因是版本
+        data[Integer.BYTES]++;
+        Files.write(file, withChecksum(data));
+        
+        N8nDeadLetterStore reopened = createStore();
+        assertTrue(reopened.getSegments().isEmpty());
+        
+        // 无法读取的段保留原样，新写入的段不会覆盖它
+        reopened.add("orders", "HTTP 400", payloads("{\"id\":2}"));
+        assertEquals(1, reopened.getSegments().size());
+        assertArrayEquals(data, Files.readAllBytes(file));
+    }
+    
+    @Test
+    public void testReplay() throws IOException {
+        // orders接收数据，customers拒绝
+        List<String> received = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream input = exchange.getRequestBody()) {
+                received.add(exchange.getRequestURI().getPath() + " " + new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/orders") ? 200 : 400, -1);
+            exchange.close();
+        });
+        server.start();
+        N8nConfig config = new N8nConfig()
+                .setDeadLetterPath(directory.toString())
+                .setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .setInsertMaxRetries(0);
+        try {
+            N8nDeadLetterStore store = new N8nDeadLetterStore(config);
+            store.add("orders", "HTTP 503", payloads("{\"id\":1}", "{\"id\":2}"));
+            store.add("customers", "HTTP 503", payloads("{\"id\":3}"));
+            
+            List<N8nDeadLetterStore.ReplayResult> results = store.replay(path -> true);
+            assertEquals(2, results.size());
+            assertEquals("customers", results.get(0).getWebhookPath());
+            assertEquals(0, results.get(0).getReplayedRows());
+            assertEquals(1, results.get(0).getFailedRows());
+            assertTrue(results.get(0).getError().contains("400"), results.get(0).getError());
+            assertEquals("orders", results.get(1).getWebhookPath());
+            assertEquals(2, results.get(1).getReplayedRows());
+            assertEquals(0, results.get(1).getFailedRows());
+            assertNull(results.get(1).getError());
+            assertTrue(received.contains("/orders [{\"id\":1},{\"id\":2}]"), received.toString());
+            
+            // 发送成功的行被删除，失败的行保留
+            List<N8nDeadLetterStore.SegmentFile> segments = store.getSegments();
+            assertEquals(1, segments.size());
+            N8nDeadLetterStore.Segment remaining = N8nDeadLetterStore.readSegment(segments.get(0), ALL_COLUMNS);
+            assertEquals("customers", remaining.getValue(WEBHOOK_PATH_COLUMN, 0).toStringUtf8());
+        } finally {
+            N8nWebhookRouter.release(config);
+            N8nHttpClient.closeClients(config);
+            server.stop(0);
+        }
+    }
+    
+    @Test
+    public void testClosed() throws IOException {
+        N8nDeadLetterStore store = createStore();
+        store.close();
+        assertThrows(IOException.class, () -> store.add("orders", "HTTP 400", payloads("{\"id\":1}")));
+    }
+    
+    private N8nDeadLetterStore createStore() {
+        return new N8nDeadLetterStore(new N8nConfig().setDeadLetterPath(directory.toString()));
+    }
+    
+    private Path getOnlyFile() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.dlq")) {
+            stream.forEach(files::add);
+        }
+        assertEquals(1, files.size());
+        return files.get(0);
+    }
+    
+    private static List<Slice> payloads(String... values) {
+        return Arrays.stream(values)
+                .map(Slices::utf8Slice)
+                .collect(ImmutableList.toImmutableList());
+    }
+    
+    /**
+     * 重新计算文件末尾的CRC32
+     */
+    private static byte[] withChecksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+        Slices.wrappedBuffer(data).setLong(data.length - Long.BYTES, crc.getValue());
+        return data;
+    }
+}
@@ -0,0 +1,247 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Bytes;
+import com.sun.net.httpserver.HttpServer;
+import io.airlift.slice.Slices;
+import io.airlift.units.DataSize;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link N8nDeliverySpool}段文件的恢复和损坏文件处理
+ * 
+ * 重启后未确认的批次会在后台重放，测试用本地HTTP服务接收重放的请求。
+ */
+public class TestN8nDeliverySpool {
+    
+    @TempDir
+    Path directory;
+    
+    private HttpServer server;
+    private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+    private String url;
+    private N8nConfig config;
+    private final List<N8nDeliverySpool> spools = new ArrayList<>();
+    
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/webhook/orders", exchange -> {
+            try (InputStream input = exchange.getRequestBody()) {
+                deliveries.add(new Delivery(
+                        exchange.getRequestHeaders().getFirst(N8nWebhookSender.IDEMPOTENCY_KEY_HEADER),
+                        new String(input.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+            byte[] response = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook/orders";
+        config = new N8nConfig().setSpoolPath(directory.toString());
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        spools.forEach(N8nDeliverySpool::close);
+        N8nWebhookRouter.release(config);
+        N8nHttpClient.closeClients(config);
+        server.stop(0);
+    }
+    
+    @Test
+    public void testReplayUnacknowledgedBatches() throws Exception {
+        N8nDeliverySpool spool = createSpool();
+        spool.append(url, "query-1-0-0", Slices.utf8Slice("[{\"id\":1}]"));
+        N8nDeliverySpool.SpooledBatch acknowledged = spool.append(url, "query-1-0-1", Slices.utf8Slice("[{\"id\":2}]"));
+        spool.append(url, "query-1-0-2", Slices.utf8Slice("[{\"id\":3,\"name\":\"张三\"}]"));
+        spool.acknowledge(acknowledged);
+        spool.close();
+        assertTrue(deliveries.isEmpty());
+        Path file = getOnlySegment();
+        
+        // 重启后只重放未确认的批次，使用首次写入时的幂等key
+        createSpool();
+        assertEquals(
+                ImmutableMap.of("query-1-0-0", "[{\"id\":1}]", "query-1-0-2", "[{\"id\":3,\"name\":\"张三\"}]"),
+                awaitDeliveries(2));
+        
+        // 全部确认后删除旧段，确认记录写在新的当前段中
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Files.exists(file) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(Files.exists(file));
+        assertEquals(1, listSegments().size());
+    }
+    
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        // 段很小，并发写入和刷盘期间不断滚动到新的段
+        config.setSpoolSegmentSize(DataSize.of(1, DataSize.Unit.KILOBYTE));
+        N8nDeliverySpool spool = createSpool();
+        Map<String, String> expected = new HashMap<>();
+        List<Callable<Void>> writers = new ArrayList<>();
+        for (int writer = 0; writer < 8; writer++) {
+            for (int i = 0; i < 25; i++) {
+                expected.put("query-" + writer + "-0-" + i, "[{\"writer\":" + writer + ",\"id\":" + i + "}]");
+            }
+            int current = writer;
+            writers.add(() -> {
+                for (int i = 0; i < 25; i++) {
+                    String key = "query-" + current + "-0-" + i;
+                    spool.append(url, key, Slices.utf8Slice(expected.get(key)));
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(writers.size());
+        try {
+            for (Future<Void> future : executor.invokeAll(writers)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        spool.close();
+        assertTrue(listSegments().size() > 1);
+        
+        createSpool();
+        assertEquals(expected, awaitDeliveries(expected.size()));
+    }
+    
+    @Test
+    public void testTruncatedTail() throws Exception {
+        N8nDeliverySpool spool = createSpool();
+        spool.append(url, "query-1-0-0", Slices.utf8Slice("[{\"id\":1}]"));
+        spool.append(url, "query-1-0-1", Slices.utf8Slice("[{\"id\":2}]"));
+        spool.close();
+        
+        // 模拟写最后一条记录时进程退出
+        Path file = getOnlySegment();
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 3));
+        
+        createSpool();
+        assertEquals(ImmutableMap.of("query-1-0-0", "[{\"id\":1}]"), awaitDeliveries(1));
+    }
+    
+    @Test
+    public void testBadChecksum() throws Exception {
+        N8nDeliverySpool spool = createSpool();
+        spool.append(url, "query-1-0-0", Slices.utf8Slice("[{\"id\":1}]"));
+        spool.append(url, "query-1-0-1", Slices.utf8Slice("[{\"id\":2}]"));
+        spool.append(url, "query-1-0-2", Slices.utf8Slice("[{\"id\":3}]"));
+        spool.close();
+        
+        // 损坏中间的记录，它和之后的记录都被忽略
+        Path file = getOnlySegment();
+        byte[] data = Files.readAllBytes(file);
+        int position = Bytes.indexOf(data, "[{\"id\":2}]".getBytes(StandardCharsets.UTF_8));
+        data[position + 1] ^= 1;
+        Files.write(file, data);
+        
+        createSpool();
+        assertEquals(ImmutableMap.of("query-1-0-0", "[{\"id\":1}]"), awaitDeliveries(1));
+    }
+    
+    @Test
+    public void testVersionMismatch() throws Exception {
+        N8nDeliverySpool spool = createSpool();
+        spool.append(url, "query-1-0-0", Slices.utf8Slice("[{\"id\":1}]"));
+        spool.close();
+        
+        // 版本号紧跟在段文件开头的magic之后
+        Path file = getOnlySegment();
+        byte[] data = Files.readAllBytes(file);
+        data[Integer.BYTES]++;
+        Files.write(file, data);
+        
+        // 其他版本的段不重放也不删除，新段使用新的文件名
+        N8nDeliverySpool reopened = createSpool();
+        reopened.append(url, "query-2-0-0", Slices.utf8Slice("[{\"id\":2}]"));
+        assertEquals(2, listSegments().size());
+        assertArrayEquals(data, Files.readAllBytes(file));
+        assertEquals(Map.of(), awaitDeliveries(0));
+    }
+    
+    private N8nDeliverySpool createSpool() {
+        N8nDeliverySpool spool = new N8nDeliverySpool(config);
+        spools.add(spool);
+        return spool;
+    }
+    
+    /**
+     * 等待指定数量的重放请求，并确认之后没有多余的请求
+     * 
+     * @return 幂等key到请求体的映射
+     */
+    private Map<String, String> awaitDeliveries(int count) throws InterruptedException {
+        Map<String, String> received = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Delivery delivery = deliveries.poll(10, TimeUnit.SECONDS);
+            assertNotNull(delivery, "expected " + count + " deliveries, received " + received.keySet());
+            received.put(delivery.idempotencyKey, delivery.body);
+        }
+        assertNull(deliveries.poll(500, TimeUnit.MILLISECONDS));
+        return received;
+    }
+    
+    private Path getOnlySegment() throws IOException {
+        List<Path> segments = listSegments();
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+    
+    private List<Path> listSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spool")) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+    
+    private static final class Delivery {
+        private final String idempotencyKey;
+        private final String body;
+        
+        private Delivery(String idempotencyKey, String body) {
+            this.idempotencyKey = idempotencyKey;
+            this.body = body;
+        }
+    }
+}
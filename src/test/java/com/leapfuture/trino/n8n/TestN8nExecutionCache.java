@@ -0,0 +1,135 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link N8nExecutionCache}按started_at下界读取、按块清除和过期
+ * 
+ * 测试用内存中的执行记录代替N8N API，记录每次读取的页数。
+ */
+public class TestN8nExecutionCache {
+    
+    private static final int PAGE_SIZE = 250;
+    private static final long NOW = System.currentTimeMillis();
+    
+    private final List<N8nConfig> configs = new ArrayList<>();
+    
+    @AfterEach
+    public void tearDown() {
+        configs.forEach(N8nHttpClient::closeClients);
+    }
+    
+    @Test
+    public void testSeedStopsAtLowerBound() throws Exception {
+        // 每分钟一次执行，ID随开始时间递增
+        FakeApiClient apiClient = new FakeApiClient(createConfig(), 2000, TimeUnit.MINUTES.toMillis(1));
+        N8nExecutionCache cache = new N8nExecutionCache(apiClient.config);
+        
+        // 第一次读取到整页都早于下界为止
+        long startedAfter = NOW - TimeUnit.MINUTES.toMillis(100);
+        assertEquals(100, count(cache.read(apiClient, "1", startedAfter), startedAfter));
+        assertEquals(2, apiClient.pages);
+        
+        // 需要更早的记录时补齐，之后只读取新的记录
+        assertEquals(2000, count(cache.read(apiClient, "1", null), null));
+        assertEquals(2 + 2000 / PAGE_SIZE, apiClient.pages);
+        apiClient.add(5);
+        assertEquals(2005, count(cache.read(apiClient, "1", null), null));
+        assertEquals(3 + 2000 / PAGE_SIZE, apiClient.pages);
+    }
+    
+    @Test
+    public void testEvictOldestChunks() throws Exception {
+        FakeApiClient apiClient = new FakeApiClient(createConfig().setExecutionsCacheMaxRows(6000), 10000, TimeUnit.SECONDS.toMillis(1));
+        N8nExecutionCache cache = new N8nExecutionCache(apiClient.config);
+        assertEquals(10000, count(cache.read(apiClient, "1", null), null));
+        
+        // 只清除了最旧的块，最近的记录仍然只需要读取增量
+        long startedAfter = NOW - TimeUnit.SECONDS.toMillis(1000);
+        int pages = apiClient.pages;
+        apiClient.add(5);
+        assertEquals(1005, count(cache.read(apiClient, "1", startedAfter), startedAfter));
+        assertEquals(pages + 1, apiClient.pages);
+    }
+    
+    @Test
+    public void testExpireOldExecutions() throws Exception {
+        FakeApiClient apiClient = new FakeApiClient(createConfig().setExecutionsCacheMaxAge(new Duration(1, TimeUnit.HOURS)), 2000, TimeUnit.MINUTES.toMillis(1));
+        N8nExecutionCache cache = new N8nExecutionCache(apiClient.config);
+        
+        // 早于保留时间的执行记录已被N8N清理，不再返回
+        assertEquals(60, count(cache.read(apiClient, "1", null), null));
+        assertEquals(2, apiClient.pages);
+    }
+    
+    private N8nConfig createConfig() {
+        N8nConfig config = new N8nConfig().setExecutionsCacheEnabled(true);
+        configs.add(config);
+        return config;
+    }
+    
+    /**
+     * @return 开始时间在保留时间内且不早于startedAfter的记录数
+     */
+    private static int count(Iterator<N8nApiClient.ExecutionInfo> executions, Long startedAfter) {
+        int count = 0;
+        while (executions.hasNext()) {
+            N8nApiClient.ExecutionInfo execution = executions.next();
+            if (startedAfter == null || execution.getStartedAt() >= startedAfter) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * 按ID从新到旧分页返回已结束的执行记录，创建时最新一条的开始时间为当前时间前1毫秒
+     */
+    private static final class FakeApiClient extends N8nApiClient {
+        private final N8nConfig config;
+        private final long interval;
+        private final List<N8nApiClient.ExecutionInfo> executions = new ArrayList<>();
+        private int pages;
+        
+        private FakeApiClient(N8nConfig config, int count, long interval) {
+            super(config);
+            this.config = config;
+            this.interval = interval;
+            for (int id = count; id >= 1; id--) {
+                executions.add(execution(id, NOW - 1 - (count - id) * interval));
+            }
+        }
+        
+        /**
+         * 追加更新的执行记录
+         */
+        private void add(int count) {
+            int latest = executions.size();
+            for (int i = 1; i <= count; i++) {
+                executions.add(0, execution(latest + i, NOW - 1 + i * interval));
+            }
+        }
+        
+        private static N8nApiClient.ExecutionInfo execution(int id, long startedAt) {
+            return new N8nApiClient.ExecutionInfo(Integer.toString(id), "1", "success", "webhook", true, startedAt, startedAt + 1, null);
+        }
+        
+        @Override
+        public ExecutionPage listExecutions(String workflowId, String status, String cursor) {
+            pages++;
+            int start = cursor == null ? 0 : Integer.parseInt(cursor);
+            int end = Math.min(start + PAGE_SIZE, executions.size());
+            return new ExecutionPage(ImmutableList.copyOf(executions.subList(start, end)), end < executions.size() ? Integer.toString(end) : null);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link N8nExecutionsTable#createSplits}按started_at窗口内的执行ID范围划分split
+ * 
+ * 测试用内存中的执行记录代替N8N API，执行ID从firstId到lastId连续，开始时间为ID × 1000毫秒。
+ */
+public class TestN8nExecutionsTable {
+    
+    private final N8nConfig config = new N8nConfig();
+    
+    @AfterEach
+    public void tearDown() {
+        N8nHttpClient.closeClients(config);
+    }
+    
+    @Test
+    public void testSplitByIdWithinWindow() throws Exception {
+        FakeApiClient apiClient = new FakeApiClient(config, 1, 100000);
+        List<N8nExecutionsSplit> splits = N8nExecutionsTable.createSplits(
+                new N8nExecutionsTableHandle(ImmutableList.of(), ImmutableList.of(), 60001L * 1000, null), apiClient, 4);
+        
+        // 只均分窗口内的ID范围，第一个split不限制下界，最后一个split不限制上界
+        assertEquals(4, splits.size());
+        assertNull(splits.get(0).getIdFrom());
+        assertTrue(splits.get(0).getIdBefore() > 60001 && splits.get(0).getIdBefore() < 71000);
+        for (int i = 1; i < splits.size(); i++) {
+            assertEquals(splits.get(i - 1).getIdBefore(), splits.get(i).getIdFrom());
+        }
+        assertNull(splits.get(3).getIdBefore());
+    }
+    
+    @Test
+    public void testSplitSkipsPrunedIds() throws Exception {
+        // ID小于50001的执行记录已被清理
+        FakeApiClient apiClient = new FakeApiClient(config, 50001, 90000);
+        List<N8nExecutionsSplit> splits = N8nExecutionsTable.createSplits(
+                new N8nExecutionsTableHandle(ImmutableList.of(), ImmutableList.of(), null, null), apiClient, 4);
+        assertEquals(4, splits.size());
+        assertTrue(splits.get(0).getIdBefore() > 50001 && splits.get(0).getIdBefore() < 61000);
+    }
+    
+    @Test
+    public void testSmallRangeIsOneSplit() throws Exception {
+        FakeApiClient apiClient = new FakeApiClient(config, 1, 500);
+        List<N8nExecutionsSplit> splits = N8nExecutionsTable.createSplits(
+                new N8nExecutionsTableHandle(ImmutableList.of(), ImmutableList.of(), null, null), apiClient, 16);
+        assertEquals(1, splits.size());
+        assertNull(splits.get(0).getIdFrom());
+        assertNull(splits.get(0).getIdBefore());
+    }
+    
+    /**
+     * 按ID从新到旧返回执行记录，支持{@link N8nApiClient#executionCursor}生成的游标
+     */
+    private static final class FakeApiClient extends N8nApiClient {
+        private static final Pattern LAST_ID = Pattern.compile("\"lastId\":\"(\\d+)\"");
+        
+        private final long firstId;
+        private final long lastId;
+        
+        private FakeApiClient(N8nConfig config, long firstId, long lastId) {
+            super(config);
+            this.firstId = firstId;
+            this.lastId = lastId;
+        }
+        
+        @Override
+        public ExecutionPage listExecutions(String workflowId, String status, String cursor, int limit) {
+            long before = lastId + 1;
+            if (cursor != null) {
+                Matcher matcher = LAST_ID.matcher(new String(Base64.getDecoder().decode(cursor), StandardCharsets.UTF_8));
+                assertTrue(matcher.find());
+                before = Long.parseLong(matcher.group(1));
+            }
+            ImmutableList.Builder<ExecutionInfo> executions = ImmutableList.builder();
+            for (long id = Math.min(before - 1, lastId); id >= Math.max(firstId, before - limit); id--) {
+                executions.add(new ExecutionInfo(Long.toString(id), "1", "success", "webhook", true, id * 1000, id * 1000 + 1, null));
+            }
+            return new ExecutionPage(executions.build(), null);
+        }
+    }
+}
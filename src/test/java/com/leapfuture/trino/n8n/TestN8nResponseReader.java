@@ -0,0 +1,54 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link N8nResponseReader}按记录拆分响应，记录内容与响应中的原文一致
+ */
+public class TestN8nResponseReader {
+    
+    @Test
+    public void testArrayKeepsNumberText() throws IOException {
+        assertEquals(
+                ImmutableList.of(
+                        "{\"amount\":12345678901234567.89,\"rate\":1e2,\"price\":1.50}",
+                        "[-0.0,123456789012345678901234567890]",
+                        "\"张三\""),
+                read("[{\"amount\":12345678901234567.89,\"rate\":1e2,\"price\":1.50}, [-0.0, 123456789012345678901234567890], \"张三\"]"));
+    }
+    
+    @Test
+    public void testNdjson() throws IOException {
+        assertEquals(
+                ImmutableList.of("{\"id\":1,\"total\":9.90}", "{\"id\":2,\"total\":10.00}"),
+                read("{\"id\":1,\"total\":9.90}\n{\"id\":2,\"total\":10.00}\n"));
+    }
+    
+    @Test
+    public void testRawBody() throws IOException {
+        assertEquals(ImmutableList.of("ok 1.50"), read("ok 1.50"));
+    }
+    
+    @Test
+    public void testUnterminatedArray() {
+        assertThrows(IOException.class, () -> read("[{\"id\":1},"));
+    }
+    
+    private static List<String> read(String body) throws IOException {
+        List<String> records = new ArrayList<>();
+        N8nResponseReader.readRecords(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                record -> records.add(record.toStringUtf8()));
+        return records;
+    }
+}
@@ -0,0 +1,131 @@
+package com.leapfuture.trino.n8n;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slices;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link N8nSnapshotFile}的读写和损坏文件处理
+ */
+public class TestN8nSnapshotFile {
+    
+    private static final String API_BASE_URL = "http://n8n:5678/api/v1";
+    private static final Instant FETCHED_AT = Instant.parse("2026-01-02T03:04:05.678Z");
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        N8nWorkflowSnapshot snapshot = createSnapshot();
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, snapshot, FETCHED_AT);
+        
+        N8nSnapshotFile.PersistedSnapshot read = N8nSnapshotFile.read(file, API_BASE_URL).orElseThrow();
+        assertEquals(snapshot.getWebhooks(), read.getSnapshot().getWebhooks());
+        assertEquals(snapshot.getCatalog(), read.getSnapshot().getCatalog());
+        // 读取保存的获取时间，而不是读取文件的时间
+        assertEquals(FETCHED_AT, read.getFetchedAt());
+        assertFalse(Files.exists(directory.resolve("snapshot.bin.tmp")));
+    }
+    
+    @Test
+    public void testOverwrite() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, createSnapshot(), FETCHED_AT);
+        N8nWorkflowSnapshot empty = N8nWorkflowSnapshot.of(ImmutableList.of());
+        Instant refreshedAt = FETCHED_AT.plusSeconds(300);
+        N8nSnapshotFile.write(file, API_BASE_URL, empty, refreshedAt);
+        
+        N8nSnapshotFile.PersistedSnapshot read = N8nSnapshotFile.read(file, API_BASE_URL).orElseThrow();
+        assertTrue(read.getSnapshot().getWebhooks().isEmpty());
+        assertEquals(N8nWorkflowCatalog.EMPTY, read.getSnapshot().getCatalog());
+        assertEquals(refreshedAt, read.getFetchedAt());
+    }
+    
+    @Test
+    public void testMissingFile() {
+        assertEquals(Optional.empty(), N8nSnapshotFile.read(directory.resolve("missing.bin"), API_BASE_URL));
+    }
+    
+    @Test
+    public void testOtherApiBaseUrl() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, createSnapshot(), FETCHED_AT);
+        
+        assertEquals(Optional.empty(), N8nSnapshotFile.read(file, "http://other:5678/api/v1"));
+    }
+    
+    @Test
+    public void testTruncatedFile() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, createSnapshot(), FETCHED_AT);
+        byte[] data = Files.readAllBytes(file);
+        
+        for (int length : new int[] {0, 3, data.length / 2, data.length - 1}) {
+            Files.write(file, Arrays.copyOf(data, length));
+            assertEquals(Optional.empty(), N8nSnapshotFile.read(file, API_BASE_URL), "length " + length);
+        }
+    }
+    
+    @Test
+    public void testBadChecksum() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, createSnapshot(), FETCHED_AT);
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 1;
+        Files.write(file, data);
+        
+        assertEquals(Optional.empty(), N8nSnapshotFile.read(file, API_BASE_URL));
+    }
+    
+    @Test
+    public void testVersionMismatch() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        N8nSnapshotFile.write(file, API_BASE_URL, createSnapshot(), FETCHED_AT);
+        byte[] data = Files.readAllBytes(file);
+        // 版本号紧跟在magic之后，重新计算校验和，确保被拒绝的原因是版本
+        data[Integer.BYTES]++;
+        Files.write(file, withChecksum(data));
+        
+        assertEquals(Optional.empty(), N8nSnapshotFile.read(file, API_BASE_URL));
+    }
+    
+    private static N8nWorkflowSnapshot createSnapshot() {
+        N8nWorkflowCatalog catalog = N8nWorkflowCatalog.builder()
+                .addWorkflow("wf-1", "订单同步", true, 1_700_000_000_000L, 1_700_000_360_000L)
+                .addNode("node-1", "Webhook", "n8n-nodes-base.webhook", 2.0, false, Slices.utf8Slice("{\"path\":\"orders\"}"), null)
+                .addNode("node-2", "HTTP Request", "n8n-nodes-base.httpRequest", 4.2, true, null, Slices.utf8Slice("{\"httpBasicAuth\":{\"id\":\"1\"}}"))
+                .addWorkflow("wf-2", null, false, null, null)
+                .addNode("node-3", "Webhook", "n8n-nodes-base.webhook", Double.NaN, false, Slices.utf8Slice("{\"path\":\"orders\"}"), null)
+                .build();
+        return N8nWorkflowSnapshot.of(
+                ImmutableList.of(
+                        new N8nApiClient.WebhookInfo("orders", "orders", "GET", "wf-1", "订单同步", true),
+                        new N8nApiClient.WebhookInfo("orders_v2", "orders/v2", "POST", "wf-2", null, false)),
+                catalog);
+    }
+    
+    /**
+     * 重新计算文件末尾的CRC32
+     */
+    private static byte[] withChecksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Long.BYTES);
+        Slices.wrappedBuffer(data).setLong(data.length - Long.BYTES, crc.getValue());
+        return data;
+    }
+}
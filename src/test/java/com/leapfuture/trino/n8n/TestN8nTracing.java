@@ -0,0 +1,122 @@
+package com.leapfuture.trino.n8n;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 用内存导出器验证{@link N8nTracing}生成的span和traceparent请求头
+ */
+public class TestN8nTracing {
+    
+    private InMemorySpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    
+    @BeforeEach
+    public void setUp() {
+        exporter = InMemorySpanExporter.create();
+        tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        new N8nTracing(tracerProvider.get("trino-n8n"));
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        // Tracer是静态的，恢复为noop，避免影响其他测试
+        new N8nTracing(OpenTelemetry.noop().getTracer("trino-n8n"));
+        tracerProvider.close();
+    }
+    
+    @Test
+    public void testSuccessfulCall() {
+        HttpPost request = new HttpPost("http://n8n:5678/webhook/orders");
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.webhook.scan", Context.root(), request, "orders", 42);
+        span.setQueueWaitNanos(5_000_000);
+        span.setStatusCode(200);
+        span.end(1024, null);
+        
+        SpanData data = getOnlySpan();
+        assertEquals("n8n.webhook.scan", data.getName());
+        assertEquals(SpanKind.CLIENT, data.getKind());
+        assertEquals("orders", data.getAttributes().get(AttributeKey.stringKey("n8n.path")));
+        assertEquals("POST", data.getAttributes().get(AttributeKey.stringKey("http.request.method")));
+        assertEquals("http://n8n:5678/webhook/orders", data.getAttributes().get(AttributeKey.stringKey("url.full")));
+        assertEquals(200L, data.getAttributes().get(AttributeKey.longKey("http.response.status_code")));
+        assertEquals(42L, data.getAttributes().get(AttributeKey.longKey("http.request.body.size")));
+        assertEquals(1024L, data.getAttributes().get(AttributeKey.longKey("http.response.body.size")));
+        assertEquals(0L, data.getAttributes().get(AttributeKey.longKey("http.request.resend_count")));
+        assertEquals(5L, data.getAttributes().get(AttributeKey.longKey("n8n.queue.wait_ms")));
+        assertEquals(StatusCode.UNSET, data.getStatus().getStatusCode());
+        
+        // traceparent携带本次调用的span，N8N的执行挂在它下面
+        assertEquals("00-" + data.getTraceId() + "-" + data.getSpanId() + "-01", request.getFirstHeader("traceparent").getValue());
+    }
+    
+    @Test
+    public void testParentContext() {
+        Span parent = tracerProvider.get("test").spanBuilder("split").startSpan();
+        HttpGet request = new HttpGet("http://n8n:5678/api/v1/workflows");
+        N8nTracing.startHttpSpan("n8n.api", Context.root().with(parent), request, "/workflows", 0).end(0, null);
+        parent.end();
+        
+        SpanData data = exporter.getFinishedSpanItems().stream()
+                .filter(span -> span.getName().equals("n8n.api"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(parent.getSpanContext().getTraceId(), data.getTraceId());
+        assertEquals(parent.getSpanContext().getSpanId(), data.getParentSpanId());
+        assertEquals("00-" + data.getTraceId() + "-" + data.getSpanId() + "-01", request.getFirstHeader("traceparent").getValue());
+    }
+    
+    @Test
+    public void testHttpErrorStatus() {
+        HttpPost request = new HttpPost("http://n8n:5678/webhook/orders");
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.webhook.function", Context.root(), request, "orders", 10);
+        span.setStatusCode(503);
+        span.end(17, null);
+        
+        SpanData data = getOnlySpan();
+        assertEquals(503L, data.getAttributes().get(AttributeKey.longKey("http.response.status_code")));
+        assertEquals(17L, data.getAttributes().get(AttributeKey.longKey("http.response.body.size")));
+        assertEquals(StatusCode.ERROR, data.getStatus().getStatusCode());
+        assertEquals("HTTP 503", data.getStatus().getDescription());
+    }
+    
+    @Test
+    public void testFailure() {
+        HttpPost request = new HttpPost("http://n8n:5678/webhook/orders");
+        N8nTracing.HttpSpan span = N8nTracing.startHttpSpan("n8n.webhook.scan", Context.root(), request, "orders", 10);
+        span.end(0, new IOException("Connection refused"));
+        
+        SpanData data = getOnlySpan();
+        assertNull(data.getAttributes().get(AttributeKey.longKey("http.response.status_code")));
+        assertEquals(StatusCode.ERROR, data.getStatus().getStatusCode());
+        assertEquals("Connection refused", data.getStatus().getDescription());
+        assertEquals("exception", data.getEvents().get(0).getName());
+    }
+    
+    private SpanData getOnlySpan() {
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(1, spans.size());
+        return spans.get(0);
+    }
+}